@@ -27,11 +27,14 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshinewatchfaceapp.data.WeatherContract;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * from pages of {@link Cursor}s to a {@link android.support.v7.widget.RecyclerView}.  Each page
+ * holds the days after the last one of the page before it, and the list shows them one after
+ * another.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -41,7 +44,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    private final List<Cursor> mPages = new ArrayList<Cursor>();
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -70,9 +73,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            Cursor cursor = moveToPosition(adapterPosition);
+            if (null == cursor) return;
+            mClickHandler.onClick(cursor.getLong(ForecastFragment.COL_WEATHER_DATE), this);
             mICM.onClick(this);
         }
     }
@@ -85,6 +88,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Each day is known by its date, so that the choice stays with it when the pages
+        // around it are loaded again.  Set before the ItemChoiceManager starts observing.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -121,8 +127,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        Cursor cursor = moveToPosition(position);
+        int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
         int defaultImage;
         boolean useLongToday;
 
@@ -151,7 +157,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
 
         // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        long dateInMillis = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
 
         // Find TextView and set formatted date on it
         forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
@@ -168,13 +174,13 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // is not individually selectable
 
         // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+        double high = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
         String highString = Utility.formatTemperature(mContext, high);
         forecastAdapterViewHolder.mHighTempView.setText(highString);
         forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
 
         // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        double low = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
         String lowString = Utility.formatTemperature(mContext, low);
         forecastAdapterViewHolder.mLowTempView.setText(lowString);
         forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
@@ -205,18 +211,124 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        int count = 0;
+        for (Cursor page : mPages) {
+            count += page.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        Cursor cursor = moveToPosition(position);
+        return null == cursor ? RecyclerView.NO_ID : cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+    }
+
+    /**
+     * Shows a page, in place of the one loaded before it or after the last page.  A null page
+     * drops it and the pages after it.
+     */
+    public void swapPage(int page, Cursor newPage) {
+        if (null == newPage) {
+            dropPages(page);
+            return;
+        }
+        if (page == mPages.size()) {
+            int start = getItemCount();
+            mPages.add(newPage);
+            notifyItemRangeInserted(start, newPage.getCount());
+        } else {
+            // Only the page's own rows change; the rows of the other pages keep their views.
+            int start = 0;
+            for (int i = 0; i < page; i++) {
+                start += mPages.get(i).getCount();
+            }
+            int oldCount = mPages.set(page, newPage).getCount();
+            int newCount = newPage.getCount();
+            notifyItemRangeChanged(start, Math.min(oldCount, newCount));
+            if (newCount > oldCount) {
+                notifyItemRangeInserted(start + oldCount, newCount - oldCount);
+            } else if (newCount < oldCount) {
+                notifyItemRangeRemoved(start + newCount, oldCount - newCount);
+            }
+        }
+        mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
+    /**
+     * Drops the pages from the given one on, which no longer follow on from the page before.
+     */
+    public void dropPages(int fromPage) {
+        if (fromPage >= mPages.size()) return;
+        mPages.subList(fromPage, mPages.size()).clear();
         notifyDataSetChanged();
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    public int getPageCount() {
+        return mPages.size();
+    }
+
+    public Cursor getPage(int page) {
+        return mPages.get(page);
+    }
+
+    /**
+     * @return the last day of the page, or -1 if it is empty
+     */
+    public static long getLastDate(Cursor page) {
+        if (!page.moveToLast()) return -1;
+        return page.getLong(ForecastFragment.COL_WEATHER_DATE);
+    }
+
+    /**
+     * Runs on the main thread, so rather than reading every loaded row it skips the pages which
+     * end before the day and searches the one which may hold it: the pages, and the days in
+     * them, are in date order.
+     *
+     * @return the position of the day in the pages loaded, or RecyclerView.NO_POSITION
+     */
+    public int getPositionForDate(long date) {
+        int start = 0;
+        for (Cursor page : mPages) {
+            if (getLastDate(page) < date) {
+                start += page.getCount();
+                continue;
+            }
+            int low = 0;
+            int high = page.getCount() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                page.moveToPosition(middle);
+                long middleDate = page.getLong(ForecastFragment.COL_WEATHER_DATE);
+                if (middleDate < date) {
+                    low = middle + 1;
+                } else if (middleDate > date) {
+                    high = middle - 1;
+                } else {
+                    return start + middle;
+                }
+            }
+            // Later pages only hold later days.
+            break;
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    /**
+     * @return the page holding the position, moved to it, or null if it isn't loaded
+     */
+    private Cursor moveToPosition(int position) {
+        if (position < 0) return null;
+        for (Cursor page : mPages) {
+            int count = page.getCount();
+            if (position < count) {
+                page.moveToPosition(position);
+                return page;
+            }
+            position -= count;
+        }
+        return null;
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
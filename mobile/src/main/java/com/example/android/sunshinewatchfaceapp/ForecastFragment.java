@@ -65,13 +65,24 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
+    // How many pages of the forecast the list has scrolled far enough to show.
+    private int mPagesWanted = 1;
+    // Whether to scroll to the selected day once the pages wanted are loaded.
+    private boolean mScrollToSelection;
 
 
 
 
     private static final String SELECTED_KEY = "selected_position";
+    private static final String PAGES_KEY = "forecast_pages";
 
+    // Each page of the forecast has a loader of its own, FORECAST_LOADER plus the page's index,
+    // so that only the pages scrolled to are held.
     private static final int FORECAST_LOADER = 0;
+    private static final int FORECAST_PAGE_SIZE = 30;
+    // How close the list scrolls to the last day loaded before the next page is loaded.
+    private static final int FORECAST_PREFETCH_DAYS = 10;
+    private static final String ARG_LAST_DATE = "last_date";
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
     private static final String[] FORECAST_COLUMNS = {
@@ -214,6 +225,22 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
 
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0 || mPagesWanted > mForecastAdapter.getPageCount()) {
+                    return;
+                }
+                LinearLayoutManager layoutManager =
+                        (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager.findLastVisibleItemPosition() + FORECAST_PREFETCH_DAYS
+                        >= mForecastAdapter.getItemCount()) {
+                    mPagesWanted++;
+                    loadNextPage();
+                }
+            }
+        });
+
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -258,6 +285,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // actually *lost*.
         if (savedInstanceState != null) {
             mForecastAdapter.onRestoreInstanceState(savedInstanceState);
+            mPagesWanted = savedInstanceState.getInt(PAGES_KEY, 1);
         }
 
         mForecastAdapter.setUseTodayLayout(mUseTodayLayout);
@@ -280,16 +308,53 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     // since we read the location when we create the loader, all we need to do is restart things
     void onLocationChanged() {
+        // The pages after the first are of the old location.
+        dropPagesAfter(0);
+        mPagesWanted = 1;
         getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
     }
 
+    /**
+     * Starts loading the page after the last one loaded, if the list wants it and the last
+     * page was full.
+     *
+     * @return whether a page is being loaded
+     */
+    private boolean loadNextPage() {
+        int page = mForecastAdapter.getPageCount();
+        if (page == 0 || page >= mPagesWanted) {
+            return false;
+        }
+        Cursor lastPage = mForecastAdapter.getPage(page - 1);
+        if (lastPage.getCount() < FORECAST_PAGE_SIZE) {
+            return false;
+        }
+        Bundle args = new Bundle();
+        args.putLong(ARG_LAST_DATE, ForecastAdapter.getLastDate(lastPage));
+        getLoaderManager().initLoader(FORECAST_LOADER + page, args, this);
+        return true;
+    }
+
+    /**
+     * Drops the pages after the given one, loaded or being loaded, which start after a day
+     * that is no longer the last of the page before them.  The list loads them again as it
+     * wants them.
+     */
+    private void dropPagesAfter(int page) {
+        int pageCount = mForecastAdapter.getPageCount();
+        mForecastAdapter.dropPages(page + 1);
+        for (int i = page + 1; i <= pageCount; i++) {
+            getLoaderManager().destroyLoader(FORECAST_LOADER + i);
+        }
+    }
+
     private void openPreferredLocationInMap() {
         // Using the URI scheme for showing a location found on a map.  This super-handy
         // intent can is detailed in the "Common Intents" page of Android's developer site:
         // http://developer.android.com/guide/components/intents-common.html#Maps
-        if (null != mForecastAdapter) {
-            Cursor c = mForecastAdapter.getCursor();
-            if (null != c) {
+        if (null != mForecastAdapter && mForecastAdapter.getPageCount() > 0) {
+            Cursor c = mForecastAdapter.getPage(0);
+            if (c.getCount() > 0) {
                 c.moveToPosition(0);
                 String posLat = c.getString(COL_COORD_LAT);
                 String posLong = c.getString(COL_COORD_LONG);
@@ -312,24 +377,30 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public void onSaveInstanceState(Bundle outState) {
         // When tablets rotate, the currently selected list item needs to be saved.
         mForecastAdapter.onSaveInstanceState(outState);
+        outState.putInt(PAGES_KEY, mPagesWanted);
         super.onSaveInstanceState(outState);
     }
 
 
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        // This is called when a new Loader needs to be created.  This
-        // fragment only uses one loader, so we don't care about checking the id.
-
-        // To only show current and future dates, filter the query to return weather only for
-        // dates after or including today.
+        // This is called when a new Loader needs to be created.  The id tells which page of
+        // the forecast it loads.
+        int page = i - FORECAST_LOADER;
 
-        // Sort order:  Ascending, by date.
+        // Sort order:  Ascending, by date.  The provider pages in this order anyway.
         String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
 
         String locationSetting = Utility.getPreferredLocation(getActivity());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
+        Uri weatherForLocationUri;
+        if (page == 0) {
+            // To only show current and future dates, the first page starts with today.
+            weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationPage(
+                    locationSetting, System.currentTimeMillis(), FORECAST_PAGE_SIZE);
+        } else {
+            weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationPageAfter(
+                    locationSetting, bundle.getLong(ARG_LAST_DATE), FORECAST_PAGE_SIZE);
+        }
 
         return new CursorLoader(getActivity(),
                 weatherForLocationUri,
@@ -365,9 +436,25 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mForecastAdapter.swapCursor(data);
+        int page = loader.getId() - FORECAST_LOADER;
+        if (page > mForecastAdapter.getPageCount()) {
+            // The pages before it were dropped while it loaded.
+            return;
+        }
+        if (page < mForecastAdapter.getPageCount() - 1 && ForecastAdapter.getLastDate(data)
+                != ForecastAdapter.getLastDate(mForecastAdapter.getPage(page))) {
+            dropPagesAfter(page);
+        }
+        mForecastAdapter.swapPage(page, data);
         updateEmptyView();
-        if ( data.getCount() == 0 ) {
+        if (page == 0) {
+            mScrollToSelection = true;
+        }
+        if (loadNextPage() || !mScrollToSelection) {
+            return;
+        }
+        mScrollToSelection = false;
+        if ( mForecastAdapter.getItemCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
         } else {
             mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
@@ -380,16 +467,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-                            for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
-                                    position = i;
-                                    break;
-                                }
-                            }
+                            position = mForecastAdapter.getPositionForDate(mInitialSelectedDate);
                         }
                         if (position == RecyclerView.NO_POSITION) position = 0;
                         // If we don't need to restart the loader, and there's a desired position to restore
@@ -423,7 +501,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        mForecastAdapter.swapCursor(null);
+        mForecastAdapter.swapPage(loader.getId() - FORECAST_LOADER, null);
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
@@ -42,6 +42,18 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            // An adapter loading its items a page at a time brings back the checked items
+            // which were past the end.
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onChanged();
+        }
     };
 
     private ItemChoiceManager() {
@@ -51,6 +63,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -160,6 +173,11 @@ public class ItemChoiceManager {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
+            if (lastPos >= oldItemCount) {
+                // Not loaded (again) yet: the ID stays checked, and gets its position back once
+                // the items up to it are.
+                continue;
+            }
             final long lastPosId = mAdapter.getItemId(lastPos);
             if (id != lastPosId) {
                 // Look around to see if the ID is nearby. If not, uncheck it.
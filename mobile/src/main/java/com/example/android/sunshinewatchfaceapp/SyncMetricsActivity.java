@@ -0,0 +1,124 @@
+package com.example.android.sunshinewatchfaceapp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
+import android.support.v4.widget.CursorAdapter;
+import android.support.v7.app.AppCompatActivity;
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.SyncMetricsEntry;
+
+/**
+ * A hidden debug screen listing the recorded syncs, newest first, with where their time went.
+ * Opened with a long press on the main screen's toolbar.
+ */
+public class SyncMetricsActivity extends AppCompatActivity
+        implements LoaderManager.LoaderCallbacks<Cursor> {
+
+    private static final int SYNC_METRICS_LOADER = 0;
+
+    private static final String[] SYNC_METRICS_COLUMNS = {
+            SyncMetricsEntry._ID,
+            SyncMetricsEntry.COLUMN_START_TIME,
+            SyncMetricsEntry.COLUMN_TOTAL_MS,
+            SyncMetricsEntry.COLUMN_NETWORK,
+            SyncMetricsEntry.COLUMN_DEVICE,
+            SyncMetricsEntry.COLUMN_LOCATIONS,
+            SyncMetricsEntry.COLUMN_FAILURES,
+            SyncMetricsEntry.COLUMN_CHANGED_ROWS,
+            SyncMetricsEntry.COLUMN_WIRE_BYTES,
+            SyncMetricsEntry.COLUMN_FETCH_MS,
+            SyncMetricsEntry.COLUMN_CONNECT_MS,
+            SyncMetricsEntry.COLUMN_FIRST_BYTE_MS,
+            SyncMetricsEntry.COLUMN_DOWNLOAD_MS,
+            SyncMetricsEntry.COLUMN_PARSE_MS,
+            SyncMetricsEntry.COLUMN_ADD_LOCATION_MS,
+            SyncMetricsEntry.COLUMN_BULK_INSERT_MS,
+            SyncMetricsEntry.COLUMN_DELETE_MS,
+            SyncMetricsEntry.COLUMN_WATCH_FACE_MS,
+            SyncMetricsEntry.COLUMN_WIDGETS_MS,
+            SyncMetricsEntry.COLUMN_MUZEI_MS,
+            SyncMetricsEntry.COLUMN_NOTIFICATION_MS
+    };
+
+    // These indices are tied to SYNC_METRICS_COLUMNS.  If SYNC_METRICS_COLUMNS changes, these
+    // must change.
+    static final int COL_START_TIME = 1;
+    static final int COL_TOTAL_MS = 2;
+    static final int COL_NETWORK = 3;
+    static final int COL_DEVICE = 4;
+    // The counts, then the stage times, in the order format_sync_metrics_detail shows them.
+    static final int COL_FIRST_DETAIL = 5;
+
+    private SyncMetricsAdapter mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_sync_metrics);
+
+        mAdapter = new SyncMetricsAdapter(this);
+        ListView listView = (ListView) findViewById(R.id.sync_metrics_list);
+        listView.setEmptyView(findViewById(R.id.sync_metrics_empty));
+        listView.setAdapter(mAdapter);
+
+        getSupportLoaderManager().initLoader(SYNC_METRICS_LOADER, null, this);
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        // The provider sorts newest first.
+        return new CursorLoader(this, SyncMetricsEntry.CONTENT_URI, SYNC_METRICS_COLUMNS,
+                null, null, null);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        mAdapter.swapCursor(data);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mAdapter.swapCursor(null);
+    }
+
+    private static class SyncMetricsAdapter extends CursorAdapter {
+        private final Object[] mDetailArgs = new Object[SYNC_METRICS_COLUMNS.length - COL_FIRST_DETAIL];
+
+        SyncMetricsAdapter(Context context) {
+            super(context, null, 0);
+        }
+
+        @Override
+        public View newView(Context context, Cursor cursor, ViewGroup parent) {
+            return LayoutInflater.from(context).inflate(R.layout.list_item_sync_metrics, parent,
+                    false);
+        }
+
+        @Override
+        public void bindView(View view, Context context, Cursor cursor) {
+            String startTime = DateUtils.formatDateTime(context, cursor.getLong(COL_START_TIME),
+                    DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME
+                            | DateUtils.FORMAT_NUMERIC_DATE);
+            ((TextView) view.findViewById(R.id.sync_metrics_title)).setText(
+                    context.getString(R.string.format_sync_metrics_title, startTime,
+                            cursor.getLong(COL_TOTAL_MS), cursor.getString(COL_NETWORK),
+                            cursor.getString(COL_DEVICE)));
+
+            for (int i = 0; i < mDetailArgs.length; i++) {
+                mDetailArgs[i] = cursor.getLong(COL_FIRST_DETAIL + i);
+            }
+            ((TextView) view.findViewById(R.id.sync_metrics_detail)).setText(
+                    context.getString(R.string.format_sync_metrics_detail, mDetailArgs));
+        }
+    }
+}
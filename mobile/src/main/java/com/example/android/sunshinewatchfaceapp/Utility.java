@@ -26,7 +26,9 @@ import com.example.android.sunshinewatchfaceapp.sync.SunshineSyncAdapter;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 public class Utility {
@@ -60,6 +62,26 @@ public class Utility {
                 context.getString(R.string.pref_location_default));
     }
 
+    /**
+     * The locations the user wants forecasts for besides the preferred one, in the order they
+     * were entered.  Blank lines, duplicates and the preferred location itself are left out.
+     */
+    public static List<String> getSavedLocations(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String saved = prefs.getString(context.getString(R.string.pref_saved_locations_key), "");
+        String preferred = getPreferredLocation(context);
+
+        List<String> locations = new ArrayList<String>();
+        for (String line : saved.split("\n")) {
+            String location = line.trim();
+            if (location.length() > 0 && !location.equals(preferred)
+                    && !locations.contains(location)) {
+                locations.add(location);
+            }
+        }
+        return locations;
+    }
+
     public static boolean isMetric(Context context) {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
         return prefs.getString(context.getString(R.string.pref_units_key),
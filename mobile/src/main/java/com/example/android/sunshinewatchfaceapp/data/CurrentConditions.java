@@ -0,0 +1,87 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.CurrentEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.LocationEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+import java.util.Set;
+
+/**
+ * Writes the current table, see {@link CurrentEntry}: copies each location's first day from
+ * today on out of the weather table.  The caller runs each in a transaction, together with the
+ * weather writes it follows.
+ */
+final class CurrentConditions {
+    // The weather columns, which both tables share.
+    private static final String WEATHER_COLUMNS =
+            CurrentEntry.COLUMN_SHORT_DESC + ", " +
+            CurrentEntry.COLUMN_WEATHER_ID + ", " +
+            CurrentEntry.COLUMN_MIN_TEMP + ", " +
+            CurrentEntry.COLUMN_MAX_TEMP + ", " +
+            CurrentEntry.COLUMN_HUMIDITY + ", " +
+            CurrentEntry.COLUMN_PRESSURE + ", " +
+            CurrentEntry.COLUMN_WIND_SPEED + ", " +
+            CurrentEntry.COLUMN_DEGREES;
+
+    // Joins every location with its first day on or after the date given as the argument.  The
+    // subquery finds that day through the weather index, already sorted.
+    private static final String FILL_SQL = "INSERT INTO " + CurrentEntry.TABLE_NAME + " (" +
+            CurrentEntry.COLUMN_LOCATION_SETTING + ", " + CurrentEntry.COLUMN_LOC_KEY + ", " +
+            CurrentEntry.COLUMN_DATE + ", " + WEATHER_COLUMNS + ") SELECT " +
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + ", " +
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + ", " + WEATHER_COLUMNS +
+            " FROM " + LocationEntry.TABLE_NAME + " INNER JOIN " + WeatherEntry.TABLE_NAME +
+            " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID + " = (SELECT day." +
+            WeatherEntry._ID + " FROM " + WeatherEntry.TABLE_NAME + " AS day WHERE day." +
+            WeatherEntry.COLUMN_LOC_KEY + " = " + LocationEntry.TABLE_NAME + "." +
+            LocationEntry._ID + " AND day." + WeatherEntry.COLUMN_DATE + " >= ? ORDER BY day." +
+            WeatherEntry.COLUMN_DATE + " ASC LIMIT 1)";
+
+    private static final String FILL_LOCATION_SQL = FILL_SQL + " WHERE " +
+            LocationEntry.TABLE_NAME + "." + LocationEntry._ID + " = ?";
+
+    private CurrentConditions() {
+    }
+
+    /**
+     * Rebuilds the rows of every location, for writes which don't tell which locations they
+     * changed.
+     */
+    static void refreshAll(SQLiteDatabase db, long today) {
+        db.delete(CurrentEntry.TABLE_NAME, null, null);
+        db.execSQL(FILL_SQL, new Object[]{today});
+    }
+
+    /**
+     * Rebuilds the row of one location.
+     *
+     * @param changedDays the days of the location which were written
+     * @return whether the row changed: it holds another day now, or a day which was written
+     */
+    static boolean refresh(SQLiteDatabase db, long locationId, long today,
+                           Set<Long> changedDays) {
+        String[] location = {Long.toString(locationId)};
+        long before = getDate(db, location);
+        db.delete(CurrentEntry.TABLE_NAME, CurrentEntry.COLUMN_LOC_KEY + " = ?", location);
+        db.execSQL(FILL_LOCATION_SQL, new Object[]{today, locationId});
+        long after = getDate(db, location);
+        return after != before || changedDays.contains(after);
+    }
+
+    /**
+     * @return the date the location's row holds, or -1 if it has none
+     */
+    private static long getDate(SQLiteDatabase db, String[] location) {
+        Cursor cursor = db.query(CurrentEntry.TABLE_NAME, new String[]{CurrentEntry.COLUMN_DATE},
+                CurrentEntry.COLUMN_LOC_KEY + " = ?", location, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
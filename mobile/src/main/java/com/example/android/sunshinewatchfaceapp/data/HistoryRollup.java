@@ -0,0 +1,136 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sums up archived days into weeks and months, for the compaction of the history table.
+ *
+ * Dates are the normalized ones the weather table stores: the start of a day, in the default
+ * time zone.  Weeks start on Monday.
+ */
+final class HistoryRollup {
+
+    /**
+     * One row of the history table: a day, or a span of days summed up.
+     */
+    static final class Row {
+        long id;
+        long locationId;
+        long date;
+        long endDate;
+        int period;
+        int days;
+        int weatherId;
+        String shortDesc;
+        double min;
+        double max;
+        double humidity;
+        double pressure;
+        double wind;
+        double degrees;
+    }
+
+    private HistoryRollup() {
+    }
+
+    /**
+     * @return the Monday on or before the date
+     */
+    static long weekStart(long date, Calendar calendar) {
+        startOfDay(date, calendar);
+        // Calendar counts from SUNDAY = 1, so Monday is 0 days back and Sunday 6.
+        int daysBack = (calendar.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+        calendar.add(Calendar.DAY_OF_MONTH, -daysBack);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * @return the last day of the week starting on weekStart
+     */
+    static long weekEnd(long weekStart, Calendar calendar) {
+        startOfDay(weekStart, calendar);
+        calendar.add(Calendar.DAY_OF_MONTH, 6);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * @return the first day of the date's month
+     */
+    static long monthStart(long date, Calendar calendar) {
+        startOfDay(date, calendar);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * @return the last day of the month starting on monthStart
+     */
+    static long monthEnd(long monthStart, Calendar calendar) {
+        startOfDay(monthStart, calendar);
+        calendar.add(Calendar.MONTH, 1);
+        calendar.add(Calendar.DAY_OF_MONTH, -1);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Sums up rows into one covering all of them.  Lows and highs are the extremes; humidity,
+     * pressure and wind are means weighted by how many days each row covers, as is the wind
+     * direction, averaged as a bearing so that 350 and 10 make 0 rather than 180.  The weather
+     * is the one seen on the most days.
+     */
+    static Row aggregate(List<Row> rows) {
+        Row sum = new Row();
+        sum.date = Long.MAX_VALUE;
+        sum.endDate = Long.MIN_VALUE;
+        sum.min = Double.MAX_VALUE;
+        sum.max = -Double.MAX_VALUE;
+        double north = 0;
+        double east = 0;
+        Map<Integer, Integer> daysByWeather = new LinkedHashMap<Integer, Integer>();
+        Map<Integer, String> descriptions = new LinkedHashMap<Integer, String>();
+        for (Row row : rows) {
+            sum.date = Math.min(sum.date, row.date);
+            sum.endDate = Math.max(sum.endDate, row.endDate);
+            sum.days += row.days;
+            sum.min = Math.min(sum.min, row.min);
+            sum.max = Math.max(sum.max, row.max);
+            sum.humidity += row.humidity * row.days;
+            sum.pressure += row.pressure * row.days;
+            sum.wind += row.wind * row.days;
+            north += Math.cos(Math.toRadians(row.degrees)) * row.days;
+            east += Math.sin(Math.toRadians(row.degrees)) * row.days;
+
+            Integer days = daysByWeather.get(row.weatherId);
+            daysByWeather.put(row.weatherId, (days == null ? 0 : days) + row.days);
+            if (!descriptions.containsKey(row.weatherId)) {
+                descriptions.put(row.weatherId, row.shortDesc);
+            }
+        }
+        sum.humidity /= sum.days;
+        sum.pressure /= sum.days;
+        sum.wind /= sum.days;
+        sum.degrees = (Math.toDegrees(Math.atan2(east, north)) + 360) % 360;
+
+        // Ties go to the weather seen first.
+        int mostDays = 0;
+        for (Map.Entry<Integer, Integer> weather : daysByWeather.entrySet()) {
+            if (weather.getValue() > mostDays) {
+                mostDays = weather.getValue();
+                sum.weatherId = weather.getKey();
+            }
+        }
+        sum.shortDesc = descriptions.get(sum.weatherId);
+        return sum;
+    }
+
+    private static void startOfDay(long date, Calendar calendar) {
+        calendar.setTimeInMillis(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The row ids of the stored locations by location setting, for the whole process, so that a
+ * sync doesn't have to look up the locations it stored before.
+ *
+ * Only ids of committed rows are to be put here.  The provider clears it whenever a location is
+ * deleted or changed, as its selection can match any of them.
+ */
+public final class LocationIdCache {
+    private static final Map<String, Long> sIds = new ConcurrentHashMap<String, Long>();
+
+    private LocationIdCache() {
+    }
+
+    /**
+     * @return the row id of the location, or -1 if it isn't known
+     */
+    public static long get(String locationSetting) {
+        Long id = sIds.get(locationSetting);
+        return id != null ? id : -1;
+    }
+
+    public static void put(String locationSetting, long id) {
+        sIds.put(locationSetting, id);
+    }
+
+    static void clear() {
+        sIds.clear();
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the rows of the provider's hot queries in memory: the forecast of a location, which the
+ * widgets, Muzei, the notification and the forecast list all ask for after every sync.  A hit
+ * is served as a MatrixCursor, without touching SQLite.
+ *
+ * Entries are keyed by the query's URI, projection, selection and order, and the cache holds at
+ * most a given number of rows, dropping the least recently used entries beyond that.  The
+ * provider invalidates every URI it notifies: the entries for that URI, for the URIs below it,
+ * whose observers it reaches, and for those above it, which read its rows.  A query which was
+ * running while something was invalidated isn't stored, as it may have read the rows from
+ * before the write.
+ */
+final class QueryCache {
+    private final LruCache<String, Entry> mEntries;
+    // Counts the invalidations, so that a query can tell whether one happened while it ran.
+    private long mGeneration;
+    private int mInvalidations;
+
+    private static final class Entry {
+        final Uri uri;
+        final String[] columns;
+        final List<Object[]> rows;
+
+        Entry(Uri uri, String[] columns, List<Object[]> rows) {
+            this.uri = uri;
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    QueryCache(int maxRows) {
+        mEntries = new LruCache<String, Entry>(maxRows) {
+            @Override
+            protected int sizeOf(String key, Entry entry) {
+                // An empty result takes room too.
+                return entry.rows.size() + 1;
+            }
+        };
+    }
+
+    static String key(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                      String sortOrder) {
+        return uri + "|" + Arrays.toString(projection) + "|" + selection + "|"
+                + Arrays.toString(selectionArgs) + "|" + sortOrder;
+    }
+
+    /**
+     * @return what the cache's state is now, to be handed to {@link #put} with the result of a
+     * query started after this
+     */
+    synchronized long generation() {
+        return mGeneration;
+    }
+
+    /**
+     * @return the cached rows, or null on a miss
+     */
+    Cursor get(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        MatrixCursor cursor = new MatrixCursor(entry.columns, entry.rows.size());
+        for (Object[] row : entry.rows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    /**
+     * Reads the query's result into the cache, unless something was invalidated since the query
+     * started, and closes it.
+     *
+     * @param generation what {@link #generation()} returned before the query started
+     * @return the rows read, to hand out in place of the query's cursor
+     */
+    Cursor put(String key, Uri uri, Cursor cursor, long generation) {
+        String[] columns = cursor.getColumnNames();
+        List<Object[]> rows = new ArrayList<Object[]>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                Object[] row = new Object[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    switch (cursor.getType(i)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            row[i] = cursor.getLong(i);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            row[i] = cursor.getDouble(i);
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            row[i] = cursor.getBlob(i);
+                            break;
+                        case Cursor.FIELD_TYPE_NULL:
+                            row[i] = null;
+                            break;
+                        default:
+                            row[i] = cursor.getString(i);
+                    }
+                }
+                rows.add(row);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Entry entry = new Entry(uri, columns, rows);
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mEntries.put(key, entry);
+            }
+        }
+        MatrixCursor result = new MatrixCursor(columns, rows.size());
+        for (Object[] row : rows) {
+            result.addRow(row);
+        }
+        return result;
+    }
+
+    /**
+     * Drops the entries which a change to the URI makes stale.
+     */
+    synchronized void invalidate(Uri changed) {
+        mGeneration++;
+        List<String> changedSegments = changed.getPathSegments();
+        for (Map.Entry<String, Entry> cached : mEntries.snapshot().entrySet()) {
+            if (isStale(cached.getValue().uri, changed, changedSegments)) {
+                mEntries.remove(cached.getKey());
+                mInvalidations++;
+            }
+        }
+    }
+
+    /**
+     * @return the hits, misses, evictions and invalidations so far, and the rows held
+     */
+    synchronized Bundle getStats() {
+        Bundle stats = new Bundle();
+        stats.putInt(WeatherContract.WeatherEntry.EXTRA_CACHE_HITS, mEntries.hitCount());
+        stats.putInt(WeatherContract.WeatherEntry.EXTRA_CACHE_MISSES, mEntries.missCount());
+        stats.putInt(WeatherContract.WeatherEntry.EXTRA_CACHE_EVICTIONS, mEntries.evictionCount());
+        stats.putInt(WeatherContract.WeatherEntry.EXTRA_CACHE_INVALIDATIONS, mInvalidations);
+        stats.putInt(WeatherContract.WeatherEntry.EXTRA_CACHE_ROWS, mEntries.size());
+        return stats;
+    }
+
+    private static boolean isStale(Uri cached, Uri changed, List<String> changedSegments) {
+        if (!cached.getAuthority().equals(changed.getAuthority())) {
+            return false;
+        }
+        if (changedSegments.isEmpty()
+                || WeatherContract.PATH_LOCATION.equals(changedSegments.get(0))) {
+            // The cached forecasts are joined with their location.
+            return true;
+        }
+        List<String> cachedSegments = cached.getPathSegments();
+        int common = Math.min(cachedSegments.size(), changedSegments.size());
+        return cachedSegments.subList(0, common).equals(changedSegments.subList(0, common));
+    }
+}
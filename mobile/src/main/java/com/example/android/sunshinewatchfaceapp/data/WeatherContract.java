@@ -43,6 +43,9 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_SYNC_METRICS = "sync_metrics";
+    public static final String PATH_HISTORY = "history";
+    public static final String PATH_CURRENT = "current";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -81,9 +84,21 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // Query parameter which makes an insert add the location only if its setting isn't
+        // stored yet.
+        public static final String PARAM_UPSERT = "upsert";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        /*
+            Inserting into this URI adds the location unless one with the same location setting
+            is stored already, and returns the URI of whichever row it is.
+         */
+        public static Uri buildLocationUpsertUri() {
+            return CONTENT_URI.buildUpon().appendQueryParameter(PARAM_UPSERT, "1").build();
+        }
     }
 
     /* Inner class that defines the table contents of the weather table */
@@ -126,10 +141,47 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameters which turn an update into a merge, and a delete into archiving the
+        // days up to and including a date, so that both can be part of an applyBatch().
+        public static final String PARAM_MERGE = "merge";
+        public static final String PARAM_ARCHIVE_THROUGH = "archive_through";
+
+        // Query parameters which page a location's forecast: at most PARAM_LIMIT days, the
+        // first of them after the date in PARAM_AFTER_DATE, always in date order.
+        public static final String PARAM_LIMIT = "limit";
+        public static final String PARAM_AFTER_DATE = "after";
+
+        // The ContentProvider.call() method which returns how well the provider's cache of
+        // forecast queries does, in these extras.
+        public static final String METHOD_QUERY_CACHE_STATS = "query_cache_stats";
+        public static final String EXTRA_CACHE_HITS = "hits";
+        public static final String EXTRA_CACHE_MISSES = "misses";
+        public static final String EXTRA_CACHE_EVICTIONS = "evictions";
+        public static final String EXTRA_CACHE_INVALIDATIONS = "invalidations";
+        public static final String EXTRA_CACHE_ROWS = "rows";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
 
+        /*
+            Updating this URI with a row merges it like bulkInsert() does, a new day inserted
+            and a changed one updated, and counts 1.  An unchanged day is left alone and counts
+            0.  Selections are ignored.
+         */
+        public static Uri buildWeatherMergeUri() {
+            return CONTENT_URI.buildUpon().appendQueryParameter(PARAM_MERGE, "1").build();
+        }
+
+        /*
+            Deleting this URI moves the days up to and including the date into the history, as
+            HistoryEntry.METHOD_ARCHIVE_WEATHER does.
+         */
+        public static Uri buildWeatherArchiveUri(long lastDate) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(PARAM_ARCHIVE_THROUGH, Long.toString(lastDate)).build();
+        }
+
         /*
             Student: This is the buildWeatherLocation function you filled in.
          */
@@ -144,6 +196,28 @@ public class WeatherContract {
                     .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate)).build();
         }
 
+        /*
+            The first page of a location's forecast from the start date on: at most limit days,
+            in date order.
+         */
+        public static Uri buildWeatherLocationPage(
+                String locationSetting, long startDate, int limit) {
+            return buildWeatherLocationWithStartDate(locationSetting, startDate).buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        /*
+            The page which follows the one ending with lastDate.  The page starts from the next
+            day stored rather than from an offset, so reading it costs the same however far
+            down the list it is, and a day written meanwhile isn't shown twice.
+         */
+        public static Uri buildWeatherLocationPageAfter(
+                String locationSetting, long lastDate, int limit) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_AFTER_DATE, Long.toString(lastDate))
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
         public static Uri buildWeatherLocationWithDate(String locationSetting, long date) {
             return CONTENT_URI.buildUpon().appendPath(locationSetting)
                     .appendPath(Long.toString(normalizeDate(date))).build();
@@ -164,5 +238,237 @@ public class WeatherContract {
             else
                 return 0;
         }
+
+        /**
+         * @return the date a page starts after, or 0 if the URI doesn't page
+         */
+        public static long getAfterDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_AFTER_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        /**
+         * @return the most days a page holds, or 0 if the URI doesn't page
+         */
+        public static int getLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(PARAM_LIMIT);
+            if (null != limitString && limitString.length() > 0)
+                return Integer.parseInt(limitString);
+            else
+                return 0;
+        }
+    }
+
+    /*
+        Inner class that defines the current table: for each location, the weather of its first
+        stored day from today on, which is what the widgets, Muzei and the notification show.
+        The provider keeps it up to date with every write to the weather, so that reading it is
+        one lookup by location setting.  It is read only, and always read with COLUMNS.
+     */
+    public static final class CurrentEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_CURRENT).build();
+
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CURRENT;
+
+        public static final String TABLE_NAME = "current";
+
+        // The location setting is the primary key.
+        public static final String COLUMN_LOCATION_SETTING = LocationEntry.COLUMN_LOCATION_SETTING;
+        public static final String COLUMN_LOC_KEY = WeatherEntry.COLUMN_LOC_KEY;
+        // The day the row holds, stored as the weather table stores dates
+        public static final String COLUMN_DATE = WeatherEntry.COLUMN_DATE;
+
+        // The weather, as in the weather table.
+        public static final String COLUMN_WEATHER_ID = WeatherEntry.COLUMN_WEATHER_ID;
+        public static final String COLUMN_SHORT_DESC = WeatherEntry.COLUMN_SHORT_DESC;
+        public static final String COLUMN_MIN_TEMP = WeatherEntry.COLUMN_MIN_TEMP;
+        public static final String COLUMN_MAX_TEMP = WeatherEntry.COLUMN_MAX_TEMP;
+        public static final String COLUMN_HUMIDITY = WeatherEntry.COLUMN_HUMIDITY;
+        public static final String COLUMN_PRESSURE = WeatherEntry.COLUMN_PRESSURE;
+        public static final String COLUMN_WIND_SPEED = WeatherEntry.COLUMN_WIND_SPEED;
+        public static final String COLUMN_DEGREES = WeatherEntry.COLUMN_DEGREES;
+
+        // The projection every query of the current URI returns, whatever it asks for.
+        public static final String[] COLUMNS = {
+                COLUMN_LOCATION_SETTING,
+                COLUMN_LOC_KEY,
+                COLUMN_DATE,
+                COLUMN_WEATHER_ID,
+                COLUMN_SHORT_DESC,
+                COLUMN_MIN_TEMP,
+                COLUMN_MAX_TEMP,
+                COLUMN_HUMIDITY,
+                COLUMN_PRESSURE,
+                COLUMN_WIND_SPEED,
+                COLUMN_DEGREES
+        };
+        // these indices match COLUMNS
+        public static final int COL_LOCATION_SETTING = 0;
+        public static final int COL_LOC_KEY = 1;
+        public static final int COL_DATE = 2;
+        public static final int COL_WEATHER_ID = 3;
+        public static final int COL_SHORT_DESC = 4;
+        public static final int COL_MIN_TEMP = 5;
+        public static final int COL_MAX_TEMP = 6;
+        public static final int COL_HUMIDITY = 7;
+        public static final int COL_PRESSURE = 8;
+        public static final int COL_WIND_SPEED = 9;
+        public static final int COL_DEGREES = 10;
+
+        /**
+         * @return the URI of a location's current weather, a single row or none if nothing is
+         * stored for today or later
+         */
+        public static Uri buildCurrentUri(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+    }
+
+    /*
+        Inner class that defines the sync metrics table, where every sync records how long each
+        of its stages took.  The table only keeps the latest MAX_ROWS syncs, and can only be
+        read through its URI; the sync adapter records with METHOD_RECORD_SYNC_METRICS.
+     */
+    public static final class SyncMetricsEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SYNC_METRICS).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SYNC_METRICS;
+
+        public static final String TABLE_NAME = "sync_metrics";
+
+        // The ContentProvider.call() method which records a sync, with the columns as extras.
+        public static final String METHOD_RECORD_SYNC_METRICS = "record_sync_metrics";
+
+        // How many syncs are kept; recording one more drops the oldest.
+        public static final int MAX_ROWS = 200;
+
+        // When the sync started, in milliseconds since the epoch
+        public static final String COLUMN_START_TIME = "start_time";
+        // The whole sync, in milliseconds, as are all the stage times below
+        public static final String COLUMN_TOTAL_MS = "total_ms";
+
+        // Network stages, summed over all locations.  Locations are fetched concurrently, so
+        // these can add up to more than the fetch time.
+        public static final String COLUMN_CONNECT_MS = "connect_ms";
+        public static final String COLUMN_FIRST_BYTE_MS = "first_byte_ms";
+        public static final String COLUMN_DOWNLOAD_MS = "download_ms";
+        public static final String COLUMN_PARSE_MS = "parse_ms";
+        // Wall clock time of fetching and parsing all locations
+        public static final String COLUMN_FETCH_MS = "fetch_ms";
+
+        // Storage stages
+        public static final String COLUMN_ADD_LOCATION_MS = "add_location_ms";
+        public static final String COLUMN_BULK_INSERT_MS = "bulk_insert_ms";
+        public static final String COLUMN_DELETE_MS = "delete_ms";
+
+        // Telling everyone who shows the weather
+        public static final String COLUMN_WATCH_FACE_MS = "watch_face_ms";
+        public static final String COLUMN_WIDGETS_MS = "widgets_ms";
+        public static final String COLUMN_MUZEI_MS = "muzei_ms";
+        public static final String COLUMN_NOTIFICATION_MS = "notification_ms";
+
+        // What the sync did
+        public static final String COLUMN_LOCATIONS = "locations";
+        public static final String COLUMN_FAILURES = "failures";
+        public static final String COLUMN_CHANGED_ROWS = "changed_rows";
+        public static final String COLUMN_WIRE_BYTES = "wire_bytes";
+
+        // Where it ran: the active network, e.g. "WIFI" or "MOBILE/LTE", and the device model
+        // and Android version, e.g. "Nexus 5/23".
+        public static final String COLUMN_NETWORK = "network";
+        public static final String COLUMN_DEVICE = "device";
+    }
+
+    /*
+        Inner class that defines the history table, the archive of past days.  The sync moves
+        the days before yesterday out of the weather table with METHOD_ARCHIVE_WEATHER, and a
+        daily job sums them up with METHOD_COMPACT_HISTORY: days older than DAYS_KEPT into
+        weeks, and weeks older than WEEKS_KEPT into months.  Each row covers the days from
+        COLUMN_DATE to COLUMN_END_DATE, and the weather columns hold their lowest low, highest
+        high, mean humidity, pressure and wind, and the weather seen on most of them.
+     */
+    public static final class HistoryEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HISTORY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+
+        public static final String TABLE_NAME = "history";
+
+        // The ContentProvider.call() method which moves the weather rows up to the date given
+        // as its argument into the history, and returns how many in EXTRA_ROWS.
+        public static final String METHOD_ARCHIVE_WEATHER = "archive_weather";
+        // The ContentProvider.call() method which sums up the old days and weeks, and returns
+        // how many rows it replaced in EXTRA_ROWS.
+        public static final String METHOD_COMPACT_HISTORY = "compact_history";
+        public static final String EXTRA_ROWS = "rows";
+
+        // How long the days and weeks are kept before they are summed up.
+        public static final int DAYS_KEPT = 8 * 7;
+        public static final int WEEKS_KEPT = 2 * 52;
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = WeatherEntry.COLUMN_LOC_KEY;
+        // The first and the last day covered, stored as the weather table stores dates
+        public static final String COLUMN_DATE = WeatherEntry.COLUMN_DATE;
+        public static final String COLUMN_END_DATE = "end_date";
+        // What the row sums up: one of the PERIOD_ constants
+        public static final String COLUMN_PERIOD = "period";
+        // How many archived days the row sums up; fewer than the period has if some are missing
+        public static final String COLUMN_DAYS = "days";
+
+        public static final int PERIOD_DAY = 0;
+        public static final int PERIOD_WEEK = 1;
+        public static final int PERIOD_MONTH = 2;
+
+        // The weather, as in the weather table.
+        public static final String COLUMN_WEATHER_ID = WeatherEntry.COLUMN_WEATHER_ID;
+        public static final String COLUMN_SHORT_DESC = WeatherEntry.COLUMN_SHORT_DESC;
+        public static final String COLUMN_MIN_TEMP = WeatherEntry.COLUMN_MIN_TEMP;
+        public static final String COLUMN_MAX_TEMP = WeatherEntry.COLUMN_MAX_TEMP;
+        public static final String COLUMN_HUMIDITY = WeatherEntry.COLUMN_HUMIDITY;
+        public static final String COLUMN_PRESSURE = WeatherEntry.COLUMN_PRESSURE;
+        public static final String COLUMN_WIND_SPEED = WeatherEntry.COLUMN_WIND_SPEED;
+        public static final String COLUMN_DEGREES = WeatherEntry.COLUMN_DEGREES;
+
+        /**
+         * @return the URI of a location's history, oldest first
+         */
+        public static Uri buildHistoryLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        /**
+         * @return the URI of the history row covering the date, e.g. for "this day last year"
+         */
+        public static Uri buildHistoryLocationWithDate(String locationSetting, long date) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(Long.toString(normalizeDate(date))).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getDateFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(2));
+        }
     }
 }
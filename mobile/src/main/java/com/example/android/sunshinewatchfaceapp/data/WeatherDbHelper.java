@@ -16,24 +16,169 @@
 package com.example.android.sunshinewatchfaceapp.data;
 
 import android.content.Context;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
 
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.CurrentEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.HistoryEntry;
 import com.example.android.sunshinewatchfaceapp.data.WeatherContract.LocationEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.SyncMetricsEntry;
 import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
 
 /**
  * Manages a local database for weather data.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    // If you change the database schema, you must increment the database version, and add a
+    // Migration from the previous one to MIGRATIONS.
+    static final int DATABASE_VERSION = 6;
+
+    // Databases older than this are discarded rather than migrated.
+    static final int OLDEST_MIGRATED_VERSION = 2;
 
     static final String DATABASE_NAME = "weather.db";
 
+    static final String WEATHER_LOCATION_DATE_INDEX = "weather_location_date";
+
+    // Every screen reads one location's days in date order, from a start date: the join
+    // finds the location through the UNIQUE location setting, then its days through this
+    // index, already sorted.  The weather table's UNIQUE (date, location_id) has the columns
+    // the other way round, which only serves lookups by date.
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX = "CREATE INDEX " +
+            WEATHER_LOCATION_DATE_INDEX + " ON " + WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");";
+
+    // One row per sync, with how long each stage took.  AUTOINCREMENT keeps the ids in
+    // the order the syncs happened, which the trigger below relies on.
+    private static final String SQL_CREATE_SYNC_METRICS_TABLE = "CREATE TABLE " + SyncMetricsEntry.TABLE_NAME + " (" +
+            SyncMetricsEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+            SyncMetricsEntry.COLUMN_START_TIME + " INTEGER NOT NULL, " +
+            SyncMetricsEntry.COLUMN_TOTAL_MS + " INTEGER NOT NULL, " +
+            SyncMetricsEntry.COLUMN_CONNECT_MS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_FIRST_BYTE_MS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_DOWNLOAD_MS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_PARSE_MS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_FETCH_MS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_ADD_LOCATION_MS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_BULK_INSERT_MS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_DELETE_MS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_WATCH_FACE_MS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_WIDGETS_MS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_MUZEI_MS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_NOTIFICATION_MS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_LOCATIONS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_FAILURES + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_CHANGED_ROWS + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_WIRE_BYTES + " INTEGER NOT NULL DEFAULT 0, " +
+            SyncMetricsEntry.COLUMN_NETWORK + " TEXT, " +
+            SyncMetricsEntry.COLUMN_DEVICE + " TEXT " +
+            " );";
+
+    // Makes the table a ring buffer: every insert drops what fell out of the last MAX_ROWS.
+    private static final String SQL_CREATE_SYNC_METRICS_TRIGGER = "CREATE TRIGGER " +
+            SyncMetricsEntry.TABLE_NAME + "_ring AFTER INSERT ON " +
+            SyncMetricsEntry.TABLE_NAME + " BEGIN DELETE FROM " + SyncMetricsEntry.TABLE_NAME +
+            " WHERE " + SyncMetricsEntry._ID + " <= NEW." + SyncMetricsEntry._ID +
+            " - " + SyncMetricsEntry.MAX_ROWS + "; END;";
+
+
+    // Past days, and the weeks and months they were summed up into.  Kept apart from the
+    // weather table so that its joins stay as small as the forecast.  The UNIQUE constraint
+    // doubles as the index for a location's rows by date, and replaces a day archived twice.
+    private static final String SQL_CREATE_HISTORY_TABLE = "CREATE TABLE " + HistoryEntry.TABLE_NAME + " (" +
+            HistoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+            HistoryEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            HistoryEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+            HistoryEntry.COLUMN_END_DATE + " INTEGER NOT NULL, " +
+            HistoryEntry.COLUMN_PERIOD + " INTEGER NOT NULL, " +
+            HistoryEntry.COLUMN_DAYS + " INTEGER NOT NULL, " +
+            HistoryEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+            HistoryEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+            HistoryEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+            HistoryEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+            HistoryEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+            HistoryEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+            HistoryEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+            HistoryEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+            " FOREIGN KEY (" + HistoryEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+            " UNIQUE (" + HistoryEntry.COLUMN_LOC_KEY + ", " + HistoryEntry.COLUMN_DATE + ", " +
+            HistoryEntry.COLUMN_PERIOD + ") ON CONFLICT REPLACE);";
+
+    // Each location's weather for today, copied out of the weather table so that the readers
+    // which only show today look it up by its location setting instead of joining.
+    private static final String SQL_CREATE_CURRENT_TABLE = "CREATE TABLE " + CurrentEntry.TABLE_NAME + " (" +
+            CurrentEntry.COLUMN_LOCATION_SETTING + " TEXT PRIMARY KEY NOT NULL, " +
+            CurrentEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            CurrentEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+            CurrentEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+            CurrentEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+            CurrentEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+            CurrentEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+            CurrentEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+            CurrentEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+            CurrentEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+            CurrentEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+            " FOREIGN KEY (" + CurrentEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "));";
+
+    /**
+     * Brings a database from one schema version to the next, keeping its rows.
+     */
+    abstract static class Migration {
+        final int fromVersion;
+
+        Migration(int fromVersion) {
+            this.fromVersion = fromVersion;
+        }
+
+        abstract void migrate(SQLiteDatabase db);
+    }
+
+    // One step from every version since OLDEST_MIGRATED_VERSION, in order.
+    private static final Migration[] MIGRATIONS = {
+            // Version 3 keeps the timings of the last syncs.
+            new Migration(2) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_SYNC_METRICS_TABLE);
+                    db.execSQL(SQL_CREATE_SYNC_METRICS_TRIGGER);
+                }
+            },
+            // Version 4 indexes the weather by location and date.
+            new Migration(3) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                }
+            },
+            // Version 5 archives past days.
+            new Migration(4) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_HISTORY_TABLE);
+                }
+            },
+            // Version 6 keeps each location's weather for today apart.
+            new Migration(5) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_CURRENT_TABLE);
+                    CurrentConditions.refreshAll(db,
+                            WeatherContract.normalizeDate(System.currentTimeMillis()));
+                }
+            }
+    };
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // With write-ahead logging the UI, the widgets and Muzei keep reading the last committed
+        // forecast while a sync writes the next one, instead of waiting for its transaction.
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -81,18 +226,55 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_SYNC_METRICS_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_SYNC_METRICS_TRIGGER);
+        sqLiteDatabase.execSQL(SQL_CREATE_HISTORY_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_CURRENT_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
+        // Keep the cached forecast across app updates, so that the screens aren't empty until
+        // the next sync.  SQLiteOpenHelper runs this in a transaction and only stores the new
+        // version when it commits, so a device never keeps half a migration.
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
+        if (oldVersion >= OLDEST_MIGRATED_VERSION) {
+            try {
+                for (int version = oldVersion; version < newVersion; version++) {
+                    Migration migration = MIGRATIONS[version - OLDEST_MIGRATED_VERSION];
+                    if (migration.fromVersion != version) {
+                        throw new IllegalStateException("MIGRATIONS is out of order at "
+                                + version);
+                    }
+                    migration.migrate(sqLiteDatabase);
+                }
+                return;
+            } catch (SQLException e) {
+                Log.e(LOG_TAG, "Couldn't migrate the database from version " + oldVersion
+                        + ", starting over", e);
+            }
+        }
+        recreate(sqLiteDatabase);
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        // An older app can't know what a newer schema holds.
+        recreate(sqLiteDatabase);
+    }
+
+    /**
+     * This database is only a cache for online data, so what can't be migrated is discarded and
+     * synced again.
+     */
+    private void recreate(SQLiteDatabase sqLiteDatabase) {
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SyncMetricsEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + HistoryEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + CurrentEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
@@ -0,0 +1,208 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Writes the history table: archives past days out of the weather table, and compacts the old
+ * ones into weeks and months, see {@link HistoryEntry}.  The caller runs each in a transaction.
+ */
+final class WeatherHistory {
+    // The weather columns, which both tables share.
+    private static final String WEATHER_COLUMNS =
+            HistoryEntry.COLUMN_SHORT_DESC + ", " +
+            HistoryEntry.COLUMN_WEATHER_ID + ", " +
+            HistoryEntry.COLUMN_MIN_TEMP + ", " +
+            HistoryEntry.COLUMN_MAX_TEMP + ", " +
+            HistoryEntry.COLUMN_HUMIDITY + ", " +
+            HistoryEntry.COLUMN_PRESSURE + ", " +
+            HistoryEntry.COLUMN_WIND_SPEED + ", " +
+            HistoryEntry.COLUMN_DEGREES;
+
+    private static final String ARCHIVE_SQL = "INSERT INTO " + HistoryEntry.TABLE_NAME + " (" +
+            HistoryEntry.COLUMN_LOC_KEY + ", " + HistoryEntry.COLUMN_DATE + ", " +
+            HistoryEntry.COLUMN_END_DATE + ", " + HistoryEntry.COLUMN_PERIOD + ", " +
+            HistoryEntry.COLUMN_DAYS + ", " + WEATHER_COLUMNS + ") SELECT " +
+            WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_DATE + ", " + HistoryEntry.PERIOD_DAY + ", 1, " +
+            WEATHER_COLUMNS + " FROM " + WeatherEntry.TABLE_NAME +
+            " WHERE " + WeatherEntry.COLUMN_DATE + " <= ?";
+
+    private static final String[] ROW_COLUMNS = {
+            HistoryEntry._ID,
+            HistoryEntry.COLUMN_LOC_KEY,
+            HistoryEntry.COLUMN_DATE,
+            HistoryEntry.COLUMN_END_DATE,
+            HistoryEntry.COLUMN_PERIOD,
+            HistoryEntry.COLUMN_DAYS,
+            HistoryEntry.COLUMN_WEATHER_ID,
+            HistoryEntry.COLUMN_SHORT_DESC,
+            HistoryEntry.COLUMN_MIN_TEMP,
+            HistoryEntry.COLUMN_MAX_TEMP,
+            HistoryEntry.COLUMN_HUMIDITY,
+            HistoryEntry.COLUMN_PRESSURE,
+            HistoryEntry.COLUMN_WIND_SPEED,
+            HistoryEntry.COLUMN_DEGREES
+    };
+    private static final int COL_ID = 0;
+    private static final int COL_LOC_KEY = 1;
+    private static final int COL_DATE = 2;
+    private static final int COL_END_DATE = 3;
+    private static final int COL_PERIOD = 4;
+    private static final int COL_DAYS = 5;
+    private static final int COL_WEATHER_ID = 6;
+    private static final int COL_SHORT_DESC = 7;
+    private static final int COL_MIN_TEMP = 8;
+    private static final int COL_MAX_TEMP = 9;
+    private static final int COL_HUMIDITY = 10;
+    private static final int COL_PRESSURE = 11;
+    private static final int COL_WIND_SPEED = 12;
+    private static final int COL_DEGREES = 13;
+
+    private WeatherHistory() {
+    }
+
+    /**
+     * Moves the weather rows up to and including the date into the history, as days.
+     *
+     * @return the number of rows moved
+     */
+    static int archive(SQLiteDatabase db, long lastDate) {
+        String[] args = {Long.toString(lastDate)};
+        db.execSQL(ARCHIVE_SQL, args);
+        return db.delete(WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_DATE + " <= ?", args);
+    }
+
+    /**
+     * Sums up the days before the last DAYS_KEPT into weeks, and the weeks before the last
+     * WEEKS_KEPT into months.  Only whole weeks and months are summed up, so that a period never
+     * gets a second row; rows already summed up are folded in again with their period's
+     * newcomers, should any turn up.
+     *
+     * @return the number of rows replaced
+     */
+    static int compact(SQLiteDatabase db, long today) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(today);
+        calendar.add(Calendar.DAY_OF_MONTH, -HistoryEntry.DAYS_KEPT);
+        long weekCutoff = calendar.getTimeInMillis();
+        calendar.setTimeInMillis(today);
+        calendar.add(Calendar.DAY_OF_MONTH, -7 * HistoryEntry.WEEKS_KEPT);
+        long monthCutoff = calendar.getTimeInMillis();
+
+        return rollUp(db, HistoryEntry.PERIOD_WEEK, weekCutoff, calendar)
+                + rollUp(db, HistoryEntry.PERIOD_MONTH, monthCutoff, calendar);
+    }
+
+    /**
+     * Replaces the rows of every whole period ending before the cutoff with one row.
+     */
+    private static int rollUp(SQLiteDatabase db, int period, long cutoff, Calendar calendar) {
+        // Read them all before writing any, rather than change the table under the cursor.
+        List<HistoryRollup.Row> rows = new ArrayList<HistoryRollup.Row>();
+        Cursor cursor = db.query(HistoryEntry.TABLE_NAME, ROW_COLUMNS,
+                HistoryEntry.COLUMN_PERIOD + " <= ? AND " + HistoryEntry.COLUMN_DATE + " < ?",
+                new String[]{Integer.toString(period), Long.toString(cutoff)},
+                null, null, HistoryEntry.COLUMN_LOC_KEY + ", " + HistoryEntry.COLUMN_DATE);
+        try {
+            while (cursor.moveToNext()) {
+                rows.add(readRow(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        int replaced = 0;
+        List<HistoryRollup.Row> group = new ArrayList<HistoryRollup.Row>();
+        long groupStart = -1;
+        for (HistoryRollup.Row row : rows) {
+            long start = periodStart(period, row.date, calendar);
+            if (!group.isEmpty() && (row.locationId != group.get(0).locationId
+                    || start != groupStart)) {
+                replaced += replace(db, period, groupStart, group, cutoff, calendar);
+                group.clear();
+            }
+            group.add(row);
+            groupStart = start;
+        }
+        if (!group.isEmpty()) {
+            replaced += replace(db, period, groupStart, group, cutoff, calendar);
+        }
+        return replaced;
+    }
+
+    private static int replace(SQLiteDatabase db, int period, long start,
+                               List<HistoryRollup.Row> group, long cutoff, Calendar calendar) {
+        if (group.size() == 1 && group.get(0).period == period) {
+            return 0;
+        }
+        HistoryRollup.Row sum = HistoryRollup.aggregate(group);
+        if (periodEnd(period, start, calendar) >= cutoff || sum.endDate >= cutoff) {
+            // More days of this period may still be archived, or summed up from a week which
+            // ends after the cutoff.
+            return 0;
+        }
+
+        StringBuilder ids = new StringBuilder();
+        for (HistoryRollup.Row row : group) {
+            ids.append(ids.length() == 0 ? "" : ",").append(row.id);
+        }
+        db.delete(HistoryEntry.TABLE_NAME, HistoryEntry._ID + " IN (" + ids + ")", null);
+
+        ContentValues values = new ContentValues();
+        values.put(HistoryEntry.COLUMN_LOC_KEY, group.get(0).locationId);
+        values.put(HistoryEntry.COLUMN_DATE, sum.date);
+        values.put(HistoryEntry.COLUMN_END_DATE, sum.endDate);
+        values.put(HistoryEntry.COLUMN_PERIOD, period);
+        values.put(HistoryEntry.COLUMN_DAYS, sum.days);
+        values.put(HistoryEntry.COLUMN_WEATHER_ID, sum.weatherId);
+        values.put(HistoryEntry.COLUMN_SHORT_DESC, sum.shortDesc);
+        values.put(HistoryEntry.COLUMN_MIN_TEMP, sum.min);
+        values.put(HistoryEntry.COLUMN_MAX_TEMP, sum.max);
+        values.put(HistoryEntry.COLUMN_HUMIDITY, sum.humidity);
+        values.put(HistoryEntry.COLUMN_PRESSURE, sum.pressure);
+        values.put(HistoryEntry.COLUMN_WIND_SPEED, sum.wind);
+        values.put(HistoryEntry.COLUMN_DEGREES, sum.degrees);
+        db.insert(HistoryEntry.TABLE_NAME, null, values);
+        return group.size();
+    }
+
+    private static long periodStart(int period, long date, Calendar calendar) {
+        return period == HistoryEntry.PERIOD_WEEK
+                ? HistoryRollup.weekStart(date, calendar)
+                : HistoryRollup.monthStart(date, calendar);
+    }
+
+    private static long periodEnd(int period, long start, Calendar calendar) {
+        return period == HistoryEntry.PERIOD_WEEK
+                ? HistoryRollup.weekEnd(start, calendar)
+                : HistoryRollup.monthEnd(start, calendar);
+    }
+
+    private static HistoryRollup.Row readRow(Cursor cursor) {
+        HistoryRollup.Row row = new HistoryRollup.Row();
+        row.id = cursor.getLong(COL_ID);
+        row.locationId = cursor.getLong(COL_LOC_KEY);
+        row.period = cursor.getInt(COL_PERIOD);
+        row.date = cursor.getLong(COL_DATE);
+        row.endDate = cursor.getLong(COL_END_DATE);
+        row.days = cursor.getInt(COL_DAYS);
+        row.weatherId = cursor.getInt(COL_WEATHER_ID);
+        row.shortDesc = cursor.getString(COL_SHORT_DESC);
+        row.min = cursor.getDouble(COL_MIN_TEMP);
+        row.max = cursor.getDouble(COL_MAX_TEMP);
+        row.humidity = cursor.getDouble(COL_HUMIDITY);
+        row.pressure = cursor.getDouble(COL_PRESSURE);
+        row.wind = cursor.getDouble(COL_WIND_SPEED);
+        row.degrees = cursor.getDouble(COL_DEGREES);
+        return row;
+    }
+}
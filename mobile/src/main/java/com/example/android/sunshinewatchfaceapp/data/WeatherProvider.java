@@ -17,25 +17,74 @@ package com.example.android.sunshinewatchfaceapp.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.support.annotation.VisibleForTesting;
+import android.text.format.Time;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    // The batch being applied on each thread, see applyBatch().
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<Batch>();
+    private volatile QueryCache mQueryCache;
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int SYNC_METRICS = 400;
+    static final int HISTORY = 500;
+    static final int HISTORY_WITH_LOCATION = 501;
+    static final int HISTORY_WITH_LOCATION_AND_DATE = 502;
+    static final int CURRENT_WITH_LOCATION = 600;
+
+    // Enough for the forecasts of a few locations, each in the projections of its readers.
+    private static final int QUERY_CACHE_ROWS = 512;
+
+    // The most days one history row can cover: a month, plus the week begun at its end.
+    private static final long MAX_HISTORY_SPAN_MS = TimeUnit.DAYS.toMillis(31 + 6);
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sWeatherQueryBuilder =
+            tableQueryBuilder(WeatherContract.WeatherEntry.TABLE_NAME);
+    private static final SQLiteQueryBuilder sLocationQueryBuilder =
+            tableQueryBuilder(WeatherContract.LocationEntry.TABLE_NAME);
+    private static final SQLiteQueryBuilder sSyncMetricsQueryBuilder =
+            tableQueryBuilder(WeatherContract.SyncMetricsEntry.TABLE_NAME);
+    private static final SQLiteQueryBuilder sHistoryQueryBuilder =
+            tableQueryBuilder(WeatherContract.HistoryEntry.TABLE_NAME);
+    private static final SQLiteQueryBuilder sCurrentQueryBuilder =
+            tableQueryBuilder(WeatherContract.CurrentEntry.TABLE_NAME);
+    //history INNER JOIN location ON history.location_id = location._id
+    private static final SQLiteQueryBuilder sHistoryByLocationSettingQueryBuilder =
+            tableQueryBuilder(WeatherContract.HistoryEntry.TABLE_NAME + " INNER JOIN " +
+                    WeatherContract.LocationEntry.TABLE_NAME +
+                    " ON " + WeatherContract.HistoryEntry.TABLE_NAME +
+                    "." + WeatherContract.HistoryEntry.COLUMN_LOC_KEY +
+                    " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry._ID);
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -56,56 +105,149 @@ public class WeatherProvider extends ContentProvider {
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
-    //location.location_setting = ? AND date >= ?
+    // The days of one location are looked up by its id, found through the location setting, so
+    // that the weather table is read first: its index on the location and date then hands the
+    // days over in date order, where a join read from the location would sort them again.
+    //weather.location_id = (SELECT _id FROM location WHERE location_setting = ?)
+    private static final String sWeatherLocationSettingSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = (SELECT " +
+                    WeatherContract.LocationEntry._ID + " FROM " +
+                    WeatherContract.LocationEntry.TABLE_NAME + " WHERE " +
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?) ";
+
+    //weather.location_id = (...) AND date >= ?
     private static final String sLocationSettingWithStartDateSelection =
-            WeatherContract.LocationEntry.TABLE_NAME+
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+            sWeatherLocationSettingSelection + "AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
+    //weather.location_id = (...) AND date > ?, a page after the last one read
+    private static final String sLocationSettingAfterDateSelection =
+            sWeatherLocationSettingSelection + "AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " > ? ";
+
     //location.location_setting = ? AND date = ?
     private static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
-    private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+    //location.location_setting = ? AND date > ? AND date <= ? AND end_date >= ?
+    private static final String sHistoryLocationSettingCoveringDaySelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.HistoryEntry.COLUMN_DATE + " > ? AND " +
+                    WeatherContract.HistoryEntry.COLUMN_DATE + " <= ? AND " +
+                    WeatherContract.HistoryEntry.COLUMN_END_DATE + " >= ? ";
+
+    //location_setting = ?, the current table's primary key
+    private static final String sCurrentLocationSettingSelection =
+            WeatherContract.CurrentEntry.COLUMN_LOCATION_SETTING + " = ? ";
+
+    private static SQLiteQueryBuilder tableQueryBuilder(String table) {
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(table);
+        return builder;
+    }
+
+    /**
+     * What a query on one of our URIs reads: the tables, the rows picked and their order.  It is
+     * built apart from being run so that the tests can check the query plan of every URI.
+     */
+    static final class UriQuery {
+        private final SQLiteQueryBuilder mBuilder;
+        final String selection;
+        final String[] selectionArgs;
+        final String sortOrder;
+        // The most rows to read, or null for all of them.
+        final String limit;
+
+        UriQuery(SQLiteQueryBuilder builder, String selection, String[] selectionArgs,
+                 String sortOrder) {
+            this(builder, selection, selectionArgs, sortOrder, null);
+        }
+
+        UriQuery(SQLiteQueryBuilder builder, String selection, String[] selectionArgs,
+                 String sortOrder, String limit) {
+            mBuilder = builder;
+            this.selection = selection;
+            this.selectionArgs = selectionArgs;
+            this.sortOrder = sortOrder;
+            this.limit = limit;
+        }
+
+        Cursor run(SQLiteDatabase db, String[] projection) {
+            return mBuilder.query(db, projection, selection, selectionArgs, null, null,
+                    sortOrder, limit);
+        }
+
+        /**
+         * @return the SQL which {@link #run} executes, with the selection arguments left as ?
+         */
+        String toSql(String[] projection) {
+            return mBuilder.buildQuery(projection, selection, null, null, sortOrder, limit);
+        }
+    }
+
+    private static UriQuery getWeatherByLocationSetting(Uri uri, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        long afterDate = WeatherContract.WeatherEntry.getAfterDateFromUri(uri);
+        int limit = WeatherContract.WeatherEntry.getLimitFromUri(uri);
 
         String[] selectionArgs;
         String selection;
 
-        if (startDate == 0) {
-            selection = sLocationSettingSelection;
+        if (afterDate != 0) {
+            selectionArgs = new String[]{locationSetting, Long.toString(afterDate)};
+            selection = sLocationSettingAfterDateSelection;
+        } else if (startDate == 0) {
+            selection = sWeatherLocationSettingSelection;
             selectionArgs = new String[]{locationSetting};
         } else {
             selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
             selection = sLocationSettingWithStartDateSelection;
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                sortOrder
-        );
+        if (afterDate == 0 && limit == 0) {
+            return new UriQuery(sWeatherByLocationSettingQueryBuilder, selection, selectionArgs,
+                    sortOrder);
+        }
+        // A page only follows on from the one before in date order, which the index on the
+        // location and date reads the days in, so the limit stops the read at the page's end.
+        return new UriQuery(sWeatherByLocationSettingQueryBuilder, selection, selectionArgs,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC",
+                limit > 0 ? Integer.toString(limit) : null);
     }
 
-    private Cursor getWeatherByLocationSettingAndDate(
-            Uri uri, String[] projection, String sortOrder) {
+    private static UriQuery getWeatherByLocationSettingAndDate(Uri uri, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
+        return new UriQuery(sWeatherByLocationSettingQueryBuilder,
                 sLocationSettingAndDaySelection,
                 new String[]{locationSetting, Long.toString(date)},
-                null,
-                null,
-                sortOrder
-        );
+                sortOrder);
+    }
+
+    private static UriQuery getHistoryByLocationSetting(Uri uri, String sortOrder) {
+        return new UriQuery(sHistoryByLocationSettingQueryBuilder,
+                sLocationSettingSelection,
+                new String[]{WeatherContract.HistoryEntry.getLocationSettingFromUri(uri)},
+                sortOrder != null ? sortOrder : WeatherContract.HistoryEntry.COLUMN_DATE + " ASC");
+    }
+
+    private static UriQuery getHistoryByLocationSettingAndDate(Uri uri, String sortOrder) {
+        String locationSetting = WeatherContract.HistoryEntry.getLocationSettingFromUri(uri);
+        long date = WeatherContract.HistoryEntry.getDateFromUri(uri);
+        String day = Long.toString(date);
+
+        // The lower bound keeps the lookup to the rows which can cover the day.
+        return new UriQuery(sHistoryByLocationSettingQueryBuilder,
+                sHistoryLocationSettingCoveringDaySelection,
+                new String[]{locationSetting, Long.toString(date - MAX_HISTORY_SPAN_MS), day, day},
+                sortOrder != null ? sortOrder
+                        : WeatherContract.HistoryEntry.COLUMN_PERIOD + " ASC");
     }
 
     /*
@@ -130,6 +272,14 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_SYNC_METRICS, SYNC_METRICS);
+
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY, HISTORY);
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY + "/*", HISTORY_WITH_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY + "/*/#", HISTORY_WITH_LOCATION_AND_DATE);
+
+        matcher.addURI(authority, WeatherContract.PATH_CURRENT + "/*", CURRENT_WITH_LOCATION);
         return matcher;
     }
 
@@ -140,9 +290,17 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mQueryCache = new QueryCache(QUERY_CACHE_ROWS);
+        // The ids known so far are those of another database.
+        LocationIdCache.clear();
         return true;
     }
 
+    @VisibleForTesting
+    void setQueryCacheEnabled(boolean enabled) {
+        mQueryCache = enabled ? new QueryCache(QUERY_CACHE_ROWS) : null;
+    }
+
     /*
         Students: Here's where you'll code the getType function that uses the UriMatcher.  You can
         test this by uncommenting testGetType in TestProvider.
@@ -164,6 +322,15 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case SYNC_METRICS:
+                return WeatherContract.SyncMetricsEntry.CONTENT_TYPE;
+            case HISTORY_WITH_LOCATION_AND_DATE:
+                return WeatherContract.HistoryEntry.CONTENT_ITEM_TYPE;
+            case HISTORY_WITH_LOCATION:
+            case HISTORY:
+                return WeatherContract.HistoryEntry.CONTENT_TYPE;
+            case CURRENT_WITH_LOCATION:
+                return WeatherContract.CurrentEntry.CONTENT_ITEM_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -172,53 +339,204 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        final int match = sUriMatcher.match(uri);
+        if (match == CURRENT_WITH_LOCATION) {
+            Cursor retCursor = queryCurrent(uri);
+            retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+            return retCursor;
+        }
+        QueryCache queryCache = mQueryCache;
+        // The forecasts of a location are read again and again, so they are served from memory
+        // when they can be; not to a batch, though, which reads what it may yet roll back.
+        boolean cacheable = queryCache != null && mBatch.get() == null
+                && (match == WEATHER_WITH_LOCATION || match == WEATHER_WITH_LOCATION_AND_DATE);
+        Cursor retCursor = null;
+        String key = null;
+        if (cacheable) {
+            key = QueryCache.key(uri, projection, selection, selectionArgs, sortOrder);
+            retCursor = queryCache.get(key);
+        }
+        if (retCursor == null) {
+            long generation = cacheable ? queryCache.generation() : 0;
+            retCursor = buildUriQuery(uri, selection, selectionArgs, sortOrder)
+                    .run(mOpenHelper.getReadableDatabase(), projection);
+            if (cacheable) {
+                retCursor = queryCache.put(key, uri, retCursor, generation);
+            }
+        }
+        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        return retCursor;
+    }
+
+    /**
+     * Reads a location's current weather, with {@link WeatherContract.CurrentEntry#COLUMNS}.  A
+     * row still holding a day which has passed since it was written is moved on first, so that
+     * nothing needs to rewrite the table at midnight.
+     */
+    private Cursor queryCurrent(Uri uri) {
+        UriQuery query = buildUriQuery(uri, null, null, null);
+        Cursor cursor = query.run(mOpenHelper.getReadableDatabase(),
+                WeatherContract.CurrentEntry.COLUMNS);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        if (!cursor.moveToFirst()
+                || cursor.getLong(WeatherContract.CurrentEntry.COL_DATE) >= today) {
+            cursor.moveToPosition(-1);
+            return cursor;
+        }
+        long locationId = cursor.getLong(WeatherContract.CurrentEntry.COL_LOC_KEY);
+        cursor.close();
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            CurrentConditions.refresh(db, locationId, today, Collections.<Long>emptySet());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return query.run(db, WeatherContract.CurrentEntry.COLUMNS);
+    }
+
+    /**
+     * @return the query to run for the URI
+     */
+    static UriQuery buildUriQuery(Uri uri, String selection, String[] selectionArgs,
+                                  String sortOrder) {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
-        Cursor retCursor;
         switch (sUriMatcher.match(uri)) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
-            {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
-                break;
-            }
+                return getWeatherByLocationSettingAndDate(uri, sortOrder);
             // "weather/*"
-            case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
-                break;
-            }
+            case WEATHER_WITH_LOCATION:
+                return getWeatherByLocationSetting(uri, sortOrder);
             // "weather"
-            case WEATHER: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder
-                );
-                break;
-            }
+            case WEATHER:
+                return new UriQuery(sWeatherQueryBuilder, selection, selectionArgs, sortOrder);
             // "location"
-            case LOCATION: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.LocationEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder
-                );
-                break;
-            }
-
+            case LOCATION:
+                return new UriQuery(sLocationQueryBuilder, selection, selectionArgs, sortOrder);
+            // "sync_metrics", read only.  Newest first unless asked otherwise.
+            case SYNC_METRICS:
+                return new UriQuery(sSyncMetricsQueryBuilder, selection, selectionArgs,
+                        sortOrder != null ? sortOrder
+                                : WeatherContract.SyncMetricsEntry._ID + " DESC");
+            // "history/*/#", read only like the rest of the history
+            case HISTORY_WITH_LOCATION_AND_DATE:
+                return getHistoryByLocationSettingAndDate(uri, sortOrder);
+            // "history/*"
+            case HISTORY_WITH_LOCATION:
+                return getHistoryByLocationSetting(uri, sortOrder);
+            // "history"
+            case HISTORY:
+                return new UriQuery(sHistoryQueryBuilder, selection, selectionArgs, sortOrder);
+            // "current/*", read only, a single row
+            case CURRENT_WITH_LOCATION:
+                return new UriQuery(sCurrentQueryBuilder, sCurrentLocationSettingSelection,
+                        new String[]{WeatherContract.CurrentEntry.getLocationSettingFromUri(uri)},
+                        null);
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
-        return retCursor;
+    }
+
+    /**
+     * Records the metrics of a sync, see {@link WeatherContract.SyncMetricsEntry}, and writes the
+     * history, see {@link WeatherContract.HistoryEntry}.  These go through call() rather than
+     * insert() so that the sync_metrics and history URIs stay read only.  It also reports how
+     * the query cache does.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.HistoryEntry.METHOD_ARCHIVE_WEATHER.equals(method)) {
+            return rowsBundle(archiveWeather(Long.parseLong(arg)));
+        }
+        if (WeatherContract.HistoryEntry.METHOD_COMPACT_HISTORY.equals(method)) {
+            return compactHistory();
+        }
+        if (WeatherContract.WeatherEntry.METHOD_QUERY_CACHE_STATS.equals(method)) {
+            QueryCache queryCache = mQueryCache;
+            return queryCache != null ? queryCache.getStats() : null;
+        }
+        if (!WeatherContract.SyncMetricsEntry.METHOD_RECORD_SYNC_METRICS.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        ContentValues values = new ContentValues();
+        for (String key : extras.keySet()) {
+            Object value = extras.get(key);
+            if (value instanceof Long) {
+                values.put(key, (Long) value);
+            } else if (value instanceof Integer) {
+                values.put(key, (Integer) value);
+            } else if (value != null) {
+                values.put(key, value.toString());
+            }
+        }
+        long _id = mOpenHelper.getWritableDatabase().insert(
+                WeatherContract.SyncMetricsEntry.TABLE_NAME, null, values);
+        if (_id <= 0) {
+            throw new android.database.SQLException("Failed to record sync metrics");
+        }
+        notifyChange(WeatherContract.SyncMetricsEntry.CONTENT_URI);
+        return null;
+    }
+
+    /**
+     * Moves the weather rows up to and including the date into the history.
+     *
+     * @return the number of rows moved
+     */
+    private int archiveWeather(long lastDate) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        WeatherChange change = new WeatherChange();
+        int archived;
+        db.beginTransaction();
+        try {
+            String[] args = {Long.toString(lastDate)};
+            change.addRows(db, WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?", args);
+            archived = WeatherHistory.archive(db, lastDate);
+            // The current weather never holds a past day by the time it is read, so only
+            // archiving today or later changes it.
+            if (lastDate >= today) {
+                change.updateCurrent(db, today);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (archived != 0) {
+            notifyWeatherChanged(db, change);
+            notifyChange(WeatherContract.HistoryEntry.CONTENT_URI);
+        }
+        return archived;
+    }
+
+    /**
+     * Sums up the old history into weeks and months.
+     */
+    private Bundle compactHistory() {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int replaced;
+        db.beginTransaction();
+        try {
+            replaced = WeatherHistory.compact(db,
+                    WeatherContract.normalizeDate(System.currentTimeMillis()));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (replaced != 0) {
+            notifyChange(WeatherContract.HistoryEntry.CONTENT_URI);
+        }
+        return rowsBundle(replaced);
+    }
+
+    private static Bundle rowsBundle(int rows) {
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.HistoryEntry.EXTRA_ROWS, rows);
+        return result;
     }
 
     /*
@@ -233,14 +551,13 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
-                else
-                    throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
+                return insertWeather(db, uri, values);
             }
             case LOCATION: {
+                if (uri.getBooleanQueryParameter(WeatherContract.LocationEntry.PARAM_UPSERT,
+                        false)) {
+                    return upsertLocation(db, uri, values);
+                }
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
@@ -248,13 +565,89 @@ public class WeatherProvider extends ContentProvider {
                     throw new android.database.SQLException("Failed to insert row into " + uri);
                 break;
             }
+            case SYNC_METRICS:
+            case HISTORY:
+            case HISTORY_WITH_LOCATION:
+            case HISTORY_WITH_LOCATION_AND_DATE:
+            case CURRENT_WITH_LOCATION:
+                throw new UnsupportedOperationException("Read only uri: " + uri);
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
+    /**
+     * Inserts a weather row, replacing the one stored for the same location and day.  Only that
+     * location and day are notified.
+     */
+    private Uri insertWeather(SQLiteDatabase db, Uri uri, ContentValues values) {
+        Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        WeatherChange change = new WeatherChange();
+        if (locationId == null || date == null) {
+            // Left to the table's constraints, which fail it.
+            change.unmatched = true;
+        } else {
+            change.add(locationId, date);
+        }
+        long _id;
+        db.beginTransaction();
+        try {
+            _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+            if (_id <= 0) {
+                throw new android.database.SQLException("Failed to insert row into " + uri);
+            }
+            change.updateCurrent(db, WeatherContract.normalizeDate(System.currentTimeMillis()));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyWeatherChanged(db, change);
+        return WeatherContract.WeatherEntry.buildWeatherUri(_id);
+    }
+
+    /**
+     * Inserts the location unless one with the same location setting is stored, in a single
+     * statement; only when one is, it is looked up.
+     *
+     * @return the URI of the location, new or stored
+     */
+    private Uri upsertLocation(SQLiteDatabase db, Uri uri, ContentValues values) {
+        long _id;
+        boolean inserted;
+        // The transaction keeps the statements on the connection which wrote, where changes()
+        // counts the insert; with write-ahead logging a plain query may run on another one.
+        db.beginTransaction();
+        try {
+            _id = db.insertWithOnConflict(WeatherContract.LocationEntry.TABLE_NAME, null, values,
+                    SQLiteDatabase.CONFLICT_IGNORE);
+            // Some SQLite builds return the last row id the connection inserted, in any table,
+            // rather than -1 when the insert is ignored; only the change count tells.
+            inserted = _id != -1
+                    && DatabaseUtils.longForQuery(db, "SELECT changes()", null) > 0;
+            if (!inserted) {
+                String locationSetting =
+                        values.getAsString(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                if (locationSetting == null) {
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                }
+                _id = DatabaseUtils.longForQuery(db, "SELECT " + WeatherContract.LocationEntry._ID
+                        + " FROM " + WeatherContract.LocationEntry.TABLE_NAME + " WHERE "
+                        + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                        new String[]{locationSetting});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (inserted) {
+            notifyChange(WeatherContract.LocationEntry.CONTENT_URI);
+        }
+        return WeatherContract.LocationEntry.buildLocationUri(_id);
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
@@ -263,24 +656,88 @@ public class WeatherProvider extends ContentProvider {
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
-                break;
+            case WEATHER: {
+                String lastDate = uri.getQueryParameter(
+                        WeatherContract.WeatherEntry.PARAM_ARCHIVE_THROUGH);
+                if (lastDate != null) {
+                    // Notifies the weather and the history itself.
+                    return archiveWeather(Long.parseLong(lastDate));
+                }
+                return changeWeather(null, selection, selectionArgs);
+            }
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                LocationIdCache.clear();
                 break;
+            case SYNC_METRICS:
+            case HISTORY:
+            case HISTORY_WITH_LOCATION:
+            case HISTORY_WITH_LOCATION_AND_DATE:
+            case CURRENT_WITH_LOCATION:
+                throw new UnsupportedOperationException("Read only uri: " + uri);
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            refreshCurrent(db);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
 
+    /**
+     * Updates the weather rows the selection picks with the values, or deletes them if there are
+     * no values, and notifies the locations and days they were stored for.
+     *
+     * @return the number of rows updated or deleted
+     */
+    private int changeWeather(ContentValues values, String selection, String[] selectionArgs) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        WeatherChange change = new WeatherChange();
+        int rows;
+        db.beginTransaction();
+        try {
+            if (values != null && (values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)
+                    || values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE))) {
+                // The rows move to other locations or days, which can't be told beforehand.
+                change.unmatched = true;
+            } else {
+                change.addRows(db, selection, selectionArgs);
+            }
+            rows = values != null
+                    ? db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
+                            selectionArgs)
+                    : db.delete(WeatherContract.WeatherEntry.TABLE_NAME, selection,
+                            selectionArgs);
+            change.updateCurrent(db, WeatherContract.normalizeDate(System.currentTimeMillis()));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (rows != 0) {
+            notifyWeatherChanged(db, change);
+        }
+        return rows;
+    }
+
+    /**
+     * Rebuilds the current weather of every location, after a write which doesn't tell which
+     * locations it changed.
+     */
+    private void refreshCurrent(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            CurrentConditions.refreshAll(db,
+                    WeatherContract.normalizeDate(System.currentTimeMillis()));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyChange(WeatherContract.CurrentEntry.CONTENT_URI);
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -289,6 +746,15 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Same as {@link WeatherContract#normalizeDate(long)}, reusing the caller's Time rather than
+     * making one per row.
+     */
+    private static long normalizeDate(long date, Time time) {
+        time.set(date);
+        return time.setJulianDay(Time.getJulianDay(date, time.gmtoff));
+    }
+
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
@@ -298,50 +764,447 @@ public class WeatherProvider extends ContentProvider {
 
         switch (match) {
             case WEATHER:
+                if (uri.getBooleanQueryParameter(WeatherContract.WeatherEntry.PARAM_MERGE, false)) {
+                    // Notified with the rest of the merge.
+                    return mergeWeatherRow(uri, values);
+                }
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
+                return changeWeather(values, selection, selectionArgs);
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                LocationIdCache.clear();
                 break;
+            case SYNC_METRICS:
+            case HISTORY:
+            case HISTORY_WITH_LOCATION:
+            case HISTORY_WITH_LOCATION_AND_DATE:
+            case CURRENT_WITH_LOCATION:
+                throw new UnsupportedOperationException("Read only uri: " + uri);
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            refreshCurrent(db);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
 
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
-                try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
-                    }
-                    db.setTransactionSuccessful();
-                } finally {
-                    db.endTransaction();
-                }
-                getContext().getContentResolver().notifyChange(uri, null);
-                return returnCount;
+                return mergeWeather(values);
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Applies the operations in one transaction: either all of them are stored or, should one
+     * of them fail, none.  Readers never see part of a batch.  The changes are notified once the
+     * batch is committed, each URI once, and none that notifying another URI of the batch
+     * reaches already.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Batch batch = new Batch();
+        ContentProviderResult[] results;
+
+        mBatch.set(batch);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            if (batch.weatherMerge != null) {
+                batch.weatherMerge.change.updateCurrent(db,
+                        WeatherContract.normalizeDate(System.currentTimeMillis()));
+                notifyWeatherChanged(db, batch.weatherMerge.change);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            if (batch.weatherMerge != null) {
+                batch.weatherMerge.close();
+            }
+            db.endTransaction();
+            mBatch.remove();
+        }
+
+        for (Uri uri : batch.notifications) {
+            if (!isReachedByAnother(uri, batch.notifications)) {
+                sendChange(uri);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * What a batch holds on to while it is applied.
+     */
+    private static final class Batch {
+        // The URIs to notify once the batch is committed.
+        final Set<Uri> notifications = new LinkedHashSet<Uri>();
+        // The merge of the rows inserted into the weather merge URI, made for the first of them.
+        WeatherMerge weatherMerge;
+    }
+
+    /**
+     * Notifies the observers of the URI, or, while a batch is applied on this thread, holds the
+     * notification back until the batch is committed.
+     */
+    private void notifyChange(Uri uri) {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.notifications.add(uri);
+        } else {
+            sendChange(uri);
+        }
+    }
+
+    /**
+     * Drops what the change makes stale from the query cache, then notifies the observers.
+     */
+    private void sendChange(Uri uri) {
+        QueryCache queryCache = mQueryCache;
+        if (queryCache != null) {
+            queryCache.invalidate(uri);
+        }
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * @return whether notifying another of the URIs reaches the URI's observers too, which it
+     * does when the other URI is above it
+     */
+    private static boolean isReachedByAnother(Uri uri, Set<Uri> uris) {
+        List<String> segments = uri.getPathSegments();
+        for (Uri other : uris) {
+            List<String> otherSegments = other.getPathSegments();
+            if (otherSegments.size() < segments.size()
+                    && uri.getAuthority().equals(other.getAuthority())
+                    && segments.subList(0, otherSegments.size()).equals(otherSegments)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges a forecast into the weather table, in one transaction, see {@link WeatherMerge}.
+     *
+     * @return the number of rows inserted or updated
+     */
+    private int mergeWeather(ContentValues[] values) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int changedCount = 0;
+
+        db.beginTransaction();
+        WeatherMerge merge = new WeatherMerge(db);
+        try {
+            for (ContentValues value : values) {
+                if (merge.merge(value) > 0) {
+                    changedCount++;
+                }
+            }
+            merge.change.updateCurrent(db,
+                    WeatherContract.normalizeDate(System.currentTimeMillis()));
+            db.setTransactionSuccessful();
+        } finally {
+            merge.close();
+            db.endTransaction();
+        }
+
+        notifyWeatherChanged(db, merge.change);
+        return changedCount;
+    }
+
+    /**
+     * Merges a row updated into the weather merge URI, along with the others of its batch.
+     *
+     * @return 1 if the row was inserted or updated, 0 if it was stored already
+     */
+    private int mergeWeatherRow(Uri uri, ContentValues values) {
+        Batch batch = mBatch.get();
+        if (batch == null) {
+            // On its own, it is a batch of one.
+            ArrayList<ContentProviderOperation> operations =
+                    new ArrayList<ContentProviderOperation>(Collections.singletonList(
+                            ContentProviderOperation.newUpdate(uri).withValues(values).build()));
+            try {
+                return applyBatch(operations)[0].count;
+            } catch (OperationApplicationException e) {
+                throw new android.database.SQLException("Failed to merge row into " + uri, e);
+            }
+        }
+        if (batch.weatherMerge == null) {
+            batch.weatherMerge = new WeatherMerge(mOpenHelper.getWritableDatabase());
+        }
+        long _id = batch.weatherMerge.merge(values);
+        if (_id == -1) {
+            // Fails the batch, which stores nothing of it.
+            throw new android.database.SQLException("Failed to merge row into " + uri);
+        }
+        return _id == WeatherMerge.UNCHANGED ? 0 : 1;
+    }
+
+    /**
+     * Merges forecast rows into the weather table.
+     *
+     * Each incoming row is matched with the stored row for the same location and day.  Identical
+     * rows are left alone, changed rows are updated in place and new days are inserted.  The
+     * merge keeps the days which changed, so that only those are notified and nothing reloads
+     * when a sync brings nothing new.
+     *
+     * Complete rows are written by a {@link WeatherRowWriter}, whose statements are compiled
+     * once for the whole merge; anything else goes through insert() and update() as before.  A
+     * merge is meant for the rows of one transaction and must be closed before it ends.
+     */
+    private static final class WeatherMerge {
+        private final SQLiteDatabase mDb;
+        private final WeatherRowWriter mWriter;
+        private final Time mDayTime = new Time();
+        private final Map<Long, Map<Long, ContentValues>> mStoredByLocation =
+                new HashMap<Long, Map<Long, ContentValues>>();
+        // Returned by merge() for a row which was stored already.  Row ids start at 1.
+        static final long UNCHANGED = 0;
+
+        // The rows which changed.
+        final WeatherChange change = new WeatherChange();
+
+        WeatherMerge(SQLiteDatabase db) {
+            mDb = db;
+            mWriter = new WeatherRowWriter(db);
+        }
+
+        /**
+         * @return the id of the row inserted or updated, {@link #UNCHANGED} if the same row was
+         * stored already, or -1 if the row couldn't be written
+         */
+        long merge(ContentValues value) {
+            Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+            Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            if (date != null) {
+                long normalized = normalizeDate(date, mDayTime);
+                // Forecast dates come normalized already, so this rarely has to box anything.
+                if (normalized != date) {
+                    date = normalized;
+                    value.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+                }
+            }
+            if (locationId == null || date == null) {
+                // Nothing to match it with, leave it to the table's constraints.
+                long _id = mDb.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                if (_id != -1) {
+                    change.unmatched = true;
+                }
+                return _id;
+            }
+
+            Map<Long, ContentValues> stored = mStoredByLocation.get(locationId);
+            if (stored == null) {
+                stored = getStoredWeather(mDb, locationId);
+                mStoredByLocation.put(locationId, stored);
+            }
+
+            boolean fits = WeatherRowWriter.fits(value);
+            ContentValues storedValue = stored.get(date);
+            long _id;
+            if (storedValue == null) {
+                _id = fits ? mWriter.insert(value, date)
+                        : mDb.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                if (_id == -1) {
+                    return -1;
+                }
+            } else if (hasSameValues(value, storedValue)) {
+                return UNCHANGED;
+            } else {
+                _id = storedValue.getAsLong(WeatherContract.WeatherEntry._ID);
+                if (fits) {
+                    mWriter.update(_id, value, date);
+                } else {
+                    mDb.update(WeatherContract.WeatherEntry.TABLE_NAME, value,
+                            WeatherContract.WeatherEntry._ID + " = ?",
+                            new String[]{Long.toString(_id)});
+                }
+            }
+
+            change.add(locationId, date);
+            return _id;
+        }
+
+        void close() {
+            mWriter.close();
+        }
+    }
+
+    /**
+     * The weather rows a write changed, by location and day, so that only those are notified.
+     */
+    private static final class WeatherChange {
+        // The days which changed, per location id.
+        final Map<Long, Set<Long>> days = new HashMap<Long, Set<Long>>();
+        // Whether rows changed which can't be told by location and day, e.g. rows without
+        // either.  Everything is notified then.
+        boolean unmatched;
+        // The locations whose current weather changed, see updateCurrent().
+        final Set<Long> changedCurrent = new HashSet<Long>();
+
+        void add(long locationId, long date) {
+            Set<Long> locationDays = days.get(locationId);
+            if (locationDays == null) {
+                locationDays = new HashSet<Long>();
+                days.put(locationId, locationDays);
+            }
+            locationDays.add(date);
+        }
+
+        /**
+         * Adds the stored rows which the selection picks, before they are updated or deleted.
+         */
+        void addRows(SQLiteDatabase db, String selection, String[] selectionArgs) {
+            Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                    new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                            WeatherContract.WeatherEntry.COLUMN_DATE},
+                    selection, selectionArgs, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    add(cursor.getLong(0), cursor.getLong(1));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        /**
+         * Brings the current weather of the locations which changed up to date, in the
+         * transaction of the change.
+         */
+        void updateCurrent(SQLiteDatabase db, long today) {
+            if (unmatched) {
+                CurrentConditions.refreshAll(db, today);
+                return;
+            }
+            for (Map.Entry<Long, Set<Long>> location : days.entrySet()) {
+                if (CurrentConditions.refresh(db, location.getKey(), today,
+                        location.getValue())) {
+                    changedCurrent.add(location.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the stored weather rows of a location, by date
+     */
+    private static Map<Long, ContentValues> getStoredWeather(SQLiteDatabase db, long locationId) {
+        Map<Long, ContentValues> stored = new HashMap<Long, ContentValues>();
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(locationId)},
+                null,
+                null,
+                null);
+        try {
+            int dateIndex = cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
+            while (cursor.moveToNext()) {
+                // Keep the stored types, so that numbers compare as numbers.
+                ContentValues value = new ContentValues();
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    String column = cursor.getColumnName(i);
+                    switch (cursor.getType(i)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            value.put(column, cursor.getLong(i));
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            value.put(column, cursor.getDouble(i));
+                            break;
+                        case Cursor.FIELD_TYPE_NULL:
+                            value.putNull(column);
+                            break;
+                        default:
+                            value.put(column, cursor.getString(i));
+                    }
+                }
+                stored.put(cursor.getLong(dateIndex), value);
+            }
+        } finally {
+            cursor.close();
+        }
+        return stored;
+    }
+
+    /**
+     * @return whether every column of the incoming row has the value already stored
+     */
+    private static boolean hasSameValues(ContentValues incoming, ContentValues stored) {
+        for (Map.Entry<String, Object> column : incoming.valueSet()) {
+            Object incomingValue = column.getValue();
+            Object storedValue = stored.get(column.getKey());
+            if (incomingValue == null || storedValue == null) {
+                if (incomingValue != storedValue) {
+                    return false;
+                }
+            } else if (incomingValue instanceof Number && storedValue instanceof Number) {
+                // SQLite hands REAL columns back as doubles whatever type was put in.
+                if (((Number) incomingValue).doubleValue() != ((Number) storedValue).doubleValue()) {
+                    return false;
+                }
+            } else if (!incomingValue.toString().equals(storedValue.toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Notifies the observers of the locations and days which changed.  A single changed day is
+     * notified on its own URI; several days of a location are notified once on the location's
+     * URI, which reaches the observers of each of its days too.  The current weather of a
+     * location is notified only when it changed.
+     */
+    private void notifyWeatherChanged(SQLiteDatabase db, WeatherChange change) {
+        if (change.unmatched) {
+            notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+            notifyChange(WeatherContract.CurrentEntry.CONTENT_URI);
+            return;
+        }
+        for (Map.Entry<Long, Set<Long>> location : change.days.entrySet()) {
+            String locationSetting = getLocationSetting(db, location.getKey());
+            Uri changedUri;
+            if (locationSetting == null) {
+                changedUri = WeatherContract.WeatherEntry.CONTENT_URI;
+            } else if (location.getValue().size() == 1) {
+                changedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        locationSetting, location.getValue().iterator().next());
+            } else {
+                changedUri = WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting);
+            }
+            notifyChange(changedUri);
+            if (locationSetting != null && change.changedCurrent.contains(location.getKey())) {
+                notifyChange(WeatherContract.CurrentEntry.buildCurrentUri(locationSetting));
+            }
+        }
+    }
+
+    private String getLocationSetting(SQLiteDatabase db, long locationId) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
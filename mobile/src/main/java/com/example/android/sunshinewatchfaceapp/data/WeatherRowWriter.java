@@ -0,0 +1,126 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+/**
+ * Writes weather rows through an insert and an update statement which are compiled once and
+ * reused for every row, each column bound as a primitive.  SQLiteDatabase.insert() and update()
+ * build and compile their SQL again from the ContentValues on every call.
+ *
+ * Only rows holding exactly the weather columns, none of them null, can be written this way;
+ * {@link #fits(ContentValues)} tells which.  A writer is meant for the rows of one transaction
+ * and must be closed after it.
+ */
+final class WeatherRowWriter {
+    // Every column but _ID, in the order they are bound.
+    private static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private static final String INSERT_SQL = buildInsertSql();
+    private static final String UPDATE_SQL = buildUpdateSql();
+
+    private final SQLiteStatement mInsert;
+    private final SQLiteStatement mUpdate;
+
+    WeatherRowWriter(SQLiteDatabase db) {
+        mInsert = db.compileStatement(INSERT_SQL);
+        mUpdate = db.compileStatement(UPDATE_SQL);
+    }
+
+    /**
+     * @return whether the row can be written by a writer
+     */
+    static boolean fits(ContentValues values) {
+        if (values.size() != COLUMNS.length) {
+            return false;
+        }
+        for (String column : COLUMNS) {
+            if (values.get(column) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inserts the row, replacing any stored row for the same location and day.
+     *
+     * @param date the row's date, already normalized
+     * @return the id of the new row, or -1 if it couldn't be inserted
+     */
+    long insert(ContentValues values, long date) {
+        bind(mInsert, values, date);
+        try {
+            return mInsert.executeInsert();
+        } catch (SQLException e) {
+            // As SQLiteDatabase.insert() does.
+            return -1;
+        }
+    }
+
+    /**
+     * Overwrites the stored row with the given id.
+     *
+     * @param date the row's date, already normalized
+     * @return the number of rows updated
+     */
+    int update(long id, ContentValues values, long date) {
+        bind(mUpdate, values, date);
+        mUpdate.bindLong(COLUMNS.length + 1, id);
+        return mUpdate.executeUpdateDelete();
+    }
+
+    void close() {
+        mInsert.close();
+        mUpdate.close();
+    }
+
+    private static void bind(SQLiteStatement statement, ContentValues values, long date) {
+        statement.bindLong(1, values.getAsLong(WeatherEntry.COLUMN_LOC_KEY));
+        statement.bindLong(2, date);
+        statement.bindString(3, values.getAsString(WeatherEntry.COLUMN_SHORT_DESC));
+        statement.bindLong(4, values.getAsLong(WeatherEntry.COLUMN_WEATHER_ID));
+        statement.bindDouble(5, values.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP));
+        statement.bindDouble(6, values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP));
+        statement.bindDouble(7, values.getAsDouble(WeatherEntry.COLUMN_HUMIDITY));
+        statement.bindDouble(8, values.getAsDouble(WeatherEntry.COLUMN_PRESSURE));
+        statement.bindDouble(9, values.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED));
+        statement.bindDouble(10, values.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+    }
+
+    private static String buildInsertSql() {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(WeatherEntry.TABLE_NAME)
+                .append(" (");
+        StringBuilder parameters = new StringBuilder();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            String separator = i == 0 ? "" : ", ";
+            sql.append(separator).append(COLUMNS[i]);
+            parameters.append(separator).append('?');
+        }
+        return sql.append(") VALUES (").append(parameters).append(')').toString();
+    }
+
+    private static String buildUpdateSql() {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(WeatherEntry.TABLE_NAME)
+                .append(" SET ");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            sql.append(i == 0 ? "" : ", ").append(COLUMNS[i]).append(" = ?");
+        }
+        return sql.append(" WHERE ").append(WeatherEntry._ID).append(" = ?").toString();
+    }
+}
@@ -23,6 +23,7 @@ import com.example.android.sunshinewatchfaceapp.MainActivity;
 import com.example.android.sunshinewatchfaceapp.Utility;
 import com.example.android.sunshinewatchfaceapp.data.WeatherContract;
 import com.example.android.sunshinewatchfaceapp.sync.SunshineSyncAdapter;
+import com.example.android.sunshinewatchfaceapp.sync.SyncScheduler;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
@@ -30,18 +31,23 @@ import com.google.android.apps.muzei.api.MuzeiArtSource;
  * Muzei source that changes your background based on the current weather conditions
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
-    private static final String[] FORECAST_COLUMNS = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
     }
 
+    @Override
+    protected void onEnabled() {
+        super.onEnabled();
+        // Someone is looking at the weather, let the sync scheduler know.
+        SyncScheduler.setMuzeiEnabled(this, true);
+    }
+
+    @Override
+    protected void onDisabled() {
+        super.onDisabled();
+        SyncScheduler.setMuzeiEnabled(this, false);
+    }
+
     @Override
     protected void onHandleIntent(Intent intent) {
         super.onHandleIntent(intent);
@@ -55,13 +61,12 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     @Override
     protected void onUpdate(int reason) {
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        Uri currentUri = WeatherContract.CurrentEntry.buildCurrentUri(location);
+        Cursor cursor = getContentResolver().query(currentUri,
+                WeatherContract.CurrentEntry.COLUMNS, null, null, null);
         if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
+            int weatherId = cursor.getInt(WeatherContract.CurrentEntry.COL_WEATHER_ID);
+            String desc = cursor.getString(WeatherContract.CurrentEntry.COL_SHORT_DESC);
 
             String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
             // Only publish a new wallpaper if we have a valid image
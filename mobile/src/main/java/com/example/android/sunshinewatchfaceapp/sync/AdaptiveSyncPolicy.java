@@ -0,0 +1,157 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the next sync should run.
+ *
+ * Instead of one fixed period for everybody, the interval follows how fast the forecast has
+ * been changing lately, aiming to sync about once per {@link #TARGET_CHANGE} of it changing:
+ * every hour when the weather is moving fast, up to every three hours when successive fetches keep
+ * bringing back the same forecast.  Nobody looking at the weather (no watch face, widget or
+ * Muzei) stretches it, being on charge and on an unmetered network shortens it, and unless the
+ * weather is moving fast a sync which would land in the middle of the night is put off until
+ * early morning so the data is fresh on waking.
+ *
+ * This holds no state and knows nothing about Android, so that it can be replayed against
+ * recorded fetches; {@link SyncScheduler} feeds it and turns its answer into a job.
+ */
+class AdaptiveSyncPolicy {
+    static final long MIN_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+    // The old fixed period.  The syncs saved are the ones at night, not the ones people see.
+    static final long MAX_INTERVAL_MS = TimeUnit.HOURS.toMillis(3);
+    // The interval never stretches past this, whatever else applies.
+    static final long MAX_IDLE_INTERVAL_MS = TimeUnit.HOURS.toMillis(9);
+
+    // Volatility is the share of the forecast which changes per hour.  We aim to sync once for
+    // about this much change, two days of a fourteen day forecast.
+    static final double TARGET_CHANGE = 2 / 14.0;
+    // Volatility at or above this syncs every hour, and through the night.
+    static final double HIGH_VOLATILITY = TARGET_CHANGE;
+    // Volatility below this is calm enough to wait for an unmetered network.
+    static final double LOW_VOLATILITY = 0.02;
+    // How much each hour covered by the latest fetch weighs against the history, see
+    // updateVolatility().
+    static final double VOLATILITY_WEIGHT_PER_HOUR = 0.3;
+
+    static final float NO_CONSUMERS_FACTOR = 1.5f;
+    static final float CHARGING_UNMETERED_FACTOR = 0.75f;
+
+    // Quiet hours, in minutes since local midnight.  Syncs wait for their last half hour.
+    static final int QUIET_START_MINUTE = 23 * 60;
+    static final int QUIET_END_MINUTE = 5 * 60 + 30;
+    // The window for the morning sync, ending with the quiet hours.
+    static final long NIGHT_FLEX_MS = TimeUnit.MINUTES.toMillis(30);
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * What the device and the user are doing at the time of scheduling.
+     */
+    static final class Conditions {
+        // See updateVolatility(), the share of the forecast which changes per hour.
+        final double volatility;
+        // Whether a watch face, a widget or Muzei shows our weather.
+        final boolean consumersActive;
+        final boolean charging;
+        final boolean unmetered;
+        // Local time, in minutes since midnight.
+        final int minuteOfDay;
+
+        Conditions(double volatility, boolean consumersActive, boolean charging,
+                   boolean unmetered, int minuteOfDay) {
+            this.volatility = volatility;
+            this.consumersActive = consumersActive;
+            this.charging = charging;
+            this.unmetered = unmetered;
+            this.minuteOfDay = minuteOfDay;
+        }
+    }
+
+    /**
+     * When to sync next.  The sync may run anywhere between the delay and the deadline, and
+     * should wait for the preferred conditions until the deadline forces it.
+     */
+    static final class Schedule {
+        final long delayMs;
+        final long deadlineMs;
+        final boolean preferUnmetered;
+        final boolean preferCharging;
+
+        Schedule(long delayMs, long deadlineMs, boolean preferUnmetered, boolean preferCharging) {
+            this.delayMs = delayMs;
+            this.deadlineMs = deadlineMs;
+            this.preferUnmetered = preferUnmetered;
+            this.preferCharging = preferCharging;
+        }
+    }
+
+    private AdaptiveSyncPolicy() {
+    }
+
+    /**
+     * Folds the outcome of one fetch into the running volatility, the share of the forecast
+     * which changes per hour.
+     *
+     * @param volatility the volatility so far
+     * @param changedFraction the share of forecast rows the fetch changed, 0 to 1
+     * @param elapsedMs the time since the previous fetch.  A longer gap naturally sees more
+     *                  change, so the change is taken per hour.
+     * @return the new volatility
+     */
+    static double updateVolatility(double volatility, double changedFraction, long elapsedMs) {
+        double changed = Math.max(0, Math.min(1, changedFraction));
+        // A sync right after another (the user changed a setting) says little about the rate.
+        double hours = Math.max(MIN_INTERVAL_MS, elapsedMs) / (double) HOUR_MS;
+        double rate = Math.min(1, changed / hours);
+        // A fetch covering many hours is more evidence than one covering a single hour, so a
+        // storm after a calm spell shows at the first sync which sees it.
+        double weight = 1 - Math.pow(1 - VOLATILITY_WEIGHT_PER_HOUR, hours);
+        return volatility + weight * (rate - volatility);
+    }
+
+    static Schedule nextSync(Conditions conditions) {
+        // The time the forecast takes to change by TARGET_CHANGE.
+        long intervalMs = conditions.volatility <= 0 ? MAX_INTERVAL_MS
+                : (long) (TARGET_CHANGE / conditions.volatility * HOUR_MS);
+        intervalMs = Math.max(MIN_INTERVAL_MS, Math.min(MAX_INTERVAL_MS, intervalMs));
+
+        if (!conditions.consumersActive) {
+            intervalMs = (long) (intervalMs * NO_CONSUMERS_FACTOR);
+        }
+        if (conditions.charging && conditions.unmetered) {
+            intervalMs = (long) (intervalMs * CHARGING_UNMETERED_FACTOR);
+        }
+        intervalMs = Math.max(MIN_INTERVAL_MS, Math.min(MAX_IDLE_INTERVAL_MS, intervalMs));
+
+        // Leave the platform a third of the interval to batch us with other work, like the
+        // periodic sync did.
+        long flexMs = intervalMs / 3;
+        boolean preferCharging = false;
+
+        int syncMinute = (conditions.minuteOfDay + (int) (intervalMs / MINUTE_MS)) % MINUTES_PER_DAY;
+        if (conditions.volatility < HIGH_VOLATILITY && isQuiet(syncMinute)) {
+            // Sleep through the night and sync just before it ends.  Phones mostly charge
+            // overnight, so wait for that while there is time.
+            flexMs = Math.min(flexMs, NIGHT_FLEX_MS);
+            intervalMs = Math.max(MIN_INTERVAL_MS,
+                    minutesUntil(conditions.minuteOfDay, QUIET_END_MINUTE) * MINUTE_MS - flexMs);
+            preferCharging = true;
+        }
+
+        // With someone looking, freshness wins over saving mobile data.
+        boolean preferUnmetered = !conditions.consumersActive
+                && conditions.volatility < LOW_VOLATILITY;
+        return new Schedule(intervalMs, intervalMs + flexMs, preferUnmetered, preferCharging);
+    }
+
+    private static boolean isQuiet(int minuteOfDay) {
+        return minuteOfDay >= QUIET_START_MINUTE || minuteOfDay < QUIET_END_MINUTE;
+    }
+
+    private static long minutesUntil(int fromMinute, int toMinute) {
+        return (toMinute - fromMinute + MINUTES_PER_DAY) % MINUTES_PER_DAY;
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops us from fetching from a server that is down.
+ *
+ * After {@link #FAILURE_THRESHOLD} failures in a row the breaker opens, and requests fail
+ * straight away without touching the network.  Once the open time is over a single trial
+ * request goes through (the breaker is half open): if it works the breaker closes again, if
+ * not it opens for twice as long, up to {@link #MAX_OPEN_MS}.  The state is small enough to be
+ * kept between syncs, see {@link CircuitBreakerStore}, so a server that is down stays left
+ * alone across sync runs and process restarts.
+ *
+ * All methods are safe to call from the sync engine's worker threads.
+ */
+class CircuitBreaker {
+    static final int FAILURE_THRESHOLD = 3;
+    static final long BASE_OPEN_MS = TimeUnit.MINUTES.toMillis(5);
+    static final long MAX_OPEN_MS = TimeUnit.HOURS.toMillis(6);
+
+    private static final ExponentialBackoff OPEN_BACKOFF =
+            new ExponentialBackoff(BASE_OPEN_MS, MAX_OPEN_MS, new Random());
+
+    /**
+     * Keeps breakers between sync passes, one per endpoint.
+     */
+    interface Store {
+        /**
+         * @return the breaker stored for the endpoint, or null if there is none
+         */
+        CircuitBreaker get(String endpoint);
+
+        void put(String endpoint, CircuitBreaker breaker);
+    }
+
+    // Failures in a row, reset by any success.
+    private int mFailures;
+    // How many times in a row the breaker opened, which sets how long it stays open.
+    private int mTrips;
+    // Until when requests are refused, or 0 while the breaker is closed.
+    private long mOpenUntilMs;
+    // Whether the one request allowed through a half open breaker is still running.
+    private boolean mTrialInFlight;
+
+    CircuitBreaker() {
+    }
+
+    CircuitBreaker(int failures, int trips, long openUntilMs) {
+        mFailures = failures;
+        mTrips = trips;
+        mOpenUntilMs = openUntilMs;
+    }
+
+    /**
+     * Asks whether a request may go out now.  While a half open breaker's trial request is
+     * running this waits for its outcome, so the requests behind it go ahead as soon as the
+     * server proves to be back.
+     *
+     * @return true if the request may go out.  The caller must then report how it went to
+     * {@link #recordSuccess()} or {@link #recordFailure(long)}.
+     */
+    synchronized boolean allowRequest() throws InterruptedException {
+        while (mTrialInFlight) {
+            wait();
+        }
+        if (mOpenUntilMs == 0) {
+            return true;
+        }
+        if (System.currentTimeMillis() < mOpenUntilMs) {
+            return false;
+        }
+        mTrialInFlight = true;
+        return true;
+    }
+
+    /**
+     * Records that the server answered, whatever it answered.
+     */
+    synchronized void recordSuccess() {
+        mFailures = 0;
+        mTrips = 0;
+        mOpenUntilMs = 0;
+        endTrial();
+    }
+
+    /**
+     * Records that the server could not be reached, timed out or failed with a server error.
+     *
+     * @param minOpenMs if positive, open the breaker now for at least this long, as when the
+     *                  server asked us to come back later
+     */
+    synchronized void recordFailure(long minOpenMs) {
+        mFailures++;
+        long now = System.currentTimeMillis();
+        boolean open = mOpenUntilMs > now;
+        // Requests which were already in flight when the breaker opened don't open it further.
+        if (mTrialInFlight || minOpenMs > 0 || (!open && mFailures >= FAILURE_THRESHOLD)) {
+            mOpenUntilMs = now + Math.max(OPEN_BACKOFF.delayMs(mTrips), minOpenMs);
+            mTrips++;
+        }
+        endTrial();
+    }
+
+    /**
+     * Records that an allowed request ended without telling us anything about the server, as
+     * when the sync was cancelled.
+     */
+    synchronized void abandonRequest() {
+        endTrial();
+    }
+
+    /**
+     * @return until when requests are refused, or 0 if the breaker is closed
+     */
+    synchronized long getOpenUntilMs() {
+        return mOpenUntilMs;
+    }
+
+    synchronized boolean isOpen() {
+        return mOpenUntilMs > System.currentTimeMillis();
+    }
+
+    synchronized int getFailures() {
+        return mFailures;
+    }
+
+    synchronized int getTrips() {
+        return mTrips;
+    }
+
+    private void endTrial() {
+        if (mTrialInFlight) {
+            mTrialInFlight = false;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Keeps the {@link CircuitBreaker} of every forecast endpoint between syncs.  Like the
+ * {@link ForecastValidatorStore}, this is sync bookkeeping and lives in its own preferences file.
+ */
+class CircuitBreakerStore implements CircuitBreaker.Store {
+    static final String PREFS_NAME = "circuit_breakers";
+
+    private static final String KEY_FAILURES = ".failures";
+    private static final String KEY_TRIPS = ".trips";
+    private static final String KEY_OPEN_UNTIL_MS = ".open_until_ms";
+
+    private final SharedPreferences mPrefs;
+
+    CircuitBreakerStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public CircuitBreaker get(String endpoint) {
+        if (!mPrefs.contains(endpoint + KEY_FAILURES)) {
+            return null;
+        }
+        return new CircuitBreaker(
+                mPrefs.getInt(endpoint + KEY_FAILURES, 0),
+                mPrefs.getInt(endpoint + KEY_TRIPS, 0),
+                mPrefs.getLong(endpoint + KEY_OPEN_UNTIL_MS, 0));
+    }
+
+    /**
+     * Stores the breaker for the endpoint.  This uses commit, so it should not be called from the
+     * UI thread.
+     */
+    @Override
+    public void put(String endpoint, CircuitBreaker breaker) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (breaker.getFailures() == 0 && breaker.getOpenUntilMs() == 0) {
+            // A healthy server needs nothing remembered.
+            editor.remove(endpoint + KEY_FAILURES)
+                    .remove(endpoint + KEY_TRIPS)
+                    .remove(endpoint + KEY_OPEN_UNTIL_MS);
+        } else {
+            editor.putInt(endpoint + KEY_FAILURES, breaker.getFailures())
+                    .putInt(endpoint + KEY_TRIPS, breaker.getTrips())
+                    .putLong(endpoint + KEY_OPEN_UNTIL_MS, breaker.getOpenUntilMs());
+        }
+        editor.commit();
+    }
+}
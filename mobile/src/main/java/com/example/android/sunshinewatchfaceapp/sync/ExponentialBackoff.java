@@ -0,0 +1,39 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import java.util.Random;
+
+/**
+ * Exponentially growing delays with jitter.
+ *
+ * The delay doubles with every attempt up to a cap, and half of it is random.  Every device
+ * sees an outage at the same moment, and without the jitter they would all come back at the
+ * same moment too.
+ */
+class ExponentialBackoff {
+    private final long mBaseMs;
+    private final long mMaxMs;
+    private final Random mRandom;
+
+    ExponentialBackoff(long baseMs, long maxMs, Random random) {
+        mBaseMs = baseMs;
+        mMaxMs = maxMs;
+        mRandom = random;
+    }
+
+    /**
+     * @param attempt how many delays came before this one, starting at 0
+     * @return a delay between half and all of base * 2^attempt, capped at the maximum
+     */
+    long delayMs(int attempt) {
+        long ceiling = mMaxMs;
+        if (attempt < Long.numberOfLeadingZeros(mBaseMs) - 1) {
+            ceiling = Math.min(mMaxMs, mBaseMs << attempt);
+        }
+        long half = ceiling / 2;
+        return half + (long) (mRandom.nextDouble() * (ceiling - half));
+    }
+
+    long getMaxMs() {
+        return mMaxMs;
+    }
+}
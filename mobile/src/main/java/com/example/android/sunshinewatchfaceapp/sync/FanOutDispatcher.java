@@ -0,0 +1,242 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands one event to every consumer at once, each on its own thread and with its own timeout.
+ *
+ * {@link #publish} returns straight away.  A slow consumer doesn't hold up the others, and one
+ * which runs past its timeout is interrupted and reported as timed out.  Each consumer sees the
+ * events one at a time, in the order they were published; an event waiting behind a consumer
+ * still busy with the previous one counts against its own timeout.
+ *
+ * Consumer threads are only kept for a short while, as events are hours apart.
+ */
+class FanOutDispatcher<E> {
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    private final List<Entry<E>> mEntries = new ArrayList<Entry<E>>();
+    private final ScheduledThreadPoolExecutor mWatchdog;
+
+    /**
+     * Does something with a published event.  Runs on the consumer's own thread, and should give
+     * up when interrupted.
+     */
+    interface Consumer<E> {
+        void onEvent(E event) throws Exception;
+    }
+
+    /**
+     * Told once every consumer is done with an event, or has timed out.  Runs on the thread of
+     * whichever consumer finished last, or on the timeout thread.
+     */
+    interface Listener<E> {
+        /**
+         * @param deliveries how each consumer fared, in the order the consumers were added
+         */
+        void onDelivered(E event, List<Delivery> deliveries);
+    }
+
+    /**
+     * How one consumer fared with one event.
+     */
+    static final class Delivery {
+        final String consumer;
+        // From publishing to the consumer returning, or to the timeout.
+        final long durationMs;
+        final boolean timedOut;
+        // What the consumer threw, if anything.
+        final Throwable error;
+
+        Delivery(String consumer, long durationMs, boolean timedOut, Throwable error) {
+            this.consumer = consumer;
+            this.durationMs = durationMs;
+            this.timedOut = timedOut;
+            this.error = error;
+        }
+    }
+
+    FanOutDispatcher() {
+        mWatchdog = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("FanOut timeout"));
+        mWatchdog.setKeepAliveTime(THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        mWatchdog.allowCoreThreadTimeOut(true);
+        // A delivery which finished in time leaves nothing to wait for.
+        mWatchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Adds a consumer for the events published from now on.
+     */
+    synchronized void addConsumer(String name, long timeoutMs, Consumer<E> consumer) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("FanOut " + name));
+        executor.allowCoreThreadTimeOut(true);
+        mEntries.add(new Entry<E>(name, timeoutMs, consumer, executor));
+    }
+
+    /**
+     * @return the longest timeout of any consumer, which is the longest a publish can take
+     */
+    synchronized long getMaxTimeoutMs() {
+        long max = 0;
+        for (Entry<E> entry : mEntries) {
+            max = Math.max(max, entry.timeoutMs);
+        }
+        return max;
+    }
+
+    /**
+     * Hands the event to every consumer, and returns without waiting for them.
+     *
+     * @param listener told once they're all done, or null
+     */
+    void publish(final E event, final Listener<E> listener) {
+        final List<Entry<E>> entries;
+        synchronized (this) {
+            entries = new ArrayList<Entry<E>>(mEntries);
+        }
+        final long publishNanos = System.nanoTime();
+        final Publication<E> publication = new Publication<E>(event, entries.size(), listener);
+        if (entries.isEmpty()) {
+            publication.done();
+            return;
+        }
+
+        for (int i = 0; i < entries.size(); i++) {
+            final Entry<E> entry = entries.get(i);
+            final int index = i;
+            // Whoever gets here first, the consumer or its timeout, reports the delivery.
+            final AtomicBoolean reported = new AtomicBoolean();
+            final Future<?>[] timeout = new Future<?>[1];
+
+            final Future<?> delivery = entry.executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Throwable error = null;
+                    try {
+                        entry.consumer.onEvent(event);
+                    } catch (Throwable t) {
+                        error = t;
+                    }
+                    if (reported.compareAndSet(false, true)) {
+                        synchronized (timeout) {
+                            if (timeout[0] != null) {
+                                timeout[0].cancel(false);
+                            }
+                        }
+                        publication.report(index, new Delivery(entry.name,
+                                millisSince(publishNanos), false, error));
+                    }
+                }
+            });
+
+            synchronized (timeout) {
+                if (!reported.get()) {
+                    timeout[0] = mWatchdog.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (reported.compareAndSet(false, true)) {
+                                delivery.cancel(true);
+                                publication.report(index, new Delivery(entry.name,
+                                        millisSince(publishNanos), true, null));
+                            }
+                        }
+                    }, entry.timeoutMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops every thread, interrupting the consumers still running.  Nothing can be published
+     * after this.
+     */
+    synchronized void shutdownNow() {
+        for (Entry<E> entry : mEntries) {
+            entry.executor.shutdownNow();
+        }
+        mWatchdog.shutdownNow();
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Collects the deliveries of one event, and tells the listener once they're all in.
+     */
+    private static final class Publication<E> {
+        private final E mEvent;
+        private final Delivery[] mDeliveries;
+        private final AtomicInteger mPending;
+        private final Listener<E> mListener;
+
+        Publication(E event, int consumers, Listener<E> listener) {
+            mEvent = event;
+            mDeliveries = new Delivery[consumers];
+            mPending = new AtomicInteger(consumers);
+            mListener = listener;
+        }
+
+        void report(int index, Delivery delivery) {
+            synchronized (mDeliveries) {
+                mDeliveries[index] = delivery;
+            }
+            if (mPending.decrementAndGet() == 0) {
+                done();
+            }
+        }
+
+        void done() {
+            if (mListener != null) {
+                List<Delivery> deliveries;
+                synchronized (mDeliveries) {
+                    deliveries = Collections.unmodifiableList(Arrays.asList(mDeliveries.clone()));
+                }
+                mListener.onDelivered(mEvent, deliveries);
+            }
+        }
+    }
+
+    private static final class Entry<E> {
+        final String name;
+        final long timeoutMs;
+        final Consumer<E> consumer;
+        final ThreadPoolExecutor executor;
+
+        Entry(String name, long timeoutMs, Consumer<E> consumer, ThreadPoolExecutor executor) {
+            this.name = name;
+            this.timeoutMs = timeoutMs;
+            this.consumer = consumer;
+            this.executor = executor;
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String mName;
+
+        NamedThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, mName);
+            // Consumers refresh what the user sees, but never ahead of the UI.
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
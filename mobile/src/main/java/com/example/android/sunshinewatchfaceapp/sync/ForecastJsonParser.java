@@ -0,0 +1,276 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import android.content.ContentValues;
+import android.text.format.Time;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract;
+
+import org.json.JSONException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pull parser for the OpenWeatherMap daily forecast response.
+ *
+ * Instead of reading the whole body into a String and building an org.json object tree from it,
+ * this reads tokens off the response body as the sync engine receives it, and turns each
+ * element of the "list" array into a weather row as soon as it has been read.  The only objects
+ * kept alive are the rows themselves.
+ */
+class ForecastJsonParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    /**
+     * Everything we keep from one forecast response.  The weather rows do not carry a
+     * location key yet, since that is only known once the city has been added to the database.
+     */
+    static final class Forecast {
+        // The "cod" value sent by the server, or HTTP_OK if the response didn't carry one.
+        int messageCode = HttpURLConnection.HTTP_OK;
+        String cityName;
+        double cityLatitude;
+        double cityLongitude;
+        final List<ContentValues> days = new ArrayList<ContentValues>(14);
+    }
+
+    private ForecastJsonParser() {
+    }
+
+    /**
+     * Parses a forecast response from the given stream.  The stream is not closed.
+     *
+     * @param in the raw (already decoded) response body
+     * @param julianStartDay the local julian day the first element of the list refers to.  OWM
+     *                       sends the days in order starting with today, so each row's date is
+     *                       derived from its position.
+     * @return the parsed forecast
+     * @throws IOException if the stream could not be read
+     * @throws JSONException if the response isn't a forecast we understand, one which ends part
+     * way through included
+     */
+    static Forecast parse(InputStream in, int julianStartDay) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        Forecast forecast = new Forecast();
+        boolean sawCity = false;
+        boolean sawList = false;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    // OWM sends this one as a string on success and as a number on some errors,
+                    // nextInt() copes with both.
+                    forecast.messageCode = reader.nextInt();
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(reader, forecast);
+                    sawCity = true;
+                } else if (OWM_LIST.equals(name)) {
+                    readDays(reader, forecast, julianStartDay);
+                    sawList = true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | EOFException | IllegalStateException
+                | NumberFormatException e) {
+            // JsonReader reports a body which ends too soon as an EOFException.  It is the
+            // server's answer which is broken, not the network: a failure to read the body comes
+            // from the stream itself, and the sync engine tells the two apart.
+            throw asJsonException(e);
+        }
+
+        // An error response only carries a message code; leave it to the caller to act on it.
+        if (forecast.messageCode == HttpURLConnection.HTTP_OK && (!sawCity || !sawList)) {
+            throw new JSONException("Forecast response is missing the "
+                    + (sawCity ? OWM_LIST : OWM_CITY) + " element");
+        }
+        return forecast;
+    }
+
+    private static void readCity(JsonReader reader, Forecast forecast)
+            throws IOException, JSONException {
+        boolean sawCoord = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                forecast.cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                double[] coord = readCoord(reader);
+                forecast.cityLatitude = coord[0];
+                forecast.cityLongitude = coord[1];
+                sawCoord = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (forecast.cityName == null || !sawCoord) {
+            throw new JSONException("Incomplete " + OWM_CITY + " element");
+        }
+    }
+
+    private static double[] readCoord(JsonReader reader) throws IOException, JSONException {
+        double lat = Double.NaN;
+        double lon = Double.NaN;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_LATITUDE.equals(name)) {
+                lat = reader.nextDouble();
+            } else if (OWM_LONGITUDE.equals(name)) {
+                lon = reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (Double.isNaN(lat) || Double.isNaN(lon)) {
+            throw new JSONException("Incomplete " + OWM_COORD + " element");
+        }
+        return new double[]{lat, lon};
+    }
+
+    private static void readDays(JsonReader reader, Forecast forecast, int julianStartDay)
+            throws IOException, JSONException {
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for.  Since the days are sent in order and the first day is always the current
+        // day, we use the position to get a nice normalized UTC date for each row.
+        // Cheating to convert this to UTC time, which is what we want anyhow.
+        Time dayTime = new Time();
+        int i = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            ContentValues weatherValues = readDay(reader);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    dayTime.setJulianDay(julianStartDay + i));
+            forecast.days.add(weatherValues);
+            i++;
+        }
+        reader.endArray();
+    }
+
+    private static ContentValues readDay(JsonReader reader) throws IOException, JSONException {
+        ContentValues weatherValues = new ContentValues();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, reader.nextDouble());
+            } else if (OWM_HUMIDITY.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, reader.nextInt());
+            } else if (OWM_WINDSPEED.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, reader.nextDouble());
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, reader.nextDouble());
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                // Temperatures are in a child object called "temp".  Try not to name variables
+                // "temp" when working with temperature.  It confuses everybody.
+                readTemperature(reader, weatherValues);
+            } else if (OWM_WEATHER.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    readWeather(reader, weatherValues);
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!weatherValues.containsKey(WeatherContract.WeatherEntry.COLUMN_PRESSURE)
+                || !weatherValues.containsKey(WeatherContract.WeatherEntry.COLUMN_HUMIDITY)
+                || !weatherValues.containsKey(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED)
+                || !weatherValues.containsKey(WeatherContract.WeatherEntry.COLUMN_DEGREES)
+                || !weatherValues.containsKey(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP)
+                || !weatherValues.containsKey(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP)
+                || !weatherValues.containsKey(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC)
+                || !weatherValues.containsKey(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID)) {
+            throw new JSONException("Incomplete " + OWM_LIST + " element");
+        }
+        return weatherValues;
+    }
+
+    private static void readTemperature(JsonReader reader, ContentValues weatherValues)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MAX.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, reader.nextDouble());
+            } else if (OWM_MIN.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, reader.nextDouble());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readWeather(JsonReader reader, ContentValues weatherValues)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_DESCRIPTION.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, reader.nextString());
+            } else if (OWM_WEATHER_ID.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, reader.nextInt());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static JSONException asJsonException(Exception e) {
+        JSONException jsonException = new JSONException(e.getMessage());
+        jsonException.initCause(e);
+        return jsonException;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Keeps the {@link ForecastValidators} of the last stored forecast, one set per location setting.
+ * This is sync bookkeeping rather than a user preference, so it lives in its own preferences
+ * file instead of the default one.
+ */
+class ForecastValidatorStore {
+    private static final String PREFS_NAME = "forecast_validators";
+
+    private static final String KEY_URL = ".url";
+    private static final String KEY_ETAG = ".etag";
+    private static final String KEY_LAST_MODIFIED = ".last_modified";
+    private static final String KEY_BODY_HASH = ".body_hash";
+    private static final String KEY_JULIAN_DAY = ".julian_day";
+
+    private final SharedPreferences mPrefs;
+
+    ForecastValidatorStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the validators stored for the location, or null if there are none
+     */
+    ForecastValidators get(String locationSetting) {
+        String url = mPrefs.getString(locationSetting + KEY_URL, null);
+        if (url == null) {
+            return null;
+        }
+        return new ForecastValidators(url,
+                mPrefs.getString(locationSetting + KEY_ETAG, null),
+                mPrefs.getString(locationSetting + KEY_LAST_MODIFIED, null),
+                mPrefs.getString(locationSetting + KEY_BODY_HASH, null),
+                mPrefs.getInt(locationSetting + KEY_JULIAN_DAY, 0));
+    }
+
+    /**
+     * Stores the validators for the location.  This uses commit, so it should not be called from
+     * the UI thread.
+     */
+    void put(String locationSetting, ForecastValidators validators) {
+        mPrefs.edit()
+                .putString(locationSetting + KEY_URL, validators.url)
+                .putString(locationSetting + KEY_ETAG, validators.etag)
+                .putString(locationSetting + KEY_LAST_MODIFIED, validators.lastModified)
+                .putString(locationSetting + KEY_BODY_HASH, validators.bodyHash)
+                .putInt(locationSetting + KEY_JULIAN_DAY, validators.julianDay)
+                .commit();
+    }
+}
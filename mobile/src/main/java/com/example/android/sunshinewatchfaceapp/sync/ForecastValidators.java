@@ -0,0 +1,113 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+/**
+ * The HTTP validators (ETag / Last-Modified) and body hash of the last forecast we stored for a
+ * location.  They let a sync ask the server whether anything changed, and notice an identical
+ * body when the server doesn't support conditional requests, so that an unchanged forecast
+ * never reaches the database or any of the update broadcasts.  A body is hashed as it is
+ * parsed, so only a "not modified" answer saves the parse as well.
+ */
+class ForecastValidators {
+    static final String HEADER_ETAG = "ETag";
+    static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // The request these validators belong to.  A different URL (new units, a new lat/lon for
+    // the same location setting) means they no longer apply.
+    final String url;
+    final String etag;
+    final String lastModified;
+    final String bodyHash;
+    // The local julian day the stored rows were dated from.  The same body fetched on a later
+    // day maps to different dates, so it still has to be stored.
+    final int julianDay;
+
+    ForecastValidators(String url, String etag, String lastModified, String bodyHash,
+                       int julianDay) {
+        this.url = url;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.bodyHash = bodyHash;
+        this.julianDay = julianDay;
+    }
+
+    /**
+     * Builds the validators for a response we have just stored.
+     */
+    static ForecastValidators fromResponse(String url, HttpTransport.Response response,
+                                           String bodyHash, int julianDay) {
+        return new ForecastValidators(url,
+                response.getHeader(HEADER_ETAG),
+                response.getHeader(HEADER_LAST_MODIFIED),
+                bodyHash,
+                julianDay);
+    }
+
+    /**
+     * Whether these validators can be used for a request to the given URL on the given day.
+     */
+    boolean appliesTo(String requestUrl, int requestJulianDay) {
+        return url.equals(requestUrl) && julianDay == requestJulianDay;
+    }
+
+    /**
+     * Adds the headers that turn a request into a conditional one.
+     */
+    void addTo(Map<String, String> requestHeaders) {
+        if (etag != null) {
+            requestHeaders.put(HEADER_IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            requestHeaders.put(HEADER_IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+
+    boolean hasSameBody(String otherBodyHash) {
+        return bodyHash != null && bodyHash.equals(otherBodyHash);
+    }
+
+    /**
+     * Wraps a body so that it is hashed as it is read.
+     *
+     * @see #hash(DigestInputStream)
+     */
+    static DigestInputStream hashing(InputStream body) {
+        return new DigestInputStream(body, newDigest());
+    }
+
+    /**
+     * @return the hex encoded SHA-1 of what was read through the stream, that of the whole body
+     * once it has been read to the end
+     */
+    static String hash(DigestInputStream body) {
+        return hash(body.getMessageDigest());
+    }
+
+    private static String hash(MessageDigest digest) {
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-1.
+            throw new IllegalStateException(e);
+        }
+    }
+}
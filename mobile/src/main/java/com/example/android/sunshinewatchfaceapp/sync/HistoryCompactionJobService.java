@@ -0,0 +1,66 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compacts the forecast history once a day, while the device is idle and charging, see
+ * {@link WeatherContract.HistoryEntry}.
+ */
+public class HistoryCompactionJobService extends JobService {
+    private static final String LOG_TAG = HistoryCompactionJobService.class.getSimpleName();
+
+    static final int COMPACTION_JOB_ID = 3006;
+
+    /**
+     * Makes sure the compaction is scheduled.  Cheap enough to call on every launch.
+     */
+    static void ensureScheduled(Context context) {
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getId() == COMPACTION_JOB_ID) {
+                return;
+            }
+        }
+        JobInfo job = new JobInfo.Builder(COMPACTION_JOB_ID,
+                new ComponentName(context, HistoryCompactionJobService.class))
+                .setPeriodic(TimeUnit.DAYS.toMillis(1))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setPersisted(true)
+                .build();
+        if (jobScheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(LOG_TAG, "Could not schedule the history compaction");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                getContentResolver().call(WeatherContract.HistoryEntry.CONTENT_URI,
+                        WeatherContract.HistoryEntry.METHOD_COMPACT_HISTORY, null, null);
+                jobFinished(params, false);
+            }
+        }, "History compaction").start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The compaction is one transaction, so it either finishes or leaves nothing behind;
+        // the next run starts over.
+        return false;
+    }
+}
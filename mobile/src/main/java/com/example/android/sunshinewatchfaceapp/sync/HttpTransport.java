@@ -0,0 +1,399 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The one place the sync code talks HTTP.
+ *
+ * Every request gets strict connect, read and overall timeouts, asks for a gzip encoded body,
+ * and refuses bodies over a size limit.  The body is handed to the caller as a stream, to be
+ * read as the caller sees fit rather than copied into memory here.  Closing the response
+ * reads the body to the end and closes the stream rather than calling
+ * {@link HttpURLConnection#disconnect()}, which lets the platform keep the connection alive
+ * and hand it to the next request for the same host.  A connection is only torn down when a
+ * request fails part way through.
+ */
+class HttpTransport {
+    static final int DEFAULT_CONNECT_TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(15);
+    static final int DEFAULT_READ_TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(20);
+    static final int DEFAULT_TOTAL_TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(45);
+    // A 14 day forecast is a few KB; anything near this is not a forecast.
+    static final int DEFAULT_MAX_BODY_BYTES = 512 * 1024;
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+
+    private static HttpTransport sInstance;
+
+    private final int mConnectTimeoutMs;
+    private final int mReadTimeoutMs;
+    private final int mTotalTimeoutMs;
+    private final int mMaxBodyBytes;
+
+    /**
+     * The shared transport used by the sync code, so that all fetchers share one set of limits
+     * and one pool of kept-alive connections.
+     */
+    static synchronized HttpTransport getInstance() {
+        if (sInstance == null) {
+            sInstance = new HttpTransport(DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS,
+                    DEFAULT_TOTAL_TIMEOUT_MS, DEFAULT_MAX_BODY_BYTES);
+        }
+        return sInstance;
+    }
+
+    HttpTransport(int connectTimeoutMs, int readTimeoutMs, int totalTimeoutMs, int maxBodyBytes) {
+        mConnectTimeoutMs = connectTimeoutMs;
+        mReadTimeoutMs = readTimeoutMs;
+        mTotalTimeoutMs = totalTimeoutMs;
+        mMaxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * The outcome of one request.  Error statuses are returned rather than thrown.  The body is
+     * decoded as it is read, and is empty for responses that don't carry one (304, HEAD...).
+     *
+     * The caller reads the body and must close the response, which reads whatever is left of
+     * it so that the connection can be reused.  Reading the body fails if it runs past the
+     * size limit or the deadline, or turns out shorter than announced.
+     */
+    static final class Response implements Closeable {
+        final int code;
+        final InputStream body;
+        private final Map<String, List<String>> mHeaders;
+
+        // Per request timings, in milliseconds.
+        // From opening the connection until it is established (DNS, TCP and TLS).
+        final long connectMs;
+        // From sending the request until the status line arrived.
+        final long firstByteMs;
+        // From the status line until the last byte of the body was read.  Known once the
+        // response is closed.
+        long downloadMs;
+        // How many bytes came over the wire, before decoding.  Known once the response is
+        // closed.
+        long wireBytes;
+
+        /**
+         * A response whose body was already read, with its timings.
+         */
+        Response(int code, byte[] body, Map<String, List<String>> headers,
+                 long connectMs, long firstByteMs, long downloadMs, long wireBytes) {
+            this(code, new ByteArrayInputStream(body), headers, connectMs, firstByteMs);
+            this.downloadMs = downloadMs;
+            this.wireBytes = wireBytes;
+        }
+
+        private Response(int code, InputStream body, Map<String, List<String>> headers,
+                         long connectMs, long firstByteMs) {
+            this.code = code;
+            this.body = body;
+            mHeaders = headers;
+            this.connectMs = connectMs;
+            this.firstByteMs = firstByteMs;
+        }
+
+        /**
+         * @return the last value of the named header, or null.  Names are case insensitive.
+         */
+        String getHeader(String name) {
+            for (Map.Entry<String, List<String>> header : mHeaders.entrySet()) {
+                if (header.getKey() != null && header.getKey().equalsIgnoreCase(name)) {
+                    List<String> values = header.getValue();
+                    return values.isEmpty() ? null : values.get(values.size() - 1);
+                }
+            }
+            return null;
+        }
+
+        boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+
+    /**
+     * Thrown when a response body is larger than this transport accepts.
+     */
+    static class ResponseTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ResponseTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    Response get(URL url) throws IOException {
+        return get(url, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Performs a GET request and waits for the status line and headers.  The body is left for
+     * the caller to read.
+     *
+     * @param url the URL to fetch
+     * @param headers extra request headers, such as validators for a conditional request
+     * @return the response, whatever its status, to be closed by the caller
+     * @throws IOException if the server couldn't be reached or a timeout expired
+     */
+    Response get(URL url, Map<String, String> headers) throws IOException {
+        long startNanos = System.nanoTime();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        boolean handedOver = false;
+        try {
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(mConnectTimeoutMs);
+            connection.setReadTimeout(mReadTimeoutMs);
+            connection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            connection.connect();
+            long connectedNanos = System.nanoTime();
+
+            int code = connection.getResponseCode();
+            long firstByteNanos = System.nanoTime();
+            checkDeadline(startNanos, url);
+
+            InputStream wire = code >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getErrorStream() : connection.getInputStream();
+            CountingInputStream counted = new CountingInputStream(
+                    wire != null ? wire : new ByteArrayInputStream(new byte[0]),
+                    wire != null ? connection.getContentLength() : -1);
+            InputStream decoded = counted;
+            if (wire != null && ENCODING_GZIP.equalsIgnoreCase(
+                    connection.getHeaderField(HEADER_CONTENT_ENCODING))) {
+                decoded = new LazyGzipInputStream(counted);
+            }
+
+            BodyInputStream body = new BodyInputStream(decoded, counted, connection, url,
+                    startNanos, firstByteNanos);
+            Response response = new Response(code, body, connection.getHeaderFields(),
+                    TimeUnit.NANOSECONDS.toMillis(connectedNanos - startNanos),
+                    TimeUnit.NANOSECONDS.toMillis(firstByteNanos - connectedNanos));
+            body.mResponse = response;
+            handedOver = true;
+            return response;
+        } finally {
+            if (!handedOver) {
+                // Don't hand a connection in an unknown state back to the pool.
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * The read timeout only bounds the gap between two reads, so a server trickling a byte at a
+     * time could still hold us forever.  This bounds the request as a whole.
+     */
+    private void checkDeadline(long startNanos, URL url) throws SocketTimeoutException {
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (elapsedMs > mTotalTimeoutMs) {
+            throw new SocketTimeoutException("Request to " + url.getHost() + " took more than "
+                    + mTotalTimeoutMs + "ms");
+        }
+    }
+
+    /**
+     * The decoded body of a response.  Reading it enforces the size limit and the deadline.
+     * Closing it reads what is left, and hands the connection back to the pool if the body was
+     * complete or tears it down if not.
+     */
+    private class BodyInputStream extends FilterInputStream {
+        private final CountingInputStream mWire;
+        private final HttpURLConnection mConnection;
+        private final URL mUrl;
+        private final long mStartNanos;
+        private final long mFirstByteNanos;
+        Response mResponse;
+        private long mCount;
+        private boolean mEnded;
+        private boolean mClosed;
+
+        BodyInputStream(InputStream decoded, CountingInputStream wire,
+                        HttpURLConnection connection, URL url, long startNanos,
+                        long firstByteNanos) {
+            super(decoded);
+            mWire = wire;
+            mConnection = connection;
+            mUrl = url;
+            mStartNanos = startNanos;
+            mFirstByteNanos = firstByteNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mEnded) {
+                return -1;
+            }
+            int b = super.read();
+            onRead(b == -1 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (mEnded) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, length);
+            onRead(read);
+            return read;
+        }
+
+        private void onRead(int read) throws IOException {
+            if (read == -1) {
+                mWire.checkComplete();
+                mEnded = true;
+                return;
+            }
+            mCount += read;
+            if (mCount > mMaxBodyBytes) {
+                throw new ResponseTooLargeException("Response from " + mUrl.getHost()
+                        + " is larger than " + mMaxBodyBytes + " bytes");
+            }
+            checkDeadline(mStartNanos, mUrl);
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // Read rather than skip, so that the checks see every byte.
+            byte[] buffer = new byte[(int) Math.min(count, 8 * 1024)];
+            int read = read(buffer, 0, buffer.length);
+            return read == -1 ? 0 : read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            boolean reusable = false;
+            try {
+                byte[] buffer = new byte[8 * 1024];
+                while (read(buffer, 0, buffer.length) != -1) {
+                    // Read what the caller left to the end, so that the connection can be kept
+                    // alive.
+                }
+                reusable = true;
+            } catch (IOException e) {
+                // The rest of the body broke the same limits; the connection is dropped instead.
+            } finally {
+                mResponse.downloadMs =
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mFirstByteNanos);
+                mResponse.wireBytes = mWire.count;
+                try {
+                    super.close();
+                } finally {
+                    if (!reusable) {
+                        // Don't hand a connection in an unknown state back to the pool.
+                        mConnection.disconnect();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes a gzip body once there is one.  The gzip header is only read by the first read,
+     * rather than up front, so that an empty body which still names the encoding (a 304 or a
+     * 204 may) reads as empty instead of failing as a broken gzip stream.
+     */
+    private static class LazyGzipInputStream extends FilterInputStream {
+        private boolean mStarted;
+
+        LazyGzipInputStream(InputStream wire) {
+            super(new PushbackInputStream(wire));
+        }
+
+        @Override
+        public int read() throws IOException {
+            start();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            start();
+            return super.read(buffer, offset, length);
+        }
+
+        private void start() throws IOException {
+            if (mStarted) {
+                return;
+            }
+            mStarted = true;
+            PushbackInputStream wire = (PushbackInputStream) in;
+            int first = wire.read();
+            if (first != -1) {
+                wire.unread(first);
+                in = new GZIPInputStream(wire);
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read off the wire, and notices a body that is shorter than the length
+     * the server announced.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final long mExpectedLength;
+        long count;
+
+        CountingInputStream(InputStream in, long expectedLength) {
+            super(in);
+            mExpectedLength = expectedLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        void checkComplete() throws EOFException {
+            if (mExpectedLength >= 0 && count < mExpectedLength) {
+                throw new EOFException("Response body truncated: got " + count + " of "
+                        + mExpectedLength + " bytes");
+            }
+        }
+    }
+}
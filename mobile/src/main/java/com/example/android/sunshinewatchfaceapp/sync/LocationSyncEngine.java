@@ -0,0 +1,509 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches and parses the forecasts for many locations at once.
+ *
+ * Requests run on a small bounded worker pool, and a per-host limit keeps us from opening more
+ * than a few connections to the same server however many locations the user follows.  The
+ * engine only fetches and parses: writing the results is left to the caller, so that a whole
+ * sync pass can be committed in one go.
+ *
+ * A request which fails because of the server (it can't be reached, times out or answers with
+ * a server error) is retried a couple of times after a jittered, growing delay.  Every endpoint
+ * also has a {@link CircuitBreaker}, so that once a server is known to be down the remaining
+ * requests fail straight away instead of each waiting for its own timeouts.
+ */
+class LocationSyncEngine {
+    static final int DEFAULT_MAX_WORKERS = 4;
+    static final int DEFAULT_MAX_REQUESTS_PER_HOST = 2;
+
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30;
+
+    // Tries per request, the first one included.
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long RETRY_BASE_MS = TimeUnit.SECONDS.toMillis(2);
+    // Retries wait on a worker thread with the sync holding a wakelock, so not for long.  A
+    // server asking for more than this with Retry-After opens its breaker instead.
+    private static final long RETRY_MAX_MS = TimeUnit.SECONDS.toMillis(15);
+
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    private static LocationSyncEngine sInstance;
+
+    private final HttpTransport mTransport;
+    private final ThreadPoolExecutor mExecutor;
+    private final int mMaxRequestsPerHost;
+    private final Map<String, Semaphore> mHostPermits = new HashMap<String, Semaphore>();
+    private final int mMaxAttempts;
+    private final ExponentialBackoff mRetryBackoff;
+    // Breakers for callers which don't keep their own.
+    private final CircuitBreaker.Store mBreakers = new MemoryBreakerStore();
+
+    /**
+     * Turns a response body into whatever the caller wants to commit.  Runs on a worker thread,
+     * and is handed the body as it arrives: the parser need not read it to the end, nor close
+     * it.
+     */
+    interface BodyParser<T> {
+        T parse(InputStream body) throws Exception;
+    }
+
+    /**
+     * One location to fetch.
+     */
+    static final class Request {
+        final String locationSetting;
+        final URL url;
+        // The validators of the forecast we already have for this request, or null.
+        final ForecastValidators validators;
+
+        Request(String locationSetting, URL url, ForecastValidators validators) {
+            this.locationSetting = locationSetting;
+            this.url = url;
+            this.validators = validators;
+        }
+    }
+
+    /**
+     * The outcome for one location.  Exactly one of these holds: {@link #error} is set, the
+     * forecast is {@link #isUnchanged() unchanged}, or {@link #parsed} is set.
+     */
+    static final class Result<T> {
+        final Request request;
+        HttpTransport.Response response;
+        String bodyHash;
+        T parsed;
+        Exception error;
+        boolean notModified;
+        boolean sameBody;
+        // How many times the request went out.  0 if the endpoint's breaker was open throughout.
+        int attempts;
+        // When it failed with the endpoint's breaker left open, when it may be tried again.
+        long retryAtMs;
+        // How long the parser took, on a worker thread.  It reads the body as it arrives, so this
+        // includes waiting for the network.
+        long parseMs;
+
+        Result(Request request) {
+            this.request = request;
+        }
+
+        boolean isUnchanged() {
+            return notModified || sameBody;
+        }
+    }
+
+    static synchronized LocationSyncEngine getInstance() {
+        if (sInstance == null) {
+            sInstance = new LocationSyncEngine(HttpTransport.getInstance(),
+                    DEFAULT_MAX_WORKERS, DEFAULT_MAX_REQUESTS_PER_HOST);
+        }
+        return sInstance;
+    }
+
+    LocationSyncEngine(HttpTransport transport, int maxWorkers, int maxRequestsPerHost) {
+        this(transport, maxWorkers, maxRequestsPerHost, DEFAULT_MAX_ATTEMPTS,
+                new ExponentialBackoff(RETRY_BASE_MS, RETRY_MAX_MS, new Random()));
+    }
+
+    LocationSyncEngine(HttpTransport transport, int maxWorkers, int maxRequestsPerHost,
+                       int maxAttempts, ExponentialBackoff retryBackoff) {
+        mTransport = transport;
+        mMaxRequestsPerHost = maxRequestsPerHost;
+        mMaxAttempts = maxAttempts;
+        mRetryBackoff = retryBackoff;
+        // Workers go away when idle, a sync only happens every few hours.
+        mExecutor = new ThreadPoolExecutor(maxWorkers, maxWorkers,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Fetches and parses every request, with circuit breakers kept in memory by the engine.
+     *
+     * @see #fetchAll(List, CircuitBreaker.Store, BodyParser)
+     */
+    <T> List<Result<T>> fetchAll(List<Request> requests, BodyParser<T> parser)
+            throws InterruptedException {
+        return fetchAll(requests, mBreakers, parser);
+    }
+
+    /**
+     * Fetches and parses every request, and waits for all of them to finish.
+     *
+     * @param breakers where the circuit breakers of the endpoints are kept.  They are read before
+     *                 the first request and written back once all are done, on the calling
+     *                 thread.
+     * @return one result per request, in request order
+     * @throws InterruptedException if the calling thread was interrupted while waiting.  Requests
+     * still in flight are cancelled.
+     */
+    <T> List<Result<T>> fetchAll(List<Request> requests, CircuitBreaker.Store breakers,
+                                 final BodyParser<T> parser) throws InterruptedException {
+        final Map<String, CircuitBreaker> endpointBreakers = new HashMap<String, CircuitBreaker>();
+        for (Request request : requests) {
+            String endpoint = endpointOf(request.url);
+            if (!endpointBreakers.containsKey(endpoint)) {
+                CircuitBreaker breaker = breakers.get(endpoint);
+                endpointBreakers.put(endpoint, breaker != null ? breaker : new CircuitBreaker());
+            }
+        }
+        try {
+            return fetchAll(requests, endpointBreakers, parser);
+        } finally {
+            for (Map.Entry<String, CircuitBreaker> entry : endpointBreakers.entrySet()) {
+                breakers.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private <T> List<Result<T>> fetchAll(List<Request> requests,
+                                         final Map<String, CircuitBreaker> endpointBreakers,
+                                         final BodyParser<T> parser)
+            throws InterruptedException {
+        List<Future<Result<T>>> futures = new ArrayList<Future<Result<T>>>(requests.size());
+        for (final Request request : requests) {
+            futures.add(mExecutor.submit(new Callable<Result<T>>() {
+                @Override
+                public Result<T> call() {
+                    return fetch(request, endpointBreakers.get(endpointOf(request.url)), parser);
+                }
+            }));
+        }
+
+        List<Result<T>> results = new ArrayList<Result<T>>(requests.size());
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    // fetch() catches everything it expects, so this is a bug; report it against
+                    // the location rather than failing the whole pass.
+                    Result<T> result = new Result<T>(requests.get(i));
+                    result.error = e.getCause() instanceof Exception
+                            ? (Exception) e.getCause() : e;
+                    results.add(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<Result<T>> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private <T> Result<T> fetch(Request request, CircuitBreaker breaker, BodyParser<T> parser) {
+        Result<T> result = new Result<T>(request);
+        try {
+            send(request, breaker, parser, result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.error = e;
+        } catch (Exception e) {
+            result.error = e;
+        }
+        if (result.error != null && breaker.isOpen()) {
+            result.retryAtMs = breaker.getOpenUntilMs();
+        }
+        return result;
+    }
+
+    /**
+     * Sends the request and reads its body, retrying while the failure is the server's and its
+     * breaker allows.  The body is read while the host's permit is held, since the download is
+     * the longest part of a request, and a body cut short or too slow to arrive is a failure
+     * like any other.  The response is closed once its body has been read.
+     *
+     * @throws CircuitOpenException if the endpoint's breaker is open
+     * @throws IOException if the last try could not reach the server, read the whole body or
+     * was still a server error
+     * @throws Exception whatever the parser throws, or an IOException for an answer which is
+     * no use to us: a client error, an empty body or one larger than the transport accepts
+     */
+    private <T> void send(Request request, CircuitBreaker breaker, BodyParser<T> parser,
+                          Result<T> result) throws Exception {
+        Map<String, String> headers = new HashMap<String, String>();
+        if (request.validators != null) {
+            request.validators.addTo(headers);
+        }
+        Semaphore permits = permitsFor(request.url.getHost());
+        while (true) {
+            long retryAfterMs = 0;
+            // The breaker is asked once it's our turn, and told how it went before the next
+            // request gets its turn, so that requests queued behind the ones which opened it
+            // don't go out anyway.
+            permits.acquire();
+            try {
+                if (!breaker.allowRequest()) {
+                    throw new CircuitOpenException(endpointOf(request.url),
+                            breaker.getOpenUntilMs());
+                }
+                result.attempts++;
+                boolean reported = false;
+                try {
+                    HttpTransport.Response response = null;
+                    IOException failure = null;
+                    try {
+                        response = mTransport.get(request.url, headers);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                    result.response = response;
+
+                    if (response != null) {
+                        try {
+                            if (isServerFailure(response.code)) {
+                                retryAfterMs = parseRetryAfterMs(
+                                        response.getHeader(HEADER_RETRY_AFTER));
+                            } else {
+                                try {
+                                    failure = read(request, response, parser, result);
+                                } catch (Exception e) {
+                                    // The server is up, it's the answer we can't use.
+                                    breaker.recordSuccess();
+                                    reported = true;
+                                    throw e;
+                                }
+                                if (failure == null) {
+                                    breaker.recordSuccess();
+                                    reported = true;
+                                    return;
+                                }
+                            }
+                        } finally {
+                            response.close();
+                        }
+                    }
+                    // Asked to wait longer than we would hold the sync for, leave the server
+                    // alone.
+                    boolean tooLong = retryAfterMs > mRetryBackoff.getMaxMs();
+                    breaker.recordFailure(tooLong ? retryAfterMs : 0);
+                    reported = true;
+                    if (tooLong || result.attempts >= mMaxAttempts) {
+                        if (failure != null) {
+                            throw failure;
+                        }
+                        throw new IOException("Forecast request for " + request.locationSetting
+                                + " failed with HTTP " + response.code);
+                    }
+                } finally {
+                    if (!reported) {
+                        // Something unexpected: we learnt nothing about the server.
+                        breaker.abandonRequest();
+                    }
+                }
+            } finally {
+                permits.release();
+            }
+            Thread.sleep(Math.max(retryAfterMs, mRetryBackoff.delayMs(result.attempts - 1)));
+        }
+    }
+
+    /**
+     * Parses the body of a response which wasn't a server error, as it arrives.  The body is
+     * hashed on the way to the parser.  A server which ignores the validators but sends the same
+     * forecast again is only caught once the body has been read, so its forecast is parsed for
+     * nothing and thrown away; that is the price of not holding every body in memory.
+     *
+     * @return the failure to read the body off the wire, which is the server's, or null if the
+     * response was read
+     * @throws Exception anything wrong with the answer itself
+     */
+    private <T> IOException read(Request request, HttpTransport.Response response,
+                                 BodyParser<T> parser, Result<T> result) throws Exception {
+        if (request.validators != null
+                && response.code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            result.notModified = true;
+            return null;
+        }
+        if (!response.isSuccessful()) {
+            throw new IOException("Forecast request for " + request.locationSetting
+                    + " failed with HTTP " + response.code);
+        }
+
+        WireInputStream wire = new WireInputStream(response.body);
+        try {
+            PushbackInputStream body = new PushbackInputStream(wire);
+            int first = body.read();
+            if (first == -1) {
+                throw new IOException("Empty forecast response for " + request.locationSetting);
+            }
+            body.unread(first);
+
+            DigestInputStream hashed = ForecastValidators.hashing(body);
+            long parseStart = System.nanoTime();
+            T parsed = parser.parse(hashed);
+            result.parseMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - parseStart);
+            // The parser may stop at the end of the JSON, the hash is of the whole body.
+            byte[] buffer = new byte[1024];
+            while (hashed.read(buffer) != -1) {
+                // Only hashing what's left.
+            }
+
+            result.bodyHash = ForecastValidators.hash(hashed);
+            if (request.validators != null && request.validators.hasSameBody(result.bodyHash)) {
+                result.sameBody = true;
+                return null;
+            }
+            result.parsed = parsed;
+            return null;
+        } catch (Exception e) {
+            // The parser may have wrapped it, or choked on the half of the body it got.
+            if (wire.failure instanceof HttpTransport.ResponseTooLargeException) {
+                throw wire.failure;
+            }
+            if (wire.failure != null) {
+                return wire.failure;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return what a circuit breaker guards: the server and the path on it, whatever the query
+     */
+    static String endpointOf(URL url) {
+        return url.getAuthority() + url.getPath();
+    }
+
+    /**
+     * @return whether the response says the server can't serve us right now, as opposed to a
+     * problem with the request itself
+     */
+    private static boolean isServerFailure(int code) {
+        return code >= 500 || code == 429 || code == HttpURLConnection.HTTP_CLIENT_TIMEOUT;
+    }
+
+    /**
+     * @return the wait a Retry-After header asks for, or 0 if there is none we understand.  Only
+     * the delay-seconds form is supported; the date form is rare enough to be ignored.
+     */
+    static long parseRetryAfterMs(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private Semaphore permitsFor(String host) {
+        synchronized (mHostPermits) {
+            Semaphore permits = mHostPermits.get(host);
+            if (permits == null) {
+                permits = new Semaphore(mMaxRequestsPerHost, true);
+                mHostPermits.put(host, permits);
+            }
+            return permits;
+        }
+    }
+
+    /**
+     * Thrown for a request which was not sent because the endpoint's breaker is open.
+     */
+    static class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final long retryAtMs;
+
+        CircuitOpenException(String endpoint, long retryAtMs) {
+            super("Not fetching from " + endpoint + ", it is failing");
+            this.retryAtMs = retryAtMs;
+        }
+    }
+
+    /**
+     * Remembers a failure to read the body off the wire, so that it can be told apart from the
+     * parser's complaints about what it read.
+     */
+    private static class WireInputStream extends FilterInputStream {
+        IOException failure;
+
+        WireInputStream(InputStream body) {
+            super(body);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                return super.read(buffer, offset, length);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            try {
+                return super.skip(count);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+        }
+    }
+
+    private static class MemoryBreakerStore implements CircuitBreaker.Store {
+        private final Map<String, CircuitBreaker> mBreakers = new HashMap<String, CircuitBreaker>();
+
+        @Override
+        public synchronized CircuitBreaker get(String endpoint) {
+            return mBreakers.get(endpoint);
+        }
+
+        @Override
+        public synchronized void put(String endpoint, CircuitBreaker breaker) {
+            mBreakers.put(endpoint, breaker);
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "LocationSync #" + mCount.incrementAndGet());
+            // These only do network and parsing work for the sync adapter.
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
@@ -8,26 +8,35 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentSender;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
-import android.content.SyncRequest;
 import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.PowerManager;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
+import android.support.annotation.VisibleForTesting;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
+import android.text.TextUtils;
 import android.text.format.Time;
 import android.util.Log;
 
@@ -36,55 +45,83 @@ import com.example.android.sunshinewatchfaceapp.BuildConfig;
 import com.example.android.sunshinewatchfaceapp.MainActivity;
 import com.example.android.sunshinewatchfaceapp.R;
 import com.example.android.sunshinewatchfaceapp.Utility;
+import com.example.android.sunshinewatchfaceapp.data.LocationIdCache;
 import com.example.android.sunshinewatchfaceapp.data.WeatherContract;
 import com.example.android.sunshinewatchfaceapp.muzei.WeatherMuzeiSource;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener{
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
-    // Interval at which to sync with the weather, in seconds.
-    // 60 seconds (1 minute) * 180 = 3 hours
-    public static final int SYNC_INTERVAL = 60 * 180;
-    public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
-
-
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    // How many days of forecast we ask for.
+    private static final int FORECAST_DAYS = 14;
+    // Where the forecasts come from.  Tests point this at a local stand-in for the server.
+    private static volatile String sForecastBaseUrl = BuildConfig.FORECAST_BASE_URL;
+
+    // How long the Wearable API gets to take the weather for the watch face.
+    private static final long DATA_ITEM_TIMEOUT_SECONDS = 5;
+
+    // How long each consumer of a committed forecast gets before it is given up on.
+    private static final long WATCH_FACE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+    private static final long WIDGETS_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final long MUZEI_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final long NOTIFICATION_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+    // The notification's artwork download gets most of that; past this it uses the built-in art.
+    private static final long NOTIFICATION_ART_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(20);
+    // The fan-out wakelock outlives the longest timeout by this much, in case a release is lost.
+    private static final long FAN_OUT_WAKELOCK_SLACK_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final String FAN_OUT_WAKELOCK_TAG = "Sunshine:ForecastFanOut";
+
+
+    // The sync metrics column of every SyncTrace stage, in stage order.
+    private static final String[] STAGE_COLUMNS = new String[] {
+            WeatherContract.SyncMetricsEntry.COLUMN_CONNECT_MS,
+            WeatherContract.SyncMetricsEntry.COLUMN_FIRST_BYTE_MS,
+            WeatherContract.SyncMetricsEntry.COLUMN_DOWNLOAD_MS,
+            WeatherContract.SyncMetricsEntry.COLUMN_PARSE_MS,
+            WeatherContract.SyncMetricsEntry.COLUMN_FETCH_MS,
+            WeatherContract.SyncMetricsEntry.COLUMN_ADD_LOCATION_MS,
+            WeatherContract.SyncMetricsEntry.COLUMN_BULK_INSERT_MS,
+            WeatherContract.SyncMetricsEntry.COLUMN_DELETE_MS,
+            WeatherContract.SyncMetricsEntry.COLUMN_WATCH_FACE_MS,
+            WeatherContract.SyncMetricsEntry.COLUMN_WIDGETS_MS,
+            WeatherContract.SyncMetricsEntry.COLUMN_MUZEI_MS,
+            WeatherContract.SyncMetricsEntry.COLUMN_NOTIFICATION_MS
     };
 
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
+    // The SyncTrace stage of every fan-out consumer, in the order they are added.
+    private static final int[] FAN_OUT_STAGES = new int[] {
+            SyncTrace.WATCH_FACE,
+            SyncTrace.WIDGETS,
+            SyncTrace.MUZEI,
+            SyncTrace.NOTIFICATION
+    };
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
@@ -101,13 +138,54 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 
     private GoogleApiClient mGoogleApiClient;
     private boolean mResolvingError = false;
+    // Keeps SyncScheduler told whether a watch is connected, so no sync has to ask.
+    private final NodeApi.NodeListener mNodeListener = new NodeApi.NodeListener() {
+        @Override
+        public void onPeerConnected(Node peer) {
+            SyncScheduler.setWatchConnected(getContext(), true);
+        }
+
+        @Override
+        public void onPeerDisconnected(Node peer) {
+            // Another watch may still be connected.
+            recordWatchConnected();
+        }
+    };
     private static final String WEATHER_INFO_PATH = "/weatherinfo";
     private static final String TEMP_HIGH_KEY = "high_temp";
     private static final String TEMP_LOW_KEY = "low_temp";
     private static final String WEATHER_ID_KEY = "weather_id";
+    // Guards the watch face's values, which the sync sets and the fan-out's watch face thread
+    // marks sent.
+    private final Object mWatchfaceLock = new Object();
     private double mWatchfaceHigh ;
     private double mWatchfaceLow;
     private int mWeatherId;
+    // Whether the watch face hasn't been sent the values above yet.  Cleared by the fan-out once
+    // the Wearable API has them.
+    private boolean mWatchfaceStale;
+    private final FanOutDispatcher<ForecastCommitted> mFanOut;
+
+    /**
+     * Published once a sync has committed its forecasts, for everything that shows them.
+     */
+    static final class ForecastCommitted {
+        final int changedRows;
+        // Whether today's weather for the preferred location still has to go to the watch face.
+        final boolean watchFaceStale;
+        final double watchFaceHigh;
+        final double watchFaceLow;
+        final int watchFaceWeatherId;
+
+        ForecastCommitted(int changedRows, boolean watchFaceStale, double watchFaceHigh,
+                          double watchFaceLow, int watchFaceWeatherId) {
+            this.changedRows = changedRows;
+            this.watchFaceStale = watchFaceStale;
+            this.watchFaceHigh = watchFaceHigh;
+            this.watchFaceLow = watchFaceLow;
+            this.watchFaceWeatherId = watchFaceWeatherId;
+        }
+    }
 
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
@@ -120,311 +198,497 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         if (!mResolvingError) {
             mGoogleApiClient.connect();
         }
+        mFanOut = createFanOut();
+    }
+
+    /**
+     * Sets up the consumers of a committed forecast, in the order of FAN_OUT_STAGES.  Each runs
+     * on its own thread, so that a slow artwork download only holds up the notification.
+     */
+    private FanOutDispatcher<ForecastCommitted> createFanOut() {
+        FanOutDispatcher<ForecastCommitted> fanOut = new FanOutDispatcher<ForecastCommitted>();
+        fanOut.addConsumer("watch face", WATCH_FACE_TIMEOUT_MS,
+                new FanOutDispatcher.Consumer<ForecastCommitted>() {
+                    @Override
+                    public void onEvent(ForecastCommitted event) {
+                        // Also retries a send that found no watch connected last time.
+                        if (event.watchFaceStale) {
+                            sendWeatherInfoToWatchface(event);
+                        }
+                    }
+                });
+        fanOut.addConsumer("widgets", WIDGETS_TIMEOUT_MS,
+                new FanOutDispatcher.Consumer<ForecastCommitted>() {
+                    @Override
+                    public void onEvent(ForecastCommitted event) {
+                        if (event.changedRows > 0) {
+                            updateWidgets();
+                        }
+                    }
+                });
+        fanOut.addConsumer("muzei", MUZEI_TIMEOUT_MS,
+                new FanOutDispatcher.Consumer<ForecastCommitted>() {
+                    @Override
+                    public void onEvent(ForecastCommitted event) {
+                        if (event.changedRows > 0) {
+                            updateMuzei();
+                        }
+                    }
+                });
+        fanOut.addConsumer("notification", NOTIFICATION_TIMEOUT_MS,
+                new FanOutDispatcher.Consumer<ForecastCommitted>() {
+                    @Override
+                    public void onEvent(ForecastCommitted event) {
+                        if (event.changedRows > 0) {
+                            notifyWeather();
+                        }
+                    }
+                });
+        return fanOut;
     }
 
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-
-        // We no longer need just the location String, but also potentially the latitude and
-        // longitude, in case we are syncing based on a new Place Picker API result.
-        Context context = getContext();
-        String locationQuery = Utility.getPreferredLocation(context);
-        String locationLatitude = String.valueOf(Utility.getLocationLatitude(context));
-        String locationLongitude = String.valueOf(Utility.getLocationLongitude(context));
-
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
-
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
-
+        SyncTrace trace = new SyncTrace();
+        ForecastCommitted committed = null;
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String LAT_PARAM = "lat";
-            final String LON_PARAM = "lon";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
-
-            // Instead of always building the query based off of the location string, we want to
-            // potentially build a query using a lat/lon value. This will be the case when we are
-            // syncing based off of a new location from the Place Picker API. So we need to check
-            // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
-            // service may not understand the location address provided by the Place Picker API
-            // and the user could end up with no weather! The horror!
-            if (Utility.isLocationLatLonAvailable(context)) {
-                uriBuilder.appendQueryParameter(LAT_PARAM, locationLatitude)
-                        .appendQueryParameter(LON_PARAM, locationLongitude);
+            committed = syncLocations(syncResult, trace);
+        } finally {
+            trace.finish();
+            if (committed != null) {
+                // The metrics are recorded once the consumers are done.
+                publishForecastCommitted(committed, trace);
             } else {
-                uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
-            }
-
-            Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+                recordSyncMetrics(trace);
             }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
-            }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
+            // Whatever happened, the next sync is scheduled from here, and not before the
+            // forecast server may be tried again.
+            Context context = getContext();
+            SyncScheduler.scheduleNextSync(context,
+                    TimeUnit.SECONDS.toMillis(syncResult.delayUntil));
         }
-        return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * @return what to tell the consumers of the forecast, or null if there's nothing new for them
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
+    private ForecastCommitted syncLocations(SyncResult syncResult, SyncTrace trace) {
+        // The preferred location comes first, followed by every other location the user saved.
+        Context context = getContext();
+        String preferredLocation = Utility.getPreferredLocation(context);
+        List<String> locations = new ArrayList<String>();
+        locations.add(preferredLocation);
+        locations.addAll(Utility.getSavedLocations(context));
 
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
 
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
 
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
+        Time dayTime = new Time();
+        dayTime.setToNow();
 
-        final String OWM_MESSAGE_CODE = "cod";
+        // we start at the day returned by local time. Otherwise this is a mess.
+        final int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
 
+        ForecastValidatorStore validatorStore = new ForecastValidatorStore(context);
+        List<LocationSyncEngine.Request> requests =
+                new ArrayList<LocationSyncEngine.Request>(locations.size());
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-            Context context = getContext();
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
+            for (String locationSetting : locations) {
+                // Only the preferred location can come from the Place Picker, so it is the only
+                // one which may have a lat/lon.
+                URL url = buildForecastUrl(locationSetting, locationSetting.equals(preferredLocation)
+                        && Utility.isLocationLatLonAvailable(context));
+
+                // If we already stored this exact request today, ask the server whether anything
+                // changed since.  Without stored rows a "not modified" would leave us with nothing.
+                ForecastValidators validators = validatorStore.get(locationSetting);
+                if (validators != null && (!validators.appliesTo(url.toString(), julianStartDay)
+                        || !hasStoredForecast(locationSetting))) {
+                    validators = null;
                 }
+                requests.add(new LocationSyncEngine.Request(locationSetting, url, validators));
             }
+        } catch (MalformedURLException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            setLocationStatus(context, LOCATION_STATUS_SERVER_DOWN);
+            return null;
+        }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+        // Fetch and parse every location at once.  The engine bounds how many requests are in
+        // flight, overall and per host, and leaves the writing to us.
+        List<LocationSyncEngine.Result<ForecastJsonParser.Forecast>> results;
+        long fetchStart = SyncTrace.begin();
+        try {
+            results = LocationSyncEngine.getInstance().fetchAll(requests,
+                    new CircuitBreakerStore(context),
+                    new LocationSyncEngine.BodyParser<ForecastJsonParser.Forecast>() {
+                        @Override
+                        public ForecastJsonParser.Forecast parse(InputStream body)
+                                throws IOException, JSONException {
+                            return ForecastJsonParser.parse(body, julianStartDay);
+                        }
+                    });
+        } catch (InterruptedException e) {
+            // The sync was cancelled; we'll catch up on the next one.
+            Log.d(LOG_TAG, "Sync cancelled");
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        trace.end(SyncTrace.FETCH, fetchStart);
 
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
+        return storeForecasts(results, preferredLocation, julianStartDay, validatorStore,
+                syncResult, trace);
+    }
 
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+    /**
+     * Points the sync at another forecast server, one which answers like OpenWeatherMap's daily
+     * forecast API.
+     */
+    @VisibleForTesting
+    static void setForecastBaseUrl(String baseUrl) {
+        sForecastBaseUrl = baseUrl;
+    }
 
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
+    /**
+     * Builds the OpenWeatherMap query for a location.
+     *
+     * @param useLatLon whether to ask for the Place Picker lat/lon instead of the location string
+     */
+    private URL buildForecastUrl(String locationQuery, boolean useLatLon)
+            throws MalformedURLException {
+        Context context = getContext();
+        String format = "json";
+        String units = "metric";
+        int numDays = FORECAST_DAYS;
+
+        // Construct the URL for the OpenWeatherMap query
+        // Possible parameters are avaiable at OWM's forecast API page, at
+        // http://openweathermap.org/API#forecast
+        final String QUERY_PARAM = "q";
+        final String LAT_PARAM = "lat";
+        final String LON_PARAM = "lon";
+        final String FORMAT_PARAM = "mode";
+        final String UNITS_PARAM = "units";
+        final String DAYS_PARAM = "cnt";
+        final String APPID_PARAM = "APPID";
+
+        Uri.Builder uriBuilder = Uri.parse(sForecastBaseUrl).buildUpon();
+
+        // Instead of always building the query based off of the location string, we want to
+        // potentially build a query using a lat/lon value. This will be the case when we are
+        // syncing based off of a new location from the Place Picker API. So we need to check
+        // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
+        // service may not understand the location address provided by the Place Picker API
+        // and the user could end up with no weather! The horror!
+        if (useLatLon) {
+            uriBuilder.appendQueryParameter(LAT_PARAM,
+                    String.valueOf(Utility.getLocationLatitude(context)))
+                    .appendQueryParameter(LON_PARAM,
+                            String.valueOf(Utility.getLocationLongitude(context)));
+        } else {
+            uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
+        }
 
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
+        Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
+                .appendQueryParameter(UNITS_PARAM, units)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                .build();
 
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
+        return new URL(builtUri.toString());
+    }
 
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
+    /**
+     * Stores the forecasts of one sync pass.
+     *
+     * Every changed location is written by a single batch, which adds the new locations, merges
+     * the forecasts with the stored rows, writing only the days that differ, and archives the
+     * past days, all in one transaction; observers are notified once it is committed.  The
+     * widgets, Muzei and the notification are to be told once at the end, and only if a row
+     * changed; the watch face only when today's weather for the preferred location did.  Only
+     * the preferred location drives the location status shown in the settings.
+     *
+     * Failures are counted in the sync stats, which makes the framework retry with its own
+     * backoff.  If nothing could be fetched because the server's circuit breaker is open, the
+     * sync also asks the framework not to run again before the breaker lets requests through.
+     *
+     * @return what to tell the consumers of the forecast, or null if there's nothing new for them
+     */
+    private ForecastCommitted storeForecasts(
+            List<LocationSyncEngine.Result<ForecastJsonParser.Forecast>> results,
+            String preferredLocation,
+            int julianStartDay,
+            ForecastValidatorStore validatorStore,
+            SyncResult syncResult,
+            SyncTrace trace) {
+        Context context = getContext();
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
+        // we work exclusively in UTC
+        Time dayTime = new Time();
+
+        // The locations not known yet come first in the batch, so that the weather rows can
+        // refer back to them by index.
+        ArrayList<ContentProviderOperation> locationOperations =
+                new ArrayList<ContentProviderOperation>();
+        List<String> upsertedLocations = new ArrayList<String>();
+        ArrayList<ContentProviderOperation> weatherOperations =
+                new ArrayList<ContentProviderOperation>();
+        Uri weatherMergeUri = WeatherContract.WeatherEntry.buildWeatherMergeUri();
+        int unchangedCount = 0;
+        int failedCount = 0;
+        long retryAtMs = Long.MAX_VALUE;
+        List<LocationSyncEngine.Result<ForecastJsonParser.Forecast>> stored =
+                new ArrayList<LocationSyncEngine.Result<ForecastJsonParser.Forecast>>();
+
+        for (LocationSyncEngine.Result<ForecastJsonParser.Forecast> result : results) {
+            String locationSetting = result.request.locationSetting;
+            boolean preferred = locationSetting.equals(preferredLocation);
+
+            HttpTransport.Response response = result.response;
+            if (response != null) {
+                trace.addResponse(response);
+                Log.d(LOG_TAG, "Fetched " + locationSetting + ", " + response.wireBytes
+                        + " bytes: connect " + response.connectMs + "ms, first byte "
+                        + response.firstByteMs + "ms, download " + response.downloadMs + "ms");
+            }
 
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+            if (result.error != null) {
+                Log.e(LOG_TAG, "Error syncing " + locationSetting + " after " + result.attempts
+                        + " attempts", result.error);
+                failedCount++;
+                if (result.error instanceof JSONException) {
+                    syncResult.stats.numParseExceptions++;
+                } else {
+                    syncResult.stats.numIoExceptions++;
+                }
+                if (result.retryAtMs > 0) {
+                    retryAtMs = Math.min(retryAtMs, result.retryAtMs);
+                }
+                if (preferred) {
+                    // If the code didn't successfully get the weather data (an empty or
+                    // truncated body ends up here too), there's no point in keeping what was
+                    // parsed.
+                    setLocationStatus(context, result.error instanceof JSONException
+                            ? LOCATION_STATUS_SERVER_INVALID : LOCATION_STATUS_SERVER_DOWN);
+                }
+                continue;
+            }
+            if (result.isUnchanged()) {
+                unchangedCount++;
+                Log.d(LOG_TAG, "Forecast for " + locationSetting + " "
+                        + (result.notModified ? "not modified" : "unchanged"));
+                continue;
+            }
 
-            // now we work exclusively in UTC
-            dayTime = new Time();
+            ForecastJsonParser.Forecast forecast = result.parsed;
+            trace.add(SyncTrace.PARSE, result.parseMs);
+            // do we have an error?
+            if (forecast.messageCode != HttpURLConnection.HTTP_OK) {
+                Log.w(LOG_TAG, "Forecast for " + locationSetting + " failed with code "
+                        + forecast.messageCode);
+                if (preferred) {
+                    setLocationStatus(context,
+                            forecast.messageCode == HttpURLConnection.HTTP_NOT_FOUND
+                                    ? LOCATION_STATUS_INVALID : LOCATION_STATUS_SERVER_DOWN);
+                }
+                continue;
+            }
 
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
+            long addLocationStart = SyncTrace.begin();
+            long locationId = LocationIdCache.get(locationSetting);
+            int locationOperation = locationOperations.size();
+            if (locationId == -1) {
+                locationOperations.add(addLocation(locationSetting, forecast.cityName,
+                        forecast.cityLatitude, forecast.cityLongitude));
+                upsertedLocations.add(locationSetting);
+            }
+            trace.end(SyncTrace.ADD_LOCATION, addLocationStart);
+            for (ContentValues weatherValues : forecast.days) {
+                if (locationId != -1) {
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                }
+                ContentProviderOperation.Builder weather = ContentProviderOperation
+                        .newUpdate(weatherMergeUri).withValues(weatherValues);
+                if (locationId == -1) {
+                    weather.withValueBackReference(WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                            locationOperation);
+                }
+                weatherOperations.add(weather.build());
+            }
 
-                double high;
-                double low;
+            if (preferred) {
+                if (!forecast.days.isEmpty()) {
+                    // The first day is today, which is what the watch face shows.
+                    ContentValues today = forecast.days.get(0);
+                    int weatherId = today.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+                    double high = today.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+                    double low = today.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+                    synchronized (mWatchfaceLock) {
+                        if (weatherId != mWeatherId || high != mWatchfaceHigh
+                                || low != mWatchfaceLow) {
+                            mWeatherId = weatherId;
+                            mWatchfaceHigh = high;
+                            mWatchfaceLow = low;
+                            mWatchfaceStale = true;
+                        }
+                    }
+                }
+                setLocationStatus(context, LOCATION_STATUS_OK);
+            }
+            stored.add(result);
+        }
 
-                String description;
-                int weatherId;
+        // Only hold off the next sync when every location failed; if some endpoint answered, it
+        // is worth syncing again as usual.
+        if (failedCount == results.size() && retryAtMs != Long.MAX_VALUE) {
+            syncResult.delayUntil = TimeUnit.MILLISECONDS.toSeconds(retryAtMs) + 1;
+        }
 
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
+        // add to database
+        int rowCount = weatherOperations.size();
+        int changedCount = 0;
+        if (rowCount != 0) {
+            ArrayList<ContentProviderOperation> operations =
+                    new ArrayList<ContentProviderOperation>(locationOperations);
+            operations.addAll(weatherOperations);
+            // move the past days out of the forecast and into the history
+            operations.add(ContentProviderOperation.newDelete(
+                    WeatherContract.WeatherEntry.buildWeatherArchiveUri(
+                            dayTime.setJulianDay(julianStartDay-1))).build());
+
+            long batchStart = SyncTrace.begin();
+            ContentProviderResult[] committed;
+            try {
+                committed = context.getContentResolver().applyBatch(
+                        WeatherContract.CONTENT_AUTHORITY, operations);
+            } catch (RemoteException | OperationApplicationException | SQLException e) {
+                // Nothing of the batch was stored; the next sync tries again.
+                Log.e(LOG_TAG, "Error storing the forecasts", e);
+                syncResult.databaseError = true;
+                return null;
+            }
+            trace.end(SyncTrace.BULK_INSERT, batchStart);
 
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
+            for (int i = 0; i < upsertedLocations.size(); i++) {
+                LocationIdCache.put(upsertedLocations.get(i),
+                        ContentUris.parseId(committed[i].uri));
+            }
 
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+            // The provider merges rather than inserts, so new and changed days both count as
+            // updates; the entries that were already up to date count 0.
+            int firstWeather = locationOperations.size();
+            for (int i = firstWeather; i < firstWeather + rowCount; i++) {
+                changedCount += committed[i].count;
+            }
+            syncResult.stats.numEntries += rowCount;
+            syncResult.stats.numUpdates += changedCount;
+            syncResult.stats.numSkippedEntries += rowCount - changedCount;
+            syncResult.stats.numDeletes += committed[committed.length - 1].count;
+        }
 
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-                if (i < 1){
-                    mWeatherId = weatherId;
-                }
+        // Only remember what a forecast looked like once it is safely stored.
+        for (LocationSyncEngine.Result<ForecastJsonParser.Forecast> result : stored) {
+            validatorStore.put(result.request.locationSetting, ForecastValidators.fromResponse(
+                    result.request.url.toString(), result.response, result.bodyHash,
+                    julianStartDay));
+        }
 
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-                if (i < 1){
-                    mWatchfaceHigh = high;
-                    mWatchfaceLow = low;
-                }
+        // Feed the scheduler: the more the forecast moves, the sooner we look again.  A location
+        // found unchanged counts as a whole forecast with nothing changed.
+        int daysSeen = rowCount + unchangedCount * FORECAST_DAYS;
+        if (daysSeen > 0) {
+            SyncScheduler.recordForecastChange(context, (double) changedCount / daysSeen);
+        }
 
-                ContentValues weatherValues = new ContentValues();
+        trace.setLocations(results.size(), failedCount);
+        trace.setChangedRows(changedCount);
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        Log.d(LOG_TAG, "Sync Complete. " + changedCount + " of " + rowCount
+                + " rows changed for " + stored.size() + " of " + results.size() + " locations");
 
-                cVVector.add(weatherValues);
+        synchronized (mWatchfaceLock) {
+            if (changedCount == 0 && !mWatchfaceStale) {
+                return null;
             }
+            return new ForecastCommitted(changedCount, mWatchfaceStale, mWatchfaceHigh,
+                    mWatchfaceLow, mWeatherId);
+        }
+    }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                sendWeatherInfoToWatchface();
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
+    /**
+     * Hands the committed forecast to the watch face, widgets, Muzei and the notification, and
+     * returns without waiting for them, so that the sync is over as soon as the data is stored.
+     * A wakelock of its own keeps the device awake until the last of them is done; the sync
+     * metrics are recorded then, with how long each took.
+     */
+    private void publishForecastCommitted(ForecastCommitted committed, final SyncTrace trace) {
+        PowerManager powerManager =
+                (PowerManager) getContext().getSystemService(Context.POWER_SERVICE);
+        final PowerManager.WakeLock wakeLock =
+                powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, FAN_OUT_WAKELOCK_TAG);
+        // Released by the listener below, or by the timeout should that never run.
+        wakeLock.setReferenceCounted(false);
+        wakeLock.acquire(mFanOut.getMaxTimeoutMs() + FAN_OUT_WAKELOCK_SLACK_MS);
+
+        mFanOut.publish(committed, new FanOutDispatcher.Listener<ForecastCommitted>() {
+            @Override
+            public void onDelivered(ForecastCommitted event,
+                                    List<FanOutDispatcher.Delivery> deliveries) {
+                try {
+                    // The sync thread is done with the trace by now.
+                    for (int i = 0; i < deliveries.size(); i++) {
+                        FanOutDispatcher.Delivery delivery = deliveries.get(i);
+                        trace.add(FAN_OUT_STAGES[i], delivery.durationMs);
+                        if (delivery.timedOut) {
+                            Log.w(LOG_TAG, "Updating the " + delivery.consumer + " timed out after "
+                                    + delivery.durationMs + "ms");
+                        } else if (delivery.error != null) {
+                            Log.e(LOG_TAG, "Error updating the " + delivery.consumer,
+                                    delivery.error);
+                        }
+                    }
+                    recordSyncMetrics(trace);
+                } finally {
+                    if (wakeLock.isHeld()) {
+                        wakeLock.release();
+                    }
+                }
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        });
+    }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+    /**
+     * @return whether there are rows from today onward stored for the location
+     */
+    private boolean hasStoredForecast(String locationSetting) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, System.currentTimeMillis()),
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                null);
+        if (cursor == null) {
+            return false;
         }
+        boolean hasRows = cursor.moveToFirst();
+        cursor.close();
+        return hasRows;
     }
 
     @Override
     public void onConnected(Bundle connectionHint) {
         Log.d(LOG_TAG, "Google API Client was connected");
         mResolvingError = false;
-
-
+        Wearable.NodeApi.addListener(mGoogleApiClient, mNodeListener);
+        recordWatchConnected();
     }
 
     @Override
@@ -437,7 +701,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public void onConnectionFailed(ConnectionResult result) {
         if (!mResolvingError) {
 
-            if (result.hasResolution()) {
+            // Only an activity can resolve the error; the sync adapter runs with the application
+            // context, so it waits for the next sync instead.
+            if (result.hasResolution() && getContext() instanceof Activity) {
                 try {
                     mResolvingError = true;
                     result.startResolutionForResult((Activity)getContext(), REQUEST_RESOLVE_ERROR);
@@ -452,25 +718,93 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         }
     }
 
-    public void sendWeatherInfoToWatchface(){
+    /**
+     * Records where the time of the sync went in the sync metrics table.  Failing to do so
+     * doesn't fail the sync.
+     */
+    private void recordSyncMetrics(SyncTrace trace) {
+        Context context = getContext();
+        Bundle metrics = new Bundle();
+        metrics.putLong(WeatherContract.SyncMetricsEntry.COLUMN_START_TIME, trace.getStartTimeMs());
+        metrics.putLong(WeatherContract.SyncMetricsEntry.COLUMN_TOTAL_MS, trace.getTotalMs());
+        for (int stage = 0; stage < SyncTrace.STAGE_COUNT; stage++) {
+            metrics.putLong(STAGE_COLUMNS[stage], trace.getStageMs(stage));
+        }
+        metrics.putInt(WeatherContract.SyncMetricsEntry.COLUMN_LOCATIONS, trace.getLocations());
+        metrics.putInt(WeatherContract.SyncMetricsEntry.COLUMN_FAILURES, trace.getFailures());
+        metrics.putInt(WeatherContract.SyncMetricsEntry.COLUMN_CHANGED_ROWS, trace.getChangedRows());
+        metrics.putLong(WeatherContract.SyncMetricsEntry.COLUMN_WIRE_BYTES, trace.getWireBytes());
+
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = cm.getActiveNetworkInfo();
+        if (network != null) {
+            String subtype = network.getSubtypeName();
+            metrics.putString(WeatherContract.SyncMetricsEntry.COLUMN_NETWORK,
+                    network.getTypeName() + (TextUtils.isEmpty(subtype) ? "" : "/" + subtype));
+        }
+        metrics.putString(WeatherContract.SyncMetricsEntry.COLUMN_DEVICE,
+                Build.MODEL + "/" + Build.VERSION.SDK_INT);
+
+        try {
+            context.getContentResolver().call(WeatherContract.SyncMetricsEntry.CONTENT_URI,
+                    WeatherContract.SyncMetricsEntry.METHOD_RECORD_SYNC_METRICS, null, metrics);
+        } catch (SQLException e) {
+            Log.w(LOG_TAG, "Could not record sync metrics", e);
+        }
+        Log.d(LOG_TAG, "Sync took " + trace.getTotalMs() + "ms, fetching "
+                + trace.getStageMs(SyncTrace.FETCH) + "ms");
+    }
+
+    /**
+     * Asks the Wearable API which watches are connected, and records the answer for
+     * SyncScheduler when it comes.
+     */
+    private void recordWatchConnected() {
+        Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).setResultCallback(
+                new ResultCallback<NodeApi.GetConnectedNodesResult>() {
+                    @Override
+                    public void onResult(NodeApi.GetConnectedNodesResult nodes) {
+                        SyncScheduler.setWatchConnected(getContext(),
+                                nodes.getStatus().isSuccess() && !nodes.getNodes().isEmpty());
+                    }
+                });
+    }
+
+    /**
+     * Sends today's weather to the watch face.  Blocks until the Wearable API has it, so this
+     * runs on the fan-out's watch face thread.
+     */
+    private void sendWeatherInfoToWatchface(ForecastCommitted event){
         boolean availableWatchface = mGoogleApiClient.hasConnectedApi(Wearable.API);
         if (availableWatchface) {
             PutDataMapRequest dataMap = PutDataMapRequest.create(WEATHER_INFO_PATH);
-            dataMap.getDataMap().putDouble(TEMP_HIGH_KEY, mWatchfaceHigh);
-            dataMap.getDataMap().putDouble(TEMP_LOW_KEY, mWatchfaceLow);
-            dataMap.getDataMap().putInt(WEATHER_ID_KEY, mWeatherId);
+            dataMap.getDataMap().putDouble(TEMP_HIGH_KEY, event.watchFaceHigh);
+            dataMap.getDataMap().putDouble(TEMP_LOW_KEY, event.watchFaceLow);
+            dataMap.getDataMap().putInt(WEATHER_ID_KEY, event.watchFaceWeatherId);
             dataMap.getDataMap().putLong("timestamp", System.currentTimeMillis());
             PutDataRequest request = dataMap.asPutDataRequest();
             request.setUrgent();
 
-            Wearable.DataApi.putDataItem(mGoogleApiClient, request)
-                    .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                        @Override
-                        public void onResult(DataApi.DataItemResult dataItemResult) {
-                            Log.i(LOG_TAG, "Sending image was successful and high & low temps are: " + dataItemResult.getStatus()
-                                    .isSuccess() + " " + mWatchfaceHigh + "&" + mWatchfaceLow);
-                        }
-                    });
+            DataApi.DataItemResult dataItemResult = Wearable.DataApi
+                    .putDataItem(mGoogleApiClient, request)
+                    .await(DATA_ITEM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!dataItemResult.getStatus().isSuccess()) {
+                // Still stale, so the next sync sends it again.
+                Log.w(LOG_TAG, "Failed to send the weather to the watch face: "
+                        + dataItemResult.getStatus());
+                return;
+            }
+            Log.i(LOG_TAG, "Sent the weather to the watch face, high & low temps: "
+                    + event.watchFaceHigh + "&" + event.watchFaceLow);
+            synchronized (mWatchfaceLock) {
+                // Unless a later sync has changed them since.
+                if (event.watchFaceWeatherId == mWeatherId
+                        && event.watchFaceHigh == mWatchfaceHigh
+                        && event.watchFaceLow == mWatchfaceLow) {
+                    mWatchfaceStale = false;
+                }
+            }
         }
     }
 
@@ -509,16 +843,17 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
                 String locationQuery = Utility.getPreferredLocation(context);
 
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+                Uri weatherUri = WeatherContract.CurrentEntry.buildCurrentUri(locationQuery);
 
                 // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
+                Cursor cursor = context.getContentResolver().query(weatherUri,
+                        WeatherContract.CurrentEntry.COLUMNS, null, null, null);
 
                 if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                    int weatherId = cursor.getInt(WeatherContract.CurrentEntry.COL_WEATHER_ID);
+                    double high = cursor.getDouble(WeatherContract.CurrentEntry.COL_MAX_TEMP);
+                    double low = cursor.getDouble(WeatherContract.CurrentEntry.COL_MIN_TEMP);
+                    String desc = cursor.getString(WeatherContract.CurrentEntry.COL_SHORT_DESC);
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
@@ -544,8 +879,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                                 .asBitmap()
                                 .error(artResourceId)
                                 .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
+                                .into(largeIconWidth, largeIconHeight)
+                                .get(NOTIFICATION_ART_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException | ExecutionException | TimeoutException e) {
                         Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
                         largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
                     }
@@ -600,72 +936,32 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
+     * Helper method to handle insertion of a new location in the weather database.  The
+     * provider only adds it if it isn't stored yet, so the location needn't be looked up first.
      *
      * @param locationSetting The location string used to request updates from the server.
      * @param cityName A human-readable city name, e.g "Mountain View"
      * @param lat the latitude of the city
      * @param lon the longitude of the city
-     * @return the row ID of the added location.
-     */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
-        }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
-    }
-
-    /**
-     * Helper method to schedule the sync adapter periodic execution
+     * @return the operation adding the location, for the batch which stores its forecast; its
+     * result holds the location's URI, whether it was added or not.
      */
-    public static void configurePeriodicSync(Context context, int syncInterval, int flexTime) {
-        Account account = getSyncAccount(context);
-        String authority = context.getString(R.string.content_authority);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            // we can enable inexact timers in our periodic sync
-            SyncRequest request = new SyncRequest.Builder().
-                    syncPeriodic(syncInterval, flexTime).
-                    setSyncAdapter(account, authority).
-                    setExtras(new Bundle()).build();
-            ContentResolver.requestSync(request);
-        } else {
-            ContentResolver.addPeriodicSync(account,
-                    authority, new Bundle(), syncInterval);
-        }
+    ContentProviderOperation addLocation(String locationSetting, String cityName, double lat,
+                                         double lon) {
+        // First create a ContentValues object to hold the data you want to insert.
+        ContentValues locationValues = new ContentValues();
+
+        // Then add the data, along with the corresponding name of the data type,
+        // so the content provider knows what kind of value is being inserted.
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
+
+        return ContentProviderOperation.newInsert(
+                WeatherContract.LocationEntry.buildLocationUpsertUri())
+                .withValues(locationValues)
+                .build();
     }
 
     /**
@@ -723,7 +1019,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         /*
          * Since we've created an account
          */
-        SunshineSyncAdapter.configurePeriodicSync(context, SYNC_INTERVAL, SYNC_FLEXTIME);
+        SyncScheduler.scheduleNextSync(context);
 
         /*
          * Without calling setSyncAutomatically, our periodic sync will not be enabled.
@@ -737,7 +1033,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     }
 
     public static void initializeSyncAdapter(Context context) {
-        getSyncAccount(context);
+        SyncScheduler.ensureScheduled(context, getSyncAccount(context));
+        HistoryCompactionJobService.ensureScheduled(context);
     }
 
     /**
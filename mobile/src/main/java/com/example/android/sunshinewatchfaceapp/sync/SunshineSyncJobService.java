@@ -0,0 +1,33 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.content.ContentResolver;
+import android.os.Bundle;
+
+import com.example.android.sunshinewatchfaceapp.R;
+
+/**
+ * Runs the syncs scheduled by {@link SyncScheduler}.  The work itself still goes through the
+ * sync adapter, which schedules the next job when it is done.  The periodic fallback job only
+ * schedules one again if that never happened.
+ */
+public class SunshineSyncJobService extends JobService {
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        if (params.getJobId() == SyncScheduler.FALLBACK_JOB_ID) {
+            SyncScheduler.ensureScheduled(this, SunshineSyncAdapter.getSyncAccount(this));
+            return false;
+        }
+        // Not expedited, the framework may still fold it in with other syncs.
+        ContentResolver.requestSync(SunshineSyncAdapter.getSyncAccount(this),
+                getString(R.string.content_authority), new Bundle());
+        return false;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        return false;
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import android.accounts.Account;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.example.android.sunshinewatchfaceapp.R;
+import com.example.android.sunshinewatchfaceapp.widget.DetailWidgetProvider;
+import com.example.android.sunshinewatchfaceapp.widget.TodayWidgetProvider;
+
+import java.util.Calendar;
+
+/**
+ * Schedules the background sync with {@link JobScheduler}, at the times picked by
+ * {@link AdaptiveSyncPolicy}.  This replaces the fixed periodic sync: every sync schedules the
+ * next one when it finishes, from what it saw and from the state of the device at that time.
+ *
+ * A sync which never finishes breaks that chain: the request may be dropped while auto-sync is
+ * off, folded into one already running, or the process killed part way through.  A periodic
+ * fallback job, which costs a wakeup and nothing more while the chain holds, starts it again.
+ */
+public class SyncScheduler {
+    private static final String LOG_TAG = SyncScheduler.class.getSimpleName();
+
+    static final int SYNC_JOB_ID = 3005;
+    static final int FALLBACK_JOB_ID = 3007;
+
+    private static final String PREFS_NAME = "sync_schedule";
+    private static final String KEY_VOLATILITY = "volatility";
+    private static final String KEY_LAST_FETCH_MS = "last_fetch_ms";
+    private static final String KEY_MUZEI_ENABLED = "muzei_enabled";
+    private static final String KEY_WATCH_CONNECTED = "watch_connected";
+
+    private SyncScheduler() {
+    }
+
+    /**
+     * Makes sure a sync is scheduled, and takes over from the periodic sync installs before
+     * this one set up.  Cheap enough to call on every launch, and called by the fallback job.
+     */
+    public static void ensureScheduled(Context context, Account account) {
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        boolean syncPending = false;
+        boolean fallbackPending = false;
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getId() == SYNC_JOB_ID) {
+                syncPending = true;
+            } else if (job.getId() == FALLBACK_JOB_ID) {
+                fallbackPending = true;
+            }
+        }
+        if (!fallbackPending) {
+            JobInfo fallback = new JobInfo.Builder(FALLBACK_JOB_ID,
+                    new ComponentName(context, SunshineSyncJobService.class))
+                    .setPeriodic(AdaptiveSyncPolicy.MAX_IDLE_INTERVAL_MS)
+                    .setPersisted(true)
+                    .build();
+            if (jobScheduler.schedule(fallback) != JobScheduler.RESULT_SUCCESS) {
+                Log.e(LOG_TAG, "Could not schedule the fallback sync job");
+            }
+        }
+        if (syncPending) {
+            return;
+        }
+        if (account != null) {
+            ContentResolver.removePeriodicSync(account,
+                    context.getString(R.string.content_authority), new Bundle());
+        }
+        scheduleNextSync(context);
+    }
+
+    /**
+     * Schedules the next sync, replacing any which is pending.
+     */
+    public static void scheduleNextSync(Context context) {
+        scheduleNextSync(context, 0);
+    }
+
+    /**
+     * Schedules the next sync, replacing any which is pending.
+     *
+     * @param notBeforeMs the earliest time the sync may run, as when the forecast server is
+     *                    failing and its circuit breaker is open, or 0
+     */
+    static void scheduleNextSync(Context context, long notBeforeMs) {
+        SharedPreferences prefs = getPrefs(context);
+        Calendar now = Calendar.getInstance();
+        AdaptiveSyncPolicy.Conditions conditions = new AdaptiveSyncPolicy.Conditions(
+                prefs.getFloat(KEY_VOLATILITY, (float) AdaptiveSyncPolicy.HIGH_VOLATILITY),
+                areConsumersActive(context),
+                isCharging(context),
+                isUnmetered(context),
+                now.get(Calendar.HOUR_OF_DAY) * 60 + now.get(Calendar.MINUTE));
+        AdaptiveSyncPolicy.Schedule schedule = AdaptiveSyncPolicy.nextSync(conditions);
+        long delayMs = schedule.delayMs;
+        long deadlineMs = schedule.deadlineMs;
+        long waitMs = notBeforeMs - System.currentTimeMillis();
+        if (waitMs > delayMs) {
+            deadlineMs += waitMs - delayMs;
+            delayMs = waitMs;
+        }
+
+        // The deadline overrides the preferred conditions, so the data never gets older than
+        // the policy allows even if we never see wifi or a charger.
+        JobInfo job = new JobInfo.Builder(SYNC_JOB_ID,
+                new ComponentName(context, SunshineSyncJobService.class))
+                .setMinimumLatency(delayMs)
+                .setOverrideDeadline(deadlineMs)
+                .setRequiredNetworkType(schedule.preferUnmetered
+                        ? JobInfo.NETWORK_TYPE_UNMETERED : JobInfo.NETWORK_TYPE_ANY)
+                .setRequiresCharging(schedule.preferCharging)
+                .setPersisted(true)
+                .build();
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(LOG_TAG, "Could not schedule the next sync");
+            return;
+        }
+        Log.d(LOG_TAG, "Next sync in " + delayMs / 60000 + " to "
+                + deadlineMs / 60000 + " minutes, volatility " + conditions.volatility);
+    }
+
+    /**
+     * Records how much of the forecast a sync changed, which drives how soon the next one runs.
+     *
+     * @param changedFraction the share of fetched forecast rows which changed, 0 to 1
+     */
+    static void recordForecastChange(Context context, double changedFraction) {
+        SharedPreferences prefs = getPrefs(context);
+        long now = System.currentTimeMillis();
+        // Without a previous fetch, assume it was as long ago as we ever wait.
+        long lastFetchMs = prefs.getLong(KEY_LAST_FETCH_MS,
+                now - AdaptiveSyncPolicy.MAX_INTERVAL_MS);
+        double volatility = AdaptiveSyncPolicy.updateVolatility(
+                prefs.getFloat(KEY_VOLATILITY, (float) AdaptiveSyncPolicy.HIGH_VOLATILITY),
+                changedFraction, now - lastFetchMs);
+        prefs.edit()
+                .putFloat(KEY_VOLATILITY, (float) volatility)
+                .putLong(KEY_LAST_FETCH_MS, now)
+                .apply();
+    }
+
+    /**
+     * Called as Muzei enables and disables our source.  Muzei doesn't let anyone else ask.
+     */
+    public static void setMuzeiEnabled(Context context, boolean enabled) {
+        getPrefs(context).edit().putBoolean(KEY_MUZEI_ENABLED, enabled).apply();
+    }
+
+    /**
+     * Records whether a watch is connected, as the Wearable API last reported it.
+     */
+    static void setWatchConnected(Context context, boolean connected) {
+        getPrefs(context).edit().putBoolean(KEY_WATCH_CONNECTED, connected).apply();
+    }
+
+    private static boolean areConsumersActive(Context context) {
+        SharedPreferences prefs = getPrefs(context);
+        if (prefs.getBoolean(KEY_WATCH_CONNECTED, false)
+                || prefs.getBoolean(KEY_MUZEI_ENABLED, false)) {
+            return true;
+        }
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        return appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, TodayWidgetProvider.class)).length > 0
+                || appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, DetailWidgetProvider.class)).length > 0;
+    }
+
+    private static boolean isCharging(Context context) {
+        // ACTION_BATTERY_CHANGED is sticky, so this just reads the last broadcast.
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    private static boolean isUnmetered(Context context) {
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return cm.getActiveNetworkInfo() != null && !cm.isActiveNetworkMetered();
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the time of one sync went, stage by stage.
+ *
+ * Timing a stage costs two {@link System#nanoTime()} calls and an array update, so this stays on
+ * in release builds.  The network stages come from {@link HttpTransport.Response} and the parse
+ * time from the sync engine; these are summed over every location, and as locations are fetched
+ * concurrently their sum can exceed the wall clock time of {@link #FETCH}.
+ *
+ * The watch face, widgets, Muzei and notification stages are updated after the sync, in
+ * parallel, so they aren't part of the total: each is the time from the forecast being committed
+ * to that consumer being done with it.
+ *
+ * Only one thread at a time touches a trace: the sync thread, then, once it has finished the
+ * trace, the one which adds the consumer stages.
+ */
+class SyncTrace {
+    // DNS lookup and connect; HttpURLConnection doesn't tell them apart.
+    static final int CONNECT = 0;
+    static final int FIRST_BYTE = 1;
+    static final int DOWNLOAD = 2;
+    // The parser reads the body as it arrives, so this overlaps DOWNLOAD.
+    static final int PARSE = 3;
+    // Wall clock time of fetching and parsing every location.
+    static final int FETCH = 4;
+    static final int ADD_LOCATION = 5;
+    // The batch storing the forecasts.  It archives the past days as well, so DELETE is no
+    // longer timed apart, but kept for the metrics recorded before.
+    static final int BULK_INSERT = 6;
+    static final int DELETE = 7;
+    // Consumers of the committed forecast.
+    static final int WATCH_FACE = 8;
+    static final int WIDGETS = 9;
+    static final int MUZEI = 10;
+    static final int NOTIFICATION = 11;
+    static final int STAGE_COUNT = 12;
+
+    private final long mStartTimeMs;
+    private final long mStartNanos;
+    private final long[] mStageNanos = new long[STAGE_COUNT];
+    private long mTotalNanos = -1;
+
+    private int mLocations;
+    private int mFailures;
+    private int mChangedRows;
+    private long mWireBytes;
+
+    SyncTrace() {
+        mStartTimeMs = System.currentTimeMillis();
+        mStartNanos = System.nanoTime();
+    }
+
+    /**
+     * @return the time to pass to {@link #end(int, long)} when the stage is over
+     */
+    static long begin() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds the time since {@code beginNanos} to the stage.
+     */
+    void end(int stage, long beginNanos) {
+        mStageNanos[stage] += System.nanoTime() - beginNanos;
+    }
+
+    /**
+     * Adds time measured elsewhere to the stage.
+     */
+    void add(int stage, long ms) {
+        mStageNanos[stage] += TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+
+    /**
+     * Adds what the transport measured for one response.
+     */
+    void addResponse(HttpTransport.Response response) {
+        add(CONNECT, response.connectMs);
+        add(FIRST_BYTE, response.firstByteMs);
+        add(DOWNLOAD, response.downloadMs);
+        mWireBytes += response.wireBytes;
+    }
+
+    void setLocations(int locations, int failures) {
+        mLocations = locations;
+        mFailures = failures;
+    }
+
+    void setChangedRows(int changedRows) {
+        mChangedRows = changedRows;
+    }
+
+    /**
+     * Stops the clock for the whole sync.  Later calls keep the first total.
+     */
+    void finish() {
+        if (mTotalNanos < 0) {
+            mTotalNanos = System.nanoTime() - mStartNanos;
+        }
+    }
+
+    long getStartTimeMs() {
+        return mStartTimeMs;
+    }
+
+    long getTotalMs() {
+        return TimeUnit.NANOSECONDS.toMillis(mTotalNanos < 0
+                ? System.nanoTime() - mStartNanos : mTotalNanos);
+    }
+
+    long getStageMs(int stage) {
+        return TimeUnit.NANOSECONDS.toMillis(mStageNanos[stage]);
+    }
+
+    int getLocations() {
+        return mLocations;
+    }
+
+    int getFailures() {
+        return mFailures;
+    }
+
+    int getChangedRows() {
+        return mChangedRows;
+    }
+
+    long getWireBytes() {
+        return mWireBytes;
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Build;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.CurrentEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.LocationEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Reads today's weather through the current URI, and checks that the writes to the weather keep
+ * it up to date and notify it only when it changed.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class CurrentConditionsTest {
+    private static final String LOCATION_SETTING = "94043";
+    private static final int DAYS = 14;
+
+    private ContentResolver mResolver;
+    private long mToday;
+    private long mLocationId;
+    private Uri mCurrentUri;
+
+    @Before
+    public void setUp() {
+        TestProviders.setUpWeatherProvider();
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mCurrentUri = CurrentEntry.buildCurrentUri(LOCATION_SETTING);
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 37.3861);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -122.0839);
+        mLocationId = Long.parseLong(
+                mResolver.insert(LocationEntry.CONTENT_URI, location).getLastPathSegment());
+    }
+
+    @Test
+    public void aSyncStoresTodayAsCurrent() {
+        merge(-1, 20, 20);
+
+        Cursor cursor = mResolver.query(mCurrentUri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(LOCATION_SETTING, cursor.getString(CurrentEntry.COL_LOCATION_SETTING));
+            assertEquals(mToday, cursor.getLong(CurrentEntry.COL_DATE));
+            assertEquals(800, cursor.getInt(CurrentEntry.COL_WEATHER_ID));
+            assertEquals(20.0, cursor.getDouble(CurrentEntry.COL_MAX_TEMP), 0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void onlyAChangeToTodayIsNotified() {
+        merge(0, 20, 20);
+
+        shadowOf(mResolver).getNotifiedUris().clear();
+        merge(0, 20, 25);
+        assertFalse(notifiedUris().contains(mCurrentUri));
+        assertEquals(20.0, currentHigh(), 0);
+
+        shadowOf(mResolver).getNotifiedUris().clear();
+        merge(0, 25, 25);
+        assertTrue(notifiedUris().contains(mCurrentUri));
+        assertEquals(25.0, currentHigh(), 0);
+    }
+
+    @Test
+    public void aPassedDayMovesOnWhenRead() {
+        merge(-1, 20, 20);
+        // What the table holds when the last write was yesterday.
+        SQLiteDatabase db = new WeatherDbHelper(RuntimeEnvironment.application)
+                .getWritableDatabase();
+        try {
+            ContentValues yesterday = new ContentValues();
+            yesterday.put(CurrentEntry.COLUMN_DATE, daysFromToday(-1));
+            yesterday.put(CurrentEntry.COLUMN_MAX_TEMP, 15.0);
+            assertEquals(1, db.update(CurrentEntry.TABLE_NAME, yesterday, null, null));
+        } finally {
+            db.close();
+        }
+
+        assertEquals(20.0, currentHigh(), 0);
+    }
+
+    @Test
+    public void aDeletedLocationHasNoCurrentWeather() {
+        merge(0, 20, 20);
+
+        mResolver.delete(LocationEntry.CONTENT_URI, null, null);
+
+        Cursor cursor = mResolver.query(mCurrentUri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+        assertTrue(notifiedUris().contains(CurrentEntry.CONTENT_URI));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void theCurrentUriIsReadOnly() {
+        mResolver.delete(mCurrentUri, null, null);
+    }
+
+    /**
+     * Merges the forecast from a day on: today with one high, and the days after with another.
+     */
+    private void merge(int fromToday, double todayHigh, double laterHigh) {
+        ContentValues[] days = new ContentValues[DAYS];
+        for (int i = 0; i < days.length; i++) {
+            int day = fromToday + i;
+            days[i] = day(day, day == 0 ? todayHigh : laterHigh);
+        }
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, days);
+    }
+
+    private ContentValues day(int fromToday, double high) {
+        ContentValues day = new ContentValues();
+        day.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+        day.put(WeatherEntry.COLUMN_DATE, daysFromToday(fromToday));
+        day.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        day.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        day.put(WeatherEntry.COLUMN_MIN_TEMP, 10.0);
+        day.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+        day.put(WeatherEntry.COLUMN_HUMIDITY, 70.0);
+        day.put(WeatherEntry.COLUMN_PRESSURE, 1013.0);
+        day.put(WeatherEntry.COLUMN_WIND_SPEED, 4.0);
+        day.put(WeatherEntry.COLUMN_DEGREES, 250.0);
+        return day;
+    }
+
+    private long daysFromToday(int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(mToday);
+        calendar.add(Calendar.DAY_OF_MONTH, days);
+        return WeatherContract.normalizeDate(calendar.getTimeInMillis());
+    }
+
+    private double currentHigh() {
+        Cursor cursor = mResolver.query(mCurrentUri, CurrentEntry.COLUMNS, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(mToday, cursor.getLong(CurrentEntry.COL_DATE));
+            return cursor.getDouble(CurrentEntry.COL_MAX_TEMP);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private List<Uri> notifiedUris() {
+        List<Uri> uris = new ArrayList<Uri>();
+        for (ShadowContentResolver.NotifiedUri notified : shadowOf(mResolver).getNotifiedUris()) {
+            uris.add(notified.uri);
+        }
+        return uris;
+    }
+}
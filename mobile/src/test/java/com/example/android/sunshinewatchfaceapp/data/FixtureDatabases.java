@@ -0,0 +1,121 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes weather.db the way a past version of the app left it, from the SQL scripts in the test
+ * resources under data/migrations/, one per schema version: weather-v&lt;version&gt;.sql.  A script
+ * holds that version's schema, a cached forecast and the PRAGMA setting its user_version.
+ *
+ * Statements end at the end of a line with a semicolon; lines starting with -- are comments.
+ */
+class FixtureDatabases {
+    private static final String RESOURCE_ROOT = "/data/migrations/";
+
+    private FixtureDatabases() {
+    }
+
+    static boolean exists(int version) {
+        return FixtureDatabases.class.getResource(resource(version)) != null;
+    }
+
+    /**
+     * Replaces the app's weather.db with the fixture for the version.
+     */
+    static void load(Context context, int version) throws IOException {
+        InputStream in = FixtureDatabases.class.getResourceAsStream(resource(version));
+        if (in == null) {
+            throw new IOException("No fixture database for version " + version);
+        }
+        SQLiteDatabase db = createEmpty(context);
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            StringBuilder statement = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("--")) {
+                    continue;
+                }
+                statement.append(line).append('\n');
+                if (line.trim().endsWith(";")) {
+                    db.execSQL(statement.toString());
+                    statement.setLength(0);
+                }
+            }
+        } finally {
+            in.close();
+            db.close();
+        }
+    }
+
+    /**
+     * Deletes the app's weather.db and opens an empty one in its place, without a helper.
+     */
+    static SQLiteDatabase createEmpty(Context context) {
+        File file = context.getDatabasePath(WeatherDbHelper.DATABASE_NAME);
+        context.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        file.getParentFile().mkdirs();
+        return SQLiteDatabase.openOrCreateDatabase(file, null);
+    }
+
+    /**
+     * @return every table's columns and every index and trigger, in a form that compares equal
+     *         for equal schemas whatever their CREATE statements looked like
+     */
+    static String describeSchema(SQLiteDatabase db) {
+        Map<String, String> schema = new TreeMap<String, String>();
+        Cursor objects = db.rawQuery("SELECT type, name, tbl_name FROM sqlite_master"
+                + " WHERE name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+        try {
+            while (objects.moveToNext()) {
+                String type = objects.getString(0);
+                String name = objects.getString(1);
+                String description = type + " on " + objects.getString(2);
+                if (type.equals("table")) {
+                    description += " " + pragma(db, "table_info", name);
+                } else if (type.equals("index")) {
+                    description += " " + pragma(db, "index_info", name);
+                }
+                schema.put(name, description);
+            }
+        } finally {
+            objects.close();
+        }
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, String> entry : schema.entrySet()) {
+            text.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String pragma(SQLiteDatabase db, String pragma, String name) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma + "(" + name + ")", null);
+        StringBuilder rows = new StringBuilder("[");
+        try {
+            while (cursor.moveToNext()) {
+                rows.append(rows.length() == 1 ? "(" : ", (");
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    rows.append(i == 0 ? "" : " ").append(cursor.getString(i));
+                }
+                rows.append(')');
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows.append(']').toString();
+    }
+
+    private static String resource(int version) {
+        return RESOURCE_ROOT + "weather-v" + version + ".sql";
+    }
+}
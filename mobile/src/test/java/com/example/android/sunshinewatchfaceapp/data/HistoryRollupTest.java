@@ -0,0 +1,100 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HistoryRollupTest {
+    private final Calendar mCalendar = Calendar.getInstance();
+
+    @Test
+    public void weeksRunFromMondayToSunday() {
+        // Wednesday 12 October 2016.
+        long wednesday = day(2016, Calendar.OCTOBER, 12);
+        long monday = HistoryRollup.weekStart(wednesday, mCalendar);
+
+        assertEquals(day(2016, Calendar.OCTOBER, 10), monday);
+        assertEquals(monday, HistoryRollup.weekStart(monday, mCalendar));
+        assertEquals(monday, HistoryRollup.weekStart(day(2016, Calendar.OCTOBER, 16), mCalendar));
+        assertEquals(day(2016, Calendar.OCTOBER, 16), HistoryRollup.weekEnd(monday, mCalendar));
+    }
+
+    @Test
+    public void monthsFollowTheCalendar() {
+        long start = HistoryRollup.monthStart(day(2016, Calendar.FEBRUARY, 17), mCalendar);
+
+        assertEquals(day(2016, Calendar.FEBRUARY, 1), start);
+        assertEquals(day(2016, Calendar.FEBRUARY, 29), HistoryRollup.monthEnd(start, mCalendar));
+    }
+
+    @Test
+    public void aggregateWeighsRowsByTheirDays() {
+        HistoryRollup.Row week = row(day(2016, Calendar.OCTOBER, 3), 7, 500, "Rain", 8, 15, 10);
+        week.endDate = day(2016, Calendar.OCTOBER, 9);
+        HistoryRollup.Row monday = row(day(2016, Calendar.OCTOBER, 10), 1, 800, "Clear", 5, 21, 3);
+        HistoryRollup.Row tuesday = row(day(2016, Calendar.OCTOBER, 11), 1, 800, "Clear", 6, 19, 3);
+
+        HistoryRollup.Row sum = HistoryRollup.aggregate(Arrays.asList(monday, week, tuesday));
+
+        assertEquals(day(2016, Calendar.OCTOBER, 3), sum.date);
+        assertEquals(day(2016, Calendar.OCTOBER, 11), sum.endDate);
+        assertEquals(9, sum.days);
+        assertEquals(5, sum.min, 0);
+        assertEquals(21, sum.max, 0);
+        assertEquals((7 * 10 + 3 + 3) / 9.0, sum.wind, 1e-9);
+        // Seven days of rain outweigh two clear ones.
+        assertEquals(500, sum.weatherId);
+        assertEquals("Rain", sum.shortDesc);
+    }
+
+    @Test
+    public void windDirectionsAverageAsBearings() {
+        List<HistoryRollup.Row> rows = new ArrayList<HistoryRollup.Row>();
+        rows.add(row(day(2016, Calendar.OCTOBER, 10), 1, 800, "Clear", 5, 20, 3));
+        rows.add(row(day(2016, Calendar.OCTOBER, 11), 1, 800, "Clear", 5, 20, 3));
+        rows.get(0).degrees = 350;
+        rows.get(1).degrees = 10;
+
+        double degrees = HistoryRollup.aggregate(rows).degrees;
+
+        assertTrue(Double.toString(degrees), degrees < 1e-6 || degrees > 360 - 1e-6);
+    }
+
+    @Test
+    public void tiesGoToTheWeatherSeenFirst() {
+        HistoryRollup.Row sum = HistoryRollup.aggregate(Arrays.asList(
+                row(day(2016, Calendar.OCTOBER, 10), 1, 801, "Clouds", 5, 20, 3),
+                row(day(2016, Calendar.OCTOBER, 11), 1, 500, "Rain", 5, 20, 3)));
+
+        assertEquals(801, sum.weatherId);
+        assertEquals("Clouds", sum.shortDesc);
+    }
+
+    private long day(int year, int month, int dayOfMonth) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month, dayOfMonth);
+        return calendar.getTimeInMillis();
+    }
+
+    private static HistoryRollup.Row row(long date, int days, int weatherId, String shortDesc,
+                                         double min, double max, double wind) {
+        HistoryRollup.Row row = new HistoryRollup.Row();
+        row.date = date;
+        row.endDate = date;
+        row.days = days;
+        row.weatherId = weatherId;
+        row.shortDesc = shortDesc;
+        row.min = min;
+        row.max = max;
+        row.humidity = 70;
+        row.pressure = 1013;
+        row.wind = wind;
+        return row;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.LocationEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Adds locations through the upsert URI, and checks that the location id cache never outlives
+ * the rows it points at.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class LocationUpsertTest {
+    private static final String LOCATION_SETTING = "94043";
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        TestProviders.setUpWeatherProvider();
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void aStoredLocationIsFoundRatherThanAddedAgain() {
+        Uri added = mResolver.insert(LocationEntry.buildLocationUpsertUri(),
+                location("Mountain View"));
+        assertNotNull(added);
+        assertEquals(1, shadowOf(mResolver).getNotifiedUris().size());
+
+        Uri found = mResolver.insert(LocationEntry.buildLocationUpsertUri(),
+                location("Mountain View, CA"));
+
+        assertEquals(added, found);
+        // Nothing changed, so nothing is notified.
+        assertEquals(1, shadowOf(mResolver).getNotifiedUris().size());
+        Cursor cursor = mResolver.query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry.COLUMN_CITY_NAME}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Mountain View", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void deletingALocationForgetsTheKnownIds() {
+        long id = ContentUris.parseId(mResolver.insert(LocationEntry.buildLocationUpsertUri(),
+                location("Mountain View")));
+        LocationIdCache.put(LOCATION_SETTING, id);
+
+        mResolver.delete(LocationEntry.CONTENT_URI, null, null);
+
+        assertEquals(-1, LocationIdCache.get(LOCATION_SETTING));
+    }
+
+    @Test
+    public void aNewProviderStartsWithoutKnownIds() {
+        LocationIdCache.put(LOCATION_SETTING, 42);
+
+        TestProviders.setUpWeatherProvider();
+
+        assertEquals(-1, LocationIdCache.get(LOCATION_SETTING));
+    }
+
+    private static ContentValues location(String cityName) {
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        location.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        location.put(LocationEntry.COLUMN_COORD_LAT, 37.3861);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -122.0839);
+        return location;
+    }
+}
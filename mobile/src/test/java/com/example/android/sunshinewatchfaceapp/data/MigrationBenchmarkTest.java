@@ -0,0 +1,117 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures how long the first open after an app update takes, migrating a large database from
+ * every past version.  Each size prints a line like
+ *
+ *   v2   100000 rows  412ms
+ *
+ * A device caches 14 days for a handful of locations; the big sizes show how the migrations
+ * scale with a long history.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class MigrationBenchmarkTest {
+    private static final int[] SIZES = {1000, 100000};
+    private static final int DAYS_PER_LOCATION = 1000;
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void migrationTime() throws Exception {
+        Context context = RuntimeEnvironment.application;
+        for (int version = WeatherDbHelper.OLDEST_MIGRATED_VERSION;
+             version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            for (int size : SIZES) {
+                FixtureDatabases.load(context, version);
+                int rows = grow(context, size);
+
+                WeatherDbHelper helper = new WeatherDbHelper(context);
+                try {
+                    long start = System.nanoTime();
+                    SQLiteDatabase db = helper.getWritableDatabase();
+                    long migrationNanos = System.nanoTime() - start;
+
+                    assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+                    assertEquals(rows, count(db));
+                    System.out.println(String.format(Locale.US, "v%d  %7d rows  %dms",
+                            version, rows, TimeUnit.NANOSECONDS.toMillis(migrationNanos)));
+                } finally {
+                    helper.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds weather rows to the fixture, for locations of their own, until it holds about size.
+     *
+     * @return how many weather rows the database holds
+     */
+    private static int grow(Context context, int size) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                context.getDatabasePath(WeatherDbHelper.DATABASE_NAME).getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE);
+        try {
+            int fixtureRows = count(db);
+            SQLiteStatement location = db.compileStatement("INSERT INTO location"
+                    + " (location_setting, city_name, coord_lat, coord_long) VALUES (?, ?, 0, 0)");
+            SQLiteStatement weather = db.compileStatement("INSERT INTO weather"
+                    + " (location_id, date, short_desc, weather_id, min, max, humidity, pressure,"
+                    + " wind, degrees) VALUES (?, ?, 'Clouds', 803, 11.5, 19.25, 71, 1013.2, 4.1,"
+                    + " 250)");
+            db.beginTransaction();
+            try {
+                long locationId = 0;
+                for (int i = 0; i < size - fixtureRows; i++) {
+                    if (i % DAYS_PER_LOCATION == 0) {
+                        String name = "Benchmark " + i / DAYS_PER_LOCATION;
+                        location.bindString(1, name);
+                        location.bindString(2, name);
+                        locationId = location.executeInsert();
+                    }
+                    weather.bindLong(1, locationId);
+                    weather.bindLong(2, (i % DAYS_PER_LOCATION) * DAY_MS);
+                    weather.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                location.close();
+                weather.close();
+            }
+            return count(db);
+        } finally {
+            db.close();
+        }
+    }
+
+    private static int count(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + WeatherEntry.TABLE_NAME, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
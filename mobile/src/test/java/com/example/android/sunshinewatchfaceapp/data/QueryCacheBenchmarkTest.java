@@ -0,0 +1,157 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.text.format.Time;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.LocationEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the queries of the Today widget and of Muzei, which run after every sync, with the
+ * provider's query cache and without.  Each prints a line like
+ *
+ *   widget  uncached p50 412us  p99 1210us   cached p50 38us  p99 95us   hit rate 100%
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class QueryCacheBenchmarkTest {
+    private static final int QUERIES = 2000;
+    private static final String LOCATION_SETTING = "94043";
+    private static final String BY_DATE = WeatherEntry.COLUMN_DATE + " ASC";
+
+    // As TodayWidgetIntentService and WeatherMuzeiSource asked for them, before they read the
+    // current URI.
+    private static final String[] WIDGET_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+    private static final String[] MUZEI_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    private WeatherProvider mProvider;
+    private ContentResolver mResolver;
+    private Uri mForecastUri;
+
+    @Before
+    public void setUp() {
+        mProvider = TestProviders.setUpWeatherProvider();
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mForecastUri = WeatherEntry.buildWeatherLocationWithStartDate(LOCATION_SETTING, today);
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 37.3861);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -122.0839);
+        long locationId = Long.parseLong(
+                mResolver.insert(LocationEntry.CONTENT_URI, location).getLastPathSegment());
+
+        // The forecast a location has after a sync.
+        ContentValues[] days = new ContentValues[16];
+        Time time = new Time();
+        int julianToday = Time.getJulianDay(today, time.gmtoff);
+        for (int i = 0; i < days.length; i++) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            day.put(WeatherEntry.COLUMN_DATE, time.setJulianDay(julianToday + i));
+            day.put(WeatherEntry.COLUMN_SHORT_DESC, "Clouds");
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, 803);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, 11.5);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 19.25);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 71.0);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 1013.2);
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 4.1);
+            day.put(WeatherEntry.COLUMN_DEGREES, 250.0);
+            days[i] = day;
+        }
+        assertEquals(days.length, mResolver.bulkInsert(WeatherEntry.CONTENT_URI, days));
+    }
+
+    @Test
+    public void widgetQuery() {
+        compare("widget", WIDGET_COLUMNS);
+    }
+
+    @Test
+    public void muzeiQuery() {
+        compare("muzei", MUZEI_COLUMNS);
+    }
+
+    private void compare(String name, String[] projection) {
+        mProvider.setQueryCacheEnabled(false);
+        List<Long> uncached = measure(projection);
+
+        mProvider.setQueryCacheEnabled(true);
+        List<Long> cached = measure(projection);
+        Bundle stats = mResolver.call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_QUERY_CACHE_STATS, null, null);
+        assertNotNull(stats);
+        int hits = stats.getInt(WeatherEntry.EXTRA_CACHE_HITS);
+        int misses = stats.getInt(WeatherEntry.EXTRA_CACHE_MISSES);
+        // The first query fills the cache, every other one is served from it.
+        assertEquals(1, misses);
+        assertEquals(QUERIES - 1, hits);
+
+        System.out.println(String.format(Locale.US,
+                "%-6s  uncached p50 %s  p99 %s   cached p50 %s  p99 %s   hit rate %d%%",
+                name, micros(uncached, 50), micros(uncached, 99), micros(cached, 50),
+                micros(cached, 99), 100 * hits / (hits + misses)));
+    }
+
+    /**
+     * @return the latency of each query, sorted
+     */
+    private List<Long> measure(String[] projection) {
+        List<Long> latenciesNanos = new ArrayList<Long>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            long start = System.nanoTime();
+            // Read it the way the widget does: the first row is today.
+            Cursor cursor = mResolver.query(mForecastUri, projection, null, null, BY_DATE);
+            assertNotNull(cursor);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(803, cursor.getInt(0));
+            } finally {
+                cursor.close();
+            }
+            latenciesNanos.add(System.nanoTime() - start);
+        }
+        Collections.sort(latenciesNanos);
+        return latenciesNanos;
+    }
+
+    /**
+     * @return the nearest-rank percentile of the sorted latencies, in microseconds
+     */
+    private static String micros(List<Long> sortedNanos, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sortedNanos.size());
+        long nanos = sortedNanos.get(Math.max(0, rank - 1));
+        return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.LocationEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads the forecasts through the provider's query cache, and checks that a write drops exactly
+ * the entries it makes stale.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class QueryCacheTest {
+    private static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP
+    };
+    private static final String BY_DATE = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private ContentResolver mResolver;
+    private long mToday;
+    private long mMountainView;
+    private long mLondon;
+
+    @Before
+    public void setUp() {
+        TestProviders.setUpWeatherProvider();
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mMountainView = addLocation("94043", "Mountain View");
+        mLondon = addLocation("London", "London");
+        merge(mMountainView, 20);
+        merge(mLondon, 15);
+    }
+
+    @Test
+    public void aRepeatedQueryIsAHit() {
+        Uri forecast = WeatherEntry.buildWeatherLocationWithStartDate("94043", mToday);
+
+        assertEquals(20.0, firstHigh(forecast), 0);
+        assertEquals(20.0, firstHigh(forecast), 0);
+
+        Bundle stats = stats();
+        assertEquals(1, stats.getInt(WeatherEntry.EXTRA_CACHE_MISSES));
+        assertEquals(1, stats.getInt(WeatherEntry.EXTRA_CACHE_HITS));
+        // The 14 days, and one for the entry.
+        assertEquals(15, stats.getInt(WeatherEntry.EXTRA_CACHE_ROWS));
+    }
+
+    @Test
+    public void aChangedDayDropsOnlyWhatReadsIt() {
+        Uri mountainView = WeatherEntry.buildWeatherLocationWithStartDate("94043", mToday);
+        Uri mountainViewToday = WeatherEntry.buildWeatherLocationWithDate("94043", mToday);
+        Uri london = WeatherEntry.buildWeatherLocationWithStartDate("London", mToday);
+        firstHigh(mountainView);
+        firstHigh(mountainViewToday);
+        firstHigh(london);
+
+        ContentValues today = day(mMountainView, 0, 25);
+        assertEquals(1, mResolver.bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{today}));
+
+        assertEquals(2, stats().getInt(WeatherEntry.EXTRA_CACHE_INVALIDATIONS));
+        assertEquals(25.0, firstHigh(mountainView), 0);
+        assertEquals(25.0, firstHigh(mountainViewToday), 0);
+        // London's entry is still there.
+        int hits = stats().getInt(WeatherEntry.EXTRA_CACHE_HITS);
+        assertEquals(15.0, firstHigh(london), 0);
+        assertEquals(hits + 1, stats().getInt(WeatherEntry.EXTRA_CACHE_HITS));
+    }
+
+    @Test
+    public void aChangedLocationDropsEveryForecast() {
+        Uri london = WeatherEntry.buildWeatherLocationWithStartDate("London", mToday);
+        firstHigh(london);
+
+        ContentValues city = new ContentValues();
+        city.put(LocationEntry.COLUMN_CITY_NAME, "City of London");
+        mResolver.update(LocationEntry.CONTENT_URI, city, LocationEntry._ID + " = ?",
+                new String[]{Long.toString(mLondon)});
+
+        assertEquals(0, stats().getInt(WeatherEntry.EXTRA_CACHE_ROWS));
+    }
+
+    @Test
+    public void anUnchangedSyncKeepsTheCache() {
+        Uri forecast = WeatherEntry.buildWeatherLocationWithStartDate("94043", mToday);
+        firstHigh(forecast);
+
+        merge(mMountainView, 20);
+
+        assertEquals(0, stats().getInt(WeatherEntry.EXTRA_CACHE_INVALIDATIONS));
+        firstHigh(forecast);
+        assertEquals(1, stats().getInt(WeatherEntry.EXTRA_CACHE_HITS));
+    }
+
+    private long addLocation(String locationSetting, String cityName) {
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        location.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        location.put(LocationEntry.COLUMN_COORD_LAT, 51.5);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -0.1);
+        return Long.parseLong(
+                mResolver.insert(LocationEntry.CONTENT_URI, location).getLastPathSegment());
+    }
+
+    private void merge(long locationId, double high) {
+        ContentValues[] days = new ContentValues[14];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = day(locationId, i, high);
+        }
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, days);
+    }
+
+    private ContentValues day(long locationId, int fromToday, double high) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(mToday);
+        calendar.add(Calendar.DAY_OF_MONTH, fromToday);
+
+        ContentValues day = new ContentValues();
+        day.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+        day.put(WeatherEntry.COLUMN_DATE,
+                WeatherContract.normalizeDate(calendar.getTimeInMillis()));
+        day.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        day.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        day.put(WeatherEntry.COLUMN_MIN_TEMP, 10.0);
+        day.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+        day.put(WeatherEntry.COLUMN_HUMIDITY, 70.0);
+        day.put(WeatherEntry.COLUMN_PRESSURE, 1013.0);
+        day.put(WeatherEntry.COLUMN_WIND_SPEED, 4.0);
+        day.put(WeatherEntry.COLUMN_DEGREES, 250.0);
+        return day;
+    }
+
+    private double firstHigh(Uri uri) {
+        Cursor cursor = mResolver.query(uri, COLUMNS, null, null, BY_DATE);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getDouble(2);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Bundle stats() {
+        Bundle stats = mResolver.call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_QUERY_CACHE_STATS, null, null);
+        assertNotNull(stats);
+        return stats;
+    }
+}
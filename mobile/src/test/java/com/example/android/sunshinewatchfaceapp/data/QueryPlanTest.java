@@ -0,0 +1,186 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Build;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.CurrentEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.LocationEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.SyncMetricsEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on the queries the app makes through every URI of the provider, and
+ * fails when one of them reads a whole table.  A new URI fails until its queries are added here.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class QueryPlanTest {
+    private static final String LOCATION_SETTING = "94043";
+    private static final String BY_DATE = WeatherEntry.COLUMN_DATE + " ASC";
+
+    // Made in the test's sandbox; android.text.format.Time can't run outside it.
+    private final long mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+    private SQLiteDatabase mDb;
+    private final Set<Integer> mCovered = new HashSet<Integer>();
+
+    @Before
+    public void openDatabase() {
+        mDb = new WeatherDbHelper(RuntimeEnvironment.application).getReadableDatabase();
+    }
+
+    @After
+    public void closeDatabase() {
+        mDb.close();
+    }
+
+    @Test
+    public void noQueryScansATable() throws Exception {
+        // The forecast list's pages, and the sync's "anything stored?" check.
+        assertNoScan(WeatherProvider.WEATHER_WITH_LOCATION,
+                WeatherEntry.buildWeatherLocationWithStartDate(LOCATION_SETTING, mToday),
+                null, null, BY_DATE);
+        assertNoScan(WeatherProvider.WEATHER_WITH_LOCATION,
+                WeatherEntry.buildWeatherLocationPage(LOCATION_SETTING, mToday, 30),
+                null, null, BY_DATE);
+        assertNoScan(WeatherProvider.WEATHER_WITH_LOCATION,
+                WeatherEntry.buildWeatherLocationPageAfter(LOCATION_SETTING, mToday, 30),
+                null, null, BY_DATE);
+        assertNoScan(WeatherProvider.WEATHER_WITH_LOCATION,
+                WeatherEntry.buildWeatherLocation(LOCATION_SETTING), null, null, BY_DATE);
+        // The detail screen.
+        assertNoScan(WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE,
+                WeatherEntry.buildWeatherLocationWithDate(LOCATION_SETTING, mToday),
+                null, null, null);
+        // The days the sync archives, and a location's stored days.
+        assertNoScan(WeatherProvider.WEATHER, WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " <= ?", new String[]{Long.toString(mToday)}, null);
+        assertNoScan(WeatherProvider.WEATHER, WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " >= ?",
+                new String[]{"1", Long.toString(mToday)}, BY_DATE);
+        // The sync looking up a location before adding it.
+        assertNoScan(WeatherProvider.LOCATION, LocationEntry.CONTENT_URI,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{LOCATION_SETTING}, null);
+        // A location's history, and the row covering a past day.
+        assertNoScan(WeatherProvider.HISTORY_WITH_LOCATION,
+                HistoryEntry.buildHistoryLocation(LOCATION_SETTING), null, null, null);
+        assertNoScan(WeatherProvider.HISTORY_WITH_LOCATION_AND_DATE,
+                HistoryEntry.buildHistoryLocationWithDate(LOCATION_SETTING, mToday),
+                null, null, null);
+        assertNoScan(WeatherProvider.HISTORY, HistoryEntry.CONTENT_URI,
+                HistoryEntry.COLUMN_LOC_KEY + " = ? AND " + HistoryEntry.COLUMN_DATE + " >= ?",
+                new String[]{"1", Long.toString(mToday)}, null);
+        // The widgets, Muzei and the notification.
+        assertNoScan(WeatherProvider.CURRENT_WITH_LOCATION,
+                CurrentEntry.buildCurrentUri(LOCATION_SETTING), null, null, null);
+        // One sync's metrics.  Listing all of them reads the whole table, but the table only
+        // ever holds the last MAX_ROWS syncs.
+        assertNoScan(WeatherProvider.SYNC_METRICS, SyncMetricsEntry.CONTENT_URI,
+                SyncMetricsEntry._ID + " = ?", new String[]{"1"}, null);
+
+        for (int code : matchCodes()) {
+            assertTrue("No query checked for match code " + code, mCovered.contains(code));
+        }
+    }
+
+    @Test
+    public void forecastsComeOutOfTheIndexInOrder() {
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(LOCATION_SETTING, mToday);
+        List<String> plan = explain(WeatherProvider.buildUriQuery(uri, null, null, BY_DATE));
+
+        assertTrue(plan.toString(),
+                contains(plan, "USING INDEX " + WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX));
+        assertFalse(plan.toString(), contains(plan, "TEMP B-TREE"));
+    }
+
+    @Test
+    public void pagesComeOutOfTheIndexInOrder() {
+        // Whatever order is asked for: a LIMIT under a sort would read every day to sort them.
+        Uri uri = WeatherEntry.buildWeatherLocationPageAfter(LOCATION_SETTING, mToday, 30);
+        WeatherProvider.UriQuery query = WeatherProvider.buildUriQuery(uri, null, null, null);
+        List<String> plan = explain(query);
+
+        assertEquals("30", query.limit);
+        assertTrue(plan.toString(),
+                contains(plan, "USING INDEX " + WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX));
+        assertFalse(plan.toString(), contains(plan, "TEMP B-TREE"));
+    }
+
+    private void assertNoScan(int code, Uri uri, String selection, String[] selectionArgs,
+                              String sortOrder) {
+        assertEquals(uri.toString(), code, WeatherProvider.buildUriMatcher().match(uri));
+        List<String> plan = explain(
+                WeatherProvider.buildUriQuery(uri, selection, selectionArgs, sortOrder));
+        for (String step : plan) {
+            // "SCAN TABLE weather" up to SQLite 3.35, "SCAN weather" since; index and primary key
+            // lookups are SEARCH.
+            assertFalse(uri + " where " + selection + ": " + plan, step.startsWith("SCAN "));
+        }
+        mCovered.add(code);
+    }
+
+    private List<String> explain(WeatherProvider.UriQuery query) {
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + query.toSql(null),
+                query.selectionArgs);
+        List<String> plan = new ArrayList<String>();
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        } finally {
+            cursor.close();
+        }
+        assertFalse(plan.isEmpty());
+        return plan;
+    }
+
+    private static boolean contains(List<String> plan, String text) {
+        for (String step : plan) {
+            if (step.contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the URI match codes the provider declares
+     */
+    private static List<Integer> matchCodes() throws IllegalAccessException {
+        List<Integer> codes = new ArrayList<Integer>();
+        for (Field field : WeatherProvider.class.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            // The match codes are the provider's package-private int constants; its private
+            // ones, like the query cache's size, are not.
+            if (field.getType() == int.class && Modifier.isStatic(modifiers)
+                    && Modifier.isFinal(modifiers) && !Modifier.isPrivate(modifiers)) {
+                field.setAccessible(true);
+                codes.add(field.getInt(null));
+            }
+        }
+        assertFalse(codes.isEmpty());
+        return codes;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.pm.ProviderInfo;
+
+import org.robolectric.Robolectric;
+
+/**
+ * Sets up the weather provider for the tests, under the app's authority.  Robolectric would
+ * otherwise look the authority up in the merged manifest, which a plain unit test run may not
+ * have.
+ */
+class TestProviders {
+
+    private TestProviders() {
+    }
+
+    static WeatherProvider setUpWeatherProvider() {
+        ProviderInfo info = new ProviderInfo();
+        info.authority = WeatherContract.CONTENT_AUTHORITY;
+        return Robolectric.buildContentProvider(WeatherProvider.class).create(info).get();
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.CurrentEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.LocationEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Stores a sync the way the sync adapter does, in one batch: the location, the merged forecast
+ * and the archiving of the past days.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class WeatherBatchTest {
+    private static final String LOCATION_SETTING = "94043";
+    private static final int DAYS = 14;
+
+    private ContentResolver mResolver;
+    private long mToday;
+
+    @Before
+    public void setUp() {
+        TestProviders.setUpWeatherProvider();
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    @Test
+    public void aSyncIsStoredAndNotifiedOnce() throws Exception {
+        ContentProviderResult[] results = mResolver.applyBatch(WeatherContract.CONTENT_AUTHORITY,
+                syncBatch());
+
+        assertEquals(DAYS + 3, results.length);
+        assertNotNull(results[0].uri);
+        // Every day is new.
+        for (int i = 1; i <= DAYS + 1; i++) {
+            assertEquals(1, (int) results[i].count);
+        }
+        // Yesterday went to the history.
+        assertEquals(1, (int) results[DAYS + 2].count);
+        assertEquals(DAYS, count(WeatherEntry.buildWeatherLocation(LOCATION_SETTING)));
+        assertEquals(1, count(HistoryEntry.buildHistoryLocation(LOCATION_SETTING)));
+
+        // The location's URI reaches the observers of each of its days, the archived one too,
+        // so those aren't notified on their own.  Today is new, so the location's current
+        // weather changed too.
+        List<Uri> notified = notifiedUris();
+        assertEquals(notified.toString(), 4, notified.size());
+        assertTrue(notified.contains(LocationEntry.CONTENT_URI));
+        assertTrue(notified.contains(WeatherEntry.buildWeatherLocation(LOCATION_SETTING)));
+        assertTrue(notified.contains(HistoryEntry.CONTENT_URI));
+        assertTrue(notified.contains(CurrentEntry.buildCurrentUri(LOCATION_SETTING)));
+    }
+
+    @Test
+    public void onlyChangedDaysAreWrittenAgain() throws Exception {
+        ContentProviderResult[] first =
+                mResolver.applyBatch(WeatherContract.CONTENT_AUTHORITY, syncBatch());
+        long locationId = Long.parseLong(first[0].uri.getLastPathSegment());
+        shadowOf(mResolver).getNotifiedUris().clear();
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues day = day(i, i == 3 ? 25 : 20);
+            day.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            operations.add(ContentProviderOperation.newUpdate(WeatherEntry.buildWeatherMergeUri())
+                    .withValues(day).build());
+        }
+        ContentProviderResult[] results =
+                mResolver.applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+
+        // The unchanged days are part of the batch like the changed one, and count 0.
+        for (int i = 0; i < DAYS; i++) {
+            assertEquals("day " + i, i == 3 ? 1 : 0, (int) results[i].count);
+        }
+        List<Uri> notified = notifiedUris();
+        assertEquals(1, notified.size());
+        assertEquals(WeatherEntry.buildWeatherLocationWithDate(LOCATION_SETTING, daysFromToday(3)),
+                notified.get(0));
+    }
+
+    @Test
+    public void anUnchangedDayOnItsOwnCountsNothing() throws Exception {
+        ContentProviderResult[] first =
+                mResolver.applyBatch(WeatherContract.CONTENT_AUTHORITY, syncBatch());
+        long locationId = Long.parseLong(first[0].uri.getLastPathSegment());
+        ContentValues day = day(0, 20);
+        day.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+
+        assertEquals(0, mResolver.update(WeatherEntry.buildWeatherMergeUri(), day, null, null));
+        day.put(WeatherEntry.COLUMN_MAX_TEMP, 22.0);
+        assertEquals(1, mResolver.update(WeatherEntry.buildWeatherMergeUri(), day, null, null));
+    }
+
+    @Test
+    public void aFailedBatchLeavesNothingBehind() throws Exception {
+        ArrayList<ContentProviderOperation> operations = syncBatch();
+        // The history is read only.
+        operations.add(ContentProviderOperation.newInsert(HistoryEntry.CONTENT_URI)
+                .withValues(day(0, 20)).build());
+
+        try {
+            mResolver.applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            fail("The batch should have failed");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        assertEquals(0, count(LocationEntry.CONTENT_URI));
+        assertEquals(0, count(WeatherEntry.CONTENT_URI));
+        assertEquals(0, count(HistoryEntry.CONTENT_URI));
+        assertTrue(notifiedUris().isEmpty());
+    }
+
+    /**
+     * @return a new location, its forecast from yesterday on, and the archiving of yesterday
+     */
+    private ArrayList<ContentProviderOperation> syncBatch() {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(location()).build());
+        for (int i = -1; i < DAYS; i++) {
+            operations.add(ContentProviderOperation.newUpdate(WeatherEntry.buildWeatherMergeUri())
+                    .withValues(day(i, 20))
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        operations.add(ContentProviderOperation.newDelete(
+                WeatherEntry.buildWeatherArchiveUri(daysFromToday(-1))).build());
+        return operations;
+    }
+
+    private static ContentValues location() {
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 37.3861);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -122.0839);
+        return location;
+    }
+
+    private ContentValues day(int fromToday, double high) {
+        ContentValues day = new ContentValues();
+        day.put(WeatherEntry.COLUMN_DATE, daysFromToday(fromToday));
+        day.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        day.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        day.put(WeatherEntry.COLUMN_MIN_TEMP, 10.0);
+        day.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+        day.put(WeatherEntry.COLUMN_HUMIDITY, 70.0);
+        day.put(WeatherEntry.COLUMN_PRESSURE, 1013.0);
+        day.put(WeatherEntry.COLUMN_WIND_SPEED, 4.0);
+        day.put(WeatherEntry.COLUMN_DEGREES, 250.0);
+        return day;
+    }
+
+    private long daysFromToday(int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(mToday);
+        calendar.add(Calendar.DAY_OF_MONTH, days);
+        return WeatherContract.normalizeDate(calendar.getTimeInMillis());
+    }
+
+    private List<Uri> notifiedUris() {
+        List<Uri> uris = new ArrayList<Uri>();
+        for (ShadowContentResolver.NotifiedUri notified : shadowOf(mResolver).getNotifiedUris()) {
+            uris.add(notified.uri);
+        }
+        return uris;
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mResolver.query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
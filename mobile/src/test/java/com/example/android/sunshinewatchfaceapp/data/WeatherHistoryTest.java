@@ -0,0 +1,173 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.LocationEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Archives three years of weather through the provider and compacts them.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class WeatherHistoryTest {
+    private static final String LOCATION_SETTING = "94043";
+    private static final int DAYS = 3 * 365;
+
+    private ContentResolver mResolver;
+    private long mToday;
+
+    @Before
+    public void setUp() {
+        TestProviders.setUpWeatherProvider();
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 37.3861);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -122.0839);
+        long locationId = Long.parseLong(
+                mResolver.insert(LocationEntry.CONTENT_URI, location).getLastPathSegment());
+
+        // Every day of the last three years, and the next two weeks.
+        List<ContentValues> days = new ArrayList<ContentValues>();
+        for (int i = -DAYS; i < 14; i++) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            day.put(WeatherEntry.COLUMN_DATE, daysFromToday(i));
+            day.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, 10 + i % 5);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i % 5);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 70);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 1013);
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 4);
+            day.put(WeatherEntry.COLUMN_DEGREES, 250);
+            days.add(day);
+        }
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI,
+                days.toArray(new ContentValues[days.size()]));
+    }
+
+    @Test
+    public void archivingMovesThePastOutOfTheForecast() {
+        assertEquals(DAYS, archive());
+
+        assertEquals(14, count(WeatherEntry.buildWeatherLocation(LOCATION_SETTING)));
+        assertEquals(DAYS, count(HistoryEntry.buildHistoryLocation(LOCATION_SETTING)));
+        // Nothing left to move.
+        assertEquals(0, archive());
+    }
+
+    @Test
+    public void compactionKeepsRecentDaysAndSumsUpTheRest() {
+        archive();
+
+        int replaced = compact();
+
+        assertTrue(replaced > 0);
+        assertEquals(0, compact());
+        Cursor cursor = mResolver.query(HistoryEntry.buildHistoryLocation(LOCATION_SETTING),
+                new String[]{HistoryEntry.COLUMN_PERIOD, HistoryEntry.COLUMN_DAYS,
+                        HistoryEntry.COLUMN_DATE, HistoryEntry.COLUMN_END_DATE},
+                null, null, null);
+        assertNotNull(cursor);
+        try {
+            int days = 0;
+            int[] rowsByPeriod = new int[3];
+            long lastEnd = Long.MIN_VALUE;
+            while (cursor.moveToNext()) {
+                rowsByPeriod[cursor.getInt(0)]++;
+                days += cursor.getInt(1);
+                // Oldest first, and no two rows cover the same day.
+                assertTrue(cursor.getLong(2) > lastEnd);
+                lastEnd = cursor.getLong(3);
+            }
+            assertEquals("every archived day is counted once", DAYS, days);
+            assertTrue(rowsByPeriod[HistoryEntry.PERIOD_DAY] >= HistoryEntry.DAYS_KEPT);
+            assertTrue(rowsByPeriod[HistoryEntry.PERIOD_DAY] < HistoryEntry.DAYS_KEPT + 14);
+            assertTrue(rowsByPeriod[HistoryEntry.PERIOD_WEEK] > 0);
+            assertTrue(rowsByPeriod[HistoryEntry.PERIOD_MONTH] > 0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void thisDayLastYearIsFoundAfterCompaction() {
+        archive();
+        compact();
+
+        long lastYear = daysFromToday(-365);
+        Cursor cursor = mResolver.query(
+                HistoryEntry.buildHistoryLocationWithDate(LOCATION_SETTING, lastYear),
+                new String[]{HistoryEntry.COLUMN_PERIOD, HistoryEntry.COLUMN_DATE,
+                        HistoryEntry.COLUMN_END_DATE, HistoryEntry.COLUMN_MIN_TEMP,
+                        HistoryEntry.COLUMN_MAX_TEMP},
+                null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            // A year ago is within WEEKS_KEPT, so it is a week.
+            assertEquals(HistoryEntry.PERIOD_WEEK, cursor.getInt(0));
+            assertTrue(cursor.getLong(1) <= lastYear && lastYear <= cursor.getLong(2));
+            assertTrue(cursor.getDouble(3) <= cursor.getDouble(4));
+            assertFalse(cursor.moveToNext());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int archive() {
+        Bundle result = mResolver.call(HistoryEntry.CONTENT_URI,
+                HistoryEntry.METHOD_ARCHIVE_WEATHER, Long.toString(daysFromToday(-1)), null);
+        assertNotNull(result);
+        return result.getInt(HistoryEntry.EXTRA_ROWS);
+    }
+
+    private int compact() {
+        Bundle result = mResolver.call(HistoryEntry.CONTENT_URI,
+                HistoryEntry.METHOD_COMPACT_HISTORY, null, null);
+        assertNotNull(result);
+        return result.getInt(HistoryEntry.EXTRA_ROWS);
+    }
+
+    private long daysFromToday(int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(mToday);
+        calendar.add(Calendar.DAY_OF_MONTH, days);
+        return WeatherContract.normalizeDate(calendar.getTimeInMillis());
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mResolver.query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.LocationEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.SyncMetricsEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Opens the database every past version of the app left behind, from {@link FixtureDatabases},
+ * and checks that it comes out with the current schema and the cached forecast still in it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class WeatherMigrationTest {
+    // What each fixture caches.
+    private static final int FIXTURE_LOCATIONS = 2;
+    private static final int FIXTURE_DAYS = 28;
+
+    private Context mContext;
+    private String mCurrentSchema;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        try {
+            mCurrentSchema = FixtureDatabases.describeSchema(helper.getReadableDatabase());
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void everyPastVersionKeepsItsForecast() throws Exception {
+        for (int version = WeatherDbHelper.OLDEST_MIGRATED_VERSION;
+             version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            assertTrue("No fixture database for version " + version,
+                    FixtureDatabases.exists(version));
+            FixtureDatabases.load(mContext, version);
+
+            WeatherDbHelper helper = new WeatherDbHelper(mContext);
+            try {
+                SQLiteDatabase db = helper.getReadableDatabase();
+                assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+                assertEquals("version " + version, mCurrentSchema,
+                        FixtureDatabases.describeSchema(db));
+                assertEquals(FIXTURE_LOCATIONS, count(db, LocationEntry.TABLE_NAME));
+                assertEquals(FIXTURE_DAYS, count(db, WeatherEntry.TABLE_NAME));
+                assertFirstDayOfLondon(db);
+            } finally {
+                helper.close();
+            }
+        }
+    }
+
+    @Test
+    public void syncMetricsSurviveTheUpgrade() throws Exception {
+        FixtureDatabases.load(mContext, 3);
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        try {
+            assertEquals(1, count(helper.getReadableDatabase(), SyncMetricsEntry.TABLE_NAME));
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void aVersionTooOldStartsOver() throws Exception {
+        FixtureDatabases.load(mContext, WeatherDbHelper.OLDEST_MIGRATED_VERSION);
+        setVersion(WeatherDbHelper.OLDEST_MIGRATED_VERSION - 1);
+
+        assertStartedOver();
+    }
+
+    @Test
+    public void aFailingMigrationStartsOver() throws Exception {
+        // Claims to be version 2 but already has the sync_metrics table which the migration
+        // to version 3 creates.
+        FixtureDatabases.load(mContext, 3);
+        setVersion(2);
+
+        assertStartedOver();
+    }
+
+    @Test
+    public void aDowngradeStartsOver() throws Exception {
+        FixtureDatabases.load(mContext, WeatherDbHelper.DATABASE_VERSION - 1);
+        setVersion(WeatherDbHelper.DATABASE_VERSION + 1);
+
+        assertStartedOver();
+    }
+
+    private void assertStartedOver() {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        try {
+            SQLiteDatabase db = helper.getReadableDatabase();
+            assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+            assertEquals(mCurrentSchema, FixtureDatabases.describeSchema(db));
+            assertEquals(0, count(db, WeatherEntry.TABLE_NAME));
+        } finally {
+            helper.close();
+        }
+    }
+
+    private void assertFirstDayOfLondon(SQLiteDatabase db) {
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_SHORT_DESC, WeatherEntry.COLUMN_MAX_TEMP},
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{"2"},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Rain", cursor.getString(0));
+            assertEquals(18.0, cursor.getDouble(1), 0.001);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void setVersion(int version) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME).getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE);
+        try {
+            db.setVersion(version);
+        } finally {
+            db.close();
+        }
+    }
+
+    private static long count(SQLiteDatabase db, String table) {
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + table, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Build;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.CurrentEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.LocationEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Writes the weather every way the provider allows, and checks that each write notifies the
+ * locations and days it changed rather than the whole weather URI.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class WeatherNotificationTest {
+    private static final int DAYS = 7;
+
+    private ContentResolver mResolver;
+    private long mToday;
+    private long mMountainView;
+    private long mLondon;
+
+    @Before
+    public void setUp() {
+        TestProviders.setUpWeatherProvider();
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mMountainView = addLocation("94043", "Mountain View");
+        mLondon = addLocation("London", "London");
+        // Both from yesterday on.
+        for (long locationId : new long[]{mMountainView, mLondon}) {
+            ContentValues[] days = new ContentValues[DAYS];
+            for (int i = 0; i < days.length; i++) {
+                days[i] = day(locationId, i - 1, 20);
+            }
+            mResolver.bulkInsert(WeatherEntry.CONTENT_URI, days);
+        }
+        shadowOf(mResolver).getNotifiedUris().clear();
+    }
+
+    @Test
+    public void archivingNotifiesTheArchivedDays() {
+        mResolver.call(HistoryEntry.CONTENT_URI, HistoryEntry.METHOD_ARCHIVE_WEATHER,
+                Long.toString(daysFromToday(-1)), null);
+
+        List<Uri> notified = notifiedUris();
+        assertEquals(notified.toString(), 3, notified.size());
+        assertTrue(notified.contains(
+                WeatherEntry.buildWeatherLocationWithDate("94043", daysFromToday(-1))));
+        assertTrue(notified.contains(
+                WeatherEntry.buildWeatherLocationWithDate("London", daysFromToday(-1))));
+        assertTrue(notified.contains(HistoryEntry.CONTENT_URI));
+    }
+
+    @Test
+    public void anUpdateNotifiesTheDayItChanged() {
+        ContentValues high = new ContentValues();
+        high.put(WeatherEntry.COLUMN_MAX_TEMP, 25.0);
+        assertEquals(1, mResolver.update(WeatherEntry.CONTENT_URI, high,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(mLondon), Long.toString(daysFromToday(2))}));
+
+        List<Uri> notified = notifiedUris();
+        assertEquals(notified.toString(), 1, notified.size());
+        assertEquals(WeatherEntry.buildWeatherLocationWithDate("London", daysFromToday(2)),
+                notified.get(0));
+    }
+
+    @Test
+    public void aDeleteNotifiesOnlyItsLocation() {
+        assertEquals(DAYS, mResolver.delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(mLondon)}));
+
+        // London has no weather for today any more.
+        List<Uri> notified = notifiedUris();
+        assertEquals(notified.toString(), 2, notified.size());
+        assertTrue(notified.contains(WeatherEntry.buildWeatherLocation("London")));
+        assertTrue(notified.contains(CurrentEntry.buildCurrentUri("London")));
+    }
+
+    @Test
+    public void anInsertNotifiesItsDay() {
+        mResolver.insert(WeatherEntry.CONTENT_URI, day(mMountainView, DAYS, 20));
+
+        List<Uri> notified = notifiedUris();
+        assertEquals(notified.toString(), 1, notified.size());
+        assertEquals(WeatherEntry.buildWeatherLocationWithDate("94043", daysFromToday(DAYS)),
+                notified.get(0));
+    }
+
+    private long addLocation(String locationSetting, String cityName) {
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        location.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        location.put(LocationEntry.COLUMN_COORD_LAT, 51.5);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -0.1);
+        return Long.parseLong(
+                mResolver.insert(LocationEntry.CONTENT_URI, location).getLastPathSegment());
+    }
+
+    private ContentValues day(long locationId, int fromToday, double high) {
+        ContentValues day = new ContentValues();
+        day.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+        day.put(WeatherEntry.COLUMN_DATE, daysFromToday(fromToday));
+        day.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        day.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        day.put(WeatherEntry.COLUMN_MIN_TEMP, 10.0);
+        day.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+        day.put(WeatherEntry.COLUMN_HUMIDITY, 70.0);
+        day.put(WeatherEntry.COLUMN_PRESSURE, 1013.0);
+        day.put(WeatherEntry.COLUMN_WIND_SPEED, 4.0);
+        day.put(WeatherEntry.COLUMN_DEGREES, 250.0);
+        return day;
+    }
+
+    private long daysFromToday(int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(mToday);
+        calendar.add(Calendar.DAY_OF_MONTH, days);
+        return WeatherContract.normalizeDate(calendar.getTimeInMillis());
+    }
+
+    private List<Uri> notifiedUris() {
+        List<Uri> uris = new ArrayList<Uri>();
+        for (ShadowContentResolver.NotifiedUri notified : shadowOf(mResolver).getNotifiedUris()) {
+            uris.add(notified.uri);
+        }
+        return uris;
+    }
+}
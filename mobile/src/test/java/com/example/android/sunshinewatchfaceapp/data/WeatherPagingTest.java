@@ -0,0 +1,150 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.LocationEntry;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads a location's forecast a page at a time, as the forecast list does, and checks that the
+ * pages follow on from each other without a day missing or shown twice.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class WeatherPagingTest {
+    private static final String LOCATION_SETTING = "94043";
+    private static final int DAYS = 100;
+    private static final int PAGE_SIZE = 30;
+    private static final String[] DATE = {WeatherEntry.COLUMN_DATE};
+
+    private ContentResolver mResolver;
+    private long mToday;
+    private long mLocationId;
+
+    @Before
+    public void setUp() {
+        TestProviders.setUpWeatherProvider();
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 37.3861);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -122.0839);
+        mLocationId = Long.parseLong(
+                mResolver.insert(LocationEntry.CONTENT_URI, location).getLastPathSegment());
+
+        // A week of the past too, which the first page leaves out.  Every other day, so that a
+        // day can be written between two pages.
+        ContentValues[] days = new ContentValues[DAYS];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = day(2 * (i - 7));
+        }
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, days);
+    }
+
+    @Test
+    public void thePagesHoldEveryDayFromTodayOnce() {
+        List<Long> dates = new ArrayList<Long>();
+        List<Long> page = readPage(
+                WeatherEntry.buildWeatherLocationPage(LOCATION_SETTING, mToday, PAGE_SIZE));
+        while (!page.isEmpty()) {
+            assertTrue(page.size() <= PAGE_SIZE);
+            dates.addAll(page);
+            page = readPage(WeatherEntry.buildWeatherLocationPageAfter(
+                    LOCATION_SETTING, page.get(page.size() - 1), PAGE_SIZE));
+        }
+
+        assertEquals(DAYS - 7, dates.size());
+        for (int i = 0; i < dates.size(); i++) {
+            assertEquals(daysFromToday(2 * i), (long) dates.get(i));
+        }
+    }
+
+    @Test
+    public void aPageIsInDateOrderWhateverTheSortAsked() {
+        Cursor cursor = mResolver.query(
+                WeatherEntry.buildWeatherLocationPage(LOCATION_SETTING, mToday, PAGE_SIZE),
+                DATE, null, null, WeatherEntry.COLUMN_DATE + " DESC");
+        assertNotNull(cursor);
+        try {
+            assertEquals(PAGE_SIZE, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(mToday, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void aDayWrittenBetweenPagesIsOnTheNextOne() {
+        List<Long> first = readPage(
+                WeatherEntry.buildWeatherLocationPage(LOCATION_SETTING, mToday, PAGE_SIZE));
+        long lastDate = first.get(first.size() - 1);
+        assertEquals(daysFromToday(2 * (PAGE_SIZE - 1)), lastDate);
+
+        // The day after the first page's last; an offset would show that last day again.
+        mResolver.insert(WeatherEntry.CONTENT_URI, day(2 * PAGE_SIZE - 1));
+
+        List<Long> second = readPage(
+                WeatherEntry.buildWeatherLocationPageAfter(LOCATION_SETTING, lastDate, PAGE_SIZE));
+        assertEquals(PAGE_SIZE, second.size());
+        assertEquals(daysFromToday(2 * PAGE_SIZE - 1), (long) second.get(0));
+        assertEquals(daysFromToday(2 * PAGE_SIZE), (long) second.get(1));
+    }
+
+    private List<Long> readPage(Uri uri) {
+        Cursor cursor = mResolver.query(uri, DATE, null, null, null);
+        assertNotNull(cursor);
+        List<Long> dates = new ArrayList<Long>();
+        try {
+            while (cursor.moveToNext()) {
+                dates.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return dates;
+    }
+
+    private ContentValues day(int fromToday) {
+        ContentValues day = new ContentValues();
+        day.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+        day.put(WeatherEntry.COLUMN_DATE, daysFromToday(fromToday));
+        day.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        day.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        day.put(WeatherEntry.COLUMN_MIN_TEMP, 10.0);
+        day.put(WeatherEntry.COLUMN_MAX_TEMP, 20.0);
+        day.put(WeatherEntry.COLUMN_HUMIDITY, 70.0);
+        day.put(WeatherEntry.COLUMN_PRESSURE, 1013.0);
+        day.put(WeatherEntry.COLUMN_WIND_SPEED, 4.0);
+        day.put(WeatherEntry.COLUMN_DEGREES, 250.0);
+        return day;
+    }
+
+    private long daysFromToday(int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(mToday);
+        calendar.add(Calendar.DAY_OF_MONTH, days);
+        return WeatherContract.normalizeDate(calendar.getTimeInMillis());
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.android.sunshinewatchfaceapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Build;
+import android.text.format.Time;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract.WeatherEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the weather write path of the provider: how many rows a bulk insert writes per second,
+ * and how long a query waits while one is running.  Each size prints a line like
+ *
+ *   100000 rows  insert 61234 rows/s  update 48120 rows/s  unchanged 201774 rows/s
+ *   100000 rows  1623ms write, 412 reads during it, read p50 2ms  p99 9ms  max 31ms
+ *
+ * A forecast sync writes 14 rows per location, so the small sizes are the ones the app sees;
+ * the largest shows how the path scales.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class WeatherWriteBenchmarkTest {
+    private static final int[] SIZES = {14, 1000, 100000};
+    // At most this many days per location, so that the big sizes spread over many locations.
+    private static final int MAX_DAYS = 1000;
+
+    private ContentResolver mResolver;
+    private long mToday;
+
+    @Before
+    public void setUp() {
+        TestProviders.setUpWeatherProvider();
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    @Test
+    public void rowsPerSecond() {
+        for (int size : SIZES) {
+            clear();
+            ContentValues[] rows = forecast(size, 0);
+
+            long start = System.nanoTime();
+            assertEquals(size, mResolver.bulkInsert(WeatherEntry.CONTENT_URI, rows));
+            long insertNanos = System.nanoTime() - start;
+            assertEquals(size, count());
+
+            ContentValues[] changed = forecast(size, 1);
+            start = System.nanoTime();
+            assertEquals(size, mResolver.bulkInsert(WeatherEntry.CONTENT_URI, changed));
+            long updateNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            assertEquals(0, mResolver.bulkInsert(WeatherEntry.CONTENT_URI, forecast(size, 1)));
+            long unchangedNanos = System.nanoTime() - start;
+            assertEquals(size, count());
+
+            System.out.println(String.format(Locale.US,
+                    "%6d rows  insert %d rows/s  update %d rows/s  unchanged %d rows/s",
+                    size, perSecond(size, insertNanos), perSecond(size, updateNanos),
+                    perSecond(size, unchangedNanos)));
+        }
+    }
+
+    @Test
+    public void readsDoNotWaitForTheWriter() throws Exception {
+        for (int size : SIZES) {
+            clear();
+            // Something for the reader to find from the start.
+            mResolver.bulkInsert(WeatherEntry.CONTENT_URI, forecast(14, 0));
+
+            final ContentValues[] rows = forecast(size, 1);
+            final AtomicBoolean writing = new AtomicBoolean(true);
+            final long[] writeNanos = new long[1];
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.nanoTime();
+                    mResolver.bulkInsert(WeatherEntry.CONTENT_URI, rows);
+                    writeNanos[0] = System.nanoTime() - start;
+                    writing.set(false);
+                }
+            }, "Benchmark writer");
+
+            List<Long> latenciesNanos = new ArrayList<Long>();
+            writer.start();
+            while (writing.get()) {
+                long start = System.nanoTime();
+                Cursor cursor = mResolver.query(WeatherEntry.CONTENT_URI, null,
+                        WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE
+                                + " >= ?", new String[]{"1", Long.toString(mToday)}, null);
+                assertNotNull(cursor);
+                try {
+                    assertTrue(cursor.getCount() > 0);
+                } finally {
+                    cursor.close();
+                }
+                if (writing.get()) {
+                    latenciesNanos.add(System.nanoTime() - start);
+                }
+            }
+            writer.join();
+
+            Collections.sort(latenciesNanos);
+            System.out.println(String.format(Locale.US,
+                    "%6d rows  %dms write, %d reads during it, read p50 %s  p99 %s  max %s",
+                    size, TimeUnit.NANOSECONDS.toMillis(writeNanos[0]), latenciesNanos.size(),
+                    millis(latenciesNanos, 50), millis(latenciesNanos, 99),
+                    millis(latenciesNanos, 100)));
+            if (size == SIZES[SIZES.length - 1]) {
+                // With the rollback journal every read would wait for the whole transaction.
+                assertTrue("no reads during a " + TimeUnit.NANOSECONDS.toMillis(writeNanos[0])
+                        + "ms write", latenciesNanos.size() > 1);
+            }
+        }
+    }
+
+    /**
+     * @param revision 0 for the first version of the forecast; any other revision changes the
+     *                 temperatures of every row
+     */
+    private ContentValues[] forecast(int size, int revision) {
+        ContentValues[] rows = new ContentValues[size];
+        Time time = new Time();
+        int julianToday = Time.getJulianDay(mToday, time.gmtoff);
+        for (int i = 0; i < size; i++) {
+            ContentValues row = new ContentValues();
+            row.put(WeatherEntry.COLUMN_LOC_KEY, 1 + i / MAX_DAYS);
+            row.put(WeatherEntry.COLUMN_DATE, time.setJulianDay(julianToday + i % MAX_DAYS));
+            row.put(WeatherEntry.COLUMN_SHORT_DESC, "Clouds");
+            row.put(WeatherEntry.COLUMN_WEATHER_ID, 803);
+            row.put(WeatherEntry.COLUMN_MIN_TEMP, 11.5 + revision);
+            row.put(WeatherEntry.COLUMN_MAX_TEMP, 19.25 + revision);
+            row.put(WeatherEntry.COLUMN_HUMIDITY, 71);
+            row.put(WeatherEntry.COLUMN_PRESSURE, 1013.2);
+            row.put(WeatherEntry.COLUMN_WIND_SPEED, 4.1);
+            row.put(WeatherEntry.COLUMN_DEGREES, 250.0);
+            rows[i] = row;
+        }
+        return rows;
+    }
+
+    private void clear() {
+        mResolver.delete(WeatherEntry.CONTENT_URI, null, null);
+    }
+
+    private int count() {
+        Cursor cursor = mResolver.query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long perSecond(int rows, long nanos) {
+        return rows * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+    }
+
+    /**
+     * @return the nearest-rank percentile of the sorted latencies, in milliseconds
+     */
+    private static String millis(List<Long> sortedNanos, int percent) {
+        if (sortedNanos.isEmpty()) {
+            return "-";
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sortedNanos.size());
+        long nanos = sortedNanos.get(Math.max(0, rank - 1));
+        return TimeUnit.NANOSECONDS.toMillis(nanos) + "ms";
+    }
+}
@@ -0,0 +1,336 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays a recorded week of forecast publications against {@link AdaptiveSyncPolicy} and
+ * against the fixed three hour period it replaced, and compares how many syncs each makes and
+ * how stale the data gets.
+ */
+public class AdaptiveSyncPolicyTest {
+    private static final int WEEK_MINUTES = 7 * 24 * 60;
+    private static final int FORECAST_DAYS = 14;
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    // The storm in the recording, Wednesday 06:00 to Thursday 18:00.
+    private static final int STORM_START = 2 * 1440 + 6 * 60;
+    private static final int STORM_END = 3 * 1440 + 18 * 60;
+
+    // Forecast publications: when, and how many days they changed.
+    private final List<int[]> mPublications = new ArrayList<int[]>();
+
+    @Before
+    public void loadRecording() throws IOException {
+        InputStream in = getClass().getResourceAsStream("/sync/forecast_week.csv");
+        assertNotNull("missing recording", in);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                mPublications.add(new int[]{
+                        Integer.parseInt(fields[0].trim()), Integer.parseInt(fields[1].trim())});
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void sleepsThroughCalmNightsAndKeepsUpDuringTheStorm() {
+        Report fixed = simulate(new FixedScheduler(180));
+        Report adaptive = simulate(new AdaptiveScheduler(true));
+        System.out.println("fixed:    " + fixed);
+        System.out.println("adaptive: " + adaptive);
+
+        // No syncs at all on calm nights, where the fixed period spends a few...
+        assertTrue(fixed.calmNightSyncs > 0);
+        assertEquals(0, adaptive.calmNightSyncs);
+        // ...which costs nothing while anyone is awake to look...
+        assertTrue(adaptive.awakeMeanStaleness <= fixed.awakeMeanStaleness);
+        assertTrue(adaptive.awakeMaxStaleness <= fixed.awakeMaxStaleness);
+        // ...and the syncs go to the storm instead, where the data is much fresher.
+        assertTrue(adaptive.stormMeanStaleness < fixed.stormMeanStaleness / 2);
+        assertTrue(adaptive.stormMaxStaleness <= fixed.stormMaxStaleness);
+        // Over the whole week too.
+        assertTrue(adaptive.meanStaleness <= fixed.meanStaleness);
+
+        // What this gives up: a forecast published in the night waits for the morning sync,
+        // so the worst staleness of the week is worse than the fixed period's.  In the
+        // recording that is one day changing at midnight, fetched at five.  Following it
+        // sooner means syncing in the night, which is what the quiet hours are there to save.
+        // It is fetched before the device comes off charge, so nobody awake sees it stale
+        // (the awake maximum above), and it never waits longer than the quiet hours.
+        assertTrue(adaptive.maxStaleness > fixed.maxStaleness);
+        assertTrue(adaptive.maxStaleness <= minutesUntil(AdaptiveSyncPolicy.QUIET_START_MINUTE,
+                AdaptiveSyncPolicy.QUIET_END_MINUTE));
+    }
+
+    @Test
+    public void syncsLessStillWithoutConsumers() {
+        Report watched = simulate(new AdaptiveScheduler(true));
+        Report unwatched = simulate(new AdaptiveScheduler(false));
+        System.out.println("no consumers: " + unwatched);
+
+        assertTrue(unwatched.syncs < watched.syncs);
+    }
+
+    @Test
+    public void volatilityFollowsTheFetches() {
+        long hour = TimeUnit.HOURS.toMillis(1);
+        double volatility = 0;
+        for (int i = 0; i < 10; i++) {
+            // Half the forecast every two hours.
+            volatility = AdaptiveSyncPolicy.updateVolatility(volatility, 0.5, 2 * hour);
+        }
+        assertEquals(0.25, volatility, 0.01);
+        for (int i = 0; i < 10; i++) {
+            volatility = AdaptiveSyncPolicy.updateVolatility(volatility, 0, 2 * hour);
+        }
+        assertTrue(volatility < 0.01);
+        // A sync right after another counts as an hour apart.
+        assertEquals(AdaptiveSyncPolicy.VOLATILITY_WEIGHT_PER_HOUR,
+                AdaptiveSyncPolicy.updateVolatility(0, 1, 1000), 0.0001);
+        // A long gap outweighs the history.
+        assertTrue(AdaptiveSyncPolicy.updateVolatility(1, 0.6, 6 * hour) < 0.25);
+    }
+
+    @Test
+    public void intervalShrinksWithVolatility() {
+        AdaptiveSyncPolicy.Schedule calm = AdaptiveSyncPolicy.nextSync(
+                new AdaptiveSyncPolicy.Conditions(0, true, false, false, 9 * 60));
+        AdaptiveSyncPolicy.Schedule stormy = AdaptiveSyncPolicy.nextSync(
+                new AdaptiveSyncPolicy.Conditions(1, true, false, false, 9 * 60));
+
+        assertEquals(AdaptiveSyncPolicy.MAX_INTERVAL_MS, calm.delayMs);
+        assertEquals(AdaptiveSyncPolicy.MIN_INTERVAL_MS, stormy.delayMs);
+        assertTrue(calm.deadlineMs > calm.delayMs);
+    }
+
+    @Test
+    public void nobodyLookingWaitsLongerAndForWifi() {
+        AdaptiveSyncPolicy.Schedule watched = AdaptiveSyncPolicy.nextSync(
+                new AdaptiveSyncPolicy.Conditions(0, true, false, false, 9 * 60));
+        AdaptiveSyncPolicy.Schedule unwatched = AdaptiveSyncPolicy.nextSync(
+                new AdaptiveSyncPolicy.Conditions(0, false, false, false, 9 * 60));
+        AdaptiveSyncPolicy.Schedule cheap = AdaptiveSyncPolicy.nextSync(
+                new AdaptiveSyncPolicy.Conditions(0, false, true, true, 9 * 60));
+
+        assertFalse(watched.preferUnmetered);
+        assertTrue(unwatched.preferUnmetered);
+        assertTrue(unwatched.delayMs > watched.delayMs);
+        assertTrue(cheap.delayMs < unwatched.delayMs);
+    }
+
+    @Test
+    public void nightSyncIsPutOffUntilMorning() {
+        // 22:00, a three hour interval would land at one.
+        AdaptiveSyncPolicy.Schedule schedule = AdaptiveSyncPolicy.nextSync(
+                new AdaptiveSyncPolicy.Conditions(0.05, true, false, false, 22 * 60));
+
+        long morningMs = (AdaptiveSyncPolicy.QUIET_END_MINUTE + 24 * 60 - 22 * 60) * MINUTE_MS;
+        assertEquals(morningMs, schedule.deadlineMs);
+        assertEquals(morningMs - AdaptiveSyncPolicy.NIGHT_FLEX_MS, schedule.delayMs);
+        assertTrue(schedule.preferCharging);
+    }
+
+    @Test
+    public void fastMovingWeatherIsFollowedThroughTheNight() {
+        AdaptiveSyncPolicy.Schedule schedule = AdaptiveSyncPolicy.nextSync(
+                new AdaptiveSyncPolicy.Conditions(0.3, true, true, true, 23 * 60 + 30));
+
+        assertEquals(AdaptiveSyncPolicy.MIN_INTERVAL_MS, schedule.delayMs);
+        assertFalse(schedule.preferCharging);
+    }
+
+    /**
+     * The device over a day: on charge and on wifi at home overnight, on mobile data during the
+     * day.
+     */
+    private static boolean isCharging(int minute) {
+        int minuteOfDay = minute % 1440;
+        return minuteOfDay >= 23 * 60 || minuteOfDay < 7 * 60;
+    }
+
+    private static boolean isUnmetered(int minute) {
+        int minuteOfDay = minute % 1440;
+        return minuteOfDay >= 18 * 60 || minuteOfDay < 8 * 60 + 30;
+    }
+
+    private static int minutesUntil(int fromMinute, int toMinute) {
+        return (toMinute - fromMinute + 1440) % 1440;
+    }
+
+    private interface Scheduler {
+        /**
+         * @return the minute the sync after one at the given minute runs at
+         */
+        int next(int minute, double changedFraction);
+    }
+
+    private static class FixedScheduler implements Scheduler {
+        private final int mIntervalMinutes;
+
+        FixedScheduler(int intervalMinutes) {
+            mIntervalMinutes = intervalMinutes;
+        }
+
+        @Override
+        public int next(int minute, double changedFraction) {
+            return minute + mIntervalMinutes;
+        }
+    }
+
+    /**
+     * Plays the part of SyncScheduler and JobScheduler: keeps the volatility, and runs the job
+     * at the first minute of its window the preferred conditions hold, or at its deadline.
+     */
+    private static class AdaptiveScheduler implements Scheduler {
+        private final boolean mConsumersActive;
+        private double mVolatility = AdaptiveSyncPolicy.HIGH_VOLATILITY;
+        private int mLastSync = -1;
+
+        AdaptiveScheduler(boolean consumersActive) {
+            mConsumersActive = consumersActive;
+        }
+
+        @Override
+        public int next(int minute, double changedFraction) {
+            long elapsedMs = mLastSync < 0
+                    ? AdaptiveSyncPolicy.MAX_INTERVAL_MS : (minute - mLastSync) * MINUTE_MS;
+            mVolatility = AdaptiveSyncPolicy.updateVolatility(mVolatility, changedFraction,
+                    elapsedMs);
+            mLastSync = minute;
+            AdaptiveSyncPolicy.Schedule schedule = AdaptiveSyncPolicy.nextSync(
+                    new AdaptiveSyncPolicy.Conditions(mVolatility, mConsumersActive,
+                            isCharging(minute), isUnmetered(minute), minute % 1440));
+            int earliest = minute + (int) (schedule.delayMs / MINUTE_MS);
+            int deadline = minute + (int) (schedule.deadlineMs / MINUTE_MS);
+            for (int m = earliest; m < deadline; m++) {
+                if ((!schedule.preferUnmetered || isUnmetered(m))
+                        && (!schedule.preferCharging || isCharging(m))) {
+                    return m;
+                }
+            }
+            return deadline;
+        }
+    }
+
+    private static class Report {
+        int syncs;
+        // Syncs which found nothing new.
+        int wastedSyncs;
+        // The same outside the storm.
+        int calmSyncs;
+        int calmWastedSyncs;
+        // Syncs started between midnight and five, and those outside the storm.
+        int nightSyncs;
+        int calmNightSyncs;
+        // Staleness is how long a newer forecast has been published without us having it.
+        double meanStaleness;
+        int maxStaleness;
+        // The same while the user is awake, outside the device's night on charge.
+        double awakeMeanStaleness;
+        int awakeMaxStaleness;
+        double stormMeanStaleness;
+        int stormMaxStaleness;
+
+        @Override
+        public String toString() {
+            return syncs + " syncs (" + wastedSyncs + " found nothing new, " + nightSyncs
+                    + " at night), " + calmSyncs + " outside the storm (" + calmWastedSyncs
+                    + " found nothing new, " + calmNightSyncs + " at night), staleness mean "
+                    + Math.round(meanStaleness) + " max " + maxStaleness + " minutes, awake mean "
+                    + Math.round(awakeMeanStaleness) + " max " + awakeMaxStaleness
+                    + " minutes, during the storm mean "
+                    + Math.round(stormMeanStaleness) + " max " + stormMaxStaleness + " minutes";
+        }
+    }
+
+    private Report simulate(Scheduler scheduler) {
+        Report report = new Report();
+        // The publications we have, as an index into mPublications.
+        int fetched = -1;
+        // The first sync runs at the start of the week, without any history.
+        int nextSync = 0;
+        double changedFraction;
+        long stalenessTotal = 0;
+        long stormStalenessTotal = 0;
+        long awakeStalenessTotal = 0;
+        int awakeMinutes = 0;
+
+        for (int minute = 0; minute < WEEK_MINUTES; minute++) {
+            if (minute == nextSync) {
+                int latest = latestPublicationAt(minute);
+                int changedDays = 0;
+                for (int i = fetched + 1; i <= latest; i++) {
+                    changedDays += mPublications.get(i)[1];
+                }
+                changedFraction = Math.min(FORECAST_DAYS, changedDays) / (double) FORECAST_DAYS;
+                fetched = latest;
+
+                boolean calm = minute < STORM_START || minute >= STORM_END;
+                report.syncs++;
+                if (calm) {
+                    report.calmSyncs++;
+                }
+                if (changedDays == 0) {
+                    report.wastedSyncs++;
+                    if (calm) {
+                        report.calmWastedSyncs++;
+                    }
+                }
+                // The first sync starts the week at midnight, which isn't the scheduler's doing.
+                if (minute > 0 && minute % 1440 < 5 * 60) {
+                    report.nightSyncs++;
+                    if (calm) {
+                        report.calmNightSyncs++;
+                    }
+                }
+                nextSync = scheduler.next(minute, changedFraction);
+            }
+
+            int staleness = 0;
+            if (fetched + 1 < mPublications.size() && mPublications.get(fetched + 1)[0] <= minute) {
+                staleness = minute - mPublications.get(fetched + 1)[0];
+            }
+            stalenessTotal += staleness;
+            report.maxStaleness = Math.max(report.maxStaleness, staleness);
+            if (!isCharging(minute)) {
+                awakeStalenessTotal += staleness;
+                awakeMinutes++;
+                report.awakeMaxStaleness = Math.max(report.awakeMaxStaleness, staleness);
+            }
+            if (minute >= STORM_START && minute < STORM_END) {
+                stormStalenessTotal += staleness;
+                report.stormMaxStaleness = Math.max(report.stormMaxStaleness, staleness);
+            }
+        }
+        report.meanStaleness = stalenessTotal / (double) WEEK_MINUTES;
+        report.awakeMeanStaleness = awakeStalenessTotal / (double) awakeMinutes;
+        report.stormMeanStaleness = stormStalenessTotal / (double) (STORM_END - STORM_START);
+        return report;
+    }
+
+    private int latestPublicationAt(int minute) {
+        int latest = -1;
+        for (int i = 0; i < mPublications.size() && mPublications.get(i)[0] <= minute; i++) {
+            latest = i;
+        }
+        return latest;
+    }
+}
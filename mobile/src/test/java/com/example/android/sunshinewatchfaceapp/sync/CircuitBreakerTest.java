@@ -0,0 +1,125 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterFailuresInARow() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker();
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD - 1; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure(0);
+        }
+        assertFalse(breaker.isOpen());
+
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure(0);
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+
+        // Open for between half and all of the base time.
+        long openMs = breaker.getOpenUntilMs() - System.currentTimeMillis();
+        assertTrue("open " + openMs, openMs <= CircuitBreaker.BASE_OPEN_MS);
+        assertTrue("open " + openMs, openMs >= CircuitBreaker.BASE_OPEN_MS / 2 - 1000);
+    }
+
+    @Test
+    public void aSuccessResetsTheCount() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker();
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD * 2; i++) {
+            breaker.recordFailure(0);
+            breaker.recordSuccess();
+        }
+        assertFalse(breaker.isOpen());
+        assertEquals(0, breaker.getFailures());
+    }
+
+    @Test
+    public void halfOpenLetsOneTrialThrough() throws Exception {
+        // Opened once before, and the open time is over.
+        CircuitBreaker breaker = new CircuitBreaker(CircuitBreaker.FAILURE_THRESHOLD, 1,
+                System.currentTimeMillis() - 1);
+        assertTrue(breaker.allowRequest());
+
+        // The trial fails: open again, for longer.
+        breaker.recordFailure(0);
+        assertTrue(breaker.isOpen());
+        assertEquals(2, breaker.getTrips());
+        long openMs = breaker.getOpenUntilMs() - System.currentTimeMillis();
+        assertTrue("open " + openMs, openMs >= CircuitBreaker.BASE_OPEN_MS - 1000);
+
+        // The next trial works: closed.
+        breaker = new CircuitBreaker(CircuitBreaker.FAILURE_THRESHOLD, 2,
+                System.currentTimeMillis() - 1);
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertEquals(0, breaker.getOpenUntilMs());
+        assertEquals(0, breaker.getTrips());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void requestsWaitForTheTrial() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker(CircuitBreaker.FAILURE_THRESHOLD, 1,
+                System.currentTimeMillis() - 1);
+        assertTrue(breaker.allowRequest());
+
+        final boolean[] allowed = new boolean[1];
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    allowed[0] = breaker.allowRequest();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        waiter.start();
+        waiter.join(200);
+        assertTrue("went ahead of the trial", waiter.isAlive());
+
+        breaker.recordSuccess();
+        waiter.join(1000);
+        assertFalse(waiter.isAlive());
+        assertTrue(allowed[0]);
+    }
+
+    @Test
+    public void retryAfterOpensRightAway() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker();
+        long retryAfterMs = TimeUnit.HOURS.toMillis(1);
+        breaker.recordFailure(retryAfterMs);
+        assertTrue(breaker.isOpen());
+        assertTrue(breaker.getOpenUntilMs() - System.currentTimeMillis() > retryAfterMs - 1000);
+    }
+
+    @Test
+    public void backoffDoublesWithJitterUpToTheCap() {
+        ExponentialBackoff backoff = new ExponentialBackoff(1000, 30000, new Random(42));
+        for (int i = 0; i < 100; i++) {
+            long first = backoff.delayMs(0);
+            assertTrue("first " + first, first >= 500 && first <= 1000);
+            long fourth = backoff.delayMs(3);
+            assertTrue("fourth " + fourth, fourth >= 4000 && fourth <= 8000);
+            long late = backoff.delayMs(20);
+            assertTrue("late " + late, late >= 15000 && late <= 30000);
+            long huge = backoff.delayMs(200);
+            assertTrue("huge " + huge, huge >= 15000 && huge <= 30000);
+        }
+
+        // Not all the same, or devices failing together would retry together.
+        long a = backoff.delayMs(5);
+        boolean varied = false;
+        for (int i = 0; i < 10 && !varied; i++) {
+            varied = backoff.delayMs(5) != a;
+        }
+        assertTrue(varied);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class FanOutDispatcherTest {
+    private static final long CONSUMER_MS = 200;
+
+    private final FanOutDispatcher<String> mDispatcher = new FanOutDispatcher<String>();
+
+    @After
+    public void shutdown() {
+        mDispatcher.shutdownNow();
+    }
+
+    @Test
+    public void publishDoesNotWaitAndConsumersRunTogether() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            mDispatcher.addConsumer("sleeper" + i, 5000, sleeper(CONSUMER_MS));
+        }
+        Recorder recorder = new Recorder();
+
+        long start = System.nanoTime();
+        mDispatcher.publish("committed", recorder);
+        assertTrue(millisSince(start) < CONSUMER_MS / 2);
+
+        List<FanOutDispatcher.Delivery> deliveries = recorder.await();
+        // One after the other would have taken four times as long.
+        assertTrue("took " + millisSince(start), millisSince(start) < CONSUMER_MS * 2);
+        assertEquals(4, deliveries.size());
+        for (FanOutDispatcher.Delivery delivery : deliveries) {
+            assertFalse(delivery.timedOut);
+            assertNull(delivery.error);
+            assertTrue(delivery.durationMs >= CONSUMER_MS - 20);
+        }
+    }
+
+    @Test
+    public void aSlowConsumerTimesOutWithoutHoldingUpTheOthers() throws Exception {
+        final CountDownLatch fastDone = new CountDownLatch(1);
+        final CountDownLatch slowInterrupted = new CountDownLatch(1);
+        mDispatcher.addConsumer("slow", CONSUMER_MS, new FanOutDispatcher.Consumer<String>() {
+            @Override
+            public void onEvent(String event) {
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                } catch (InterruptedException e) {
+                    slowInterrupted.countDown();
+                }
+            }
+        });
+        mDispatcher.addConsumer("fast", 5000, new FanOutDispatcher.Consumer<String>() {
+            @Override
+            public void onEvent(String event) {
+                fastDone.countDown();
+            }
+        });
+        Recorder recorder = new Recorder();
+
+        mDispatcher.publish("committed", recorder);
+
+        assertTrue(fastDone.await(CONSUMER_MS / 2, TimeUnit.MILLISECONDS));
+        List<FanOutDispatcher.Delivery> deliveries = recorder.await();
+        assertTrue(slowInterrupted.await(1, TimeUnit.SECONDS));
+        FanOutDispatcher.Delivery slow = deliveries.get(0);
+        assertEquals("slow", slow.consumer);
+        assertTrue(slow.timedOut);
+        assertTrue(slow.durationMs >= CONSUMER_MS);
+        FanOutDispatcher.Delivery fast = deliveries.get(1);
+        assertEquals("fast", fast.consumer);
+        assertFalse(fast.timedOut);
+        assertTrue(fast.durationMs < CONSUMER_MS);
+    }
+
+    @Test
+    public void errorsAreReportedAndDoNotStopTheConsumer() throws Exception {
+        mDispatcher.addConsumer("failing", 5000, new FanOutDispatcher.Consumer<String>() {
+            @Override
+            public void onEvent(String event) throws Exception {
+                if (event.equals("bad")) {
+                    throw new IllegalStateException(event);
+                }
+            }
+        });
+
+        Recorder bad = new Recorder();
+        mDispatcher.publish("bad", bad);
+        assertTrue(bad.await().get(0).error instanceof IllegalStateException);
+
+        Recorder good = new Recorder();
+        mDispatcher.publish("good", good);
+        assertNull(good.await().get(0).error);
+    }
+
+    @Test
+    public void eventsWaitingBehindABusyConsumerTimeOutToo() throws Exception {
+        mDispatcher.addConsumer("sleeper", CONSUMER_MS * 3 / 2, sleeper(CONSUMER_MS));
+
+        Recorder first = new Recorder();
+        mDispatcher.publish("first", first);
+        Recorder second = new Recorder();
+        mDispatcher.publish("second", second);
+
+        assertFalse(first.await().get(0).timedOut);
+        // Its own timeout started when it was published, not when the first was done.
+        assertTrue(second.await().get(0).timedOut);
+    }
+
+    private static FanOutDispatcher.Consumer<String> sleeper(final long ms) {
+        return new FanOutDispatcher.Consumer<String>() {
+            @Override
+            public void onEvent(String event) throws InterruptedException {
+                Thread.sleep(ms);
+            }
+        };
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static class Recorder implements FanOutDispatcher.Listener<String> {
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private final AtomicReference<List<FanOutDispatcher.Delivery>> mDeliveries =
+                new AtomicReference<List<FanOutDispatcher.Delivery>>();
+
+        @Override
+        public void onDelivered(String event, List<FanOutDispatcher.Delivery> deliveries) {
+            assertTrue(mDeliveries.compareAndSet(null, deliveries));
+            mDone.countDown();
+        }
+
+        List<FanOutDispatcher.Delivery> await() throws InterruptedException {
+            assertTrue("not delivered", mDone.await(5, TimeUnit.SECONDS));
+            return mDeliveries.get();
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the sync engine through server outages, against a local stand-in server which fails
+ * requests the way each test scripts it.
+ */
+public class FetchOutageTest {
+    private static final String HOST = "127.0.0.1";
+    // Longer than the transport's read timeout.
+    private static final int HANG_MS = 1000;
+
+    /**
+     * What the stand-in server does with a request.
+     */
+    private enum Fault {
+        NONE, UNAVAILABLE, UNAVAILABLE_RETRY_LATER, UNAVAILABLE_RETRY_SOON, NOT_FOUND, HANG,
+        TRUNCATED, TRICKLE, TOO_LARGE
+    }
+
+    private HttpServer mServer;
+    private ExecutorService mServerExecutor;
+    private final HttpTransport mTransport = new HttpTransport(1000, 300, 2000, 64 * 1024);
+    // Short retry delays, so the tests don't wait on them.
+    private final ExponentialBackoff mRetryBackoff =
+            new ExponentialBackoff(20, 2000, new Random(7));
+    private final MapStore mBreakers = new MapStore();
+
+    // Faults for the next requests, in order, then the default for every request after.
+    private final LinkedList<Fault> mScript = new LinkedList<Fault>();
+    private Fault mDefaultFault = Fault.NONE;
+    private final AtomicInteger mHits = new AtomicInteger();
+
+    private final LocationSyncEngine.BodyParser<String> mParser =
+            new LocationSyncEngine.BodyParser<String>() {
+                @Override
+                public String parse(InputStream body) throws Exception {
+                    return LocationSyncEngineTest.readString(body);
+                }
+            };
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(HOST, 0), 0);
+        mServerExecutor = Executors.newFixedThreadPool(16);
+        mServer.setExecutor(mServerExecutor);
+        mServer.createContext("/forecast", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mHits.incrementAndGet();
+                switch (nextFault()) {
+                    case UNAVAILABLE:
+                        send(exchange, HttpURLConnection.HTTP_UNAVAILABLE, "down");
+                        break;
+                    case UNAVAILABLE_RETRY_LATER:
+                        exchange.getResponseHeaders().add("Retry-After", "3600");
+                        send(exchange, HttpURLConnection.HTTP_UNAVAILABLE, "down");
+                        break;
+                    case UNAVAILABLE_RETRY_SOON:
+                        exchange.getResponseHeaders().add("Retry-After", "1");
+                        send(exchange, HttpURLConnection.HTTP_UNAVAILABLE, "busy");
+                        break;
+                    case NOT_FOUND:
+                        send(exchange, HttpURLConnection.HTTP_NOT_FOUND, "no such city");
+                        break;
+                    case HANG:
+                        try {
+                            Thread.sleep(HANG_MS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        send(exchange, HttpURLConnection.HTTP_OK, "late");
+                        break;
+                    case TRUNCATED:
+                        truncate(exchange, exchange.getRequestURI().getQuery());
+                        break;
+                    case TRICKLE:
+                        trickle(exchange, exchange.getRequestURI().getQuery());
+                        break;
+                    case TOO_LARGE:
+                        send(exchange, HttpURLConnection.HTTP_OK, new String(new char[70 * 1024]));
+                        break;
+                    default:
+                        send(exchange, HttpURLConnection.HTTP_OK,
+                                exchange.getRequestURI().getQuery());
+                }
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+        mServerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void transientFailuresAreRetried() throws Exception {
+        script(Fault.UNAVAILABLE, Fault.HANG);
+
+        LocationSyncEngine.Result<String> result = fetch(engine(), 1).get(0);
+
+        assertNull(result.error);
+        assertEquals("q=loc0", result.parsed);
+        assertEquals(3, result.attempts);
+        assertEquals(3, mHits.get());
+        assertFalse(breaker().isOpen());
+        assertEquals(0, breaker().getFailures());
+    }
+
+    @Test
+    public void brokenBodiesAreRetried() throws Exception {
+        script(Fault.TRUNCATED, Fault.TRICKLE);
+
+        LocationSyncEngine.Result<String> result = fetch(engine(), 1).get(0);
+
+        assertNull(result.error);
+        assertEquals("q=loc0", result.parsed);
+        assertEquals(3, result.attempts);
+        assertEquals(3, mHits.get());
+        assertEquals(0, breaker().getFailures());
+    }
+
+    @Test
+    public void brokenBodiesOpenTheBreaker() throws Exception {
+        mDefaultFault = Fault.TRUNCATED;
+        int locations = 20;
+
+        List<LocationSyncEngine.Result<String>> results = fetch(engine(), locations);
+
+        // Counted as failures like any other: without the breaker every location would have
+        // tried three times.
+        assertTrue("hits " + mHits.get(), mHits.get() >= CircuitBreaker.FAILURE_THRESHOLD);
+        assertTrue("hits " + mHits.get(),
+                mHits.get() <= CircuitBreaker.FAILURE_THRESHOLD + 2);
+        for (LocationSyncEngine.Result<String> result : results) {
+            assertTrue(result.error instanceof IOException);
+            assertNull(result.parsed);
+        }
+        assertTrue(breaker().isOpen());
+    }
+
+    @Test
+    public void aTooLargeBodyIsNotRetried() throws Exception {
+        mDefaultFault = Fault.TOO_LARGE;
+
+        LocationSyncEngine.Result<String> result = fetch(engine(), 1).get(0);
+
+        // The server is up, it's the answer we can't use.
+        assertTrue(result.error instanceof HttpTransport.ResponseTooLargeException);
+        assertEquals(1, result.attempts);
+        assertEquals(0, breaker().getFailures());
+        assertFalse(breaker().isOpen());
+    }
+
+    @Test
+    public void aBodyTheParserRejectsIsNotRetried() throws Exception {
+        List<LocationSyncEngine.Request> requests = new ArrayList<LocationSyncEngine.Request>();
+        requests.add(request("loc0"));
+
+        LocationSyncEngine.Result<String> result = engine().fetchAll(requests, mBreakers,
+                new LocationSyncEngine.BodyParser<String>() {
+                    @Override
+                    public String parse(InputStream body) throws Exception {
+                        throw new IllegalArgumentException("Not a forecast");
+                    }
+                }).get(0);
+
+        assertTrue(result.error instanceof IllegalArgumentException);
+        assertEquals(1, result.attempts);
+        assertEquals(0, breaker().getFailures());
+    }
+
+    @Test
+    public void anOutageOpensTheBreakerAndStopsTheRequests() throws Exception {
+        mDefaultFault = Fault.UNAVAILABLE;
+        int locations = 20;
+
+        long before = System.currentTimeMillis();
+        List<LocationSyncEngine.Result<String>> results = fetch(engine(), locations);
+
+        // Without the breaker every location would have tried three times.
+        assertTrue("hits " + mHits.get(),
+                mHits.get() <= CircuitBreaker.FAILURE_THRESHOLD + 2);
+        int blocked = 0;
+        int attempts = 0;
+        for (LocationSyncEngine.Result<String> result : results) {
+            assertTrue(result.error instanceof IOException);
+            assertTrue(result.retryAtMs > before);
+            if (result.error instanceof LocationSyncEngine.CircuitOpenException) {
+                blocked++;
+            }
+            attempts += result.attempts;
+        }
+        assertEquals(mHits.get(), attempts);
+        assertTrue("blocked " + blocked, blocked >= locations - 2);
+        assertTrue(breaker().isOpen());
+    }
+
+    @Test
+    public void theBreakerIsRememberedBetweenPasses() throws Exception {
+        mDefaultFault = Fault.UNAVAILABLE;
+        fetch(engine(), 5);
+        int outageHits = mHits.get();
+
+        // The server is back, but we don't know that yet.  A new engine, as after a restart.
+        mDefaultFault = Fault.NONE;
+        for (LocationSyncEngine.Result<String> result : fetch(engine(), 5)) {
+            assertTrue(result.error instanceof LocationSyncEngine.CircuitOpenException);
+        }
+        assertEquals(outageHits, mHits.get());
+
+        // Once the open time is over, one trial goes out, and the rest follow it.
+        CircuitBreaker stored = breaker();
+        mBreakers.put(endpoint(), new CircuitBreaker(stored.getFailures(), stored.getTrips(),
+                System.currentTimeMillis() - 1));
+        for (LocationSyncEngine.Result<String> result : fetch(engine(), 5)) {
+            assertNull(result.error);
+        }
+        assertEquals(outageHits + 5, mHits.get());
+        assertEquals(0, breaker().getOpenUntilMs());
+    }
+
+    @Test
+    public void aFailedTrialOpensTheBreakerForLonger() throws Exception {
+        mDefaultFault = Fault.UNAVAILABLE;
+        mBreakers.put(endpoint(), new CircuitBreaker(CircuitBreaker.FAILURE_THRESHOLD, 1,
+                System.currentTimeMillis() - 1));
+
+        List<LocationSyncEngine.Result<String>> results = fetch(engine(), 5);
+
+        // Whichever request got its turn first was the trial, the others never went out.
+        assertEquals(1, mHits.get());
+        int attempts = 0;
+        for (LocationSyncEngine.Result<String> result : results) {
+            attempts += result.attempts;
+        }
+        assertEquals(1, attempts);
+        assertEquals(2, breaker().getTrips());
+        long openMs = breaker().getOpenUntilMs() - System.currentTimeMillis();
+        assertTrue("open " + openMs, openMs > CircuitBreaker.BASE_OPEN_MS - 1000);
+    }
+
+    @Test
+    public void retryAfterIsHonoured() throws Exception {
+        // Soon enough to wait for within the sync.
+        script(Fault.UNAVAILABLE_RETRY_SOON);
+        long start = System.nanoTime();
+        LocationSyncEngine.Result<String> result = fetch(engine(), 1).get(0);
+        assertNull(result.error);
+        assertEquals(2, result.attempts);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 1000);
+
+        // Too long to wait for: no retry, and nothing more until then.
+        mHits.set(0);
+        mDefaultFault = Fault.UNAVAILABLE_RETRY_LATER;
+        List<LocationSyncEngine.Result<String>> results = fetch(engine(), 3);
+        // Only the requests already let through before the answer came back.
+        assertTrue("hits " + mHits.get(), mHits.get() <= 2);
+        long waitMs = results.get(0).retryAtMs - System.currentTimeMillis();
+        assertTrue("wait " + waitMs, waitMs > TimeUnit.MINUTES.toMillis(59));
+        int blocked = 0;
+        for (LocationSyncEngine.Result<String> later : results) {
+            if (later.error instanceof LocationSyncEngine.CircuitOpenException) {
+                blocked++;
+            }
+        }
+        assertEquals(results.size() - mHits.get(), blocked);
+    }
+
+    @Test
+    public void clientErrorsDoNotOpenTheBreaker() throws Exception {
+        mDefaultFault = Fault.NOT_FOUND;
+
+        List<LocationSyncEngine.Result<String>> results = fetch(engine(), 5);
+
+        // One try each: asking again won't find the city.
+        assertEquals(5, mHits.get());
+        for (LocationSyncEngine.Result<String> result : results) {
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND, result.response.code);
+            assertFalse(result.error instanceof LocationSyncEngine.CircuitOpenException);
+            assertEquals(0, result.retryAtMs);
+        }
+        assertFalse(breaker().isOpen());
+    }
+
+    @Test
+    public void anUnreachableServerOpensItsOwnBreakerOnly() throws Exception {
+        LocationSyncEngine engine = engine();
+        List<LocationSyncEngine.Request> requests = new ArrayList<LocationSyncEngine.Request>();
+        URL unreachable = new URL("http://" + HOST + ":1/forecast");
+        for (int i = 0; i < 4; i++) {
+            requests.add(new LocationSyncEngine.Request("gone" + i,
+                    new URL(unreachable + "?q=gone" + i), null));
+            requests.add(request("loc" + i));
+        }
+
+        List<LocationSyncEngine.Result<String>> results =
+                engine.fetchAll(requests, mBreakers, mParser);
+
+        for (int i = 0; i < results.size(); i += 2) {
+            assertTrue(results.get(i).error instanceof IOException);
+            assertNull(results.get(i + 1).error);
+        }
+        assertTrue(mBreakers.get(LocationSyncEngine.endpointOf(unreachable)).isOpen());
+        assertFalse(breaker().isOpen());
+    }
+
+    private LocationSyncEngine engine() {
+        return new LocationSyncEngine(mTransport, 4, 2, LocationSyncEngine.DEFAULT_MAX_ATTEMPTS,
+                mRetryBackoff);
+    }
+
+    private List<LocationSyncEngine.Result<String>> fetch(LocationSyncEngine engine,
+                                                          int locations) throws Exception {
+        List<LocationSyncEngine.Request> requests = new ArrayList<LocationSyncEngine.Request>();
+        for (int i = 0; i < locations; i++) {
+            requests.add(request("loc" + i));
+        }
+        return engine.fetchAll(requests, mBreakers, mParser);
+    }
+
+    private LocationSyncEngine.Request request(String location) throws IOException {
+        URL url = new URL("http://" + HOST + ":" + mServer.getAddress().getPort()
+                + "/forecast?q=" + location);
+        return new LocationSyncEngine.Request(location, url, null);
+    }
+
+    private String endpoint() {
+        return HOST + ":" + mServer.getAddress().getPort() + "/forecast";
+    }
+
+    private CircuitBreaker breaker() {
+        return mBreakers.get(endpoint());
+    }
+
+    private synchronized void script(Fault... faults) {
+        for (Fault fault : faults) {
+            mScript.add(fault);
+        }
+    }
+
+    private synchronized Fault nextFault() {
+        return mScript.isEmpty() ? mDefaultFault : mScript.removeFirst();
+    }
+
+    private static void send(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static void truncate(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes, 0, bytes.length / 2);
+        out.flush();
+        // Drop the connection half way through the body.
+        exchange.close();
+    }
+
+    private static void trickle(HttpExchange exchange, String body) throws IOException {
+        // Padded so that the whole takes longer than the transport's total timeout.
+        byte[] bytes = (body + new String(new char[30]).replace('\0', ' ')).getBytes("UTF-8");
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            // Each write is well within the read timeout, the whole is not.
+            for (byte b : bytes) {
+                out.write(b);
+                out.flush();
+                Thread.sleep(100);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // The client gave up, as it should.
+        }
+        exchange.close();
+    }
+
+    /**
+     * Keeps breakers the way the preferences do: by value, so that each pass starts from what
+     * the previous one stored.
+     */
+    private static class MapStore implements CircuitBreaker.Store {
+        private final Map<String, CircuitBreaker> mBreakers = new HashMap<String, CircuitBreaker>();
+
+        @Override
+        public synchronized CircuitBreaker get(String host) {
+            CircuitBreaker breaker = mBreakers.get(host);
+            return breaker == null ? null : new CircuitBreaker(breaker.getFailures(),
+                    breaker.getTrips(), breaker.getOpenUntilMs());
+        }
+
+        @Override
+        public synchronized void put(String host, CircuitBreaker breaker) {
+            mBreakers.put(host, breaker);
+        }
+    }
+}
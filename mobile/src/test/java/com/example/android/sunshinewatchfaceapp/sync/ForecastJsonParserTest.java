@@ -0,0 +1,91 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import android.content.ContentValues;
+import android.os.Build;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link ForecastJsonParser} against the recorded OpenWeatherMap responses, and against
+ * the org.json code it replaced.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class ForecastJsonParserTest {
+    static final String[] RECORDINGS = {
+            "/sync/replay/morning/94043.json",
+            "/sync/replay/morning/London_UK.json",
+            "/sync/replay/morning/Tokyo_JP.json"
+    };
+    private static final int JULIAN_DAY = 2457683;
+
+    @Test
+    public void readsTheSameRowsAsTheOrgJsonCode() throws Exception {
+        for (String recording : RECORDINGS) {
+            byte[] body = resource(recording);
+
+            ForecastJsonParser.Forecast forecast =
+                    ForecastJsonParser.parse(new ByteArrayInputStream(body), JULIAN_DAY);
+            List<ContentValues> expected =
+                    OrgJsonForecastParser.parse(new ByteArrayInputStream(body), JULIAN_DAY);
+
+            assertNotNull(recording, forecast.cityName);
+            assertEquals(recording, expected, forecast.days);
+        }
+    }
+
+    @Test
+    public void aBodyEndingPartWayThroughIsInvalid() throws Exception {
+        byte[] body = resource(RECORDINGS[0]);
+        byte[] truncated = Arrays.copyOf(body, body.length / 2);
+        try {
+            ForecastJsonParser.parse(new ByteArrayInputStream(truncated), JULIAN_DAY);
+            fail("Parsed half a forecast");
+        } catch (JSONException e) {
+            // Told apart from a network failure, which leaves the location SERVER_DOWN.
+        }
+    }
+
+    @Test
+    public void aBodyWhichIsNotJsonIsInvalid() throws Exception {
+        try {
+            ForecastJsonParser.parse(
+                    new ByteArrayInputStream("<html>Bad gateway</html>".getBytes("UTF-8")),
+                    JULIAN_DAY);
+            fail("Parsed an HTML page");
+        } catch (JSONException e) {
+            // As expected.
+        }
+    }
+
+    static byte[] resource(String name) throws IOException {
+        InputStream in = ForecastJsonParserTest.class.getResourceAsStream(name);
+        assertNotNull(name, in);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import android.content.ContentValues;
+import android.os.Build;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares {@link ForecastJsonParser} with the org.json code it replaced, which read the whole
+ * body into a StringBuffer and built a tree from it before taking the rows out.  Each size prints
+ * one line, with the median time of a parse and the mean bytes it allocated, for each of the two:
+ *
+ *   days   body  stream p50 &lt;ms&gt; alloc &lt;KB&gt;  org.json p50 &lt;ms&gt; alloc &lt;KB&gt;
+ *
+ * The 14 day size is a recorded OpenWeatherMap response; the larger ones repeat its days, the
+ * way an hourly forecast would grow the body.  Allocation is counted on the parsing thread, and
+ * Robolectric instruments the framework classes, so the numbers are higher than on a phone; it
+ * is the two paths against each other that matters.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class ForecastParseBenchmarkTest {
+    private static final int[] DAYS = {14, 120, 1000};
+    private static final int WARMUP_PARSES = 50;
+    private static final int MEASURED_PARSES = 200;
+    private static final int JULIAN_DAY = 2457683;
+
+    private final ThreadMXBean mThreads = ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void streamingAgainstOrgJson() throws Exception {
+        byte[] recording = ForecastJsonParserTest.resource(ForecastJsonParserTest.RECORDINGS[0]);
+        for (int days : DAYS) {
+            final byte[] body = days == 14 ? recording : withDays(recording, days);
+
+            Result stream = measure(new Parse() {
+                @Override
+                public int run() throws Exception {
+                    return ForecastJsonParser.parse(new ByteArrayInputStream(body), JULIAN_DAY)
+                            .days.size();
+                }
+            });
+            Result orgJson = measure(new Parse() {
+                @Override
+                public int run() throws Exception {
+                    List<ContentValues> rows = OrgJsonForecastParser.parse(
+                            new ByteArrayInputStream(body), JULIAN_DAY);
+                    return rows.size();
+                }
+            });
+
+            // A parser which broke would look fast.
+            assertEquals(days, stream.rows);
+            assertEquals(days, orgJson.rows);
+            System.out.println(String.format(Locale.US,
+                    "%5d days %7.1fKB  stream p50 %.2fms alloc %.1fKB"
+                            + "  org.json p50 %.2fms alloc %.1fKB",
+                    days, body.length / 1024.0,
+                    stream.p50Nanos / 1e6, stream.allocatedBytes / 1024.0,
+                    orgJson.p50Nanos / 1e6, orgJson.allocatedBytes / 1024.0));
+        }
+    }
+
+    private Result measure(Parse parse) throws Exception {
+        for (int i = 0; i < WARMUP_PARSES; i++) {
+            parse.run();
+        }
+        long[] nanos = new long[MEASURED_PARSES];
+        long allocated = 0;
+        int rows = 0;
+        for (int i = 0; i < MEASURED_PARSES; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            rows = parse.run();
+            nanos[i] = System.nanoTime() - start;
+            allocated += allocatedBytes() - allocatedBefore;
+        }
+        Arrays.sort(nanos);
+        Result result = new Result();
+        result.p50Nanos = nanos[nanos.length / 2];
+        result.allocatedBytes = allocated / MEASURED_PARSES;
+        result.rows = rows;
+        return result;
+    }
+
+    private long allocatedBytes() {
+        if (!(mThreads instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean) mThreads)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * The recorded response with its days repeated up to the given count.
+     */
+    private static byte[] withDays(byte[] recording, int days) throws Exception {
+        JSONObject forecast = new JSONObject(new String(recording, "UTF-8"));
+        JSONArray list = forecast.getJSONArray("list");
+        JSONArray repeated = new JSONArray();
+        for (int i = 0; i < days; i++) {
+            repeated.put(list.get(i % list.length()));
+        }
+        forecast.put("list", repeated);
+        forecast.put("cnt", days);
+        return forecast.toString().getBytes("UTF-8");
+    }
+
+    private interface Parse {
+        // Returns how many rows were read.
+        int run() throws Exception;
+    }
+
+    private static class Result {
+        long p50Nanos;
+        long allocatedBytes;
+        int rows;
+    }
+}
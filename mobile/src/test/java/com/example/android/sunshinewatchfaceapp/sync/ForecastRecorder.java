@@ -0,0 +1,75 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+
+/**
+ * Records live OpenWeatherMap responses for the {@link ForecastReplayServer}, asking for them the
+ * way the sync adapter does.  Not a test: run it by hand, from the mobile directory, with
+ *
+ *   ForecastRecorder &lt;api key&gt; &lt;recording&gt; &lt;location&gt;...
+ *
+ * and commit the files it writes under src/test/resources/sync/replay/&lt;recording&gt;/.
+ */
+public class ForecastRecorder {
+    private static final String FORECAST_URL = "http://api.openweathermap.org"
+            + ForecastReplayServer.FORECAST_PATH;
+    private static final String FIXTURE_DIR = "src/test/resources/sync/replay/";
+    // Matches the sync adapter's FORECAST_DAYS.
+    private static final int FORECAST_DAYS = 14;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: ForecastRecorder <api key> <recording> <location>...");
+            System.exit(1);
+        }
+        File dir = new File(FIXTURE_DIR + args[1]);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        for (int i = 2; i < args.length; i++) {
+            String location = args[i];
+            URL url = new URL(FORECAST_URL + "?q=" + URLEncoder.encode(location, "UTF-8")
+                    + "&mode=json&units=metric&cnt=" + FORECAST_DAYS
+                    + "&APPID=" + URLEncoder.encode(args[0], "UTF-8"));
+            byte[] body = fetch(url);
+            File fixture = new File(dir, ForecastReplayServer.fixtureName(location));
+            OutputStream out = new FileOutputStream(fixture);
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+            System.out.println("Recorded " + location + ": " + body.length + " bytes in "
+                    + fixture);
+        }
+    }
+
+    private static byte[] fetch(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + connection.getResponseCode() + " for "
+                        + url.getQuery().replaceAll("APPID=[^&]*", "APPID=..."));
+            }
+            InputStream in = connection.getInputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            in.close();
+            return out.toByteArray();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local stand-in for OpenWeatherMap's daily forecast API, which replays recorded responses.
+ *
+ * Recordings live in the test resources under sync/replay/&lt;recording&gt;/, one response per
+ * location, named after the "q" parameter with everything but letters and digits turned into
+ * underscores ("London,UK" is London_UK.json).  {@link ForecastRecorder} makes new ones.
+ * Switching recordings between syncs makes the forecasts change the way a new publication would.
+ *
+ * Like the real server, it gzips when asked to and answers a matching If-None-Match with "not
+ * modified".  It can also make each response slow, narrow or failing, with a seeded random, so
+ * that runs can be compared with each other.
+ */
+class ForecastReplayServer {
+    static final String FORECAST_PATH = "/data/2.5/forecast/daily";
+
+    private static final String RESOURCE_ROOT = "/sync/replay/";
+    // How often a throttled response is written to, in pieces.
+    private static final int THROTTLE_CHUNKS_PER_SECOND = 20;
+    private static final byte[] NOT_FOUND_BODY =
+            utf8("{\"cod\":\"404\",\"message\":\"city not found\"}");
+    private static final byte[] ERROR_BODY =
+            utf8("{\"cod\":\"503\",\"message\":\"service unavailable\"}");
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final Map<String, byte[]> mFixtures = new HashMap<String, byte[]>();
+    private final Random mRandom;
+
+    private volatile String mRecording;
+    private volatile long mLatencyMs;
+    private volatile long mJitterMs;
+    private volatile long mBytesPerSecond;
+    private volatile double mErrorRate;
+    private volatile int mErrorCode = HttpURLConnection.HTTP_UNAVAILABLE;
+
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final AtomicInteger mNotModified = new AtomicInteger();
+    private final AtomicInteger mErrors = new AtomicInteger();
+
+    /**
+     * Starts the server on a free local port.
+     *
+     * @param recording the recording to replay
+     * @param seed seeds the latency jitter and the errors
+     */
+    ForecastReplayServer(String recording, long seed) throws IOException {
+        mRecording = recording;
+        mRandom = new Random(seed);
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mExecutor = Executors.newFixedThreadPool(8);
+        mServer.setExecutor(mExecutor);
+        mServer.createContext(FORECAST_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.start();
+    }
+
+    /**
+     * @return what to use instead of OpenWeatherMap's daily forecast URL
+     */
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + FORECAST_PATH;
+    }
+
+    void setRecording(String recording) {
+        mRecording = recording;
+    }
+
+    /**
+     * Waits this long, give or take up to the jitter, before answering.
+     */
+    void setLatency(long latencyMs, long jitterMs) {
+        mLatencyMs = latencyMs;
+        mJitterMs = jitterMs;
+    }
+
+    /**
+     * Sends bodies no faster than this; 0 for as fast as possible.
+     */
+    void setBandwidth(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Answers this share of the requests with the error code instead of the forecast.
+     */
+    void setErrors(double rate, int code) {
+        mErrorRate = rate;
+        mErrorCode = code;
+    }
+
+    int getRequestCount() {
+        return mRequests.get();
+    }
+
+    int getNotModifiedCount() {
+        return mNotModified.get();
+    }
+
+    int getErrorCount() {
+        return mErrors.get();
+    }
+
+    void shutdown() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * @return the name of the fixture holding the forecast for the location
+     */
+    static String fixtureName(String location) {
+        StringBuilder name = new StringBuilder(location.length() + 5);
+        for (int i = 0; i < location.length(); i++) {
+            char c = location.charAt(i);
+            name.append(Character.isLetterOrDigit(c) ? c : '_');
+        }
+        return name.append(".json").toString();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException, InterruptedException {
+        mRequests.incrementAndGet();
+        long delayMs;
+        boolean fail;
+        synchronized (mRandom) {
+            delayMs = mLatencyMs + (mJitterMs > 0
+                    ? (long) ((mRandom.nextDouble() * 2 - 1) * mJitterMs) : 0);
+            fail = mRandom.nextDouble() < mErrorRate;
+        }
+        if (delayMs > 0) {
+            Thread.sleep(delayMs);
+        }
+
+        if (fail) {
+            mErrors.incrementAndGet();
+            send(exchange, mErrorCode, ERROR_BODY);
+            return;
+        }
+
+        String location = queryParameter(exchange, "q");
+        if (location == null) {
+            location = queryParameter(exchange, "lat") + "," + queryParameter(exchange, "lon");
+        }
+        byte[] body = fixture(mRecording, location);
+        if (body == null) {
+            send(exchange, HttpURLConnection.HTTP_NOT_FOUND, NOT_FOUND_BODY);
+            return;
+        }
+
+        String etag = "\"" + md5(body) + "\"";
+        exchange.getResponseHeaders().add("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            mNotModified.incrementAndGet();
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+            return;
+        }
+        send(exchange, HttpURLConnection.HTTP_OK, body);
+    }
+
+    private void send(HttpExchange exchange, int code, byte[] body)
+            throws IOException, InterruptedException {
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            body = gzip(body);
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, body.length);
+
+        OutputStream out = exchange.getResponseBody();
+        long bytesPerSecond = mBytesPerSecond;
+        if (bytesPerSecond <= 0) {
+            out.write(body);
+        } else {
+            int chunk = (int) Math.max(1, bytesPerSecond / THROTTLE_CHUNKS_PER_SECOND);
+            for (int offset = 0; offset < body.length; offset += chunk) {
+                int count = Math.min(chunk, body.length - offset);
+                out.write(body, offset, count);
+                out.flush();
+                Thread.sleep(TimeUnit.SECONDS.toMillis(count) / bytesPerSecond);
+            }
+        }
+        out.close();
+    }
+
+    private byte[] fixture(String recording, String location) throws IOException {
+        String resource = RESOURCE_ROOT + recording + "/" + fixtureName(location);
+        synchronized (mFixtures) {
+            if (mFixtures.containsKey(resource)) {
+                return mFixtures.get(resource);
+            }
+        }
+        byte[] body = null;
+        InputStream in = getClass().getResourceAsStream(resource);
+        if (in != null) {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8 * 1024];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+                body = out.toByteArray();
+            } finally {
+                in.close();
+            }
+        }
+        synchronized (mFixtures) {
+            mFixtures.put(resource, body);
+        }
+        return body;
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0 && parameter.substring(0, equals).equals(name)) {
+                return URLDecoder.decode(parameter.substring(equals + 1), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(body);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static String md5(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(body);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static byte[] utf8(String text) {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ForecastReplayServerTest {
+    private final HttpTransport mTransport = new HttpTransport(1000, 5000, 10000, 64 * 1024);
+    private ForecastReplayServer mServer;
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = new ForecastReplayServer("morning", 1);
+    }
+
+    @After
+    public void stopServer() {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void replaysTheRecording() throws Exception {
+        HttpTransport.Response morning = mTransport.get(url("London,UK"));
+        assertEquals(HttpURLConnection.HTTP_OK, morning.code);
+        String body = HttpTransportTest.readBody(morning);
+        assertTrue(body.contains("\"name\":\"London\""));
+        // Sent gzipped, as OpenWeatherMap does.
+        assertTrue(morning.wireBytes < body.getBytes("UTF-8").length);
+
+        mServer.setRecording("evening");
+        HttpTransport.Response evening = mTransport.get(url("London,UK"));
+        assertEquals(HttpURLConnection.HTTP_OK, evening.code);
+        assertFalse(body.equals(HttpTransportTest.readBody(evening)));
+
+        HttpTransport.Response atlantis = mTransport.get(url("Atlantis"));
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, atlantis.code);
+        atlantis.close();
+    }
+
+    @Test
+    public void anUnchangedForecastIsNotModified() throws Exception {
+        HttpTransport.Response first = mTransport.get(url("94043"));
+        String etag = first.getHeader(ForecastValidators.HEADER_ETAG);
+        assertNotNull(etag);
+        first.close();
+
+        HttpTransport.Response again = mTransport.get(url("94043"),
+                Collections.singletonMap(ForecastValidators.HEADER_IF_NONE_MATCH, etag));
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, again.code);
+        again.close();
+        assertEquals(1, mServer.getNotModifiedCount());
+
+        mServer.setRecording("evening");
+        HttpTransport.Response changed = mTransport.get(url("94043"),
+                Collections.singletonMap(ForecastValidators.HEADER_IF_NONE_MATCH, etag));
+        assertEquals(HttpURLConnection.HTTP_OK, changed.code);
+        changed.close();
+    }
+
+    @Test
+    public void latencyAndBandwidthAreApplied() throws Exception {
+        mServer.setLatency(150, 0);
+        mServer.setBandwidth(2000);
+
+        HttpTransport.Response response = mTransport.get(url("Tokyo,JP"));
+        response.close();
+
+        assertTrue("first byte " + response.firstByteMs, response.firstByteMs >= 140);
+        long expectedMs = response.wireBytes * 1000 / 2000;
+        assertTrue("download " + response.downloadMs + " of " + expectedMs,
+                response.downloadMs >= expectedMs * 8 / 10);
+    }
+
+    @Test
+    public void errorsRepeatWithTheSeed() throws Exception {
+        String first = errorPattern(mServer);
+        ForecastReplayServer other = new ForecastReplayServer("morning", 1);
+        try {
+            assertEquals(first, errorPattern(other));
+        } finally {
+            other.shutdown();
+        }
+        assertTrue(first, first.contains("E") && first.contains("."));
+        assertEquals(first.replace(".", "").length(), mServer.getErrorCount());
+    }
+
+    private String errorPattern(ForecastReplayServer server) throws IOException {
+        server.setErrors(0.3, HttpURLConnection.HTTP_UNAVAILABLE);
+        StringBuilder pattern = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            URL url = new URL(server.getBaseUrl() + "?q=94043");
+            HttpTransport.Response response = mTransport.get(url);
+            int code = response.code;
+            response.close();
+            pattern.append(code == HttpURLConnection.HTTP_UNAVAILABLE ? 'E' : '.');
+        }
+        return pattern.toString();
+    }
+
+    private URL url(String location) throws IOException {
+        return new URL(mServer.getBaseUrl() + "?q=" + URLEncoder.encode(location, "UTF-8")
+                + "&mode=json&units=metric&cnt=14");
+    }
+}
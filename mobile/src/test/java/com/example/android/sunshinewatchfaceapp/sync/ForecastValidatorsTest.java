@@ -0,0 +1,137 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives {@link ForecastValidators} against a local stand-in for the forecast server.
+ */
+public class ForecastValidatorsTest {
+    private static final String BODY = "{\"cod\":\"200\",\"list\":[]}";
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Tue, 15 Nov 2016 08:12:31 GMT";
+    private static final int JULIAN_DAY = 2457708;
+
+    private final HttpTransport mTransport = new HttpTransport(1000, 1000, 5000, 64 * 1024);
+    private HttpServer mServer;
+    private String mUrl;
+    // When false the server behaves like one that ignores conditional requests.
+    private volatile boolean mHonorValidators = true;
+    private volatile int mRequestCount;
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/data/2.5/forecast/daily", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequestCount++;
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+                if (mHonorValidators && ETAG.equals(ifNoneMatch)) {
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+                } else {
+                    byte[] body = BODY.getBytes("UTF-8");
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort()
+                + "/data/2.5/forecast/daily?q=94043&mode=json&units=metric&cnt=14";
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void conditionalRequestIsAnsweredWithNotModified() throws IOException {
+        ForecastValidators validators = firstFetch();
+        assertEquals(ETAG, validators.etag);
+        assertEquals(LAST_MODIFIED, validators.lastModified);
+
+        HttpTransport.Response response = fetch(validators);
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, response.code);
+        assertEquals("", HttpTransportTest.readBody(response));
+        assertEquals(2, mRequestCount);
+    }
+
+    @Test
+    public void identicalBodyIsDetectedWhenServerIgnoresValidators() throws IOException {
+        ForecastValidators validators = firstFetch();
+        mHonorValidators = false;
+
+        HttpTransport.Response response = fetch(validators);
+        assertEquals(HttpURLConnection.HTTP_OK, response.code);
+        assertTrue(validators.hasSameBody(hash(bodyOf(response))));
+    }
+
+    @Test
+    public void validatorsOnlyApplyToTheSameRequestOnTheSameDay() throws IOException {
+        ForecastValidators validators = firstFetch();
+        assertTrue(validators.appliesTo(mUrl, JULIAN_DAY));
+        assertFalse(validators.appliesTo(mUrl, JULIAN_DAY + 1));
+        assertFalse(validators.appliesTo(mUrl.replace("metric", "imperial"), JULIAN_DAY));
+    }
+
+    @Test
+    public void noValidatorsMeansNoConditionalHeaders() throws IOException {
+        ForecastValidators validators = new ForecastValidators(mUrl, null, null, null, JULIAN_DAY);
+        HttpTransport.Response response = fetch(validators);
+        assertEquals(HttpURLConnection.HTTP_OK, response.code);
+        assertFalse(validators.hasSameBody(hash(bodyOf(response))));
+    }
+
+    private ForecastValidators firstFetch() throws IOException {
+        HttpTransport.Response response = mTransport.get(new URL(mUrl));
+        assertEquals(HttpURLConnection.HTTP_OK, response.code);
+        return ForecastValidators.fromResponse(mUrl, response,
+                hash(bodyOf(response)), JULIAN_DAY);
+    }
+
+    /**
+     * @return the hash the sync keeps of a body, which it hashes as it reads it
+     */
+    static String hash(byte[] body) throws IOException {
+        DigestInputStream hashed = ForecastValidators.hashing(new ByteArrayInputStream(body));
+        byte[] buffer = new byte[1024];
+        while (hashed.read(buffer) != -1) {
+            // Read to the end.
+        }
+        return ForecastValidators.hash(hashed);
+    }
+
+    private static byte[] bodyOf(HttpTransport.Response response) throws IOException {
+        return HttpTransportTest.readBody(response).getBytes("UTF-8");
+    }
+
+    private HttpTransport.Response fetch(ForecastValidators validators) throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        validators.addTo(headers);
+        return mTransport.get(new URL(mUrl), headers);
+    }
+}
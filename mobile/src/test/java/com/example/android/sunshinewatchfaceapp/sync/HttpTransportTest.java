@@ -0,0 +1,270 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives {@link HttpTransport} against a local stand-in server that can be slow, compress its
+ * responses or cut them short.
+ */
+public class HttpTransportTest {
+    private static final String BODY = "{\"cod\":\"200\",\"message\":0.01,\"cnt\":14,\"list\":[]}";
+
+    private HttpServer mServer;
+    private final Set<Integer> mClientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/plain", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mClientPorts.add(exchange.getRemoteAddress().getPort());
+                send(exchange, HttpURLConnection.HTTP_OK, BODY.getBytes("UTF-8"));
+            }
+        });
+        mServer.createContext("/gzip", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (acceptEncoding == null || !acceptEncoding.contains("gzip")) {
+                    send(exchange, HttpURLConnection.HTTP_BAD_REQUEST, new byte[0]);
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                send(exchange, HttpURLConnection.HTTP_OK, gzip(BODY.getBytes("UTF-8")));
+            }
+        });
+        mServer.createContext("/empty-gzip", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // Some servers name the encoding even when there is no body to encode.
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                boolean validated = exchange.getRequestHeaders().containsKey("If-None-Match");
+                exchange.sendResponseHeaders(validated
+                        ? HttpURLConnection.HTTP_NOT_MODIFIED : HttpURLConnection.HTTP_OK, -1);
+                exchange.close();
+            }
+        });
+        mServer.createContext("/slow", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(1500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                send(exchange, HttpURLConnection.HTTP_OK, BODY.getBytes("UTF-8"));
+            }
+        });
+        mServer.createContext("/trickle", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = BODY.getBytes("UTF-8");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    // Each write is well within the read timeout, the whole is not.
+                    for (byte b : body) {
+                        out.write(b);
+                        out.flush();
+                        Thread.sleep(100);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    // The client gave up, as it should.
+                }
+                exchange.close();
+            }
+        });
+        mServer.createContext("/truncated", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = BODY.getBytes("UTF-8");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body, 0, body.length / 2);
+                out.flush();
+                // Drop the connection half way through the body.
+                exchange.close();
+            }
+        });
+        mServer.createContext("/truncated-gzip", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] compressed = gzip(BODY.getBytes("UTF-8"));
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                // Chunked, so only the gzip trailer can tell the body is incomplete.
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+                OutputStream out = exchange.getResponseBody();
+                out.write(compressed, 0, compressed.length - 6);
+                out.close();
+            }
+        });
+        mServer.createContext("/large", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, HttpURLConnection.HTTP_OK, new byte[64 * 1024]);
+            }
+        });
+        mServer.createContext("/error", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, HttpURLConnection.HTTP_UNAVAILABLE, "down".getBytes("UTF-8"));
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void readsPlainBodyWithTimings() throws IOException {
+        HttpTransport.Response response = transport().get(url("/plain"));
+        assertEquals(HttpURLConnection.HTTP_OK, response.code);
+        assertEquals(BODY, readBody(response));
+        assertEquals(BODY.length(), response.wireBytes);
+        assertTrue(response.connectMs >= 0);
+        assertTrue(response.firstByteMs >= 0);
+        assertTrue(response.downloadMs >= 0);
+    }
+
+    @Test
+    public void decodesGzipBody() throws IOException {
+        HttpTransport.Response response = transport().get(url("/gzip"));
+        assertEquals(HttpURLConnection.HTTP_OK, response.code);
+        assertEquals(BODY, readBody(response));
+        assertEquals(gzip(BODY.getBytes("UTF-8")).length, response.wireBytes);
+    }
+
+    @Test
+    public void emptyGzipBodyIsEmpty() throws IOException {
+        HttpTransport transport = transport();
+        HttpTransport.Response notModified = transport.get(url("/empty-gzip"),
+                Collections.singletonMap("If-None-Match", "\"v1\""));
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, notModified.code);
+        assertEquals("", readBody(notModified));
+
+        HttpTransport.Response empty = transport.get(url("/empty-gzip"));
+        assertEquals(HttpURLConnection.HTTP_OK, empty.code);
+        assertEquals("", readBody(empty));
+    }
+
+    @Test
+    public void reusesConnectionAcrossRequests() throws IOException {
+        HttpTransport transport = transport();
+        for (int i = 0; i < 5; i++) {
+            HttpTransport.Response response = transport.get(url("/plain"));
+            assertEquals(HttpURLConnection.HTTP_OK, response.code);
+            assertEquals(BODY, readBody(response));
+        }
+        assertEquals(1, mClientPorts.size());
+    }
+
+    @Test
+    public void closingAnUnreadBodyKeepsTheConnection() throws IOException {
+        HttpTransport transport = transport();
+        HttpTransport.Response unread = transport.get(url("/plain"));
+        unread.close();
+        assertEquals(BODY.length(), unread.wireBytes);
+
+        assertEquals(BODY, readBody(transport.get(url("/plain"))));
+        assertEquals(1, mClientPorts.size());
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void slowServerHitsReadTimeout() throws IOException {
+        new HttpTransport(1000, 500, 5000, 64 * 1024).get(url("/slow"));
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void tricklingServerHitsTotalTimeout() throws IOException {
+        readBody(new HttpTransport(1000, 1000, 1000, 64 * 1024).get(url("/trickle")));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedBodyFails() throws IOException {
+        readBody(transport().get(url("/truncated")));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedGzipBodyFails() throws IOException {
+        readBody(transport().get(url("/truncated-gzip")));
+    }
+
+    @Test(expected = HttpTransport.ResponseTooLargeException.class)
+    public void oversizedBodyFails() throws IOException {
+        readBody(new HttpTransport(1000, 1000, 5000, 16 * 1024).get(url("/large")));
+    }
+
+    @Test
+    public void errorStatusIsReturnedNotThrown() throws IOException {
+        HttpTransport.Response response = transport().get(url("/error"));
+        assertEquals(HttpURLConnection.HTTP_UNAVAILABLE, response.code);
+        assertFalse(response.isSuccessful());
+        assertEquals("down", readBody(response));
+    }
+
+    /**
+     * Reads the body the way the sync does, and closes the response.
+     */
+    static String readBody(HttpTransport.Response response) throws IOException {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = response.body.read(buffer)) != -1) {
+                body.write(buffer, 0, count);
+            }
+            return body.toString("UTF-8");
+        } finally {
+            response.close();
+        }
+    }
+
+    private static HttpTransport transport() {
+        return new HttpTransport(1000, 1000, 5000, 64 * 1024);
+    }
+
+    private URL url(String path) throws IOException {
+        return new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + path);
+    }
+
+    private static void send(HttpExchange exchange, int code, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(body);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,352 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Syncs many locations at once against a local stand-in server which sends every body after a
+ * fixed delay and records how many requests it was serving at the same time.
+ */
+public class LocationSyncEngineTest {
+    private static final int LOCATION_COUNT = 60;
+    private static final int SERVER_LATENCY_MS = 50;
+
+    private HttpServer mServer;
+    private ExecutorService mServerExecutor;
+    private final HttpTransport mTransport = new HttpTransport(5000, 5000, 10000, 64 * 1024);
+
+    // Requests in flight, overall and per Host header.
+    private final AtomicInteger mInFlight = new AtomicInteger();
+    private int mMaxInFlight;
+    private final Map<String, Integer> mInFlightByHost = new HashMap<String, Integer>();
+    private final Map<String, Integer> mMaxInFlightByHost = new HashMap<String, Integer>();
+    private final AtomicInteger mParsed = new AtomicInteger();
+
+    private final LocationSyncEngine.BodyParser<String> mParser =
+            new LocationSyncEngine.BodyParser<String>() {
+                @Override
+                public String parse(InputStream body) throws Exception {
+                    mParsed.incrementAndGet();
+                    return readString(body);
+                }
+            };
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // Plenty of server threads, so that the only limit on concurrency is the engine's.
+        mServerExecutor = Executors.newFixedThreadPool(32);
+        mServer.setExecutor(mServerExecutor);
+        mServer.createContext("/forecast", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String host = exchange.getRequestHeaders().getFirst("Host");
+                byte[] body = exchange.getRequestURI().getQuery().getBytes("UTF-8");
+                enter(host);
+                try {
+                    // The headers go out straight away and the body only after the delay, so
+                    // that a request counts as in flight until its body has been read.
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+                    exchange.getResponseBody().flush();
+                    Thread.sleep(SERVER_LATENCY_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    leave(host);
+                }
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.createContext("/truncated", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = exchange.getRequestURI().getQuery().getBytes("UTF-8");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body, 0, body.length / 2);
+                out.flush();
+                // Drop the connection half way through the body.
+                exchange.close();
+            }
+        });
+        mServer.createContext("/trickle", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = exchange.getRequestURI().getQuery().getBytes("UTF-8");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    // Each write is well within the read timeout, the whole is not.
+                    for (byte b : body) {
+                        out.write(b);
+                        out.flush();
+                        Thread.sleep(100);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    // The client gave up, as it should.
+                }
+                exchange.close();
+            }
+        });
+        mServer.createContext("/etag", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    send(exchange, HttpURLConnection.HTTP_NOT_MODIFIED, null);
+                } else {
+                    exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                    send(exchange, HttpURLConnection.HTTP_OK, "same".getBytes("UTF-8"));
+                }
+            }
+        });
+        mServer.createContext("/error", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, HttpURLConnection.HTTP_UNAVAILABLE, "busy".getBytes("UTF-8"));
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+        mServerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void fetchesManyLocationsConcurrentlyWithinTheHostLimit() throws Exception {
+        LocationSyncEngine engine = new LocationSyncEngine(mTransport, 8, 4);
+        List<LocationSyncEngine.Request> requests = new ArrayList<LocationSyncEngine.Request>();
+        for (int i = 0; i < LOCATION_COUNT; i++) {
+            requests.add(request("127.0.0.1", "/forecast", "loc" + i, null));
+        }
+
+        long start = System.nanoTime();
+        List<LocationSyncEngine.Result<String>> results = engine.fetchAll(requests, mParser);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(LOCATION_COUNT, results.size());
+        for (int i = 0; i < LOCATION_COUNT; i++) {
+            LocationSyncEngine.Result<String> result = results.get(i);
+            assertNull(result.error);
+            assertSame(requests.get(i), result.request);
+            assertEquals("q=loc" + i, result.parsed);
+            assertNotNull(result.bodyHash);
+        }
+        assertEquals(LOCATION_COUNT, mParsed.get());
+
+        // Never more than the per host limit at once, but it did overlap requests: one at a
+        // time could not take less than LOCATION_COUNT * SERVER_LATENCY_MS.
+        assertTrue("max in flight " + mMaxInFlight, mMaxInFlight <= 4);
+        assertTrue("max in flight " + mMaxInFlight, mMaxInFlight > 1);
+        long sequentialMs = LOCATION_COUNT * SERVER_LATENCY_MS;
+        assertTrue("took " + elapsedMs + "ms", elapsedMs < sequentialMs);
+        System.out.println(LOCATION_COUNT + " locations in " + elapsedMs + "ms ("
+                + sequentialMs + "ms one at a time), max " + mMaxInFlight + " in flight");
+    }
+
+    @Test
+    public void limitsEachHostSeparatelyAndThePoolOverall() throws Exception {
+        LocationSyncEngine engine = new LocationSyncEngine(mTransport, 3, 2);
+        List<LocationSyncEngine.Request> requests = new ArrayList<LocationSyncEngine.Request>();
+        for (int i = 0; i < LOCATION_COUNT; i++) {
+            // Same server, two host names.
+            String host = i % 2 == 0 ? "127.0.0.1" : "localhost";
+            requests.add(request(host, "/forecast", "loc" + i, null));
+        }
+
+        List<LocationSyncEngine.Result<String>> results = engine.fetchAll(requests, mParser);
+
+        for (LocationSyncEngine.Result<String> result : results) {
+            assertNull(result.error);
+            assertNotNull(result.parsed);
+        }
+        assertTrue("max in flight " + mMaxInFlight, mMaxInFlight <= 3);
+        for (Map.Entry<String, Integer> host : mMaxInFlightByHost.entrySet()) {
+            assertTrue(host.getKey() + " max in flight " + host.getValue(), host.getValue() <= 2);
+        }
+        assertEquals(2, mMaxInFlightByHost.size());
+    }
+
+    @Test
+    public void unchangedForecastsAreNotKept() throws Exception {
+        LocationSyncEngine engine = new LocationSyncEngine(mTransport, 2, 2);
+        URL url = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/etag");
+        ForecastValidators current = new ForecastValidators(url.toString(), "\"v1\"", null,
+                null, 1);
+        ForecastValidators sameBody = new ForecastValidators(url.toString(), "\"v0\"", null,
+                ForecastValidatorsTest.hash("same".getBytes("UTF-8")), 1);
+
+        List<LocationSyncEngine.Request> requests = new ArrayList<LocationSyncEngine.Request>();
+        requests.add(new LocationSyncEngine.Request("current", url, current));
+        requests.add(new LocationSyncEngine.Request("same", url, sameBody));
+        requests.add(new LocationSyncEngine.Request("new", url, null));
+
+        List<LocationSyncEngine.Result<String>> results = engine.fetchAll(requests, mParser);
+
+        assertTrue(results.get(0).notModified);
+        assertTrue(results.get(0).isUnchanged());
+        assertTrue(results.get(1).sameBody);
+        assertTrue(results.get(1).isUnchanged());
+        assertNull(results.get(1).parsed);
+        assertFalse(results.get(2).isUnchanged());
+        assertEquals("same", results.get(2).parsed);
+        // A 304 has no body to parse; the same body is only known once it has been parsed.
+        assertEquals(2, mParsed.get());
+    }
+
+    @Test
+    public void theHashCoversWhatTheParserLeft() throws Exception {
+        LocationSyncEngine engine = new LocationSyncEngine(mTransport, 2, 2);
+        List<LocationSyncEngine.Request> requests = new ArrayList<LocationSyncEngine.Request>();
+        requests.add(request("127.0.0.1", "/forecast", "partly", null));
+
+        List<LocationSyncEngine.Result<String>> results = engine.fetchAll(requests,
+                new LocationSyncEngine.BodyParser<String>() {
+                    @Override
+                    public String parse(InputStream body) throws Exception {
+                        return String.valueOf((char) body.read());
+                    }
+                });
+
+        assertEquals("q", results.get(0).parsed);
+        assertEquals(ForecastValidatorsTest.hash("q=partly".getBytes("UTF-8")),
+                results.get(0).bodyHash);
+    }
+
+    @Test
+    public void aFailedLocationDoesNotFailTheOthers() throws Exception {
+        LocationSyncEngine engine = new LocationSyncEngine(mTransport, 2, 2);
+        List<LocationSyncEngine.Request> requests = new ArrayList<LocationSyncEngine.Request>();
+        requests.add(request("127.0.0.1", "/forecast", "first", null));
+        requests.add(request("127.0.0.1", "/error", "broken", null));
+        requests.add(new LocationSyncEngine.Request("unreachable",
+                new URL("http://127.0.0.1:1/forecast"), null));
+        requests.add(request("127.0.0.1", "/forecast", "last", null));
+
+        List<LocationSyncEngine.Result<String>> results = engine.fetchAll(requests, mParser);
+
+        assertEquals("q=first", results.get(0).parsed);
+        assertTrue(results.get(1).error instanceof IOException);
+        assertEquals(HttpURLConnection.HTTP_UNAVAILABLE, results.get(1).response.code);
+        assertTrue(results.get(2).error instanceof IOException);
+        assertNull(results.get(2).response);
+        assertEquals("q=last", results.get(3).parsed);
+    }
+
+    @Test
+    public void aBrokenBodyFailsOnlyItsLocation() throws Exception {
+        // A total timeout shorter than the trickle, and no retries.
+        HttpTransport transport = new HttpTransport(1000, 1000, 500, 64 * 1024);
+        LocationSyncEngine engine = new LocationSyncEngine(transport, 4, 4, 1,
+                new ExponentialBackoff(10, 10, new Random()));
+        List<LocationSyncEngine.Request> requests = new ArrayList<LocationSyncEngine.Request>();
+        requests.add(request("127.0.0.1", "/forecast", "first", null));
+        requests.add(request("127.0.0.1", "/truncated", "truncated", null));
+        requests.add(request("127.0.0.1", "/trickle", "trickled", null));
+        requests.add(request("127.0.0.1", "/forecast", "last", null));
+
+        List<LocationSyncEngine.Result<String>> results = engine.fetchAll(requests, mParser);
+
+        assertEquals("q=first", results.get(0).parsed);
+        assertTrue(results.get(1).error instanceof EOFException);
+        assertNull(results.get(1).parsed);
+        assertTrue(results.get(2).error instanceof SocketTimeoutException);
+        assertNull(results.get(2).parsed);
+        assertEquals("q=last", results.get(3).parsed);
+    }
+
+    @Test
+    public void aTrickledBodyHoldsItsHostPermit() throws Exception {
+        HttpTransport transport = new HttpTransport(1000, 1000, 5000, 64 * 1024);
+        LocationSyncEngine engine = new LocationSyncEngine(transport, 4, 1);
+        List<LocationSyncEngine.Request> requests = new ArrayList<LocationSyncEngine.Request>();
+        requests.add(request("127.0.0.1", "/trickle", "first", null));
+        requests.add(request("127.0.0.1", "/trickle", "second", null));
+
+        long start = System.nanoTime();
+        List<LocationSyncEngine.Result<String>> results = engine.fetchAll(requests, mParser);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("q=first", results.get(0).parsed);
+        assertEquals("q=second", results.get(1).parsed);
+        // One request per host: the second body only started once the first was over.  The
+        // last byte of each comes after all but one of the pauses.
+        long tricklesMs = ("q=first".length() - 1 + "q=second".length() - 1) * 100;
+        assertTrue("took " + elapsedMs + "ms", elapsedMs >= tricklesMs);
+    }
+
+    private LocationSyncEngine.Request request(String host, String path, String location,
+                                               ForecastValidators validators) throws IOException {
+        URL url = new URL("http://" + host + ":" + mServer.getAddress().getPort() + path
+                + "?q=" + location);
+        return new LocationSyncEngine.Request(location, url, validators);
+    }
+
+    static String readString(InputStream body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int count;
+        while ((count = body.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toString("UTF-8");
+    }
+
+    private synchronized void enter(String host) {
+        mMaxInFlight = Math.max(mMaxInFlight, mInFlight.incrementAndGet());
+        Integer count = mInFlightByHost.get(host);
+        count = count == null ? 1 : count + 1;
+        mInFlightByHost.put(host, count);
+        Integer max = mMaxInFlightByHost.get(host);
+        mMaxInFlightByHost.put(host, max == null ? count : Math.max(max, count));
+    }
+
+    private synchronized void leave(String host) {
+        mInFlight.decrementAndGet();
+        mInFlightByHost.put(host, mInFlightByHost.get(host) - 1);
+    }
+
+    private static void send(HttpExchange exchange, int code, byte[] body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(code, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(code, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+}
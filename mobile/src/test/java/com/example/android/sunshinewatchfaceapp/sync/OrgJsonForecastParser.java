@@ -0,0 +1,102 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import android.content.ContentValues;
+import android.text.format.Time;
+
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * The way the sync used to read a forecast, before {@link ForecastJsonParser}: the whole body
+ * read line by line into a StringBuffer, then an org.json tree built from it and the rows taken
+ * out of the tree.  The database writes are left out.  Kept to compare the two against.
+ */
+class OrgJsonForecastParser {
+
+    private OrgJsonForecastParser() {
+    }
+
+    static List<ContentValues> parse(InputStream inputStream, int julianStartDay)
+            throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+        StringBuffer buffer = new StringBuffer();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line + "\n");
+        }
+        return getWeatherDataFromJson(buffer.toString(), julianStartDay);
+    }
+
+    private static List<ContentValues> getWeatherDataFromJson(String forecastJsonStr,
+                                                              int julianStartDay)
+            throws JSONException {
+        final String OWM_LIST = "list";
+
+        final String OWM_PRESSURE = "pressure";
+        final String OWM_HUMIDITY = "humidity";
+        final String OWM_WINDSPEED = "speed";
+        final String OWM_WIND_DIRECTION = "deg";
+
+        final String OWM_TEMPERATURE = "temp";
+        final String OWM_MAX = "max";
+        final String OWM_MIN = "min";
+
+        final String OWM_WEATHER = "weather";
+        final String OWM_DESCRIPTION = "main";
+        final String OWM_WEATHER_ID = "id";
+
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        // The city is read as before, though only the rows are returned.
+        JSONObject cityJson = forecastJson.getJSONObject("city");
+        cityJson.getString("name");
+        JSONObject cityCoord = cityJson.getJSONObject("coord");
+        cityCoord.getDouble("lat");
+        cityCoord.getDouble("lon");
+
+        Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
+        Time dayTime = new Time();
+        for (int i = 0; i < weatherArray.length(); i++) {
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            long dateTime = dayTime.setJulianDay(julianStartDay + i);
+            double pressure = dayForecast.getDouble(OWM_PRESSURE);
+            int humidity = dayForecast.getInt(OWM_HUMIDITY);
+            double windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
+            double windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            JSONObject weatherObject =
+                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            String description = weatherObject.getString(OWM_DESCRIPTION);
+            int weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            double high = temperatureObject.getDouble(OWM_MAX);
+            double low = temperatureObject.getDouble(OWM_MIN);
+
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+            cVVector.add(weatherValues);
+        }
+        return cVVector;
+    }
+}
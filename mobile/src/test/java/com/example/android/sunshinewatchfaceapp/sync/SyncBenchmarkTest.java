@@ -0,0 +1,278 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import android.accounts.Account;
+import android.content.Context;
+import android.content.SyncResult;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshinewatchfaceapp.BuildConfig;
+import com.example.android.sunshinewatchfaceapp.R;
+import com.example.android.sunshinewatchfaceapp.data.WeatherContract;
+import com.example.android.sunshinewatchfaceapp.data.WeatherProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs whole syncs, from the fetch through the provider writes to the fan-out, against the
+ * {@link ForecastReplayServer}, and reports how long they took and how much they allocated.
+ * Needs no network, so it runs on any CI machine.
+ *
+ * Each profile prints a line like
+ *
+ *   lan        syncs 15  p50 41ms  p90 58ms  p99 77ms  max 77ms  fetch 12ms  write 9ms  alloc 1.9MB
+ *
+ * with the percentiles taken over the whole sync, fan-out included, and fetch, write and alloc
+ * the mean per sync.  Allocation counts what the threads still running at the end allocated,
+ * which is the sync thread, the fetch workers and the fan-out threads.
+ *
+ * Besides the report, every profile has to store what it was served: a sync that broke would
+ * look fast.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class SyncBenchmarkTest {
+    private static final String[] LOCATIONS = {"94043", "London,UK", "Tokyo,JP"};
+    private static final int WARMUP_SYNCS = 3;
+    private static final int MEASURED_SYNCS = 15;
+    // How long to wait for a sync's fan-out to be done.
+    private static final long FAN_OUT_WAIT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private Context mContext;
+    private ForecastReplayServer mServer;
+    private SunshineSyncAdapter mAdapter;
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = RuntimeEnvironment.application;
+        Robolectric.setupContentProvider(WeatherProvider.class, WeatherContract.CONTENT_AUTHORITY);
+
+        // The first location is the preferred one.  The notification would fetch its artwork
+        // from the network, so it stays off.
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_location_key), LOCATIONS[0])
+                .putString(mContext.getString(R.string.pref_saved_locations_key),
+                        LOCATIONS[1] + "\n" + LOCATIONS[2])
+                .putBoolean(mContext.getString(R.string.pref_enable_notifications_key), false)
+                .commit();
+
+        mServer = new ForecastReplayServer("morning", 42);
+        SunshineSyncAdapter.setForecastBaseUrl(mServer.getBaseUrl());
+        mAdapter = new SunshineSyncAdapter(mContext, true);
+    }
+
+    @After
+    public void tearDown() {
+        SunshineSyncAdapter.setForecastBaseUrl(BuildConfig.FORECAST_BASE_URL);
+        mServer.shutdown();
+    }
+
+    /**
+     * A fast local network, with a new forecast published before every sync.
+     */
+    @Test
+    public void lan() throws Exception {
+        Report report = run("lan", true);
+        assertEquals(0, report.failures);
+        assertTrue(report.changedRows > 0);
+    }
+
+    /**
+     * Nothing new since the last sync: every location comes back "not modified".
+     */
+    @Test
+    public void unchanged() throws Exception {
+        Report report = run("unchanged", false);
+        assertEquals(0, report.failures);
+        assertEquals(0, report.changedRows);
+        assertEquals(LOCATIONS.length * MEASURED_SYNCS,
+                mServer.getNotModifiedCount() - report.notModifiedBefore);
+    }
+
+    /**
+     * A slow mobile network: long round trips and little bandwidth.
+     */
+    @Test
+    public void mobile() throws Exception {
+        mServer.setLatency(300, 100);
+        mServer.setBandwidth(16 * 1024);
+        Report report = run("mobile", true);
+        assertEquals(0, report.failures);
+        assertTrue(report.changedRows > 0);
+    }
+
+    /**
+     * A server failing a fifth of the requests, which the retries should mostly hide.  Now and
+     * then enough fail in a row to open the circuit breaker for the rest of a sync.
+     */
+    @Test
+    public void flaky() throws Exception {
+        mServer.setLatency(50, 25);
+        mServer.setErrors(0.2, HttpURLConnection.HTTP_UNAVAILABLE);
+        Report report = run("flaky", true);
+        assertTrue(mServer.getErrorCount() > 0);
+        assertTrue("failures " + report.failures,
+                report.failures < LOCATIONS.length * MEASURED_SYNCS / 5);
+    }
+
+    /**
+     * Runs the warm-up syncs, then the measured ones, and prints the report.
+     *
+     * @param newForecasts whether to switch recordings before every sync, so that each one has
+     *                     something to write and fan out
+     */
+    private Report run(String profile, boolean newForecasts) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Report report = new Report(profile);
+        for (int i = 0; i < WARMUP_SYNCS + MEASURED_SYNCS; i++) {
+            if (newForecasts) {
+                mServer.setRecording(i % 2 == 0 ? "morning" : "evening");
+            }
+            // Every sync starts with the server given another chance, so that runs compare.
+            mContext.getSharedPreferences(CircuitBreakerStore.PREFS_NAME, Context.MODE_PRIVATE)
+                    .edit().clear().commit();
+            if (i == WARMUP_SYNCS) {
+                report.notModifiedBefore = mServer.getNotModifiedCount();
+            }
+
+            long lastMetricsId = lastMetricsId();
+            long allocatedBefore = allocatedBytes(threads);
+            long startNanos = System.nanoTime();
+            mAdapter.onPerformSync(new Account("benchmark", "benchmark"), new Bundle(),
+                    WeatherContract.CONTENT_AUTHORITY, null, new SyncResult());
+            // The metrics are recorded once the fan-out is done.
+            long metricsId = awaitMetricsAfter(lastMetricsId);
+            long totalMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            long allocated = allocatedBytes(threads) - allocatedBefore;
+
+            if (i >= WARMUP_SYNCS) {
+                report.add(totalMs, allocated, metricsId);
+            }
+        }
+        System.out.println(report.format());
+        return report;
+    }
+
+    private long lastMetricsId() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.SyncMetricsEntry.CONTENT_URI,
+                new String[]{WeatherContract.SyncMetricsEntry._ID}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            // Newest first.
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long awaitMetricsAfter(long lastId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FAN_OUT_WAIT_MS);
+        while (System.nanoTime() < deadline) {
+            long id = lastMetricsId();
+            if (id > lastId) {
+                return id;
+            }
+            Thread.sleep(2);
+        }
+        throw new AssertionError("The sync never recorded its metrics");
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        long[] allocated = ((com.sun.management.ThreadMXBean) threads)
+                .getThreadAllocatedBytes(threads.getAllThreadIds());
+        long total = 0;
+        for (long bytes : allocated) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    private class Report {
+        final String profile;
+        final List<Long> totalsMs = new ArrayList<Long>();
+        long allocatedBytes;
+        long fetchMs;
+        long writeMs;
+        int failures;
+        int changedRows;
+        // What the server had answered "not modified" before the measured syncs.
+        int notModifiedBefore;
+
+        Report(String profile) {
+            this.profile = profile;
+        }
+
+        void add(long totalMs, long allocated, long metricsId) {
+            totalsMs.add(totalMs);
+            allocatedBytes += allocated;
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherContract.SyncMetricsEntry.CONTENT_URI,
+                    new String[]{
+                            WeatherContract.SyncMetricsEntry.COLUMN_FETCH_MS,
+                            WeatherContract.SyncMetricsEntry.COLUMN_ADD_LOCATION_MS,
+                            WeatherContract.SyncMetricsEntry.COLUMN_BULK_INSERT_MS,
+                            WeatherContract.SyncMetricsEntry.COLUMN_DELETE_MS,
+                            WeatherContract.SyncMetricsEntry.COLUMN_FAILURES,
+                            WeatherContract.SyncMetricsEntry.COLUMN_CHANGED_ROWS
+                    },
+                    WeatherContract.SyncMetricsEntry._ID + " = ?",
+                    new String[]{Long.toString(metricsId)}, null);
+            assertNotNull(cursor);
+            try {
+                assertTrue(cursor.moveToFirst());
+                fetchMs += cursor.getLong(0);
+                writeMs += cursor.getLong(1) + cursor.getLong(2) + cursor.getLong(3);
+                failures += cursor.getInt(4);
+                changedRows += cursor.getInt(5);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        String format() {
+            Long[] sorted = totalsMs.toArray(new Long[totalsMs.size()]);
+            Arrays.sort(sorted);
+            int syncs = sorted.length;
+            return String.format(Locale.US,
+                    "%-10s syncs %d  p50 %dms  p90 %dms  p99 %dms  max %dms  fetch %dms"
+                            + "  write %dms  alloc %.1fMB",
+                    profile, syncs, percentile(sorted, 50), percentile(sorted, 90),
+                    percentile(sorted, 99), sorted[syncs - 1], fetchMs / syncs, writeMs / syncs,
+                    allocatedBytes / (double) syncs / (1024 * 1024));
+        }
+    }
+
+    /**
+     * @return the nearest-rank percentile of the sorted values
+     */
+    private static long percentile(Long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.android.sunshinewatchfaceapp.sync;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SyncTraceTest {
+
+    @Test
+    public void stagesAddUp() throws Exception {
+        SyncTrace trace = new SyncTrace();
+        Map<String, List<String>> noHeaders = new HashMap<String, List<String>>();
+        trace.addResponse(new HttpTransport.Response(200, new byte[0], noHeaders, 30, 100, 20, 500));
+        trace.addResponse(new HttpTransport.Response(200, new byte[0], noHeaders, 10, 50, 5, 300));
+        trace.add(SyncTrace.PARSE, 7);
+        trace.add(SyncTrace.PARSE, 3);
+
+        long start = SyncTrace.begin();
+        Thread.sleep(20);
+        trace.end(SyncTrace.BULK_INSERT, start);
+        trace.finish();
+
+        assertEquals(40, trace.getStageMs(SyncTrace.CONNECT));
+        assertEquals(150, trace.getStageMs(SyncTrace.FIRST_BYTE));
+        assertEquals(25, trace.getStageMs(SyncTrace.DOWNLOAD));
+        assertEquals(10, trace.getStageMs(SyncTrace.PARSE));
+        assertEquals(800, trace.getWireBytes());
+        assertTrue(trace.getStageMs(SyncTrace.BULK_INSERT) >= 20);
+        assertEquals(0, trace.getStageMs(SyncTrace.DELETE));
+        assertTrue(trace.getTotalMs() >= trace.getStageMs(SyncTrace.BULK_INSERT));
+
+        // The total stops with finish().
+        long total = trace.getTotalMs();
+        Thread.sleep(10);
+        trace.finish();
+        assertEquals(total, trace.getTotalMs());
+    }
+
+    @Test
+    public void timingIsCheap() {
+        SyncTrace trace = new SyncTrace();
+        int stages = 1000000;
+        long start = System.nanoTime();
+        for (int i = 0; i < stages; i++) {
+            trace.end(i % SyncTrace.STAGE_COUNT, SyncTrace.begin());
+        }
+        long perStageNanos = (System.nanoTime() - start) / stages;
+        // A sync times a few dozen stages; even at a microsecond each that is nothing next to
+        // a single network round trip.
+        assertTrue("took " + perStageNanos + "ns per stage",
+                perStageNanos < TimeUnit.MICROSECONDS.toNanos(1));
+    }
+}
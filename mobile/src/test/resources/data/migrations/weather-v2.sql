@@ -0,0 +1,54 @@
+-- weather.db as version 2 of the app wrote it: the forecast for two locations.
+PRAGMA user_version = 2;
+CREATE TABLE location (
+    _id INTEGER PRIMARY KEY,
+    location_setting TEXT UNIQUE NOT NULL,
+    city_name TEXT NOT NULL,
+    coord_lat REAL NOT NULL,
+    coord_long REAL NOT NULL
+);
+CREATE TABLE weather (
+    _id INTEGER PRIMARY KEY AUTOINCREMENT,
+    location_id INTEGER NOT NULL,
+    date INTEGER NOT NULL,
+    short_desc TEXT NOT NULL,
+    weather_id INTEGER NOT NULL,
+    min REAL NOT NULL,
+    max REAL NOT NULL,
+    humidity REAL NOT NULL,
+    pressure REAL NOT NULL,
+    wind REAL NOT NULL,
+    degrees REAL NOT NULL,
+    FOREIGN KEY (location_id) REFERENCES location (_id),
+    UNIQUE (date, location_id) ON CONFLICT REPLACE
+);
+INSERT INTO location (_id, location_setting, city_name, coord_lat, coord_long) VALUES (1, '94043', 'Mountain View', 37.3861, -122.0839);
+INSERT INTO location (_id, location_setting, city_name, coord_lat, coord_long) VALUES (2, 'London,UK', 'London', 51.5085, -0.1258);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1476576000000, 'Clouds', 801, 9.0, 17.0, 60, 1012.0, 3.0, 200.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1476662400000, 'Rain', 500, 9.5, 17.5, 61, 1012.3, 3.2, 210.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1476748800000, 'Clouds', 803, 10.0, 18.0, 62, 1012.6, 3.4, 220.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1476835200000, 'Clear', 800, 10.5, 18.5, 63, 1012.9, 3.6, 230.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1476921600000, 'Clouds', 801, 11.0, 19.0, 64, 1013.2, 3.8, 240.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1477008000000, 'Rain', 500, 11.5, 19.5, 65, 1013.5, 4.0, 250.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1477094400000, 'Clouds', 803, 12.0, 20.0, 66, 1013.8, 4.2, 260.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1477180800000, 'Clear', 800, 12.5, 20.5, 67, 1014.1, 4.4, 270.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1477267200000, 'Clouds', 801, 13.0, 21.0, 68, 1014.4, 4.6, 280.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1477353600000, 'Rain', 500, 13.5, 21.5, 69, 1014.7, 4.8, 290.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1477440000000, 'Clouds', 803, 14.0, 22.0, 70, 1015.0, 5.0, 300.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1477526400000, 'Clear', 800, 14.5, 22.5, 71, 1015.3, 5.2, 310.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1477612800000, 'Clouds', 801, 15.0, 23.0, 72, 1015.6, 5.4, 320.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (1, 1477699200000, 'Rain', 500, 15.5, 23.5, 73, 1015.9, 5.6, 330.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1476576000000, 'Rain', 500, 10.0, 18.0, 60, 1012.0, 3.0, 200.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1476662400000, 'Clouds', 803, 10.5, 18.5, 61, 1012.3, 3.2, 210.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1476748800000, 'Clear', 800, 11.0, 19.0, 62, 1012.6, 3.4, 220.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1476835200000, 'Clouds', 801, 11.5, 19.5, 63, 1012.9, 3.6, 230.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1476921600000, 'Rain', 500, 12.0, 20.0, 64, 1013.2, 3.8, 240.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1477008000000, 'Clouds', 803, 12.5, 20.5, 65, 1013.5, 4.0, 250.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1477094400000, 'Clear', 800, 13.0, 21.0, 66, 1013.8, 4.2, 260.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1477180800000, 'Clouds', 801, 13.5, 21.5, 67, 1014.1, 4.4, 270.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1477267200000, 'Rain', 500, 14.0, 22.0, 68, 1014.4, 4.6, 280.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1477353600000, 'Clouds', 803, 14.5, 22.5, 69, 1014.7, 4.8, 290.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1477440000000, 'Clear', 800, 15.0, 23.0, 70, 1015.0, 5.0, 300.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1477526400000, 'Clouds', 801, 15.5, 23.5, 71, 1015.3, 5.2, 310.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1477612800000, 'Rain', 500, 16.0, 24.0, 72, 1015.6, 5.4, 320.0);
+INSERT INTO weather (location_id, date, short_desc, weather_id, min, max, humidity, pressure, wind, degrees) VALUES (2, 1477699200000, 'Clouds', 803, 16.5, 24.5, 73, 1015.9, 5.6, 330.0);
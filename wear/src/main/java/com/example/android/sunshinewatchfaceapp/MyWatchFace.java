@@ -20,6 +20,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
@@ -27,13 +28,12 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
-import android.graphics.drawable.BitmapDrawable;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.text.format.Time;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
@@ -42,19 +42,13 @@ import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.common.api.Status;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.DataEvent;
-import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
 import com.google.android.gms.wearable.DataItemBuffer;
-import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
@@ -79,11 +73,144 @@ public class MyWatchFace extends CanvasWatchFaceService {
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    // The weather art of every engine, for as long as the service runs.
+    private WeatherArtCache mArtCache;
+    // Connected only while it reads the weather the phone sent before the watch had any.
+    private GoogleApiClient mGoogleApiClient;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Each condition's art is a few tens of kilobytes at the sizes drawn.
+        int maxKilobytes = (int) (Runtime.getRuntime().maxMemory() / 1024 / 32);
+        mArtCache = new WeatherArtCache(getResources(), maxKilobytes);
+
+        // Start decoding the art of the weather last shown, which the engine draws first.
+        WeatherSnapshot snapshot = WeatherSnapshot.read(WeatherSnapshot.getPreferences(this));
+        if (snapshot == null) {
+            fetchWeather();
+        } else if (snapshot.artSize > 0) {
+            int resId = getArtResourceForWeatherCondition(snapshot.weatherId);
+            if (resId != -1) {
+                mArtCache.get(resId, snapshot.artSize, null);
+            }
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        mArtCache.close();
+        if (mGoogleApiClient != null) {
+            mGoogleApiClient.disconnect();
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Reads the weather the phone sent before {@link WeatherListenerService} was there to
+     * receive it, such as before the watch face was installed.  Only done while the watch has
+     * none, and the engines pick it up from the snapshot like any other.
+     */
+    private void fetchWeather() {
+        mGoogleApiClient = new GoogleApiClient.Builder(this)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(new GoogleApiClient.ConnectionCallbacks() {
+                    @Override
+                    public void onConnected(Bundle connectionHint) {
+                        Uri uri = new Uri.Builder()
+                                .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                                .path(WeatherSnapshot.WEATHER_INFO_PATH)
+                                .build();
+                        Wearable.DataApi.getDataItems(mGoogleApiClient, uri)
+                                .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                                    @Override
+                                    public void onResult(DataItemBuffer dataItems) {
+                                        onWeatherFetched(dataItems);
+                                    }
+                                });
+                    }
+
+                    @Override
+                    public void onConnectionSuspended(int cause) {
+                        if (Log.isLoggable(TAG, Log.DEBUG)) {
+                            Log.d(TAG, "onConnectionSuspended: " + cause);
+                        }
+                    }
+                })
+                .addOnConnectionFailedListener(new GoogleApiClient.OnConnectionFailedListener() {
+                    @Override
+                    public void onConnectionFailed(ConnectionResult result) {
+                        // The listener service still gets the next weather the phone sends.
+                        Log.i(TAG, "Failed connecting to fetch the weather: "
+                                + result.getErrorCode());
+                        mGoogleApiClient.disconnect();
+                        mGoogleApiClient = null;
+                    }
+                })
+                .build();
+        mGoogleApiClient.connect();
+    }
+
+    private void onWeatherFetched(DataItemBuffer dataItems) {
+        Status status = dataItems.getStatus();
+        if (status.isSuccess()) {
+            SharedPreferences prefs = WeatherSnapshot.getPreferences(this);
+            for (DataItem dataItem : dataItems) {
+                WeatherSnapshot weather = WeatherSnapshot.fromDataMap(
+                        DataMapItem.fromDataItem(dataItem).getDataMap());
+                if (weather != null) {
+                    WeatherSnapshot.store(prefs, weather);
+                }
+            }
+        } else {
+            Log.i(TAG, "Failed getting weather info: (" + status.getStatusCode() + ") "
+                    + status.getStatusMessage());
+        }
+        dataItems.release();
+        mGoogleApiClient.disconnect();
+        mGoogleApiClient = null;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        mArtCache.trimMemory(level);
+    }
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
 
+    static int getArtResourceForWeatherCondition(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
     private static class EngineHandler extends Handler {
         private final WeakReference<MyWatchFace.Engine> mWeakReference;
 
@@ -104,8 +231,8 @@ public class MyWatchFace extends CanvasWatchFaceService {
         }
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener,
-            GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener{
+    private class Engine extends CanvasWatchFaceService.Engine
+            implements SharedPreferences.OnSharedPreferenceChangeListener, WeatherArtCache.Callback {
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
         Paint mBackgroundPaint;
@@ -115,17 +242,24 @@ public class MyWatchFace extends CanvasWatchFaceService {
         Paint mLowTempPaint;
         Paint mWeatherArtPaint;
         Paint mDatePaint;
-        SimpleDateFormat mDayAndDateFormat;
-        Calendar mCalendar;
+        WatchFaceText mText;
+        // The sizes of the text, measured when it changes rather than on every frame.
+        float mTimeWidth;
+        float mTimeHeight;
+        float mDateWidth;
+        float mHighTempWidth;
+
+        // Everything but the time, drawn once and copied onto each frame.  It is drawn again
+        // when the weather, a tap, the insets, ambient mode or the day change it.
+        Bitmap mStaticLayer;
+        Canvas mStaticCanvas;
+        final StaticLayerState mStaticLayerState = new StaticLayerState();
 
         boolean mAmbient;
-        Time mTime;
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
-                mTime.setToNow();
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mText.setTimeZone(TimeZone.getDefault(), Locale.getDefault());
                 invalidate();
             }
         };
@@ -134,23 +268,19 @@ public class MyWatchFace extends CanvasWatchFaceService {
         float mXOffset;
         float mYOffset;
 
-        private static final String WEATHER_INFO_PATH = "/weatherinfo";
-        private static final String TEMP_HIGH_KEY = "high_temp";
-        private static final String TEMP_LOW_KEY = "low_temp";
-        private static final String WEATHER_ID_KEY = "weather_id";
+        // The weather shown, as WeatherListenerService last kept it.
+        WeatherSnapshot mSnapshot;
+        SharedPreferences mSnapshotPreferences;
 
         private double mHighTemp;
         private double mLowTemp;
         private int weatherId;
 
+        // The art of the weather shown, and the size the layout draws it at, in pixels.
+        int mWeatherArtResId = -1;
+        int mWeatherArtSize;
         Bitmap mWeatherArtBitmap;
 
-        GoogleApiClient mGoogleApiClient = new GoogleApiClient.Builder(MyWatchFace.this)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .addApi(Wearable.API)
-                .build();
-
         float mLineHeight;
 
         /**
@@ -179,8 +309,8 @@ public class MyWatchFace extends CanvasWatchFaceService {
             mTextPaint = new Paint();
             mTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
 
-            mTime = new Time();
-            mCalendar = Calendar.getInstance();
+            mText = new WatchFaceText(getString(R.string.format_temperature),
+                    TimeZone.getDefault(), Locale.getDefault());
 
             mHighTempPaint = new Paint();
             mHighTempPaint = createTextPaint(resources.getColor(R.color.digital_text));
@@ -188,18 +318,30 @@ public class MyWatchFace extends CanvasWatchFaceService {
             mLowTempPaint = new Paint();
             mLowTempPaint = createTextPaint(resources.getColor(R.color.digital_text));
 
-            mDayAndDateFormat = new SimpleDateFormat("EEE, MMM d yyyy", Locale.getDefault());
-            mDayAndDateFormat.setCalendar(mCalendar);
             mDatePaint = createTextPaint(resources.getColor(R.color.digital_text));
             mHorizontalLine = createTextPaint(resources.getColor(R.color.digital_text));
 
             mWeatherArtPaint = createTextPaint(Color.WHITE);
 
+            // Draw the weather last received from the first frame on, and whatever comes next
+            // as it comes, visible or not.
+            mSnapshotPreferences = WeatherSnapshot.getPreferences(MyWatchFace.this);
+            mSnapshotPreferences.registerOnSharedPreferenceChangeListener(this);
+            WeatherSnapshot snapshot = WeatherSnapshot.read(mSnapshotPreferences);
+            if (snapshot != null) {
+                showWeather(snapshot);
+            }
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mSnapshotPreferences.unregisterOnSharedPreferenceChangeListener(this);
+            if (mStaticLayer != null) {
+                mStaticLayer.recycle();
+                mStaticLayer = null;
+                mStaticLayerState.invalidate();
+            }
             super.onDestroy();
         }
 
@@ -216,21 +358,12 @@ public class MyWatchFace extends CanvasWatchFaceService {
             super.onVisibilityChanged(visible);
 
             if (visible) {
-                mGoogleApiClient.connect();
                 registerReceiver();
 
                 // Update time zone in case it changed while we weren't visible.
-                mTime.clear(TimeZone.getDefault().getID());
-                mTime.setToNow();
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                mDayAndDateFormat = new SimpleDateFormat("EEE, MMM d yyyy", Locale.getDefault());
-                mDayAndDateFormat.setCalendar(mCalendar);
+                mText.setTimeZone(TimeZone.getDefault(), Locale.getDefault());
             } else {
                 unregisterReceiver();
-                if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-                    Wearable.DataApi.removeListener(mGoogleApiClient, Engine.this);
-                    mGoogleApiClient.disconnect();
-                }
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -278,6 +411,33 @@ public class MyWatchFace extends CanvasWatchFaceService {
             mHighTempPaint.setTextSize(highLowSize);
             mLowTempPaint.setTextSize(highLowSize);
             mWeatherArtPaint.setTextSize(highLowSize);
+
+            Rect timeBounds = new Rect();
+            mTextPaint.getTextBounds("0:00", 0, 4, timeBounds);
+            mTimeHeight = timeBounds.height();
+            measureTime();
+            measureDate();
+            measureTemperatures();
+            mStaticLayerState.invalidate();
+
+            int artSize = resources.getDimensionPixelSize(R.dimen.weather_art_size);
+            if (artSize != mWeatherArtSize) {
+                mWeatherArtSize = artSize;
+                loadWeatherArt();
+                WeatherSnapshot.writeArtSize(mSnapshotPreferences, artSize);
+            }
+        }
+
+        private void measureTime() {
+            mTimeWidth = mTextPaint.measureText(mText.time, 0, mText.timeLength);
+        }
+
+        private void measureDate() {
+            mDateWidth = mText.date != null ? mDatePaint.measureText(mText.date) : 0;
+        }
+
+        private void measureTemperatures() {
+            mHighTempWidth = mHighTempPaint.measureText(mText.highTemp);
         }
 
         @Override
@@ -327,6 +487,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
                     mTapCount++;
                     mBackgroundPaint.setColor(resources.getColor(mTapCount % 2 == 0 ?
                             R.color.background : R.color.background2));
+                    mStaticLayerState.invalidate();
                     break;
             }
             invalidate();
@@ -334,45 +495,66 @@ public class MyWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
+            // Draw H:MM in ambient mode or H:MM:SS in interactive mode over the static layer.
+            // Nothing here allocates: the text is only formatted and measured again when it
+            // changes.
+            int changed = mText.update(System.currentTimeMillis(), !mAmbient);
+            if ((changed & WatchFaceText.TIME_CHANGED) != 0) {
+                measureTime();
+            }
+            if ((changed & WatchFaceText.DATE_CHANGED) != 0) {
+                measureDate();
+            }
+            if (mStaticLayerState.needsDrawing(mText.date, mAmbient, bounds.width(),
+                    bounds.height())) {
+                drawStaticLayer(bounds);
+            }
+            canvas.drawBitmap(mStaticLayer, 0, 0, null);
+            canvas.drawText(mText.time, 0, mText.timeLength,
+                    bounds.exactCenterX() - mTimeWidth / 2, mYOffset, mTextPaint);
+        }
+
+        /**
+         * Draws the background, the date and the weather into {@link #mStaticLayer}, making a
+         * new one when the bounds changed size.
+         */
+        private void drawStaticLayer(Rect bounds) {
+            int width = bounds.width();
+            int height = bounds.height();
+            if (mStaticLayer == null || mStaticLayer.getWidth() != width
+                    || mStaticLayer.getHeight() != height) {
+                if (mStaticLayer != null) {
+                    mStaticLayer.recycle();
+                }
+                mStaticLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                mStaticCanvas = new Canvas(mStaticLayer);
+            }
+            Canvas canvas = mStaticCanvas;
+
             // Draw the background.
             if (isInAmbientMode()) {
                 canvas.drawColor(Color.BLACK);
             } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+                canvas.drawRect(0, 0, width, height, mBackgroundPaint);
             }
 
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
-            mTime.setToNow();
-            Date date = new Date();
-            date.setTime(System.currentTimeMillis());
-            String dateString = mDayAndDateFormat.format(date).toUpperCase();
-
-            String text = mAmbient
-                    ? String.format("%d:%02d", mTime.hour, mTime.minute)
-                    : String.format("%d:%02d:%02d", mTime.hour, mTime.minute, mTime.second);
-            canvas.drawText(text, bounds.exactCenterX()-(mTextPaint.measureText(text)/2), mYOffset, mTextPaint);
-            Rect timeBounds = new Rect();
-            mTextPaint.getTextBounds(text, 0, text.length(), timeBounds);
-            int timeHeight = timeBounds.height();
-            canvas.drawText(dateString, bounds.exactCenterX()-(mDatePaint.measureText(dateString)/2), mYOffset+timeHeight, mDatePaint);
-            canvas.drawLine(bounds.exactCenterX()-30, bounds.exactCenterY()+20, bounds.exactCenterX()+30,
-                    bounds.exactCenterY()+20, mHorizontalLine);
+            float centerX = bounds.exactCenterX();
+            float centerY = bounds.exactCenterY();
+            canvas.drawText(mText.date, centerX - mDateWidth / 2, mYOffset + mTimeHeight,
+                    mDatePaint);
+            canvas.drawLine(centerX - 30, centerY + 20, centerX + 30, centerY + 20,
+                    mHorizontalLine);
+            float highX;
             if (mWeatherArtBitmap != null && !mAmbient) {
-                canvas.drawBitmap(mWeatherArtBitmap, mXOffset + 10, bounds.exactCenterY() + 15, mWeatherArtPaint);
-                canvas.drawText(formatTemperature(Math.round(mHighTemp)), mXOffset+10+mWeatherArtBitmap.getWidth()+5,
-                        bounds.exactCenterY()+80, mHighTempPaint);
-                canvas.drawText(formatTemperature(Math.round(mLowTemp)),
-                        mXOffset+10+mWeatherArtBitmap.getWidth()+5+mHighTempPaint.measureText(formatTemperature(Math.round(mHighTemp)))+15,
-                        bounds.exactCenterY()+80, mLowTempPaint);
+                canvas.drawBitmap(mWeatherArtBitmap, mXOffset + 10, centerY + 15, mWeatherArtPaint);
+                highX = mXOffset + 10 + mWeatherArtBitmap.getWidth() + 5;
             } else {
-                canvas.drawText(formatTemperature(Math.round(mHighTemp)), mXOffset+25,
-                        bounds.exactCenterY()+80, mHighTempPaint);
-                canvas.drawText(formatTemperature(Math.round(mLowTemp)),
-                        mXOffset+25+mHighTempPaint.measureText(formatTemperature(Math.round(mHighTemp)))+15,
-                        bounds.exactCenterY()+80, mLowTempPaint);
+                highX = mXOffset + 25;
             }
-
-
+            canvas.drawText(mText.highTemp, highX, centerY + 80, mHighTempPaint);
+            canvas.drawText(mText.lowTemp, highX + mHighTempWidth + 15, centerY + 80,
+                    mLowTempPaint);
+            mStaticLayerState.onDrawn(mText.date, mAmbient, width, height);
         }
 
         /**
@@ -407,126 +589,57 @@ public class MyWatchFace extends CanvasWatchFaceService {
             }
         }
 
-        @Override  // GoogleApiClient.ConnectionCallbacks
-        public void onConnected(Bundle connectionHint) {
-
-            Wearable.DataApi.addListener(mGoogleApiClient,
-                    Engine.this);
-            Wearable.DataApi.getDataItems(mGoogleApiClient)
-                    .setResultCallback(new ResultCallback<DataItemBuffer>() {
-                        @Override
-                        public void onResult(DataItemBuffer dataItems) {
-                            Status status = dataItems.getStatus();
-
-                            if (status.isSuccess()) {
-
-                                for (DataItem dataItem : dataItems) {
-
-                                    Log.i(TAG, "Synced weather Info " + dataItem);
-                                    if (dataItem != null) {
-
-                                            DataMap dataMap =
-                                                    DataMapItem.fromDataItem(dataItem).getDataMap();
-
-                                            if (dataMap.containsKey(TEMP_HIGH_KEY) || dataMap.containsKey(TEMP_LOW_KEY)
-                                                    || dataMap.containsKey(WEATHER_ID_KEY)) {
-                                                weatherId = dataMap.getInt(WEATHER_ID_KEY);
-                                                mWeatherArtBitmap = ((BitmapDrawable)getResources().getDrawable(getArtResourceForWeatherCondition(weatherId))).getBitmap();
-                                                mHighTemp = dataMap.getDouble(TEMP_HIGH_KEY);
-                                                mLowTemp = dataMap.getDouble(TEMP_LOW_KEY);
-                                                Log.i(TAG, "(OnResult) High & Low temperatures are: " + mHighTemp + "&" + mLowTemp);
-                                            }else {
-                                                Log.i(TAG, "Failed to receive data from phone!");
-                                            }
-                                            invalidate();
-                                    }
-                                }
-                            } else {
-                                Log.i(TAG, "Failed getting weather info: (" + status.getStatusCode() + ") " + status.getStatusMessage());
-                            }
-
-                            dataItems.release();
-                        }
-                    });
-            if (Log.isLoggable(TAG, Log.DEBUG)) {
-                Log.d(TAG, "onConnected: " + connectionHint);
+        @Override  // SharedPreferences.OnSharedPreferenceChangeListener
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            // WeatherListenerService keeps the weather the phone sends in the snapshot.  Our
+            // own writes of the art size leave the weather as it is.
+            WeatherSnapshot snapshot = WeatherSnapshot.readIfChanged(prefs, mSnapshot);
+            if (snapshot != null) {
+                showWeather(snapshot);
+                invalidate();
             }
-
         }
 
-        @Override  // GoogleApiClient.ConnectionCallbacks
-        public void onConnectionSuspended(int cause) {
-            if (Log.isLoggable(TAG, Log.DEBUG)) {
-                Log.d(TAG, "onConnectionSuspended: " + cause);
-            }
+        private void showWeather(WeatherSnapshot snapshot) {
+            mSnapshot = snapshot;
+            weatherId = snapshot.weatherId;
+            mWeatherArtResId = getArtResourceForWeatherCondition(weatherId);
+            mHighTemp = snapshot.high;
+            mLowTemp = snapshot.low;
+            onWeatherChanged();
         }
 
-        @Override  // GoogleApiClient.OnConnectionFailedListener
-        public void onConnectionFailed(ConnectionResult result) {
-            if (Log.isLoggable(TAG, Log.DEBUG)) {
-                Log.d(TAG, "onConnectionFailed: " + result);
-            }
+        private void onWeatherChanged() {
+            mText.setTemperatures(mHighTemp, mLowTemp);
+            measureTemperatures();
+            loadWeatherArt();
+            mStaticLayerState.invalidate();
         }
 
-        @Override
-        public void onDataChanged(DataEventBuffer dataEventBuffer) {
-            for (DataEvent event : dataEventBuffer) {
-                if (event.getType() == DataEvent.TYPE_CHANGED) {
-                    DataItem item = event.getDataItem();
-                    if ((item.getUri().getPath()).
-                            equals(WEATHER_INFO_PATH)) {
-                        DataMap dataMap =
-                                DataMapItem.fromDataItem(item).getDataMap();
-
-                        if (dataMap.containsKey(TEMP_HIGH_KEY) || dataMap.containsKey(TEMP_LOW_KEY)
-                                || dataMap.containsKey(WEATHER_ID_KEY)) {
-                            weatherId = dataMap.getInt(WEATHER_ID_KEY);
-                            mWeatherArtBitmap = ((BitmapDrawable)getResources().getDrawable(getArtResourceForWeatherCondition(weatherId))).getBitmap();
-                            mHighTemp = dataMap.getDouble(TEMP_HIGH_KEY);
-                            mLowTemp = dataMap.getDouble(TEMP_LOW_KEY);
-                            Log.i(TAG, "(OnDataCHanged) High & Low temperatures are: " + mHighTemp + "&" + mLowTemp);
-                        }else {
-                            Log.i(TAG, "Failed to receive data from phone!");
-                        }
-                        invalidate();
-                    }
-                }
+        /**
+         * Shows the art of the weather at the size of the layout, if it is cached.  Otherwise
+         * the art shown so far stays until the cache has decoded the new one, off the main
+         * thread, and hands it to {@link #onArtLoaded}.
+         */
+        private void loadWeatherArt() {
+            if (mWeatherArtResId == -1 || mWeatherArtSize == 0) {
+                mWeatherArtBitmap = null;
+                return;
             }
-        }
-
-        public int getArtResourceForWeatherCondition(int weatherId) {
-            // Based on weather code data found at:
-            // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-            if (weatherId >= 200 && weatherId <= 232) {
-                return R.drawable.art_storm;
-            } else if (weatherId >= 300 && weatherId <= 321) {
-                return R.drawable.art_light_rain;
-            } else if (weatherId >= 500 && weatherId <= 504) {
-                return R.drawable.art_rain;
-            } else if (weatherId == 511) {
-                return R.drawable.art_snow;
-            } else if (weatherId >= 520 && weatherId <= 531) {
-                return R.drawable.art_rain;
-            } else if (weatherId >= 600 && weatherId <= 622) {
-                return R.drawable.art_snow;
-            } else if (weatherId >= 701 && weatherId <= 761) {
-                return R.drawable.art_fog;
-            } else if (weatherId == 761 || weatherId == 781) {
-                return R.drawable.art_storm;
-            } else if (weatherId == 800) {
-                return R.drawable.art_clear;
-            } else if (weatherId == 801) {
-                return R.drawable.art_light_clouds;
-            } else if (weatherId >= 802 && weatherId <= 804) {
-                return R.drawable.art_clouds;
+            Bitmap art = mArtCache.get(mWeatherArtResId, mWeatherArtSize, this);
+            if (art != null) {
+                mWeatherArtBitmap = art;
             }
-            return -1;
         }
 
-        public String formatTemperature(double temperature) {
-
-            // For presentation, assume the user doesn't care about tenths of a degree.
-            return String.format(getString(R.string.format_temperature), temperature);
+        @Override  // WeatherArtCache.Callback
+        public void onArtLoaded(int resId, int size, Bitmap art) {
+            // Art asked for before the weather or the layout last changed is of no use now.
+            if (resId == mWeatherArtResId && size == mWeatherArtSize) {
+                mWeatherArtBitmap = art;
+                mStaticLayerState.invalidate();
+                invalidate();
+            }
         }
     }
 }
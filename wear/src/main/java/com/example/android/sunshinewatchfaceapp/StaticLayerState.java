@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshinewatchfaceapp;
+
+/**
+ * Decides when the watch face draws its static layer, everything but the time, again.  It
+ * remembers the date, ambient mode and size the layer was drawn for, and anything else which
+ * changes the layer (the weather and its art, a tap, the insets) invalidates it.  Kept apart
+ * from the drawing so that it can be checked without a Canvas.
+ */
+final class StaticLayerState {
+    private boolean mValid;
+    private String mDate;
+    private boolean mAmbient;
+    private int mWidth;
+    private int mHeight;
+
+    /**
+     * Has the layer drawn again before the next frame.
+     */
+    void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * @return whether the layer has to be drawn again for a frame with this date, in this mode
+     *         and at this size
+     */
+    boolean needsDrawing(String date, boolean ambient, int width, int height) {
+        return !mValid || !(date == null ? mDate == null : date.equals(mDate))
+                || ambient != mAmbient || width != mWidth || height != mHeight;
+    }
+
+    /**
+     * Records that the layer was drawn for a frame with this date, in this mode and at this
+     * size.
+     */
+    void onDrawn(String date, boolean ambient, int width, int height) {
+        mValid = true;
+        mDate = date;
+        mAmbient = ambient;
+        mWidth = width;
+        mHeight = height;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshinewatchfaceapp;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The text the watch face draws.  The time is written into a buffer which every frame reuses,
+ * and the date and the temperatures are only formatted again when the day or the weather
+ * changes, so that drawing a frame allocates nothing.
+ */
+final class WatchFaceText {
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final String DATE_PATTERN = "EEE, MMM d yyyy";
+
+    /** Returned by {@link #update} when the time's text changed. */
+    static final int TIME_CHANGED = 1;
+    /** Returned by {@link #update} when the date's text changed. */
+    static final int DATE_CHANGED = 2;
+
+    // H:MM in ambient mode or H:MM:SS in interactive mode, the first timeLength chars.
+    final char[] time = new char["HH:MM:SS".length()];
+    int timeLength;
+    String date;
+    String highTemp;
+    String lowTemp;
+
+    private final String mTemperatureFormat;
+    private TimeZone mTimeZone;
+    private SimpleDateFormat mDateFormat;
+    private Locale mLocale;
+    // The day date holds, in days since the epoch in the time zone, and the second time holds.
+    private long mDay = Long.MIN_VALUE;
+    private long mSecond = Long.MIN_VALUE;
+    private boolean mShowSeconds;
+
+    /**
+     * @param temperatureFormat the format of a temperature, as in R.string.format_temperature
+     */
+    WatchFaceText(String temperatureFormat, TimeZone timeZone, Locale locale) {
+        mTemperatureFormat = temperatureFormat;
+        setTimeZone(timeZone, locale);
+        setTemperatures(0, 0);
+    }
+
+    /**
+     * Formats the date and time in the time zone and locale from the next update on.
+     */
+    void setTimeZone(TimeZone timeZone, Locale locale) {
+        mTimeZone = timeZone;
+        mLocale = locale;
+        mDateFormat = new SimpleDateFormat(DATE_PATTERN, locale);
+        mDateFormat.setTimeZone(timeZone);
+        mDay = Long.MIN_VALUE;
+        mSecond = Long.MIN_VALUE;
+    }
+
+    void setTemperatures(double high, double low) {
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        highTemp = String.format(mTemperatureFormat, (double) Math.round(high));
+        lowTemp = String.format(mTemperatureFormat, (double) Math.round(low));
+    }
+
+    /**
+     * Brings the time and, once a day, the date up to the moment.
+     *
+     * @return {@link #TIME_CHANGED} and {@link #DATE_CHANGED}, for the text which changed
+     */
+    int update(long nowMillis, boolean showSeconds) {
+        long local = nowMillis + mTimeZone.getOffset(nowMillis);
+        long day = floorDiv(local, DAY_MS);
+        long second = floorDiv(local, 1000);
+        int changed = 0;
+        if (day != mDay) {
+            mDay = day;
+            date = mDateFormat.format(new Date(nowMillis)).toUpperCase(mLocale);
+            changed |= DATE_CHANGED;
+        }
+        long shownSecond = showSeconds ? second : second - second % 60;
+        if (shownSecond != mSecond || showSeconds != mShowSeconds) {
+            mSecond = shownSecond;
+            mShowSeconds = showSeconds;
+            int secondOfDay = (int) (second - day * (DAY_MS / 1000));
+            writeTime(secondOfDay / 3600, secondOfDay / 60 % 60, secondOfDay % 60, showSeconds);
+            changed |= TIME_CHANGED;
+        }
+        return changed;
+    }
+
+    private void writeTime(int hour, int minute, int second, boolean showSeconds) {
+        int length = 0;
+        if (hour >= 10) {
+            time[length++] = (char) ('0' + hour / 10);
+        }
+        time[length++] = (char) ('0' + hour % 10);
+        length = writeTwoDigits(length, minute);
+        if (showSeconds) {
+            length = writeTwoDigits(length, second);
+        }
+        timeLength = length;
+    }
+
+    private int writeTwoDigits(int at, int value) {
+        time[at++] = ':';
+        time[at++] = (char) ('0' + value / 10);
+        time[at++] = (char) ('0' + value % 10);
+        return at;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? quotient - 1 : quotient;
+    }
+}
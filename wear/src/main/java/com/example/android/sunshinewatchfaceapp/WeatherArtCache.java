@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshinewatchfaceapp;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The weather art the watch face draws, decoded and scaled on a background thread to the size
+ * the layout wants, and kept for each condition so that showing it again costs nothing.  The
+ * art is cached by resource and size, since the size follows the insets.  It is only used from
+ * the main thread.
+ */
+final class WeatherArtCache {
+    private static final String TAG = "WeatherArtCache";
+
+    interface Callback {
+        /**
+         * Called on the main thread with art which wasn't cached when it was asked for.
+         */
+        void onArtLoaded(int resId, int size, Bitmap art);
+    }
+
+    private final Resources mResources;
+    private final LruCache<Long, Bitmap> mBitmaps;
+    // The art being decoded, so that asking again doesn't decode it twice.
+    private final Set<Long> mPending = new HashSet<Long>();
+    private final ExecutorService mDecoder = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    WeatherArtCache(Resources resources, int maxKilobytes) {
+        mResources = resources;
+        mBitmaps = new LruCache<Long, Bitmap>(maxKilobytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+    }
+
+    /**
+     * @param callback gets the art if it isn't cached yet; null only to have it cached
+     * @return the art scaled to size by size pixels, or null if it isn't cached yet: it is
+     *         decoded then, and handed to the callback
+     */
+    Bitmap get(final int resId, final int size, final Callback callback) {
+        final Long key = key(resId, size);
+        Bitmap art = mBitmaps.get(key);
+        if (art != null || !mPending.add(key)) {
+            return art;
+        }
+        mDecoder.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap decoded = decode(resId, size);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mPending.remove(key);
+                        if (decoded != null) {
+                            mBitmaps.put(key, decoded);
+                            if (callback != null) {
+                                callback.onArtLoaded(resId, size, decoded);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Lets go of the art as the system runs short of memory, see
+     * {@link ComponentCallbacks2#onTrimMemory}.  The art being drawn stays with the watch face.
+     */
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mBitmaps.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            mBitmaps.trimToSize(mBitmaps.size() / 2);
+        }
+    }
+
+    void close() {
+        mDecoder.shutdownNow();
+        mBitmaps.evictAll();
+    }
+
+    private Bitmap decode(int resId, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, resId, options);
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, size);
+        options.inJustDecodeBounds = false;
+        Bitmap decoded = BitmapFactory.decodeResource(mResources, resId, options);
+        if (decoded == null) {
+            Log.w(TAG, "Couldn't decode the art " + resId);
+            return null;
+        }
+        if (decoded.getWidth() == size && decoded.getHeight() == size) {
+            return decoded;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded, size, size, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+
+    static Long key(int resId, int size) {
+        return ((long) resId << 32) | size;
+    }
+
+    /**
+     * @return the largest power of two to subsample the image by which leaves it at least size
+     *         pixels on each side, so that scaling it down reads no more pixels than it needs
+     */
+    static int sampleSize(int width, int height, int size) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= size && height / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshinewatchfaceapp;
+
+import android.util.Log;
+
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.WearableListenerService;
+
+/**
+ * Receives the weather the phone sends, whether the watch face is showing or not, and keeps it
+ * as the {@link WeatherSnapshot}.  The watch face listens for the snapshot changing, so that
+ * it never has to connect to the Wearable API itself.
+ */
+public class WeatherListenerService extends WearableListenerService {
+    private static final String TAG = "WeatherListenerService";
+
+    @Override
+    public void onDataChanged(DataEventBuffer dataEvents) {
+        for (DataEvent event : dataEvents) {
+            if (event.getType() != DataEvent.TYPE_CHANGED) {
+                continue;
+            }
+            DataItem item = event.getDataItem();
+            if (!WeatherSnapshot.WEATHER_INFO_PATH.equals(item.getUri().getPath())) {
+                continue;
+            }
+            WeatherSnapshot weather = WeatherSnapshot.fromDataMap(
+                    DataMapItem.fromDataItem(item).getDataMap());
+            if (weather == null) {
+                Log.i(TAG, "Failed to receive data from phone!");
+            } else if (WeatherSnapshot.store(WeatherSnapshot.getPreferences(this), weather)) {
+                Log.i(TAG, "High & Low temperatures are: " + weather.high + "&" + weather.low);
+            }
+        }
+    }
+}
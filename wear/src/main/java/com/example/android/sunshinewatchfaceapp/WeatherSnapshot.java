@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshinewatchfaceapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The last weather the phone sent, kept on the watch so that the watch face draws it from its
+ * first frame on instead of waiting for the Wearable API to connect.
+ */
+final class WeatherSnapshot {
+    // The data item the phone sends the weather in.
+    static final String WEATHER_INFO_PATH = "/weatherinfo";
+    static final String TEMP_HIGH_KEY = "high_temp";
+    static final String TEMP_LOW_KEY = "low_temp";
+    static final String WEATHER_ID_KEY = "weather_id";
+    static final String TIMESTAMP_KEY = "timestamp";
+
+    private static final String PREFS_NAME = "weather_snapshot";
+    private static final String PREF_HIGH = "high";
+    private static final String PREF_LOW = "low";
+    private static final String PREF_WEATHER_ID = "weather_id";
+    private static final String PREF_TIMESTAMP = "timestamp";
+    private static final String PREF_ART_SIZE = "art_size";
+
+    // The Wearable API only keeps the latest weather, so weather sent this much before the
+    // snapshot's didn't arrive late: the phone's clock was set back.
+    static final long MAX_CLOCK_SET_BACK_MS = TimeUnit.DAYS.toMillis(1);
+
+    final double high;
+    final double low;
+    final int weatherId;
+    // When the phone sent the weather, by its clock, or 0 if it didn't say.
+    final long timestamp;
+    // The size the watch face last drew the art at, in pixels, so that the art can be decoded
+    // before the layout is known.  0 if it hasn't drawn it yet.
+    final int artSize;
+
+    WeatherSnapshot(double high, double low, int weatherId, long timestamp, int artSize) {
+        this.high = high;
+        this.low = low;
+        this.weatherId = weatherId;
+        this.timestamp = timestamp;
+        this.artSize = artSize;
+    }
+
+    static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the snapshot last written, or null if there is none
+     */
+    static WeatherSnapshot read(SharedPreferences prefs) {
+        if (!prefs.contains(PREF_TIMESTAMP)) {
+            return null;
+        }
+        return new WeatherSnapshot(
+                Double.longBitsToDouble(prefs.getLong(PREF_HIGH, 0)),
+                Double.longBitsToDouble(prefs.getLong(PREF_LOW, 0)),
+                prefs.getInt(PREF_WEATHER_ID, 0),
+                prefs.getLong(PREF_TIMESTAMP, 0),
+                prefs.getInt(PREF_ART_SIZE, 0));
+    }
+
+    /**
+     * @param shown the snapshot the watch face shows, or null
+     * @return the snapshot last written, or null if there is none or it holds the weather shown
+     */
+    static WeatherSnapshot readIfChanged(SharedPreferences prefs, WeatherSnapshot shown) {
+        WeatherSnapshot snapshot = read(prefs);
+        return snapshot != null && !snapshot.hasSameWeatherAs(shown) ? snapshot : null;
+    }
+
+    /**
+     * @return the weather in the phone's data item, or null if it holds none
+     */
+    static WeatherSnapshot fromDataMap(DataMap dataMap) {
+        if (!dataMap.containsKey(TEMP_HIGH_KEY) && !dataMap.containsKey(TEMP_LOW_KEY)
+                && !dataMap.containsKey(WEATHER_ID_KEY)) {
+            return null;
+        }
+        return new WeatherSnapshot(dataMap.getDouble(TEMP_HIGH_KEY),
+                dataMap.getDouble(TEMP_LOW_KEY), dataMap.getInt(WEATHER_ID_KEY),
+                dataMap.getLong(TIMESTAMP_KEY, 0), 0);
+    }
+
+    /**
+     * Keeps the weather from the phone in place of the snapshot, with the snapshot's art size,
+     * unless the snapshot is as new.  Weather arrives on more than one thread.
+     *
+     * @return whether the weather was kept
+     */
+    static synchronized boolean store(SharedPreferences prefs, WeatherSnapshot weather) {
+        if (!weather.isNewerThan(read(prefs))) {
+            return false;
+        }
+        // The art size may have been written before any weather was.
+        weather.withArtSize(prefs.getInt(PREF_ART_SIZE, weather.artSize)).write(prefs);
+        return true;
+    }
+
+    /**
+     * Keeps the size the watch face draws the art at, leaving the weather as it is.  Locked
+     * like store(), which would otherwise write back the art size it read before this one.
+     */
+    static synchronized void writeArtSize(SharedPreferences prefs, int artSize) {
+        prefs.edit().putInt(PREF_ART_SIZE, artSize).apply();
+    }
+
+    /**
+     * Writes the snapshot in the background.
+     */
+    void write(SharedPreferences prefs) {
+        prefs.edit()
+                .putLong(PREF_HIGH, Double.doubleToRawLongBits(high))
+                .putLong(PREF_LOW, Double.doubleToRawLongBits(low))
+                .putInt(PREF_WEATHER_ID, weatherId)
+                .putLong(PREF_TIMESTAMP, timestamp)
+                .putInt(PREF_ART_SIZE, artSize)
+                .apply();
+    }
+
+    boolean hasSameWeatherAs(WeatherSnapshot other) {
+        return other != null && high == other.high && low == other.low
+                && weatherId == other.weatherId && timestamp == other.timestamp;
+    }
+
+    WeatherSnapshot withArtSize(int artSize) {
+        return new WeatherSnapshot(high, low, weatherId, timestamp, artSize);
+    }
+
+    /**
+     * @return whether this weather should replace the other, which may be null: the phone sent
+     *         it later, didn't say when, or its clock has been set back since the other
+     */
+    boolean isNewerThan(WeatherSnapshot other) {
+        return other == null || timestamp == 0 || timestamp > other.timestamp
+                || other.timestamp - timestamp > MAX_CLOCK_SET_BACK_MS;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.android.sunshinewatchfaceapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks when the watch face draws its static layer again, frame by frame the way onDraw()
+ * asks, with the date from {@link WatchFaceText}.
+ */
+public class StaticLayerStateTest {
+    // Thursday, 1 January 2015, 09:59:58 UTC
+    private static final long MORNING = 1420106398000L;
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 290;
+
+    private WatchFaceText mText;
+    private StaticLayerState mLayer;
+    private boolean mAmbient;
+    private int mWidth;
+    private int mHeight;
+
+    @Before
+    public void setUp() {
+        mText = new WatchFaceText("%1.0f\u00B0", TimeZone.getTimeZone("UTC"), Locale.US);
+        mLayer = new StaticLayerState();
+        mWidth = WIDTH;
+        mHeight = HEIGHT;
+    }
+
+    @Test
+    public void theFirstFrameDrawsTheLayer() {
+        assertTrue(frame(MORNING));
+    }
+
+    @Test
+    public void framesWithNothingNewReuseTheLayer() {
+        frame(MORNING);
+
+        for (int second = 1; second < 60; second++) {
+            assertFalse(frame(MORNING + TimeUnit.SECONDS.toMillis(second)));
+        }
+    }
+
+    @Test
+    public void aNewDayDrawsTheLayer() {
+        frame(MORNING);
+        assertFalse(frame(MORNING + TimeUnit.HOURS.toMillis(12)));
+
+        assertTrue(frame(MORNING + TimeUnit.HOURS.toMillis(15)));
+        assertFalse(frame(MORNING + TimeUnit.HOURS.toMillis(15) + 1000));
+    }
+
+    @Test
+    public void enteringAndLeavingAmbientModeDrawsTheLayer() {
+        frame(MORNING);
+
+        mAmbient = true;
+        assertTrue(frame(MORNING + 1000));
+        assertFalse(frame(MORNING + 60000));
+
+        mAmbient = false;
+        assertTrue(frame(MORNING + 61000));
+    }
+
+    @Test
+    public void aNewSizeDrawsTheLayer() {
+        frame(MORNING);
+
+        mHeight = WIDTH;
+        assertTrue(frame(MORNING + 1000));
+        assertFalse(frame(MORNING + 2000));
+    }
+
+    @Test
+    public void newWeatherDrawsTheLayer() {
+        frame(MORNING);
+
+        // As the engine does when the weather, its art, the background or the insets change.
+        mText.setTemperatures(21, 9);
+        mLayer.invalidate();
+        assertTrue(frame(MORNING + 1000));
+        assertFalse(frame(MORNING + 2000));
+    }
+
+    /**
+     * Runs a frame the way onDraw() does.
+     *
+     * @return whether it drew the static layer
+     */
+    private boolean frame(long nowMillis) {
+        mText.update(nowMillis, !mAmbient);
+        if (!mLayer.needsDrawing(mText.date, mAmbient, mWidth, mHeight)) {
+            return false;
+        }
+        mLayer.onDrawn(mText.date, mAmbient, mWidth, mHeight);
+        return true;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.android.sunshinewatchfaceapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks the text the watch face draws, and that the work onDraw() does for it on every frame
+ * allocates nothing.
+ */
+public class WatchFaceTextTest {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    // Thursday, 1 January 2015, 09:59:58 UTC
+    private static final long MORNING = 1420106398000L;
+    private static final int FRAMES = 10000;
+
+    private WatchFaceText mText;
+
+    @Before
+    public void setUp() {
+        mText = new WatchFaceText("%1.0f\u00B0", UTC, Locale.US);
+    }
+
+    @Test
+    public void theTimeIsWrittenLikeTheFormatWould() {
+        assertEquals(WatchFaceText.TIME_CHANGED | WatchFaceText.DATE_CHANGED,
+                mText.update(MORNING, true));
+        assertEquals("9:59:58", time());
+
+        assertEquals(WatchFaceText.TIME_CHANGED, mText.update(MORNING + 2000, true));
+        assertEquals("10:00:00", time());
+
+        assertEquals(WatchFaceText.TIME_CHANGED, mText.update(MORNING + 2000, false));
+        assertEquals("10:00", time());
+    }
+
+    @Test
+    public void ambientModeOnlyChangesEveryMinute() {
+        mText.update(MORNING + 2000, false);
+
+        assertEquals(0, mText.update(MORNING + 30000, false));
+        assertEquals(WatchFaceText.TIME_CHANGED, mText.update(MORNING + 62000, false));
+        assertEquals("10:01", time());
+    }
+
+    @Test
+    public void theDateIsFormattedOncePerDay() {
+        mText.update(MORNING, true);
+        String date = mText.date;
+        assertEquals("THU, JAN 1 2015", date);
+
+        mText.update(MORNING + TimeUnit.HOURS.toMillis(12), true);
+        assertSame(date, mText.date);
+
+        assertEquals(WatchFaceText.TIME_CHANGED | WatchFaceText.DATE_CHANGED,
+                mText.update(MORNING + TimeUnit.HOURS.toMillis(15), true));
+        assertEquals("FRI, JAN 2 2015", mText.date);
+        assertEquals("0:59:58", time());
+    }
+
+    @Test
+    public void theTimeIsInTheTimeZone() {
+        mText.setTimeZone(TimeZone.getTimeZone("GMT-10:00"), Locale.US);
+        mText.update(MORNING, true);
+
+        assertEquals("23:59:58", time());
+        assertEquals("WED, DEC 31 2014", mText.date);
+    }
+
+    @Test
+    public void temperaturesAreRounded() {
+        mText.setTemperatures(21.6, -3.4);
+
+        assertEquals("22\u00B0", mText.highTemp);
+        assertEquals("-3\u00B0", mText.lowTemp);
+    }
+
+    @Test
+    public void aFrameAllocatesNothing() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+        // Once a second, as in interactive mode, all within the one day.
+        long start = MORNING + TimeUnit.SECONDS.toMillis(2);
+        for (int i = 0; i < FRAMES; i++) {
+            mText.update(start + i * 1000L, i % 2 == 0);
+        }
+
+        long before = allocations.getThreadAllocatedBytes(thread);
+        int checksum = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            checksum += mText.update(start + i * 1000L, true) + mText.timeLength;
+        }
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(checksum > 0);
+        // Reading the allocation counter may itself allocate a little, but never once a frame.
+        assertTrue(allocated + " bytes over " + FRAMES + " frames", allocated < FRAMES);
+    }
+
+    private String time() {
+        return new String(mText.time, 0, mText.timeLength);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.android.sunshinewatchfaceapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how the art cache subsamples the art it decodes, and that it caches each size apart.
+ */
+public class WeatherArtCacheTest {
+
+    @Test
+    public void artIsSubsampledNoSmallerThanItsSize() {
+        assertEquals(1, WeatherArtCache.sampleSize(96, 96, 96));
+        assertEquals(1, WeatherArtCache.sampleSize(96, 96, 64));
+        assertEquals(2, WeatherArtCache.sampleSize(96, 96, 48));
+        assertEquals(2, WeatherArtCache.sampleSize(96, 96, 40));
+        assertEquals(4, WeatherArtCache.sampleSize(96, 96, 24));
+        // Art smaller than asked for is scaled up rather than subsampled.
+        assertEquals(1, WeatherArtCache.sampleSize(96, 96, 128));
+    }
+
+    @Test
+    public void eachSizeOfTheArtIsCachedApart() {
+        assertEquals(WeatherArtCache.key(0x7f020001, 64), WeatherArtCache.key(0x7f020001, 64));
+        assertNotEquals(WeatherArtCache.key(0x7f020001, 64),
+                WeatherArtCache.key(0x7f020001, 72));
+        assertNotEquals(WeatherArtCache.key(0x7f020001, 64),
+                WeatherArtCache.key(0x7f020002, 64));
+    }
+}
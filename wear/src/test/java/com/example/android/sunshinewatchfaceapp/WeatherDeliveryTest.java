@@ -0,0 +1,123 @@
+package com.example.android.sunshinewatchfaceapp;
+
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Delivers the weather the way WeatherListenerService does, through the snapshot, and checks
+ * that the watch face's text picks it up without connecting to anything.  A listener stands in
+ * for the engine's, which does the same with the snapshot and its text and static layer state.
+ * The engine itself, and drawing on its Canvas, need a device.
+ */
+public class WeatherDeliveryTest {
+    // Thursday, 1 January 2015, 09:59:58 UTC
+    private static final long MORNING = 1420106398000L;
+    private static final int VISIBILITY_CHANGES = 1000;
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 290;
+    // What the engine does between becoming visible and drawing is a small part of a frame at
+    // 60 fps.
+    private static final long FIRST_FRAME_BUDGET_NS = TimeUnit.MILLISECONDS.toNanos(8);
+
+    private SharedPreferences mPrefs;
+    private WatchFaceText mText;
+    private StaticLayerState mLayer;
+    private WeatherSnapshot mShown;
+
+    @Before
+    public void setUp() {
+        mPrefs = new InMemorySharedPreferences();
+        mText = new WatchFaceText("%1.0f\u00B0", TimeZone.getTimeZone("UTC"), Locale.US);
+        mLayer = new StaticLayerState();
+        // As the engine does, the weather shown follows the snapshot whether visible or not.
+        mPrefs.registerOnSharedPreferenceChangeListener(
+                new SharedPreferences.OnSharedPreferenceChangeListener() {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                        WeatherSnapshot snapshot = WeatherSnapshot.readIfChanged(prefs, mShown);
+                        if (snapshot != null) {
+                            mShown = snapshot;
+                            mText.setTemperatures(snapshot.high, snapshot.low);
+                            mLayer.invalidate();
+                        }
+                    }
+                });
+    }
+
+    @Test
+    public void weatherFromThePhoneReachesTheWatchFace() {
+        assertTrue(WeatherSnapshot.store(mPrefs, new WeatherSnapshot(21.4, 9.6, 800, MORNING, 0)));
+
+        assertEquals(800, mShown.weatherId);
+        assertEquals("21\u00B0", mText.highTemp);
+        assertEquals("10\u00B0", mText.lowTemp);
+    }
+
+    @Test
+    public void olderWeatherIsNotKept() {
+        WeatherSnapshot.store(mPrefs, new WeatherSnapshot(21, 9, 800, MORNING, 0));
+
+        assertFalse(WeatherSnapshot.store(mPrefs, new WeatherSnapshot(5, 1, 600, MORNING - 1, 0)));
+        assertEquals(800, mShown.weatherId);
+        assertEquals(800, WeatherSnapshot.read(mPrefs).weatherId);
+    }
+
+    @Test
+    public void theArtSizeOutlivesTheWeather() {
+        WeatherSnapshot.writeArtSize(mPrefs, 96);
+        WeatherSnapshot.store(mPrefs, new WeatherSnapshot(21, 9, 800, MORNING, 0));
+        WeatherSnapshot.store(mPrefs, new WeatherSnapshot(22, 10, 500, MORNING + 1, 0));
+
+        assertEquals(96, WeatherSnapshot.read(mPrefs).artSize);
+    }
+
+    @Test
+    public void writingTheArtSizeLeavesTheWeatherShown() {
+        WeatherSnapshot.store(mPrefs, new WeatherSnapshot(21, 9, 800, MORNING, 0));
+        WeatherSnapshot shown = mShown;
+
+        WeatherSnapshot.writeArtSize(mPrefs, 96);
+
+        assertSame(shown, mShown);
+    }
+
+    @Test
+    public void theFirstFrameAfterBecomingVisibleShowsTheWeatherSentWhileHidden() {
+        long[] times = new long[VISIBILITY_CHANGES];
+        for (int i = 0; i < times.length; i++) {
+            // Hidden: the phone sends new weather, which the listener service keeps and the
+            // engine picks up from the snapshot there and then.
+            double high = 10 + i % 20;
+            WeatherSnapshot.store(mPrefs, new WeatherSnapshot(high, 5, 800, MORNING + i, 0));
+
+            // Timed from the visibility change to the end of the first frame's work, as far as
+            // it runs off the device: the time zone, the text and the static layer's state.
+            long start = System.nanoTime();
+            mText.setTimeZone(TimeZone.getTimeZone("UTC"), Locale.US);
+            mText.update(MORNING + i * 1000L, true);
+            boolean drawsLayer = mLayer.needsDrawing(mText.date, false, WIDTH, HEIGHT);
+            if (drawsLayer) {
+                mLayer.onDrawn(mText.date, false, WIDTH, HEIGHT);
+            }
+            times[i] = System.nanoTime() - start;
+
+            // The frame has the weather in it, without waiting for anything.
+            assertEquals(String.format("%1.0f\u00B0", high), mText.highTemp);
+            assertTrue(drawsLayer);
+        }
+
+        Arrays.sort(times);
+        long median = times[times.length / 2];
+        assertTrue("Took " + median + "ns from becoming visible to the first frame",
+                median < FIRST_FRAME_BUDGET_NS);
+    }
+}
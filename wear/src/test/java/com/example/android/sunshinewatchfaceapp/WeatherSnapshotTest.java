@@ -0,0 +1,56 @@
+package com.example.android.sunshinewatchfaceapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks which weather from the phone replaces the snapshot the watch face started with.
+ */
+public class WeatherSnapshotTest {
+    private static final long SENT = 1420106398000L;
+
+    @Test
+    public void anyWeatherReplacesNone() {
+        assertTrue(new WeatherSnapshot(20, 10, 800, SENT, 0).isNewerThan(null));
+    }
+
+    @Test
+    public void onlyLaterWeatherReplacesTheSnapshot() {
+        WeatherSnapshot snapshot = new WeatherSnapshot(20, 10, 800, SENT, 96);
+
+        assertTrue(new WeatherSnapshot(22, 12, 500, SENT + 1, 0).isNewerThan(snapshot));
+        // The data item the snapshot was written from, read again once the API connects.
+        assertFalse(new WeatherSnapshot(20, 10, 800, SENT, 0).isNewerThan(snapshot));
+        assertFalse(new WeatherSnapshot(18, 8, 800, SENT - 1, 0).isNewerThan(snapshot));
+    }
+
+    @Test
+    public void weatherWithoutATimestampAlwaysReplacesTheSnapshot() {
+        WeatherSnapshot snapshot = new WeatherSnapshot(20, 10, 800, SENT, 96);
+
+        assertTrue(new WeatherSnapshot(22, 12, 500, 0, 0).isNewerThan(snapshot));
+    }
+
+    @Test
+    public void weatherFromAPhoneClockSetBackReplacesTheSnapshot() {
+        WeatherSnapshot snapshot = new WeatherSnapshot(20, 10, 800, SENT, 96);
+        long setBack = SENT - WeatherSnapshot.MAX_CLOCK_SET_BACK_MS - 1;
+
+        assertTrue(new WeatherSnapshot(22, 12, 500, setBack, 0).isNewerThan(snapshot));
+        // Then the weather after it follows on as usual.
+        WeatherSnapshot next = new WeatherSnapshot(22, 12, 500, setBack, 96);
+        assertTrue(new WeatherSnapshot(24, 14, 500, setBack + 1, 0).isNewerThan(next));
+    }
+
+    @Test
+    public void theArtSizeChangesAlone() {
+        WeatherSnapshot snapshot = new WeatherSnapshot(20, 10, 800, SENT, 96).withArtSize(64);
+
+        assertEquals(64, snapshot.artSize);
+        assertEquals(20, snapshot.high, 0);
+        assertEquals(10, snapshot.low, 0);
+        assertEquals(800, snapshot.weatherId);
+        assertEquals(SENT, snapshot.timestamp);
+    }
+}